@@ -0,0 +1,265 @@
+package benchmarks.jmh;
+
+import dates.DateUtilities;
+import dates.DateValue;
+import dates.HolidayCalendar;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The scenarios of <code>benchmarks.DateUtilitiesBenchmark</code> as JMH
+ * benchmarks, one method per <code>DateUtilities</code> entry point. Each
+ * invocation handles the next of 1024 random inputs from 1990 to 2030 and
+ * hands its result to a <code>Blackhole</code>; the bulk methods handle a
+ * whole column.
+ * <P>
+ * Run with the GC profiler to see bytes allocated per operation:
+ * <code>java -jar jmh/target/benchmarks.jar -prof gc</code>, adding
+ * <code>-t max</code> to call each method from every core at once. The
+ * <code>main</code> method here does the same with the profiler already
+ * added and takes the same options.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateUtilitiesJmh {
+	private static final int INPUTS = 1024;
+	private static final long FIRST = 631152000000L;	// 1990-01-01
+	private static final long SPAN = 1262304000000L;	// 40 years
+	private static final int[] STYLES = { DateFormat.SHORT, DateFormat.MEDIUM, DateFormat.LONG, DateFormat.FULL };
+	private static final String NUMERIC = "yyyy-MM-dd HH:mm:ss";
+
+	/** The inputs of one thread, and the index of the next one. */
+	@State(Scope.Thread)
+	public static class Inputs {
+		final long[] millis = randomMillis(1);
+		final long[] others = randomMillis(2);
+		final Locale[] locales = { Locale.US, Locale.FRANCE, Locale.GERMANY, Locale.JAPAN,
+			new Locale("pt", "BR"), new Locale("ar", "EG"), new Locale("th", "TH"), Locale.KOREA };
+		final Date[] dates = new Date[INPUTS];
+		final DateValue[] values = new DateValue[INPUTS];
+		final String[] strings = new String[INPUTS];
+		final Calendar calendar = Calendar.getInstance();
+		final Calendar other = Calendar.getInstance();
+		final TimeZone zone = TimeZone.getDefault();
+		final StringBuilder sb = new StringBuilder();
+		final char[] buf = new char[64];
+		final long[] out = new long[INPUTS];
+		final BitSet failures = new BitSet(INPUTS);
+		private int next;
+
+		@Setup
+		public void setUp() {
+			for(int i = 0; i < INPUTS; i++) {
+				dates[i] = new Date(millis[i]);
+				values[i] = DateValue.of(millis[i], zone);
+				strings[i] = DateUtilities.toString(dates[i], NUMERIC);
+			}
+		}
+
+		int next() {
+			return next++ & (INPUTS - 1);
+		}
+	}
+
+	/** Date style inputs, for the style methods. */
+	@State(Scope.Thread)
+	public static class Styles {
+		@Param({"SHORT", "MEDIUM", "LONG", "FULL"})
+		DateUtilities.DateStyle style;
+		final String[] strings = new String[INPUTS];
+
+		@Setup
+		public void setUp(Inputs inputs) {
+			DateFormat df = DateFormat.getDateInstance(STYLES[style.ordinal()]);
+			for(int i = 0; i < INPUTS; i++) strings[i] = df.format(inputs.dates[i]);
+		}
+	}
+
+	/** The units measured by dateDiff. */
+	@State(Scope.Thread)
+	public static class Units {
+		@Param({"DAY_UNITS", "HOUR_UNITS", "CALENDAR_DAY_UNITS", "MONTH_UNITS", "BUSINESS_DAY_UNITS"})
+		String unit;
+		long value;
+
+		@Setup
+		public void setUp() throws ReflectiveOperationException {
+			value = DateUtilities.class.getField(unit).getLong(null);
+		}
+	}
+
+	/** Two columns of 65536 instants for the bulk dateDiff. */
+	@State(Scope.Thread)
+	public static class Columns {
+		final long[] first = new long[INPUTS * 64];
+		final long[] second = new long[INPUTS * 64];
+		final long[] out = new long[INPUTS * 64];
+
+		@Setup
+		public void setUp(Inputs inputs) {
+			for(int i = 0; i < first.length; i++) {
+				first[i] = inputs.millis[i % INPUTS];
+				second[i] = inputs.others[(i * 7) % INPUTS];
+			}
+		}
+	}
+
+	@Benchmark
+	public void toStringDate(Inputs in, Blackhole bh) {
+		bh.consume(DateUtilities.toString(in.dates[in.next()]));
+	}
+
+	@Benchmark
+	public void toStringCalendar(Inputs in, Blackhole bh) {
+		in.calendar.setTimeInMillis(in.millis[in.next()]);
+		bh.consume(DateUtilities.toString(in.calendar));
+	}
+
+	@Benchmark
+	public void toStringCalendarNumericPattern(Inputs in, Blackhole bh) {
+		in.calendar.setTimeInMillis(in.millis[in.next()]);
+		bh.consume(DateUtilities.toString(in.calendar, "yyyy-MM-dd HH:mm:ss.SSS"));
+	}
+
+	@Benchmark
+	public void toStringCalendarTextPattern(Inputs in, Blackhole bh) {
+		in.calendar.setTimeInMillis(in.millis[in.next()]);
+		bh.consume(DateUtilities.toString(in.calendar, "EEE, d MMM yyyy HH:mm:ss z"));
+	}
+
+	@Benchmark
+	public void toStringCalendarDateStyle(Inputs in, Styles styles, Blackhole bh) {
+		int i = in.next();
+		in.calendar.setTimeInMillis(in.millis[i]);
+		bh.consume(DateUtilities.toString(in.calendar, styles.style, in.locales[i & 7]));
+	}
+
+	@Benchmark
+	public void toStringCalendarIntStyle(Inputs in, Blackhole bh) {
+		int i = in.next();
+		in.calendar.setTimeInMillis(in.millis[i]);
+		bh.consume(DateUtilities.toString(in.calendar, i & 3, in.locales[i & 7]));
+	}
+
+	@Benchmark
+	public void toStringCalendarIntStyles(Inputs in, Blackhole bh) {
+		int i = in.next();
+		in.calendar.setTimeInMillis(in.millis[i]);
+		bh.consume(DateUtilities.toString(in.calendar, i & 3, (i >> 2) & 3, in.locales[i & 7]));
+	}
+
+	@Benchmark
+	public void toStringDatePattern(Inputs in, Blackhole bh) {
+		bh.consume(DateUtilities.toString(in.dates[in.next()], "MM/dd/yyyy hh:mm a"));
+	}
+
+	@Benchmark
+	public void toStringDateValuePattern(Inputs in, Blackhole bh) {
+		bh.consume(DateUtilities.toString(in.values[in.next()], NUMERIC));
+	}
+
+	@Benchmark
+	public void formatPattern(Blackhole bh) {
+		bh.consume(DateUtilities.format(NUMERIC));
+	}
+
+	@Benchmark
+	public void formatString(Inputs in, Blackhole bh) throws ParseException {
+		bh.consume(DateUtilities.format(in.strings[in.next()], NUMERIC));
+	}
+
+	@Benchmark
+	public void formatToStringBuilder(Inputs in, Blackhole bh) {
+		in.sb.setLength(0);
+		bh.consume(DateUtilities.format(in.millis[in.next()], in.zone, "yyyy-MM-dd HH:mm:ss.SSS", in.sb));
+	}
+
+	@Benchmark
+	public void formatToCharArray(Inputs in, Blackhole bh) {
+		bh.consume(DateUtilities.format(in.millis[in.next()], in.zone, "yyyy-MM-dd HH:mm:ss.SSS", in.buf, 0));
+		bh.consume(in.buf);
+	}
+
+	@Benchmark
+	public void toDate(Inputs in, Styles styles, Blackhole bh) {
+		bh.consume(DateUtilities.toDate(styles.strings[in.next()]));
+	}
+
+	@Benchmark
+	public void parseDateUnparseable(Blackhole bh) {
+		bh.consume(DateUtilities.parseDate("not a date"));
+	}
+
+	@Benchmark
+	public void dateDiffCalendar(Inputs in, Units units, Blackhole bh) {
+		int i = in.next();
+		in.calendar.setTimeInMillis(in.millis[i]);
+		in.other.setTimeInMillis(in.others[i]);
+		bh.consume(DateUtilities.dateDiff(units.value, in.calendar, in.other, HolidayCalendar.WEEKENDS_ONLY));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(INPUTS * 64)
+	public void dateDiffColumn(Columns columns, Blackhole bh) {
+		DateUtilities.dateDiff(DateUtilities.DAY_UNITS, columns.first, columns.second, columns.out);
+		bh.consume(columns.out);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(INPUTS)
+	public void toEpochMillisColumn(Inputs in, Blackhole bh) {
+		bh.consume(DateUtilities.toEpochMillis(in.strings, NUMERIC, in.out, in.failures));
+		bh.consume(in.out);
+	}
+
+	/**
+	 * Runs the benchmarks with the GC profiler.
+	 * @param args - JMH command line options, e.g. a name filter or <code>-t max</code>
+	 */
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+		CommandLineOptions options = new CommandLineOptions(args);
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(options).addProfiler(GCProfiler.class);
+		if(options.getIncludes().isEmpty()) builder.include(DateUtilitiesJmh.class.getName());
+		new Runner(builder.build()).run();
+	}
+
+	private static long[] randomMillis(long seed) {
+		Random r = new Random(seed);
+		long[] millis = new long[INPUTS];
+		for(int i = 0; i < INPUTS; i++) millis[i] = FIRST + (long)(r.nextDouble() * SPAN);
+		return millis;
+	}
+}
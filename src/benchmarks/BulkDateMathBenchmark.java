@@ -0,0 +1,187 @@
+package benchmarks;
+
+import dates.BulkDateMath;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Compares shifting and truncating a column of timestamps one mutable
+ * <code>Calendar</code> at a time, as <code>Example1</code> and
+ * <code>MainLabs</code> do, with <code>BulkDateMath</code>. Each operation is
+ * the whole column; times are reported per row. A short column is also timed
+ * per call, in the chosen zone and in "GMT+05:30", which is not in the tz
+ * database.
+ * <P>
+ * Usage: <code>java benchmarks.BulkDateMathBenchmark [--rows n] [--zone id] [--warmup ms] [--time ms]</code>
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class BulkDateMathBenchmark {
+	private static final long FIRST = 1262304000000L;	// 2010-01-01
+	private static final long SPAN = 473040000000L;	// 15 years
+	private static final int SHORT_ROWS = 16;
+
+	// Prohibit instantiation
+	private BulkDateMathBenchmark() {}
+
+	/** A Calendar operation and its bulk equivalent. */
+	abstract static class Shift {
+		final String name;
+
+		Shift(String name) {
+			this.name = name;
+		}
+
+		abstract void calendar(Calendar c);
+
+		abstract void bulk(long[] millis, TimeZone zone, long[] out);
+	}
+
+	static List<Shift> shifts() {
+		List<Shift> list = new ArrayList<Shift>();
+		list.add(new Shift("add(Calendar.DATE, 90)") {
+			void calendar(Calendar c) {
+				c.add(Calendar.DATE, 90);
+			}
+
+			void bulk(long[] millis, TimeZone zone, long[] out) {
+				BulkDateMath.add(millis, Calendar.DATE, 90, zone, out);
+			}
+		});
+		list.add(new Shift("add(Calendar.YEAR, -2)") {
+			void calendar(Calendar c) {
+				c.add(Calendar.YEAR, -2);
+			}
+
+			void bulk(long[] millis, TimeZone zone, long[] out) {
+				BulkDateMath.add(millis, Calendar.YEAR, -2, zone, out);
+			}
+		});
+		list.add(new Shift("add(Calendar.HOUR, 6)") {
+			void calendar(Calendar c) {
+				c.add(Calendar.HOUR, 6);
+			}
+
+			void bulk(long[] millis, TimeZone zone, long[] out) {
+				BulkDateMath.add(millis, Calendar.HOUR, 6, zone, out);
+			}
+		});
+		list.add(new Shift("truncate to month") {
+			void calendar(Calendar c) {
+				c.set(Calendar.DATE, 1);
+				c.set(Calendar.HOUR_OF_DAY, 0);
+				c.set(Calendar.MINUTE, 0);
+				c.set(Calendar.SECOND, 0);
+				c.set(Calendar.MILLISECOND, 0);
+			}
+
+			void bulk(long[] millis, TimeZone zone, long[] out) {
+				BulkDateMath.truncate(millis, Calendar.MONTH, zone, out);
+			}
+		});
+		list.add(new Shift("truncate to day") {
+			void calendar(Calendar c) {
+				c.set(Calendar.HOUR_OF_DAY, 0);
+				c.set(Calendar.MINUTE, 0);
+				c.set(Calendar.SECOND, 0);
+				c.set(Calendar.MILLISECOND, 0);
+			}
+
+			void bulk(long[] millis, TimeZone zone, long[] out) {
+				BulkDateMath.truncate(millis, Calendar.DATE, zone, out);
+			}
+		});
+		return list;
+	}
+
+	/** Runs the comparison; see the class comment for the arguments. */
+	public static void main(String[] args) throws Exception {
+		int rows = 1 << 16;
+		TimeZone zone = TimeZone.getDefault();
+		long warmup = 1000;
+		long time = 2000;
+		for(int a = 0; a < args.length; a++) {
+			if(args[a].equals("--rows")) {
+				rows = Integer.parseInt(args[++a]);
+			} else if(args[a].equals("--zone")) {
+				zone = TimeZone.getTimeZone(args[++a]);
+			} else if(args[a].equals("--warmup")) {
+				warmup = Long.parseLong(args[++a]);
+			} else if(args[a].equals("--time")) {
+				time = Long.parseLong(args[++a]);
+			} else {
+				throw new IllegalArgumentException("Error: unknown argument " + args[a]);
+			}
+		}
+		final long[] sorted = new long[rows];
+		final long[] shuffled = new long[rows];
+		Random r = new Random(1);
+		for(int i = 0; i < rows; i++) {
+			sorted[i] = FIRST + SPAN / rows * i + r.nextInt(1000);
+			shuffled[i] = FIRST + (long)(r.nextDouble() * SPAN);
+		}
+		final long[] out = new long[rows];
+		final TimeZone z = zone;
+
+		System.out.println("java " + System.getProperty("java.version") + ", " + rows + " rows, zone " + zone.getID()
+			+ ", " + Runtime.getRuntime().availableProcessors() + " CPUs");
+		System.out.println(String.format("%-28s %16s %16s %16s", "ns/row", "Calendar", "bulk, sorted", "bulk, shuffled"));
+		for(final Shift s : shifts()) {
+			double calendar = perRow(new DateUtilitiesBenchmark.Benchmark(s.name) {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					final Calendar c = new GregorianCalendar(z);
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							for(int k = 0; k < sorted.length; k++) {
+								c.setTimeInMillis(sorted[k]);
+								s.calendar(c);
+								out[k] = c.getTimeInMillis();
+							}
+							return out[0];
+						}
+					};
+				}
+			}, rows, warmup, time);
+			double bulkSorted = perRow(bulk(s, sorted, z, out), rows, warmup, time);
+			double bulkShuffled = perRow(bulk(s, shuffled, z, out), rows, warmup, time);
+			System.out.println(String.format("%-28s %16.1f %16.1f %16.1f", s.name, calendar, bulkSorted, bulkShuffled));
+		}
+
+		// a short column pays for finding the zone's offsets on every call, so a zone
+		// outside the tz database must cost no more than a named one
+		Shift add = shifts().get(0);
+		long[] column = Arrays.copyOf(sorted, Math.min(SHORT_ROWS, rows));
+		System.out.println();
+		System.out.println(String.format("%-40s %16s", column.length + " rows, " + add.name, "ns/call"));
+		for(String id : new String[] {zone.getID(), "GMT+05:30"}) {
+			double perCall = DateUtilitiesBenchmark.measure(bulk(add, column, TimeZone.getTimeZone(id), out), 1, warmup,
+				time).getNanosPerOp();
+			System.out.println(String.format("%-40s %16.1f", id, perCall));
+		}
+	}
+
+	private static DateUtilitiesBenchmark.Benchmark bulk(final Shift s, final long[] millis, final TimeZone zone,
+		final long[] out) {
+		return new DateUtilitiesBenchmark.Benchmark(s.name) {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						s.bulk(millis, zone, out);
+						return out[0];
+					}
+				};
+			}
+		};
+	}
+
+	private static double perRow(DateUtilitiesBenchmark.Benchmark b, int rows, long warmup, long time)
+	throws Exception {
+		return DateUtilitiesBenchmark.measure(b, 1, warmup, time).getNanosPerOp() / rows;
+	}
+}
@@ -0,0 +1,232 @@
+package benchmarks;
+
+import dates.DateCodec;
+import dates.DateColumnParser;
+import dates.DateUtilities;
+import dates.DateValue;
+import dates.FastDateFormatter;
+import dates.FormatterRegistry;
+import dates.SharedDateFormat;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Compares storing timestamps as formatted strings with the binary encodings
+ * of <code>DateCodec</code>: the bytes each takes per timestamp, and the time
+ * to write a timestamp and read it back. The timestamps are an event log, one
+ * every second or so, which is the case delta encoding is meant for. Dates
+ * are stored in the default zone and in "GMT+05:30", which is not in the tz
+ * database.
+ * <P>
+ * Usage: <code>java benchmarks.DateCodecBenchmark [--warmup ms] [--time ms]</code>
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateCodecBenchmark {
+	private static final int INPUTS = 1024;
+	private static final String PATTERN = "MM/dd/yyyy HH:mm:ss";
+	private static final long FIRST = 1577836800000L;	// 2020-01-01
+
+	// Prohibit instantiation
+	private DateCodecBenchmark() {}
+
+	/** A way of storing timestamps, measured over the same inputs. */
+	abstract static class Codec extends DateUtilitiesBenchmark.Benchmark {
+		final int valuesPerOp;
+
+		Codec(String name, int valuesPerOp) {
+			super(name);
+			this.valuesPerOp = valuesPerOp;
+		}
+
+		/** Returns the bytes needed to store all of the inputs. */
+		abstract long size(long[] millis);
+	}
+
+	static List<Codec> codecs(final long[] millis) {
+		final TimeZone zone = TimeZone.getDefault();
+		List<Codec> list = new ArrayList<Codec>();
+
+		list.add(new Codec("java.util.Date objects (estimated)", 1) {
+			long size(long[] m) {
+				// a 16-byte object header, the long and padding, plus a compressed reference
+				return m.length * (24L + 4L);
+			}
+
+			DateUtilitiesBenchmark.Operation newOperation() {
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						return new Date(millis[i]).getTime();
+					}
+				};
+			}
+		});
+		list.add(new Codec("string via DateUtilities.toString, parse", 1) {
+			long size(long[] m) {
+				return stringSize(m);
+			}
+
+			DateUtilitiesBenchmark.Operation newOperation() {
+				final SharedDateFormat format = FormatterRegistry.getDefault().get(PATTERN);
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) throws Exception {
+						String s = DateUtilities.toString(new Date(millis[i]), PATTERN);
+						return format.parse(s).getTime();
+					}
+				};
+			}
+		});
+		list.add(new Codec("string via FastDateFormatter, DateColumnParser", 1) {
+			long size(long[] m) {
+				return stringSize(m);
+			}
+
+			DateUtilitiesBenchmark.Operation newOperation() {
+				final FastDateFormatter formatter = FastDateFormatter.getInstance(PATTERN, zone);
+				final DateColumnParser parser = new DateColumnParser(PATTERN);
+				final StringBuilder sb = new StringBuilder();
+				final long[] out = new long[1];
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						sb.setLength(0);
+						formatter.format(millis[i], sb);
+						parser.parse(sb, 0, sb.length(), out, 0);
+						return out[0];
+					}
+				};
+			}
+		});
+		list.add(new Codec("DateCodec 8-byte date-time", 1) {
+			long size(long[] m) {
+				return (long)m.length * DateCodec.DATE_TIME_BYTES;
+			}
+
+			DateUtilitiesBenchmark.Operation newOperation() {
+				final ByteBuffer b = ByteBuffer.allocateDirect(INPUTS * DateCodec.DATE_TIME_BYTES);
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						DateCodec.putDateTime(b, i * DateCodec.DATE_TIME_BYTES, millis[i]);
+						return DateCodec.getDateTime(b, i * DateCodec.DATE_TIME_BYTES);
+					}
+				};
+			}
+		});
+		list.add(new Codec("DateCodec 6-byte date-time", 1) {
+			long size(long[] m) {
+				return (long)m.length * DateCodec.COMPACT_DATE_TIME_BYTES;
+			}
+
+			DateUtilitiesBenchmark.Operation newOperation() {
+				final ByteBuffer b = ByteBuffer.allocateDirect(INPUTS * DateCodec.COMPACT_DATE_TIME_BYTES);
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						DateCodec.putCompactDateTime(b, i * DateCodec.COMPACT_DATE_TIME_BYTES, millis[i]);
+						return DateCodec.getCompactDateTime(b, i * DateCodec.COMPACT_DATE_TIME_BYTES);
+					}
+				};
+			}
+		});
+		// a zone outside the tz database must not cost more per date than a named one
+		for(final String id : new String[] {zone.getID(), "GMT+05:30"}) {
+			list.add(new Codec("DateCodec 4-byte date, " + id, 1) {
+				long size(long[] m) {
+					return (long)m.length * DateCodec.DATE_BYTES;
+				}
+
+				DateUtilitiesBenchmark.Operation newOperation() {
+					final TimeZone dateZone = TimeZone.getTimeZone(id);
+					final ByteBuffer b = ByteBuffer.allocateDirect(INPUTS * DateCodec.DATE_BYTES);
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							b.clear().position(i * DateCodec.DATE_BYTES);
+							DateCodec.putDate(b, DateValue.of(millis[i], dateZone));
+							b.position(i * DateCodec.DATE_BYTES);
+							return DateCodec.getDate(b, dateZone).getEpochMillis();
+						}
+					};
+				}
+			});
+		}
+		list.add(new Codec("DateCodec delta column", INPUTS) {
+			long size(long[] m) {
+				ByteBuffer b = ByteBuffer.allocate(DateCodec.maxDeltaBytes(m.length));
+				DateCodec.putDeltas(b, m, 0, m.length);
+				return b.position();
+			}
+
+			DateUtilitiesBenchmark.Operation newOperation() {
+				final ByteBuffer b = ByteBuffer.allocateDirect(DateCodec.maxDeltaBytes(INPUTS));
+				final long[] out = new long[INPUTS];
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						// one operation is the whole column
+						b.clear();
+						DateCodec.putDeltas(b, millis, 0, INPUTS);
+						b.flip();
+						return DateCodec.getDeltas(b, out, 0) + out[i];
+					}
+				};
+			}
+		});
+		return list;
+	}
+
+	/** Runs the comparison; see the class comment for the arguments. */
+	public static void main(String[] args) throws Exception {
+		long warmup = 1000;
+		long time = 2000;
+		for(int a = 0; a < args.length; a++) {
+			if(args[a].equals("--warmup")) {
+				warmup = Long.parseLong(args[++a]);
+			} else if(args[a].equals("--time")) {
+				time = Long.parseLong(args[++a]);
+			} else {
+				throw new IllegalArgumentException("Error: unknown argument " + args[a]);
+			}
+		}
+		long[] millis = eventLog(INPUTS, 1);
+		long[] large = eventLog(1000000, 2);
+
+		System.out.println("java " + System.getProperty("java.version") + ", pattern \"" + PATTERN
+			+ "\", zone " + TimeZone.getDefault().getID());
+		System.out.println(String.format("%-48s %12s %14s %14s", "storage", "bytes/value", "MB per 1M",
+			"round trip ns"));
+		for(Codec c : codecs(millis)) {
+			DateUtilitiesBenchmark.Result r = DateUtilitiesBenchmark.measure(c, 1, warmup, time);
+			long size = c.size(large);
+			System.out.println(String.format("%-48s %12.2f %14.2f %14.1f", c.name, (double)size / large.length,
+				size / 1e6, r.getNanosPerOp() / c.valuesPerOp));
+		}
+	}
+
+	/*
+	 * Timestamps about a second apart, with millisecond jitter and the odd
+	 * burst or lull, in order.
+	 */
+	private static long[] eventLog(int n, long seed) {
+		Random r = new Random(seed);
+		long[] millis = new long[n];
+		long t = FIRST;
+		for(int i = 0; i < n; i++) {
+			t += r.nextInt(10) == 0 ? r.nextInt(60000) : r.nextInt(2000);
+			millis[i] = t;
+		}
+		return millis;
+	}
+
+	private static long stringSize(long[] millis) {
+		FastDateFormatter formatter = FastDateFormatter.getInstance(PATTERN, TimeZone.getDefault());
+		long size = 0;
+		for(long m : millis) {
+			// plus one byte for a delimiter
+			size += formatter.format(m).getBytes(StandardCharsets.UTF_8).length + 1;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,155 @@
+package benchmarks;
+
+import dates.DateIndex;
+import dates.DateUtilities;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Compares answering "how many events fall in this day" over a heap list of
+ * <code>Date</code> objects, a sorted <code>long[]</code> and a
+ * <code>DateIndex</code>, and reports the memory each holds on and off the
+ * heap. The events arrive about a second apart, one in a hundred late.
+ * <P>
+ * Usage: <code>java benchmarks.DateIndexBenchmark [--events n] [--warmup ms] [--time ms]</code>
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateIndexBenchmark {
+	private static final int INPUTS = 1024;
+	private static final long FIRST = 1577836800000L;	// 2020-01-01
+
+	// Prohibit instantiation
+	private DateIndexBenchmark() {}
+
+	/** Runs the comparison; see the class comment for the arguments. */
+	public static void main(String[] args) throws Exception {
+		int events = 5000000;
+		long warmup = 1000;
+		long time = 2000;
+		for(int a = 0; a < args.length; a++) {
+			if(args[a].equals("--events")) {
+				events = Integer.parseInt(args[++a]);
+			} else if(args[a].equals("--warmup")) {
+				warmup = Long.parseLong(args[++a]);
+			} else if(args[a].equals("--time")) {
+				time = Long.parseLong(args[++a]);
+			} else {
+				throw new IllegalArgumentException("Error: unknown argument " + args[a]);
+			}
+		}
+		final long[] millis = eventLog(events, 1);
+		final long last = FIRST + (long)events * 1000;
+		final long[] starts = new long[INPUTS];
+		Random r = new Random(2);
+		for(int i = 0; i < INPUTS; i++) starts[i] = FIRST + (long)(r.nextDouble() * (last - FIRST));
+
+		List<DateUtilitiesBenchmark.Benchmark> list = new ArrayList<DateUtilitiesBenchmark.Benchmark>();
+		final List<Date> dates = new ArrayList<Date>(events);
+		long heap = usedHeap();
+		for(long m : millis) dates.add(new Date(m));
+		long datesHeap = usedHeap() - heap;
+		list.add(new DateUtilitiesBenchmark.Benchmark("List<Date>, Date.compareTo scan") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						Date from = new Date(starts[i]);
+						Date to = new Date(starts[i] + DateUtilities.DAY_UNITS);
+						long n = 0;
+						for(Date d : dates) {
+							if(d.compareTo(from) >= 0 && d.compareTo(to) < 0) n++;
+						}
+						return n;
+					}
+				};
+			}
+		});
+
+		final long[] sorted = millis.clone();
+		Arrays.sort(sorted);
+		list.add(new DateUtilitiesBenchmark.Benchmark("sorted long[], binary search") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						return lowerBound(sorted, starts[i] + DateUtilities.DAY_UNITS) - lowerBound(sorted, starts[i]);
+					}
+				};
+			}
+		});
+
+		final DateIndex index = new DateIndex();
+		long built = System.nanoTime();
+		for(long m : millis) index.add(m);
+		index.flush();
+		built = System.nanoTime() - built;
+		list.add(new DateUtilitiesBenchmark.Benchmark("DateIndex.count") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						return index.count(starts[i], starts[i] + DateUtilities.DAY_UNITS);
+					}
+				};
+			}
+		});
+		list.add(new DateUtilitiesBenchmark.Benchmark("DateIndex.histogram, a day by hour") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				final TimeZone zone = TimeZone.getDefault();
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						return index.histogram(starts[i], starts[i] + DateUtilities.DAY_UNITS,
+							DateUtilities.HOUR_UNITS, zone).length;
+					}
+				};
+			}
+		});
+
+		System.out.println("java " + System.getProperty("java.version") + ", " + events + " events, zone "
+			+ TimeZone.getDefault().getID());
+		System.out.println(String.format("List<Date> heap %.1f MB, long[] heap %.1f MB, DateIndex off-heap %.1f MB"
+			+ " (%.2f bytes/event compressed, built at %.1f ns/event)", datesHeap / 1e6, sorted.length * 8 / 1e6,
+			index.getOffHeapBytes() / 1e6, (double)index.getCompressedBytes() / events, (double)built / events));
+		System.out.println(String.format("%-46s %14s", "one-day range", "ns/query"));
+		for(DateUtilitiesBenchmark.Benchmark b : list) {
+			DateUtilitiesBenchmark.Result result = DateUtilitiesBenchmark.measure(b, 1, warmup, time);
+			System.out.println(String.format("%-46s %14.1f", b.name, result.getNanosPerOp()));
+		}
+		index.close();
+	}
+
+	/*
+	 * Timestamps about a second apart, one in a hundred arriving up to ten
+	 * minutes late.
+	 */
+	private static long[] eventLog(int n, long seed) {
+		Random r = new Random(seed);
+		long[] millis = new long[n];
+		long t = FIRST;
+		for(int i = 0; i < n; i++) {
+			t += r.nextInt(2000);
+			millis[i] = r.nextInt(100) == 0 ? t - r.nextInt(600000) : t;
+		}
+		return millis;
+	}
+
+	private static int lowerBound(long[] a, long x) {
+		int lo = 0;
+		int hi = a.length;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(a[mid] < x) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++) System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,339 @@
+package benchmarks;
+
+import dates.DateColumnParser;
+import dates.DateTranscoder;
+import dates.DateUtilities;
+import dates.DateValue;
+import dates.FastDateFormatter;
+import dates.RollingDateFormatter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Fails the build when an optimised path gets slower. Each scenario times a
+ * fast path and the <code>SimpleDateFormat</code> or <code>DateFormat</code>
+ * code it replaces, one after the other in the same JVM, and the speedup of
+ * one over the other is compared with the speedup recorded in a baseline
+ * file. Comparing speedups rather than raw throughput keeps one baseline
+ * usable across machines; raw nanoseconds are printed alongside.
+ * <P>
+ * The baseline is read from the resource <code>DateRegressionGate.properties</code>
+ * next to this class, or from the file given with <code>--baseline</code>, and
+ * is written by a run with <code>--record</code>. A scenario fails when its
+ * speedup falls more than the tolerance below the recorded one; the exit
+ * status is 1 if any scenario fails or has no baseline.
+ * <P>
+ * Usage: <code>java benchmarks.DateRegressionGate [--baseline file] [--record]
+ * [--tolerance 0.3] [--warmup ms] [--time ms]</code>
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateRegressionGate {
+	public static final String RESOURCE = "DateRegressionGate.properties";
+
+	private static final int INPUTS = 1024;
+	private static final long FIRST = 631152000000L;	// 1990-01-01
+	private static final long SPAN = 1262304000000L;	// 40 years
+	private static final String PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+
+	// Prohibit instantiation
+	private DateRegressionGate() {}
+
+	/** A fast path and the code it replaces, measured on the same inputs. */
+	static final class Scenario {
+		final String key;
+		final DateUtilitiesBenchmark.Benchmark reference;
+		final DateUtilitiesBenchmark.Benchmark fast;
+
+		Scenario(String key, DateUtilitiesBenchmark.Benchmark reference, DateUtilitiesBenchmark.Benchmark fast) {
+			this.key = key;
+			this.reference = reference;
+			this.fast = fast;
+		}
+	}
+
+	/**
+	 * Returns the scenarios, in the default locale and time zone.
+	 */
+	static List<Scenario> scenarios() {
+		final TimeZone zone = TimeZone.getDefault();
+		final Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+		final long[] millis = new long[INPUTS];
+		final long[] sorted = new long[INPUTS];
+		Random r = new Random(11);
+		for(int i = 0; i < INPUTS; i++) millis[i] = FIRST + (long)(r.nextDouble() * SPAN);
+		for(int i = 0; i < INPUTS; i++) sorted[i] = FIRST + i * 37L;
+		SimpleDateFormat sample = new SimpleDateFormat(PATTERN, locale);
+		final String[] texts = new String[INPUTS];
+		final String[] shortDates = new String[INPUTS];
+		for(int i = 0; i < INPUTS; i++) {
+			texts[i] = sample.format(new Date(millis[i]));
+			shortDates[i] = DateFormat.getDateInstance(DateFormat.SHORT).format(new Date(millis[i]));
+		}
+		List<Scenario> list = new ArrayList<Scenario>();
+
+		list.add(new Scenario("toString.pattern",
+			new DateUtilitiesBenchmark.Benchmark("new SimpleDateFormat per call") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							return new SimpleDateFormat(PATTERN).format(new Date(millis[i & (INPUTS - 1)])).length();
+						}
+					};
+				}
+			},
+			new DateUtilitiesBenchmark.Benchmark("DateUtilities.toString(Date, pattern)") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							return DateUtilities.toString(new Date(millis[i & (INPUTS - 1)]), PATTERN).length();
+						}
+					};
+				}
+			}));
+		list.add(new Scenario("toString.style",
+			new DateUtilitiesBenchmark.Benchmark("DateFormat.getDateTimeInstance per call") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							return DateFormat.getDateTimeInstance(DateFormat.LONG, DateFormat.SHORT, locale)
+								.format(new Date(millis[i & (INPUTS - 1)])).length();
+						}
+					};
+				}
+			},
+			new DateUtilitiesBenchmark.Benchmark("DateUtilities.toString(DateValue, LONG, SHORT)") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							return DateUtilities.toString(DateValue.of(millis[i & (INPUTS - 1)], zone), DateFormat.LONG,
+								DateFormat.SHORT, locale).length();
+						}
+					};
+				}
+			}));
+		list.add(new Scenario("format.buffer",
+			new DateUtilitiesBenchmark.Benchmark("SimpleDateFormat.format, reused") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					final SimpleDateFormat f = new SimpleDateFormat(PATTERN, locale);
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							return f.format(new Date(millis[i & (INPUTS - 1)])).length();
+						}
+					};
+				}
+			},
+			new DateUtilitiesBenchmark.Benchmark("FastDateFormatter.format(long, StringBuilder)") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					final FastDateFormatter f = new FastDateFormatter(PATTERN, zone, locale);
+					final StringBuilder sb = new StringBuilder();
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							sb.setLength(0);
+							return f.format(millis[i & (INPUTS - 1)], sb).length();
+						}
+					};
+				}
+			}));
+		list.add(new Scenario("format.rolling",
+			new DateUtilitiesBenchmark.Benchmark("SimpleDateFormat.format, ascending timestamps") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					final SimpleDateFormat f = new SimpleDateFormat(PATTERN, locale);
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							return f.format(new Date(sorted[i & (INPUTS - 1)])).length();
+						}
+					};
+				}
+			},
+			new DateUtilitiesBenchmark.Benchmark("RollingDateFormatter, ascending timestamps") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					final RollingDateFormatter f = new RollingDateFormatter(PATTERN, zone, locale);
+					final char[] buf = new char[64];
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							return f.format(sorted[i & (INPUTS - 1)], buf, 0);
+						}
+					};
+				}
+			}));
+		list.add(new Scenario("parse.column",
+			new DateUtilitiesBenchmark.Benchmark("SimpleDateFormat.parse, reused") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					final SimpleDateFormat f = new SimpleDateFormat(PATTERN, locale);
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							try {
+								return f.parse(texts[i & (INPUTS - 1)]).getTime();
+							} catch(ParseException e) {
+								throw new IllegalStateException(e);
+							}
+						}
+					};
+				}
+			},
+			new DateUtilitiesBenchmark.Benchmark("DateColumnParser.parse") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					final DateColumnParser p = new DateColumnParser(PATTERN, zone, locale);
+					final long[] out = new long[1];
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							String s = texts[i & (INPUTS - 1)];
+							p.parse(s, 0, s.length(), out, 0);
+							return out[0];
+						}
+					};
+				}
+			}));
+		list.add(new Scenario("transcode",
+			new DateUtilitiesBenchmark.Benchmark("SimpleDateFormat parse + format") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					final SimpleDateFormat in = new SimpleDateFormat(PATTERN, locale);
+					final SimpleDateFormat out = new SimpleDateFormat("MM/dd/yyyy HH:mm", locale);
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							try {
+								return out.format(in.parse(texts[i & (INPUTS - 1)])).length();
+							} catch(ParseException e) {
+								throw new IllegalStateException(e);
+							}
+						}
+					};
+				}
+			},
+			new DateUtilitiesBenchmark.Benchmark("DateTranscoder.transcode") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					final DateTranscoder t = new DateTranscoder(PATTERN, "MM/dd/yyyy HH:mm", zone, locale);
+					final StringBuilder sb = new StringBuilder();
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							String s = texts[i & (INPUTS - 1)];
+							sb.setLength(0);
+							t.transcode(s, 0, s.length(), sb);
+							return sb.length();
+						}
+					};
+				}
+			}));
+		list.add(new Scenario("toDate",
+			new DateUtilitiesBenchmark.Benchmark("DateFormat styles in turn") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							String s = shortDates[i & (INPUTS - 1)];
+							int[] styles = {DateFormat.SHORT, DateFormat.MEDIUM, DateFormat.LONG, DateFormat.FULL};
+							for(int style : styles) {
+								try {
+									return DateFormat.getDateInstance(style).parse(s).getTime();
+								} catch(ParseException e) {
+									// try the next style
+								}
+							}
+							throw new IllegalStateException("Error: unparseable " + s);
+						}
+					};
+				}
+			},
+			new DateUtilitiesBenchmark.Benchmark("DateUtilities.toDate") {
+				DateUtilitiesBenchmark.Operation newOperation() {
+					return new DateUtilitiesBenchmark.Operation() {
+						public long run(int i) {
+							return DateUtilities.toDate(shortDates[i & (INPUTS - 1)]).getTime();
+						}
+					};
+				}
+			}));
+		return list;
+	}
+
+	/** Runs the gate; see the class comment for the arguments. */
+	public static void main(String[] args) throws Exception {
+		String baseline = null;
+		boolean record = false;
+		double tolerance = 0.3;
+		long warmup = 1000;
+		long time = 2000;
+		for(int a = 0; a < args.length; a++) {
+			if(args[a].equals("--baseline")) {
+				baseline = args[++a];
+			} else if(args[a].equals("--record")) {
+				record = true;
+			} else if(args[a].equals("--tolerance")) {
+				tolerance = Double.parseDouble(args[++a]);
+			} else if(args[a].equals("--warmup")) {
+				warmup = Long.parseLong(args[++a]);
+			} else if(args[a].equals("--time")) {
+				time = Long.parseLong(args[++a]);
+			} else {
+				throw new IllegalArgumentException("Error: unknown argument " + args[a]);
+			}
+		}
+		if(record && baseline == null) throw new IllegalArgumentException("Error: --record needs --baseline");
+		if(tolerance < 0 || tolerance >= 1) throw new IllegalArgumentException("Error: tolerance must be in [0, 1)");
+		Properties recorded = new Properties();
+		if(!record) {
+			InputStream in = baseline == null ? DateRegressionGate.class.getResourceAsStream(RESOURCE)
+				: new FileInputStream(baseline);
+			if(in == null) throw new IllegalArgumentException("Error: no baseline; pass --baseline or record one");
+			try {
+				recorded.load(in);
+			} finally {
+				in.close();
+			}
+		}
+
+		System.out.println("java " + System.getProperty("java.version") + ", locale " + Locale.getDefault()
+			+ ", zone " + TimeZone.getDefault().getID());
+		System.out.println(String.format("%-18s %12s %12s %9s %9s  %s", "scenario", "reference ns", "fast ns",
+			"speedup", "baseline", "result"));
+		Properties measured = new Properties();
+		int failed = 0;
+		for(Scenario s : scenarios()) {
+			double reference = DateUtilitiesBenchmark.measure(s.reference, 1, warmup, time).getNanosPerOp();
+			double fast = DateUtilitiesBenchmark.measure(s.fast, 1, warmup, time).getNanosPerOp();
+			double speedup = reference / fast;
+			measured.setProperty(s.key, String.format(Locale.ROOT, "%.2f", speedup));
+			String result = "recorded";
+			String expected = recorded.getProperty(s.key);
+			if(!record) {
+				if(expected == null) {
+					result = "FAIL, no baseline";
+					failed++;
+				} else if(speedup < Double.parseDouble(expected) * (1 - tolerance)) {
+					result = "FAIL";
+					failed++;
+				} else {
+					result = "ok";
+				}
+			}
+			System.out.println(String.format("%-18s %12.1f %12.1f %8.2fx %9s  %s", s.key, reference, fast, speedup,
+				expected == null ? "-" : expected + "x", result));
+		}
+
+		if(record) {
+			OutputStream out = new FileOutputStream(baseline);
+			try {
+				measured.store(out, "speedup of each fast path over the code it replaces");
+			} finally {
+				out.close();
+			}
+			System.out.println("baseline written to " + baseline);
+			return;
+		}
+		System.out.println(failed == 0 ? "no regressions" : failed + " scenarios below baseline");
+		System.exit(failed == 0 ? 0 : 1);
+	}
+}
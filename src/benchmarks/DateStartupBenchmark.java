@@ -0,0 +1,177 @@
+package benchmarks;
+
+import dates.DateStartup;
+import dates.DateUtilities;
+import dates.DateValue;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Measures time to first format: how long a freshly started JVM takes to
+ * produce its first formatted or parsed date, with and without
+ * <code>DateStartup</code> data, and with an application class-data sharing
+ * archive when the class path is made of jars. Each run is a new process; the
+ * median of the runs is reported, both for the first call alone and for the
+ * whole process.
+ * <P>
+ * Usage: <code>java benchmarks.DateStartupBenchmark [--locale tag] [--zone id] [--runs n]</code>
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateStartupBenchmark {
+	private static final String[] SCENARIOS = {"toString(DateValue, LONG)", "toString(Calendar, LONG)", "toDate(SHORT)"};
+
+	// Prohibit instantiation
+	private DateStartupBenchmark() {}
+
+	/** Runs the comparison; see the class comment for the arguments. */
+	public static void main(String[] args) throws Exception {
+		Locale locale = Locale.FRANCE;
+		String zone = "Europe/Paris";
+		int runs = 5;
+		int child = -1;
+		String input = null;
+		for(int a = 0; a < args.length; a++) {
+			if(args[a].equals("--locale")) {
+				locale = Locale.forLanguageTag(args[++a]);
+			} else if(args[a].equals("--zone")) {
+				zone = args[++a];
+			} else if(args[a].equals("--runs")) {
+				runs = Integer.parseInt(args[++a]);
+			} else if(args[a].equals("--child")) {
+				child = Integer.parseInt(args[++a]);
+			} else if(args[a].equals("--input")) {
+				input = args[++a];
+			} else {
+				throw new IllegalArgumentException("Error: unknown argument " + args[a]);
+			}
+		}
+		if(child >= 0) {
+			firstCall(child, locale, zone, input);
+			return;
+		}
+
+		File dir = File.createTempFile("datestartup", "");
+		dir.delete();
+		dir.mkdir();
+		File data = new File(dir, DateStartup.RESOURCE);
+		OutputStream out = new FileOutputStream(data);
+		try {
+			DateStartup.write(out, Collections.singletonList(locale), Collections.singletonList(zone));
+		} finally {
+			out.close();
+		}
+		DateFormat shortStyle = DateFormat.getDateInstance(DateFormat.SHORT, locale);
+		shortStyle.setTimeZone(TimeZone.getTimeZone(zone));
+		String shortDate = shortStyle.format(new Date());
+
+		List<String[]> configs = new ArrayList<String[]>();
+		configs.add(new String[] {"JDK only"});
+		configs.add(new String[] {"startup data", "-D" + DateStartup.DATA_PROPERTY + "=" + data.getPath()});
+		File archive = new File(dir, "dates.jsa");
+		if(jarsOnly()) {
+			run(Arrays.asList("-XX:ArchiveClassesAtExit=" + archive.getPath(),
+				"-D" + DateStartup.DATA_PROPERTY + "=" + data.getPath(), "-Duser.timezone=" + zone,
+				"dates.DateStartup", "--train"));
+			configs.add(new String[] {"startup data + AppCDS", "-D" + DateStartup.DATA_PROPERTY + "=" + data.getPath(),
+				"-XX:SharedArchiveFile=" + archive.getPath()});
+		}
+
+		System.out.println("java " + System.getProperty("java.version") + ", locale " + locale.toLanguageTag()
+			+ ", zone " + zone + ", median of " + runs + " runs" + (jarsOnly() ? "" : " (AppCDS needs a jar class path)"));
+		System.out.println(String.format("%-28s %-24s %16s %16s", "first call", "", "call ms", "process ms"));
+		for(int s = 0; s < SCENARIOS.length; s++) {
+			for(String[] config : configs) {
+				double[] call = new double[runs];
+				double[] process = new double[runs];
+				for(int r = 0; r < runs; r++) {
+					List<String> command = new ArrayList<String>();
+					for(int i = 1; i < config.length; i++) command.add(config[i]);
+					command.addAll(Arrays.asList("-Duser.timezone=" + zone, DateStartupBenchmark.class.getName(),
+						"--child", String.valueOf(s), "--locale", locale.toLanguageTag(), "--zone", zone,
+						"--input", shortDate));
+					long start = System.nanoTime();
+					String line = run(command);
+					process[r] = (System.nanoTime() - start) / 1e6;
+					call[r] = Long.parseLong(line.trim()) / 1e6;
+				}
+				System.out.println(String.format("%-28s %-24s %16.1f %16.1f", SCENARIOS[s], config[0], median(call),
+					median(process)));
+			}
+		}
+		archive.delete();
+		data.delete();
+		dir.delete();
+	}
+
+	/*
+	 * In the child process: performs one scenario and prints the nanoseconds
+	 * it took, which include loading and initialising whatever it needs.
+	 */
+	private static void firstCall(int scenario, Locale locale, String zone, String input) {
+		Locale.setDefault(locale);
+		long start = System.nanoTime();
+		Object result;
+		switch(scenario) {
+			case 0:
+				result = DateUtilities.toString(DateValue.of(System.currentTimeMillis(), TimeZone.getTimeZone(zone)),
+					DateFormat.LONG, locale);
+				break;
+			case 1:
+				result = DateUtilities.toString(new GregorianCalendar(), DateFormat.LONG, locale);
+				break;
+			default:
+				result = DateUtilities.toDate(input);
+				break;
+		}
+		long elapsed = System.nanoTime() - start;
+		if(result == null) throw new IllegalStateException("Error: no result");
+		System.out.println(elapsed);
+	}
+
+	/** Runs this JVM's java with the same class path and returns the last line of output. */
+	private static String run(List<String> arguments) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.addAll(arguments);
+		Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
+		String last = null;
+		StringBuilder all = new StringBuilder();
+		for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+			all.append(line).append('\n');
+			last = line;
+		}
+		if(p.waitFor() != 0 || last == null) throw new IOException("Error: child failed\n" + all);
+		return last;
+	}
+
+	private static boolean jarsOnly() {
+		for(String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			if(!entry.endsWith(".jar")) return false;
+		}
+		return true;
+	}
+
+	private static double median(double[] values) {
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+}
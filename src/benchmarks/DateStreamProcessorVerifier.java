@@ -0,0 +1,336 @@
+package benchmarks;
+
+import dates.DateStreamProcessor;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks the records and the signals of a <code>DateStreamProcessor</code>.
+ * Streams of dates, some of them unparseable, are run through processors of
+ * several batch sizes and shifts and the output compared, record by record,
+ * with a fresh <code>SimpleDateFormat</code> and <code>Calendar.add</code>. The
+ * input names several zones, one of whose names is ambiguous, so a parser
+ * left in a parsed zone shows up.
+ * <P>
+ * The publisher counts what it is asked for and the subscriber asks in random
+ * amounts, so the run also checks backpressure: no more records upstream than
+ * the processor's buffer holds, none downstream beyond demand, and nothing
+ * more once the subscriber stops asking. Finally a request for zero records
+ * and a subscriber that throws must each end the stream with
+ * <code>onError</code> within a few seconds, with records still buffered.
+ * The exit status is 1 if any check fails.
+ * <P>
+ * Usage: <code>java benchmarks.DateStreamProcessorVerifier [--records n] [--seed n]</code>
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateStreamProcessorVerifier {
+	private static final long FIRST = 631152000000L;	// 1990-01-01
+	private static final long SPAN = 1262304000000L;	// 40 years
+	private static final long TIMEOUT = 5000;			// ms to wait for a terminal signal
+	private static final String SOURCE = "MM/dd/yyyy HH:mm z";
+	private static final String TARGET = "yyyy-MM-dd'T'HH:mm:ss.SSS EEE";
+	// "CST" in Asia/Shanghai is also a US zone's name, so records in the source zone follow ones in others
+	private static final String[] ZONES = { "America/Los_Angeles", "America/New_York", "Europe/London",
+		"Asia/Tokyo", "Asia/Shanghai" };
+	private static final TimeZone SOURCE_ZONE = TimeZone.getTimeZone("Asia/Shanghai");
+	private static final TimeZone TARGET_ZONE = TimeZone.getTimeZone("America/Sao_Paulo");
+	private static final int[] BATCH_SIZES = { 1, 3, 64 };
+	private static final int[][] SHIFTS = { {Calendar.MILLISECOND, 0}, {Calendar.DATE, 1}, {Calendar.MONTH, -13},
+		{Calendar.HOUR_OF_DAY, 5} };
+
+	private static int failed;
+
+	// Prohibit instantiation
+	private DateStreamProcessorVerifier() {}
+
+	/**
+	 * Publishes fixed records as they are requested, from inside request(),
+	 * and records the most it was ever asked for ahead of what it sent.
+	 */
+	static final class Source implements Flow.Publisher<CharSequence> {
+		final String[] records;
+		long requested;
+		long sent;
+		long maxOutstanding;
+		volatile boolean cancelled;
+		private Flow.Subscriber<? super CharSequence> subscriber;
+
+		Source(String[] records) {
+			this.records = records;
+		}
+
+		@Override
+		public void subscribe(Flow.Subscriber<? super CharSequence> s) {
+			this.subscriber = s;
+			s.onSubscribe(new Flow.Subscription() {
+				@Override
+				public void request(long n) {
+					emit(n);
+				}
+
+				@Override
+				public void cancel() {
+					cancelled = true;
+				}
+			});
+		}
+
+		// the processor's drain and the subscribing thread both request
+		synchronized void emit(long n) {
+			requested += n;
+			maxOutstanding = Math.max(maxOutstanding, requested - sent);
+			while(sent < requested && sent < records.length && !cancelled) {
+				subscriber.onNext(records[(int)sent++]);
+			}
+			if(sent == records.length && !cancelled) {
+				cancelled = true;
+				subscriber.onComplete();
+			}
+		}
+
+		synchronized long sent() {
+			return sent;
+		}
+	}
+
+	/**
+	 * Asks for records in random amounts up to a limit, and notes any record
+	 * beyond what it asked for.
+	 */
+	static class Sink implements Flow.Subscriber<String> {
+		final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch terminated = new CountDownLatch(1);
+		final AtomicLong outstanding = new AtomicLong();
+		final Random random;
+		final int maxRequest;
+		volatile Throwable error;
+		volatile boolean overflow;
+		Flow.Subscription subscription;
+
+		Sink(Random random, int maxRequest) {
+			this.random = random;
+			this.maxRequest = maxRequest;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription s) {
+			subscription = s;
+			more();
+		}
+
+		@Override
+		public void onNext(String item) {
+			if(outstanding.decrementAndGet() < 0) overflow = true;
+			received.add(item);
+			if(outstanding.get() == 0) more();
+		}
+
+		@Override
+		public void onError(Throwable e) {
+			error = e;
+			terminated.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			terminated.countDown();
+		}
+
+		void more() {
+			if(maxRequest == 0) return;
+			int n = 1 + random.nextInt(maxRequest);
+			outstanding.addAndGet(n);
+			subscription.request(n);
+		}
+
+		boolean await() throws InterruptedException {
+			return terminated.await(TIMEOUT, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Returns random records in the source pattern written in several zones,
+	 * with one in ten not a date at all.
+	 */
+	static String[] records(int count, Random r) {
+		String[] records = new String[count];
+		for(int i = 0; i < count; i++) {
+			SimpleDateFormat f = new SimpleDateFormat(SOURCE, Locale.US);
+			f.setTimeZone(TimeZone.getTimeZone(ZONES[r.nextInt(ZONES.length)]));
+			String text = f.format(new Date(FIRST + (long)(r.nextDouble() * SPAN)));
+			records[i] = r.nextInt(10) == 0 ? "#" + text : text;
+		}
+		return records;
+	}
+
+	/** Returns the output expected for the records: unparseable ones are dropped. */
+	static List<String> expected(String[] records, int field, int amount) {
+		SimpleDateFormat target = new SimpleDateFormat(TARGET, Locale.US);
+		target.setTimeZone(TARGET_ZONE);
+		Calendar cal = Calendar.getInstance(TARGET_ZONE, Locale.US);
+		List<String> list = new ArrayList<String>();
+		for(String record : records) {
+			SimpleDateFormat source = new SimpleDateFormat(SOURCE, Locale.US);
+			source.setTimeZone(SOURCE_ZONE);
+			try {
+				cal.setTimeInMillis(source.parse(record).getTime());
+			} catch(ParseException e) {
+				continue;
+			}
+			cal.add(field, amount);
+			list.add(target.format(cal.getTime()));
+		}
+		return list;
+	}
+
+	static DateStreamProcessor processor(int batchSize, int field, int amount) {
+		DateStreamProcessor p = new DateStreamProcessor(SOURCE, TARGET);
+		p.setZones(SOURCE_ZONE, TARGET_ZONE);
+		p.setLocale(Locale.US);
+		p.setBatchSize(batchSize);
+		p.setShift(field, amount);
+		return p;
+	}
+
+	/** Runs the checks; see the class comment for the arguments. */
+	public static void main(String[] args) throws Exception {
+		int count = 5000;
+		long seed = 1;
+		for(int a = 0; a < args.length; a++) {
+			if(args[a].equals("--records")) {
+				count = Integer.parseInt(args[++a]);
+			} else if(args[a].equals("--seed")) {
+				seed = Long.parseLong(args[++a]);
+			} else {
+				throw new IllegalArgumentException("Error: unknown argument " + args[a]);
+			}
+		}
+		System.out.println("java " + System.getProperty("java.version") + ", " + count + " records");
+		Random r = new Random(seed);
+		String[] records = records(count, r);
+
+		// output and backpressure with demand of up to 1, 7 and 1000 records at a time
+		for(int batchSize : BATCH_SIZES) {
+			for(int[] shift : SHIFTS) {
+				for(int maxRequest : new int[] {1, 7, 1000}) {
+					DateStreamProcessor p = processor(batchSize, shift[0], shift[1]);
+					Source source = new Source(records);
+					Sink sink = new Sink(new Random(r.nextLong()), maxRequest);
+					p.subscribe(sink);
+					source.subscribe(p);
+					String name = "batch " + batchSize + ", shift " + shift[1] + " of field " + shift[0]
+						+ ", requests up to " + maxRequest;
+					if(!sink.await()) {
+						fail(name, "no terminal signal after " + sink.received.size() + " records");
+						continue;
+					}
+					List<String> expected = expected(records, shift[0], shift[1]);
+					String problem = null;
+					if(sink.error != null) problem = "onError " + sink.error;
+					else if(sink.overflow) problem = "more records than requested";
+					else if(source.maxOutstanding > 2 * batchSize) problem = "requested " + source.maxOutstanding
+						+ " records ahead, more than the buffer of " + 2 * batchSize;
+					else if(p.getFailureCount() != count - expected.size()) problem = p.getFailureCount()
+						+ " failures, expected " + (count - expected.size());
+					else problem = difference(expected, sink.received);
+					check(name, problem);
+				}
+			}
+		}
+
+		// a subscriber that stops asking gets nothing more, and upstream stops too
+		DateStreamProcessor p = processor(4, Calendar.MILLISECOND, 0);
+		Source source = new Source(records);
+		Sink sink = new Sink(r, 0);
+		p.subscribe(sink);
+		source.subscribe(p);
+		sink.outstanding.addAndGet(3);
+		sink.subscription.request(3);
+		Thread.sleep(200);
+		String problem = null;
+		if(sink.received.size() != 3) problem = sink.received.size() + " records for a demand of 3";
+		else if(sink.overflow) problem = "more records than requested";
+		else if(source.sent() > 8 + 3) problem = source.sent() + " records sent upstream, more than 3 and a buffer of 8";
+		check("no further demand", problem);
+		sink.subscription.cancel();
+
+		// request(0) with records buffered
+		p = processor(4, Calendar.MILLISECOND, 0);
+		source = new Source(records);
+		sink = new Sink(r, 0);
+		p.subscribe(sink);
+		source.subscribe(p);
+		sink.outstanding.addAndGet(1);
+		sink.subscription.request(1);
+		sink.subscription.request(0);
+		check("request(0) with records buffered", signalled(sink, source, IllegalArgumentException.class));
+
+		// a subscriber that throws from onNext
+		p = processor(4, Calendar.MILLISECOND, 0);
+		source = new Source(records);
+		final AtomicBoolean thrown = new AtomicBoolean();
+		sink = new Sink(r, 1000) {
+			@Override
+			public void onNext(String item) {
+				super.onNext(item);
+				if(received.size() == 3 && thrown.compareAndSet(false, true)) {
+					throw new IllegalStateException("Error: subscriber failed");
+				}
+			}
+		};
+		p.subscribe(sink);
+		source.subscribe(p);
+		check("subscriber throwing from onNext", signalled(sink, source, IllegalStateException.class));
+
+		System.out.println(failed == 0 ? "all checks passed" : failed + " checks failed");
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	/*
+	 * Returns null if the sink got onError with the expected exception in
+	 * time and upstream was cancelled, otherwise what went wrong.
+	 */
+	private static String signalled(Sink sink, Source source, Class<? extends Throwable> expected)
+	throws InterruptedException {
+		if(!sink.await()) return "no terminal signal within " + TIMEOUT + " ms";
+		if(!expected.isInstance(sink.error)) return "expected onError " + expected.getName() + " but got " + sink.error;
+		if(!source.cancelled) return "upstream not cancelled";
+		return null;
+	}
+
+	// returns null if the lists are equal, otherwise the first difference
+	private static String difference(List<String> expected, List<String> actual) {
+		for(int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+			if(!expected.get(i).equals(actual.get(i))) {
+				return "record " + i + ": expected \"" + expected.get(i) + "\" but was \"" + actual.get(i) + "\"";
+			}
+		}
+		if(expected.size() != actual.size()) return actual.size() + " records, expected " + expected.size();
+		return null;
+	}
+
+	private static void check(String name, String problem) {
+		if(problem == null) System.out.println(String.format("%-64s ok", name));
+		else fail(name, problem);
+	}
+
+	private static void fail(String name, String problem) {
+		failed++;
+		System.out.println(String.format("%-64s FAILED: %s", name, problem));
+	}
+}
@@ -0,0 +1,142 @@
+package benchmarks;
+
+import dates.DateColumnParser;
+import dates.DateTranscoder;
+import dates.FastDateFormatter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Compares rewriting date strings from one pattern to another with a pair of
+ * <code>SimpleDateFormat</code>s, with <code>DateColumnParser</code> followed by
+ * <code>FastDateFormatter</code>, and with <code>DateTranscoder</code> on
+ * Strings and on bytes.
+ * <P>
+ * Usage: <code>java benchmarks.DateTranscoderBenchmark [--source pattern] [--target pattern] [--zone id] [--warmup ms] [--time ms]</code>
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateTranscoderBenchmark {
+	private static final int INPUTS = 1024;
+
+	// Prohibit instantiation
+	private DateTranscoderBenchmark() {}
+
+	/** Runs the comparison; see the class comment for the arguments. */
+	public static void main(String[] args) throws Exception {
+		String source = "MM/dd/yyyy";
+		String target = "yyyy-MM-dd";
+		TimeZone zone = TimeZone.getDefault();
+		long warmup = 1000;
+		long time = 2000;
+		for(int a = 0; a < args.length; a++) {
+			if(args[a].equals("--source")) {
+				source = args[++a];
+			} else if(args[a].equals("--target")) {
+				target = args[++a];
+			} else if(args[a].equals("--zone")) {
+				zone = TimeZone.getTimeZone(args[++a]);
+			} else if(args[a].equals("--warmup")) {
+				warmup = Long.parseLong(args[++a]);
+			} else if(args[a].equals("--time")) {
+				time = Long.parseLong(args[++a]);
+			} else {
+				throw new IllegalArgumentException("Error: unknown argument " + args[a]);
+			}
+		}
+		final String sourcePattern = source;
+		final String targetPattern = target;
+		final TimeZone z = zone;
+		final Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+		SimpleDateFormat sample = new SimpleDateFormat(source, locale);
+		sample.setTimeZone(zone);
+		final String[] inputs = new String[INPUTS];
+		final byte[][] bytes = new byte[INPUTS][];
+		Random r = new Random(7);
+		for(int i = 0; i < INPUTS; i++) {
+			inputs[i] = sample.format(new Date((long)(r.nextDouble() * 2e12)));
+			bytes[i] = inputs[i].getBytes(StandardCharsets.UTF_8);
+		}
+
+		List<DateUtilitiesBenchmark.Benchmark> list = new ArrayList<DateUtilitiesBenchmark.Benchmark>();
+		list.add(new DateUtilitiesBenchmark.Benchmark("SimpleDateFormat parse + format") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				final SimpleDateFormat in = new SimpleDateFormat(sourcePattern, locale);
+				final SimpleDateFormat out = new SimpleDateFormat(targetPattern, locale);
+				in.setTimeZone(z);
+				out.setTimeZone(z);
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						try {
+							return out.format(in.parse(inputs[i & (INPUTS - 1)])).length();
+						} catch(ParseException e) {
+							throw new IllegalStateException(e);
+						}
+					}
+				};
+			}
+		});
+		list.add(new DateUtilitiesBenchmark.Benchmark("DateColumnParser + FastDateFormatter") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				final DateColumnParser parser = new DateColumnParser(sourcePattern, z, locale);
+				final FastDateFormatter formatter = new FastDateFormatter(targetPattern, z, locale);
+				final long[] millis = new long[1];
+				final StringBuilder sb = new StringBuilder();
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						String s = inputs[i & (INPUTS - 1)];
+						sb.setLength(0);
+						if(!parser.parse(s, 0, s.length(), millis, 0)) return 0;
+						return formatter.format(millis[0], sb).length();
+					}
+				};
+			}
+		});
+		final DateTranscoder transcoder = new DateTranscoder(sourcePattern, targetPattern, z, locale);
+		list.add(new DateUtilitiesBenchmark.Benchmark("DateTranscoder, String to StringBuilder") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				final StringBuilder sb = new StringBuilder();
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						String s = inputs[i & (INPUTS - 1)];
+						sb.setLength(0);
+						transcoder.transcode(s, 0, s.length(), sb);
+						return sb.length();
+					}
+				};
+			}
+		});
+		list.add(new DateUtilitiesBenchmark.Benchmark("DateTranscoder, bytes to bytes") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				final ByteBuffer[] in = new ByteBuffer[INPUTS];
+				for(int i = 0; i < INPUTS; i++) in[i] = ByteBuffer.wrap(bytes[i]);
+				final ByteBuffer out = ByteBuffer.allocate(256);
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						ByteBuffer b = in[i & (INPUTS - 1)];
+						out.clear();
+						transcoder.transcode(b, 0, b.capacity(), out);
+						return out.position();
+					}
+				};
+			}
+		});
+
+		System.out.println("java " + System.getProperty("java.version") + ", zone " + zone.getID() + ", "
+			+ source + " -> " + target + (transcoder.isDirect() ? " (direct)" : " (general engine)"));
+		System.out.println(String.format("%-44s %14s", "", "ns/op"));
+		for(DateUtilitiesBenchmark.Benchmark b : list) {
+			DateUtilitiesBenchmark.Result result = DateUtilitiesBenchmark.measure(b, 1, warmup, time);
+			System.out.println(String.format("%-44s %14.1f", b.name, result.getNanosPerOp()));
+		}
+	}
+}
@@ -0,0 +1,533 @@
+package benchmarks;
+
+import dates.DateUtilities;
+import dates.DateValue;
+import dates.HolidayCalendar;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Measures every <code>DateUtilities</code> entry point: throughput, latency
+ * percentiles, bytes allocated per operation and garbage collections, first on
+ * one thread and then with several threads calling the same method at once.
+ * <P>
+ * Each benchmark is warmed up before it is measured. Latency is sampled by
+ * timing every 16th operation; allocation is read from the per-thread
+ * counters of <code>com.sun.management.ThreadMXBean</code> where the JVM
+ * provides them.
+ * <P>
+ * The same scenarios run under JMH as <code>benchmarks.jmh.DateUtilitiesJmh</code>
+ * in the jmh module, which is the reference for comparisons; this harness is a
+ * quick check that needs no build beyond <code>javac</code> and also reports
+ * latency percentiles.
+ * <P>
+ * Usage: <code>java benchmarks.DateUtilitiesBenchmark [--threads 1,8]
+ * [--warmup ms] [--time ms] [name filter ...]</code>
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateUtilitiesBenchmark {
+	private static final int INPUTS = 1024;
+	private static final int SAMPLE_EVERY = 16;
+	private static final int MAX_SAMPLES = 1 << 16;
+	private static final long FIRST = 631152000000L;	// 1990-01-01
+	private static final long SPAN = 1262304000000L;	// 40 years
+
+	// results are folded in here so the JIT cannot discard the work
+	private static volatile long sink;
+
+	// Prohibit instantiation
+	private DateUtilitiesBenchmark() {}
+
+	/** One operation against a benchmark's inputs; each thread gets its own. */
+	interface Operation {
+		long run(int i) throws Exception;
+	}
+
+	/** A named benchmark that creates per-thread operations. */
+	abstract static class Benchmark {
+		final String name;
+
+		Benchmark(String name) {
+			this.name = name;
+		}
+
+		abstract Operation newOperation();
+	}
+
+	/** The measurements of one benchmark at one thread count. */
+	static final class Result {
+		String name;
+		int threads;
+		long operations;
+		long elapsedNanos;
+		long allocatedBytes = -1;
+		long gcCount;
+		long gcMillis;
+		long[] samples;
+
+		double getOpsPerSecond() {
+			return operations * 1e9 / elapsedNanos;
+		}
+
+		double getNanosPerOp() {
+			return (double)elapsedNanos * threads / operations;
+		}
+
+		double getBytesPerOp() {
+			return allocatedBytes < 0 ? -1 : (double)allocatedBytes / operations;
+		}
+
+		long percentile(double p) {
+			if(samples.length == 0) return 0;
+			return samples[Math.min(samples.length - 1, (int)(samples.length * p))];
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-46s %3d %14.0f %10.1f %9d %9d %9d %11s %5d %6d", name, threads,
+				getOpsPerSecond(), getNanosPerOp(), percentile(0.50), percentile(0.99), percentile(0.999),
+				allocatedBytes < 0 ? "n/a" : String.format("%.1f", getBytesPerOp()), gcCount, gcMillis);
+		}
+	}
+
+	/**
+	 * Returns the benchmarks for every <code>DateUtilities</code> entry point.
+	 */
+	static List<Benchmark> benchmarks() {
+		final long[] millis = randomMillis(1);
+		final long[] others = randomMillis(2);
+		final Locale[] locales = { Locale.US, Locale.FRANCE, Locale.GERMANY, Locale.JAPAN,
+			new Locale("pt", "BR"), new Locale("ar", "EG"), new Locale("th", "TH"), Locale.KOREA };
+		List<Benchmark> list = new ArrayList<Benchmark>();
+
+		list.add(new Benchmark("toString(Date)") {
+			Operation newOperation() {
+				final Date[] dates = dates(millis);
+				return new Operation() {
+					public long run(int i) {
+						return DateUtilities.toString(dates[i]).length();
+					}
+				};
+			}
+		});
+		list.add(new Benchmark("toString(Calendar)") {
+			Operation newOperation() {
+				final Calendar c = Calendar.getInstance();
+				return new Operation() {
+					public long run(int i) {
+						c.setTimeInMillis(millis[i]);
+						return DateUtilities.toString(c).length();
+					}
+				};
+			}
+		});
+		list.add(new Benchmark("toString(Calendar, numeric pattern)") {
+			Operation newOperation() {
+				final Calendar c = Calendar.getInstance();
+				return new Operation() {
+					public long run(int i) {
+						c.setTimeInMillis(millis[i]);
+						return DateUtilities.toString(c, "yyyy-MM-dd HH:mm:ss.SSS").length();
+					}
+				};
+			}
+		});
+		list.add(new Benchmark("toString(Calendar, text pattern)") {
+			Operation newOperation() {
+				final Calendar c = Calendar.getInstance();
+				return new Operation() {
+					public long run(int i) {
+						c.setTimeInMillis(millis[i]);
+						return DateUtilities.toString(c, "EEE, d MMM yyyy HH:mm:ss z").length();
+					}
+				};
+			}
+		});
+		for(final DateUtilities.DateStyle style : DateUtilities.DateStyle.values()) {
+			list.add(new Benchmark("toString(Calendar, DateStyle." + style + ", Locale)") {
+				Operation newOperation() {
+					final Calendar c = Calendar.getInstance();
+					return new Operation() {
+						public long run(int i) {
+							c.setTimeInMillis(millis[i]);
+							return DateUtilities.toString(c, style, locales[i & 7]).length();
+						}
+					};
+				}
+			});
+		}
+		list.add(new Benchmark("toString(Calendar, int, Locale)") {
+			Operation newOperation() {
+				final Calendar c = Calendar.getInstance();
+				return new Operation() {
+					public long run(int i) {
+						c.setTimeInMillis(millis[i]);
+						return DateUtilities.toString(c, i & 3, locales[i & 7]).length();
+					}
+				};
+			}
+		});
+		list.add(new Benchmark("toString(Calendar, int, int, Locale)") {
+			Operation newOperation() {
+				final Calendar c = Calendar.getInstance();
+				return new Operation() {
+					public long run(int i) {
+						c.setTimeInMillis(millis[i]);
+						return DateUtilities.toString(c, i & 3, (i >> 2) & 3, locales[i & 7]).length();
+					}
+				};
+			}
+		});
+		list.add(new Benchmark("toString(Date, pattern)") {
+			Operation newOperation() {
+				final Date[] dates = dates(millis);
+				return new Operation() {
+					public long run(int i) {
+						return DateUtilities.toString(dates[i], "MM/dd/yyyy hh:mm a").length();
+					}
+				};
+			}
+		});
+		// a zone outside the tz database, whose offset table must be shared like a named one
+		for(final String id : new String[] {TimeZone.getDefault().getID(), "GMT+05:30"}) {
+			list.add(new Benchmark("DateValue.of(long, " + id + ")") {
+				Operation newOperation() {
+					final TimeZone zone = TimeZone.getTimeZone(id);
+					return new Operation() {
+						public long run(int i) {
+							return DateValue.of(millis[i], zone).getEpochMillis();
+						}
+					};
+				}
+			});
+		}
+		list.add(new Benchmark("toString(DateValue, pattern)") {
+			Operation newOperation() {
+				final DateValue[] values = new DateValue[INPUTS];
+				for(int i = 0; i < INPUTS; i++) values[i] = DateValue.of(millis[i], TimeZone.getDefault());
+				return new Operation() {
+					public long run(int i) {
+						return DateUtilities.toString(values[i], "yyyy-MM-dd HH:mm:ss").length();
+					}
+				};
+			}
+		});
+		list.add(new Benchmark("format(pattern)") {
+			Operation newOperation() {
+				return new Operation() {
+					public long run(int i) {
+						return DateUtilities.format("yyyy-MM-dd HH:mm:ss").length();
+					}
+				};
+			}
+		});
+		list.add(new Benchmark("format(String, pattern)") {
+			Operation newOperation() {
+				final String[] strings = strings(millis, "yyyy-MM-dd HH:mm:ss");
+				return new Operation() {
+					public long run(int i) throws Exception {
+						return DateUtilities.format(strings[i], "yyyy-MM-dd HH:mm:ss").length();
+					}
+				};
+			}
+		});
+		list.add(new Benchmark("format(long, zone, pattern, StringBuilder)") {
+			Operation newOperation() {
+				final TimeZone zone = TimeZone.getDefault();
+				final StringBuilder sb = new StringBuilder();
+				return new Operation() {
+					public long run(int i) {
+						sb.setLength(0);
+						return DateUtilities.format(millis[i], zone, "yyyy-MM-dd HH:mm:ss.SSS", sb).length();
+					}
+				};
+			}
+		});
+		list.add(new Benchmark("format(long, zone, pattern, char[])") {
+			Operation newOperation() {
+				final TimeZone zone = TimeZone.getDefault();
+				final char[] buf = new char[64];
+				return new Operation() {
+					public long run(int i) {
+						return DateUtilities.format(millis[i], zone, "yyyy-MM-dd HH:mm:ss.SSS", buf, 0);
+					}
+				};
+			}
+		});
+		int[] styles = { DateFormat.SHORT, DateFormat.MEDIUM, DateFormat.LONG, DateFormat.FULL };
+		String[] styleNames = { "SHORT", "MEDIUM", "LONG", "FULL" };
+		for(int s = 0; s < styles.length; s++) {
+			final String[] strings = new String[INPUTS];
+			DateFormat df = DateFormat.getDateInstance(styles[s]);
+			for(int i = 0; i < INPUTS; i++) strings[i] = df.format(new Date(millis[i]));
+			list.add(new Benchmark("toDate(" + styleNames[s] + ")") {
+				Operation newOperation() {
+					return new Operation() {
+						public long run(int i) {
+							return DateUtilities.toDate(strings[i]).getTime();
+						}
+					};
+				}
+			});
+		}
+		list.add(new Benchmark("parseDate(unparseable)") {
+			Operation newOperation() {
+				return new Operation() {
+					public long run(int i) {
+						return DateUtilities.parseDate("not a date") == null ? 0 : 1;
+					}
+				};
+			}
+		});
+		final long[] units = { DateUtilities.DAY_UNITS, DateUtilities.HOUR_UNITS, DateUtilities.CALENDAR_DAY_UNITS,
+			DateUtilities.MONTH_UNITS, DateUtilities.BUSINESS_DAY_UNITS };
+		final String[] unitNames = { "DAY_UNITS", "HOUR_UNITS", "CALENDAR_DAY_UNITS", "MONTH_UNITS",
+			"BUSINESS_DAY_UNITS" };
+		for(int u = 0; u < units.length; u++) {
+			final long unit = units[u];
+			list.add(new Benchmark("dateDiff(" + unitNames[u] + ", Calendar)") {
+				Operation newOperation() {
+					final Calendar a = Calendar.getInstance();
+					final Calendar b = Calendar.getInstance();
+					return new Operation() {
+						public long run(int i) {
+							a.setTimeInMillis(millis[i]);
+							b.setTimeInMillis(others[i]);
+							return DateUtilities.dateDiff(unit, a, b, HolidayCalendar.WEEKENDS_ONLY);
+						}
+					};
+				}
+			});
+		}
+		list.add(new Benchmark("dateDiff(DAY_UNITS, long[" + INPUTS * 64 + "])") {
+			Operation newOperation() {
+				final long[] first = new long[INPUTS * 64];
+				final long[] second = new long[INPUTS * 64];
+				final long[] out = new long[INPUTS * 64];
+				for(int i = 0; i < first.length; i++) {
+					first[i] = millis[i % INPUTS];
+					second[i] = others[(i * 7) % INPUTS];
+				}
+				return new Operation() {
+					public long run(int i) {
+						DateUtilities.dateDiff(DateUtilities.DAY_UNITS, first, second, out);
+						return out[i];
+					}
+				};
+			}
+		});
+		list.add(new Benchmark("toEpochMillis(String[" + INPUTS + "])") {
+			Operation newOperation() {
+				final String[] strings = strings(millis, "yyyy-MM-dd HH:mm:ss");
+				final long[] out = new long[INPUTS];
+				final BitSet failures = new BitSet(INPUTS);
+				return new Operation() {
+					public long run(int i) {
+						return DateUtilities.toEpochMillis(strings, "yyyy-MM-dd HH:mm:ss", out, failures);
+					}
+				};
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Run one benchmark on a number of threads.
+	 * @param benchmark - the benchmark
+	 * @param threads - the number of threads calling it at once
+	 * @param warmupMillis - how long each thread runs it before measuring
+	 * @param measureMillis - how long each thread runs it while measuring
+	 * @return the measurements
+	 */
+	static Result measure(final Benchmark benchmark, int threads, final long warmupMillis, final long measureMillis)
+	throws IllegalStateException {
+		final CyclicBarrier start = new CyclicBarrier(threads + 1);
+		final CyclicBarrier stop = new CyclicBarrier(threads + 1);
+		final long[] operations = new long[threads];
+		final long[] allocated = new long[threads];
+		final long[][] samples = new long[threads][];
+		final int[] sampleCounts = new int[threads];
+		final Throwable[] failure = new Throwable[1];	// any worker's failure
+		Thread[] workers = new Thread[threads];
+
+		for(int t = 0; t < threads; t++) {
+			final int id = t;
+			workers[t] = new Thread(benchmark.name + "-" + t) {
+				@Override
+				public void run() {
+					Operation op = null;
+					long result = 0;
+					int i = 0;
+					try {
+						op = benchmark.newOperation();
+						long deadline = System.nanoTime() + warmupMillis * 1000000L;
+						while(System.nanoTime() < deadline) {
+							for(int k = 0; k < 64; k++) result += op.run(i++ & (INPUTS - 1));
+						}
+					} catch(Throwable e) {
+						failure[0] = e;
+					}
+					await(start);
+					if(failure[0] == null) {
+						try {
+							long[] s = new long[MAX_SAMPLES];
+							int n = 0;
+							long count = 0;
+							long bytes = allocatedBytes();
+							long deadline = System.nanoTime() + measureMillis * 1000000L;
+							while(System.nanoTime() < deadline) {
+								long t0 = System.nanoTime();
+								result += op.run(i++ & (INPUTS - 1));
+								s[n++ & (MAX_SAMPLES - 1)] = System.nanoTime() - t0;
+								for(int k = 1; k < SAMPLE_EVERY; k++) result += op.run(i++ & (INPUTS - 1));
+								count += SAMPLE_EVERY;
+							}
+							long after = allocatedBytes();
+							operations[id] = count;
+							allocated[id] = bytes < 0 || after < 0 ? -1 : after - bytes;
+							samples[id] = s;
+							sampleCounts[id] = Math.min(n, MAX_SAMPLES);
+							sink += result;
+						} catch(Throwable e) {
+							failure[0] = e;
+						}
+					}
+					await(stop);
+				}
+			};
+			workers[t].start();
+		}
+
+		await(start);
+		long gcCount = gcCount();
+		long gcMillis = gcMillis();
+		long t0 = System.nanoTime();
+		await(stop);
+		long elapsed = System.nanoTime() - t0;
+		if(failure[0] != null) throw new IllegalStateException("Error: " + benchmark.name + " failed", failure[0]);
+
+		Result r = new Result();
+		r.name = benchmark.name;
+		r.threads = threads;
+		r.elapsedNanos = elapsed;
+		r.gcCount = gcCount() - gcCount;
+		r.gcMillis = gcMillis() - gcMillis;
+		long bytes = 0;
+		int total = 0;
+		for(int t = 0; t < threads; t++) {
+			r.operations += operations[t];
+			bytes = bytes < 0 || allocated[t] < 0 ? -1 : bytes + allocated[t];
+			total += sampleCounts[t];
+		}
+		r.allocatedBytes = bytes;
+		r.samples = new long[total];
+		int k = 0;
+		for(int t = 0; t < threads; t++) {
+			System.arraycopy(samples[t], 0, r.samples, k, sampleCounts[t]);
+			k += sampleCounts[t];
+		}
+		Arrays.sort(r.samples);
+		return r;
+	}
+
+	/** Runs the benchmarks; see the class comment for the arguments. */
+	public static void main(String[] args) throws Exception {
+		int[] threadCounts = { 1, Runtime.getRuntime().availableProcessors() };
+		long warmup = 1000;
+		long time = 2000;
+		List<String> filters = new ArrayList<String>();
+		for(int a = 0; a < args.length; a++) {
+			if(args[a].equals("--threads")) {
+				String[] parts = args[++a].split(",");
+				threadCounts = new int[parts.length];
+				for(int i = 0; i < parts.length; i++) threadCounts[i] = Integer.parseInt(parts[i].trim());
+			} else if(args[a].equals("--warmup")) {
+				warmup = Long.parseLong(args[++a]);
+			} else if(args[a].equals("--time")) {
+				time = Long.parseLong(args[++a]);
+			} else {
+				filters.add(args[a]);
+			}
+		}
+
+		System.out.println("java " + System.getProperty("java.version") + ", " + Runtime.getRuntime().availableProcessors()
+			+ " cpus, locale " + Locale.getDefault() + ", zone " + TimeZone.getDefault().getID());
+		System.out.println(String.format("%-46s %3s %14s %10s %9s %9s %9s %11s %5s %6s", "benchmark", "thr",
+			"ops/s", "ns/op", "p50 ns", "p99 ns", "p99.9 ns", "bytes/op", "gcs", "gc ms"));
+		for(Benchmark b : benchmarks()) {
+			if(!matches(b.name, filters)) continue;
+			for(int threads : threadCounts) {
+				System.out.println(measure(b, threads, warmup, time));
+			}
+		}
+	}
+
+	private static boolean matches(String name, List<String> filters) {
+		if(filters.isEmpty()) return true;
+		for(String f : filters) {
+			if(name.contains(f)) return true;
+		}
+		return false;
+	}
+
+	private static long[] randomMillis(long seed) {
+		Random r = new Random(seed);
+		long[] millis = new long[INPUTS];
+		for(int i = 0; i < INPUTS; i++) millis[i] = FIRST + (long)(r.nextDouble() * SPAN);
+		return millis;
+	}
+
+	private static Date[] dates(long[] millis) {
+		Date[] dates = new Date[millis.length];
+		for(int i = 0; i < millis.length; i++) dates[i] = new Date(millis[i]);
+		return dates;
+	}
+
+	private static String[] strings(long[] millis, String pattern) {
+		String[] strings = new String[millis.length];
+		for(int i = 0; i < millis.length; i++) strings[i] = DateUtilities.toString(new Date(millis[i]), pattern);
+		return strings;
+	}
+
+	private static void await(CyclicBarrier barrier) {
+		try {
+			barrier.await();
+		} catch(Exception e) {
+			throw new IllegalStateException("Error: benchmark thread interrupted", e);
+		}
+	}
+
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean)bean;
+		if(!sun.isThreadAllocatedMemorySupported() || !sun.isThreadAllocatedMemoryEnabled()) return -1;
+		return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static long gcCount() {
+		long n = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) n += Math.max(0, gc.getCollectionCount());
+		return n;
+	}
+
+	private static long gcMillis() {
+		long n = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) n += Math.max(0, gc.getCollectionTime());
+		return n;
+	}
+}
@@ -0,0 +1,406 @@
+package benchmarks;
+
+import dates.DateUtilities;
+import dates.DateValue;
+import dates.FormatterRegistry;
+import java.lang.reflect.Method;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives <code>DateUtilities</code> from thousands of threads at once and
+ * checks every result against a <code>SimpleDateFormat</code> or
+ * <code>DateFormat</code> used by one thread only, the way the methods would
+ * behave with no concurrency at all.
+ * <P>
+ * The first phase starts one virtual thread per task, or a large pool of
+ * platform threads where the JVM has no virtual threads, while a churn thread
+ * keeps compiling new patterns so the shared registry evicts under load. The
+ * second phase measures the same mix on 1, 2, 4 ... up to the number of cores
+ * and reports how throughput scales. The exit status is 1 if any result was
+ * wrong or any call threw.
+ * <P>
+ * Some inputs are written in another zone, such as "PST" when the default zone
+ * is America/New_York, and are parsed with the same zone name pattern that
+ * other checks format with, so a shared format left in a parsed zone shows up.
+ * <P>
+ * Run with <code>-Djdk.tracePinnedThreads=full</code> on a JVM with virtual
+ * threads to have any carrier pinning reported.
+ * <P>
+ * Usage: <code>java benchmarks.DateUtilitiesStress [--tasks 10000] [--ops 200]
+ * [--time ms]</code>
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateUtilitiesStress {
+	private static final int INPUTS = 1024;
+	private static final int MAX_REPORTED = 10;
+	private static final long FIRST = 631152000000L;	// 1990-01-01
+	private static final long SPAN = 1262304000000L;	// 40 years
+	private static final String ZONE_PATTERN = "MM/dd/yyyy HH:mm z";
+	private static final String[] FOREIGN_ZONES = { "America/Los_Angeles", "Europe/London", "Asia/Tokyo" };
+
+	private static final LongAdder operations = new LongAdder();
+	private static final LongAdder mismatches = new LongAdder();
+	private static final LongAdder failures = new LongAdder();
+	private static final ConcurrentLinkedQueue<String> reported = new ConcurrentLinkedQueue<String>();
+	private static final AtomicInteger reportedCount = new AtomicInteger();
+
+	// Prohibit instantiation
+	private DateUtilitiesStress() {}
+
+	/** A <code>DateUtilities</code> call and its result computed single-threaded. */
+	abstract static class Check {
+		final String name;
+		final String[] expected = new String[INPUTS];
+
+		Check(String name) {
+			this.name = name;
+		}
+
+		abstract String reference(int i) throws Exception;
+
+		abstract String actual(int i) throws Exception;
+
+		Check prepare() throws Exception {
+			for(int i = 0; i < INPUTS; i++) expected[i] = reference(i);
+			return this;
+		}
+	}
+
+	/**
+	 * Returns the checks, one for each kind of <code>DateUtilities</code> entry point.
+	 */
+	static List<Check> checks() throws Exception {
+		final long[] millis = randomMillis(1);
+		final long[] others = randomMillis(2);
+		final TimeZone zone = TimeZone.getDefault();
+		List<Check> list = new ArrayList<Check>();
+
+		list.add(new Check("toString(Date)") {
+			String reference(int i) {
+				return DateFormat.getDateInstance().format(new Date(millis[i]));
+			}
+
+			String actual(int i) {
+				return DateUtilities.toString(new Date(millis[i]));
+			}
+		});
+		final String[] patterns = { "yyyy-MM-dd HH:mm:ss.SSS", "EEE, d MMM yyyy HH:mm:ss Z",
+			"MM/dd/yy hh:mm a", "yyyy-MM-dd'T'HH:mm:ss.SSSXXX", "G yyyy MMMM dd EEEE" };
+		for(final String pattern : patterns) {
+			list.add(new Check("toString(Date, \"" + pattern + "\")") {
+				String reference(int i) {
+					return new SimpleDateFormat(pattern).format(new Date(millis[i]));
+				}
+
+				String actual(int i) {
+					return DateUtilities.toString(new Date(millis[i]), pattern);
+				}
+			});
+		}
+		final Locale[] locales = { Locale.US, Locale.FRANCE, Locale.JAPAN, new Locale("ar", "EG"),
+			new Locale("th", "TH") };
+		for(final Locale locale : locales) {
+			list.add(new Check("toString(Calendar, LONG, FULL, " + locale + ")") {
+				String reference(int i) {
+					return DateFormat.getDateTimeInstance(DateFormat.LONG, DateFormat.FULL, locale)
+						.format(new Date(millis[i]));
+				}
+
+				String actual(int i) {
+					Calendar c = Calendar.getInstance();
+					c.setTimeInMillis(millis[i]);
+					return DateUtilities.toString(c, DateFormat.LONG, DateFormat.FULL, locale);
+				}
+			});
+		}
+		list.add(new Check("format(long, zone, pattern, StringBuilder)") {
+			String reference(int i) {
+				return new SimpleDateFormat("dd.MM.yyyy HH:mm:ss").format(new Date(millis[i]));
+			}
+
+			String actual(int i) {
+				return DateUtilities.format(millis[i], zone, "dd.MM.yyyy HH:mm:ss", new StringBuilder()).toString();
+			}
+		});
+		list.add(new Check("format(String, pattern)") {
+			final SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss");
+
+			String reference(int i) {
+				return sdf.format(new Date(millis[i]));
+			}
+
+			String actual(int i) throws Exception {
+				return DateUtilities.format(expected[i], "yyyyMMddHHmmss");
+			}
+		});
+		final String[] foreign = foreignText(millis, zone);
+		list.add(new Check("toString(Date, \"" + ZONE_PATTERN + "\")") {
+			String reference(int i) {
+				return new SimpleDateFormat(ZONE_PATTERN).format(new Date(millis[i]));
+			}
+
+			String actual(int i) {
+				return DateUtilities.toString(new Date(millis[i]), ZONE_PATTERN);
+			}
+		});
+		list.add(new Check("format(String, \"" + ZONE_PATTERN + "\"), other zone") {
+			String reference(int i) throws Exception {
+				SimpleDateFormat sdf = new SimpleDateFormat(ZONE_PATTERN);
+				return sdf.format(sdf.parse(foreign[i]));
+			}
+
+			String actual(int i) throws Exception {
+				return DateUtilities.format(foreign[i], ZONE_PATTERN);
+			}
+		});
+		list.add(new Check("toEpochMillis(String[], \"" + ZONE_PATTERN + "\"), other zone, then format") {
+			String reference(int i) throws Exception {
+				return new SimpleDateFormat(ZONE_PATTERN).parse(foreign[i]).getTime() + " | "
+					+ new SimpleDateFormat(ZONE_PATTERN).format(new Date(millis[i]));
+			}
+
+			String actual(int i) {
+				long[] out = new long[1];
+				DateUtilities.toEpochMillis(new String[] {foreign[i]}, ZONE_PATTERN, out, new BitSet());
+				return out[0] + " | " + DateUtilities.toString(new Date(millis[i]), ZONE_PATTERN);
+			}
+		});
+		list.add(new Check("parseDate(String)") {
+			String reference(int i) throws Exception {
+				return String.valueOf(DateFormat.getDateInstance(DateFormat.SHORT)
+					.parse(DateFormat.getDateInstance(DateFormat.SHORT).format(new Date(millis[i]))).getTime());
+			}
+
+			String actual(int i) {
+				return String.valueOf(DateUtilities.parseDate(
+					DateFormat.getDateInstance(DateFormat.SHORT).format(new Date(millis[i]))).getTime());
+			}
+		});
+		final long[] units = { DateUtilities.DAY_UNITS, DateUtilities.CALENDAR_DAY_UNITS, DateUtilities.MONTH_UNITS,
+			DateUtilities.BUSINESS_DAY_UNITS };
+		for(final long unit : units) {
+			list.add(new Check("dateDiff(" + unit + ", DateValue, DateValue)") {
+				String reference(int i) {
+					Calendar a = Calendar.getInstance();
+					Calendar b = Calendar.getInstance();
+					a.setTimeInMillis(millis[i]);
+					b.setTimeInMillis(others[i]);
+					return String.valueOf(DateUtilities.dateDiff(unit, a, b));
+				}
+
+				String actual(int i) {
+					return String.valueOf(DateUtilities.dateDiff(unit, DateValue.of(millis[i], zone),
+						DateValue.of(others[i], zone)));
+				}
+			});
+		}
+		for(Check c : list) c.prepare();
+		return list;
+	}
+
+	/**
+	 * Run one task of randomly chosen checks.
+	 * @param checks - the checks
+	 * @param seed - seeds the choice of checks and inputs
+	 * @param count - how many checks to run, or -1 to run until stop is set
+	 * @param stop - ends an open-ended run
+	 */
+	static void runTask(List<Check> checks, long seed, int count, AtomicBoolean stop) {
+		Random r = new Random(seed);
+		long done = 0;
+		for(int n = 0; count < 0 ? !stop.get() : n < count; n++) {
+			Check c = checks.get(r.nextInt(checks.size()));
+			int i = r.nextInt(INPUTS);
+			try {
+				String actual = c.actual(i);
+				if(!c.expected[i].equals(actual)) {
+					mismatches.increment();
+					report(c.name + " [" + i + "]: expected \"" + c.expected[i] + "\" but was \"" + actual + "\"");
+				}
+			} catch(Throwable e) {
+				failures.increment();
+				report(c.name + " [" + i + "]: " + e);
+			}
+			done++;
+		}
+		operations.add(done);
+	}
+
+	/** Runs both phases; see the class comment for the arguments. */
+	public static void main(String[] args) throws Exception {
+		int tasks = 10000;
+		int ops = 200;
+		long time = 1000;
+		for(int a = 0; a < args.length; a++) {
+			if(args[a].equals("--tasks")) {
+				tasks = Integer.parseInt(args[++a]);
+			} else if(args[a].equals("--ops")) {
+				ops = Integer.parseInt(args[++a]);
+			} else if(args[a].equals("--time")) {
+				time = Long.parseLong(args[++a]);
+			} else {
+				throw new IllegalArgumentException("Error: unknown argument " + args[a]);
+			}
+		}
+		int cpus = Runtime.getRuntime().availableProcessors();
+		System.out.println("java " + System.getProperty("java.version") + ", " + cpus + " cpus, locale "
+			+ Locale.getDefault() + ", zone " + TimeZone.getDefault().getID());
+		List<Check> checks = checks();
+
+		// phase 1: many concurrent tasks, with the registry evicting underneath them
+		ExecutorService pool = virtualThreadExecutor();
+		String kind = "virtual threads";
+		if(pool == null) {
+			pool = Executors.newFixedThreadPool(Math.min(tasks, 512));
+			kind = "platform threads (no virtual threads on this JVM)";
+		}
+		final AtomicBoolean stop = new AtomicBoolean();
+		Thread churn = new Thread("registry-churn") {
+			@Override
+			public void run() {
+				Date d = new Date();
+				for(int n = 0; !stop.get(); n++) {
+					DateUtilities.toString(d, "yyyy-MM-dd '#" + (n % (FormatterRegistry.DEFAULT_MAX_SIZE * 4)) + "'");
+				}
+			}
+		};
+		churn.setDaemon(true);
+		churn.start();
+		long evictions = FormatterRegistry.getDefault().getEvictionCount();
+		long t0 = System.nanoTime();
+		runTasks(pool, checks, tasks, ops);
+		long elapsed = System.nanoTime() - t0;
+		stop.set(true);
+		churn.join();
+		System.out.println(String.format("%d tasks x %d checks on %s: %.0f ops/s, %d registry evictions",
+			tasks, ops, kind, operations.sum() * 1e9 / elapsed,
+			FormatterRegistry.getDefault().getEvictionCount() - evictions));
+
+		// phase 2: throughput by core count
+		System.out.println(String.format("%7s %14s %8s %10s", "threads", "ops/s", "speedup", "efficiency"));
+		double base = 0;
+		for(int threads = 1; ; threads = Math.min(threads * 2, cpus)) {
+			double rate = measure(checks, threads, time);
+			if(threads == 1) base = rate;
+			System.out.println(String.format("%7d %14.0f %8.2f %9.0f%%", threads, rate, rate / base,
+				100 * rate / base / threads));
+			if(threads == cpus) break;
+		}
+
+		System.out.println(mismatches.sum() + " mismatches, " + failures.sum() + " exceptions");
+		for(String s : reported) System.out.println("  " + s);
+		System.exit(mismatches.sum() == 0 && failures.sum() == 0 ? 0 : 1);
+	}
+
+	private static void runTasks(ExecutorService pool, final List<Check> checks, int tasks, final int ops)
+	throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(tasks);
+		for(int t = 0; t < tasks; t++) {
+			final long seed = t;
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						runTask(checks, seed, ops, null);
+					} catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						finished.countDown();
+					}
+				}
+			});
+		}
+		start.countDown();
+		finished.await();
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	/*
+	 * Runs the checks on a number of platform threads for a while and returns
+	 * the combined throughput in operations per second.
+	 */
+	private static double measure(final List<Check> checks, int threads, long millis) throws InterruptedException {
+		final AtomicBoolean stop = new AtomicBoolean();
+		Thread[] workers = new Thread[threads];
+		long before = operations.sum();
+		for(int t = 0; t < threads; t++) {
+			final long seed = 1000003L * (t + 1);
+			workers[t] = new Thread("stress-" + t) {
+				@Override
+				public void run() {
+					runTask(checks, seed, -1, stop);
+				}
+			};
+		}
+		long t0 = System.nanoTime();
+		for(Thread w : workers) w.start();
+		Thread.sleep(millis);
+		stop.set(true);
+		for(Thread w : workers) w.join();
+		long elapsed = System.nanoTime() - t0;
+		return (operations.sum() - before) * 1e9 / elapsed;
+	}
+
+	/*
+	 * Executors.newVirtualThreadPerTaskExecutor() is looked up reflectively so
+	 * the harness still builds and runs on JVMs without virtual threads.
+	 */
+	private static ExecutorService virtualThreadExecutor() {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)m.invoke(null);
+		} catch(ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static void report(String message) {
+		if(reportedCount.getAndIncrement() < MAX_REPORTED) reported.add(message);
+	}
+
+	/*
+	 * Writes each instant with ZONE_PATTERN in one of the foreign zones other
+	 * than the default.
+	 */
+	private static String[] foreignText(long[] millis, TimeZone zone) {
+		List<SimpleDateFormat> formats = new ArrayList<SimpleDateFormat>();
+		for(String id : FOREIGN_ZONES) {
+			if(id.equals(zone.getID())) continue;
+			SimpleDateFormat sdf = new SimpleDateFormat(ZONE_PATTERN);
+			sdf.setTimeZone(TimeZone.getTimeZone(id));
+			formats.add(sdf);
+		}
+		String[] text = new String[INPUTS];
+		for(int i = 0; i < INPUTS; i++) text[i] = formats.get(i % formats.size()).format(new Date(millis[i]));
+		return text;
+	}
+
+	private static long[] randomMillis(long seed) {
+		Random r = new Random(seed);
+		long[] millis = new long[INPUTS];
+		for(int i = 0; i < INPUTS; i++) millis[i] = FIRST + (long)(r.nextDouble() * SPAN);
+		return millis;
+	}
+}
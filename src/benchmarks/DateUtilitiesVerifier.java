@@ -0,0 +1,1000 @@
+package benchmarks;
+
+import dates.DateColumnParser;
+import dates.DateColumnReformatter;
+import dates.DateStartup;
+import dates.DateTranscoder;
+import dates.DateUtilities;
+import dates.DateValue;
+import dates.FastDateFormatter;
+import dates.Recurrence;
+import dates.RollingDateFormatter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Differential test of every formatting and parsing entry point against the
+ * <code>SimpleDateFormat</code> or <code>DateFormat</code> call it stands in
+ * for. Every available locale is run in every zone of a list chosen for its
+ * daylight saving rules, with the locale and zone installed as the JVM
+ * defaults. The instants are random across years 1 to 9999, plus instants on
+ * either side of the zone's offset transitions between 1900 and 2100 and of
+ * the Gregorian cutover. Parsing is fed the reference text of each instant,
+ * wall times inside gaps and overlaps, and damaged copies of both, so the
+ * fallbacks and failures are compared as well as the fast paths. Patterns
+ * with zone names are also parsed from text written in another zone, such as
+ * "PST" read in America/New_York, and then formatted again, so a shared
+ * format left in the parsed zone shows up against a fresh
+ * <code>SimpleDateFormat</code>. A <code>DateColumnParser</code> reads such a
+ * row before each row it is checked on, and a <code>DateColumnReformatter</code>
+ * must write it in the zone it names. <code>DateValue</code>s are made in a
+ * zone other than the default, which they must be formatted in. Daily
+ * <code>Recurrence</code>s are checked against a lenient <code>Calendar</code>
+ * set to each date in turn, with extra samples just before any gap of a day
+ * or more, where a date such as 2011-12-30 in Pacific/Apia has no occurrence.
+ * <P>
+ * With <code>--startup</code> the same run is made in a child JVM that reads
+ * <code>DateStartup</code> data written for the chosen locales and zones, so
+ * the style methods format from its tables. A full run takes minutes; narrow
+ * it with <code>--locales</code> and <code>--zones</code>. The exit status is 1 if any
+ * result differs or any call throws where the reference does not.
+ * <P>
+ * Usage: <code>java benchmarks.DateUtilitiesVerifier [--locales all|tag,...]
+ * [--zones id,...] [--samples n] [--seed n] [--startup]</code>
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateUtilitiesVerifier {
+	private static final int MAX_REPORTED = 20;
+	private static final long YEAR_1 = -62135769600000L;		// 0001-01-01T00:00Z, Julian
+	private static final long YEAR_10000 = 253402300800000L;	// 10000-01-01T00:00Z
+	private static final long CUTOVER = -12219292800000L;		// 1582-10-15T00:00Z
+	private static final long DAY = 86400000L;
+	private static final int RECURRENCE_DAYS = 8;
+	private static final long[] EDGES = { -DAY, -3600001L, -1L, 0L, 1L, 1800000L, 3600000L };
+
+	private static final String[] ZONES = { "UTC", "America/New_York", "America/Los_Angeles", "America/Sao_Paulo",
+		"America/St_Johns", "America/Havana", "America/Santiago", "Europe/London", "Europe/Dublin", "Europe/Paris",
+		"Europe/Moscow", "Africa/Casablanca", "Asia/Tehran", "Asia/Kolkata", "Asia/Kathmandu", "Asia/Shanghai",
+		"Australia/Lord_Howe", "Pacific/Apia", "Pacific/Chatham", "Pacific/Kiritimati", "Antarctica/Troll",
+		"GMT+05:30" };
+	private static final String[] PATTERNS = { "yyyy-MM-dd HH:mm:ss.SSS", "MM/dd/yyyy", "dd.MM.yy hh:mm a",
+		"yyyyMMddHHmmss", "kk:mm:ss K a d/M/y", "EEE, d MMM yyyy HH:mm:ss Z", "yyyy-MM-dd'T'HH:mm:ss.SSSXXX",
+		"G yyyy MMMM dd EEEE", "D w W F u z" };
+	private static final String ISO = "yyyy-MM-dd'T'HH:mm:ss.SSS";
+	private static final String[] ZONE_PATTERNS = { "MM/dd/yyyy HH:mm z", "EEE, d MMM yyyy HH:mm:ss zzzz" };
+	private static final String[] FOREIGN_ZONES = { "America/Los_Angeles", "America/New_York", "Europe/London",
+		"Asia/Tokyo", "Australia/Sydney" };
+	// a zone whose names, such as "CST", other zones also use
+	private static final String[] SHARED_NAME_ZONES = { "Asia/Shanghai", "America/Havana" };
+	private static final int[] STYLES = { DateFormat.SHORT, DateFormat.MEDIUM, DateFormat.LONG, DateFormat.FULL };
+	private static final long[] UNITS = { DateUtilities.DAY_UNITS, DateUtilities.HOUR_UNITS,
+		DateUtilities.MINUTE_UNITS, DateUtilities.CALENDAR_DAY_UNITS, DateUtilities.MONTH_UNITS,
+		DateUtilities.YEAR_UNITS, DateUtilities.BUSINESS_DAY_UNITS };
+
+	private static final List<String> reported = new ArrayList<String>();
+	private static int reportedCount;
+	private static File rowFile;
+
+	// Prohibit instantiation
+	private DateUtilitiesVerifier() {}
+
+	/** One instant, and how the text parsed from it is produced. */
+	static final class Sample {
+		final long millis;
+		final long other;
+		final boolean wallTime;	// parse the wall time millis reads in UTC, e.g. one in a gap
+		final int damage;		// 0 for intact text, otherwise the kind of damage
+		final int position;
+		final int style;
+
+		Sample(long millis, long other, boolean wallTime, int damage, int position, int style) {
+			this.millis = millis;
+			this.other = other;
+			this.wallTime = wallTime;
+			this.damage = damage;
+			this.position = position;
+			this.style = style;
+		}
+
+		String describe() {
+			return (wallTime ? "wall " : "") + new Date(millis).toInstant() + " (" + millis + "), damage " + damage;
+		}
+	}
+
+	/** The reference formats and compiled fast paths for one locale and zone. */
+	static final class Context {
+		final Locale locale;
+		final TimeZone zone;
+		private final Map<String, SimpleDateFormat> formats = new HashMap<String, SimpleDateFormat>();
+		private final Map<String, SimpleDateFormat> wallFormats = new HashMap<String, SimpleDateFormat>();
+		private final Map<Integer, DateFormat> styles = new HashMap<Integer, DateFormat>();
+		private final Map<String, FastDateFormatter> fast = new HashMap<String, FastDateFormatter>();
+		private final Map<String, RollingDateFormatter> rolling = new HashMap<String, RollingDateFormatter>();
+		private final Map<String, DateColumnParser> parsers = new HashMap<String, DateColumnParser>();
+		private final Map<String, DateColumnParser> sharedNameParsers = new HashMap<String, DateColumnParser>();
+		private final Map<String, DateTranscoder> transcoders = new HashMap<String, DateTranscoder>();
+
+		Context(Locale locale, TimeZone zone) {
+			this.locale = locale;
+			this.zone = zone;
+		}
+
+		SimpleDateFormat format(String pattern) {
+			SimpleDateFormat f = formats.get(pattern);
+			if(f == null) {
+				f = new SimpleDateFormat(pattern, locale);
+				f.setTimeZone(zone);
+				formats.put(pattern, f);
+			}
+			return f;
+		}
+
+		/** Returns a style format, or date only when timeStyle is -1. */
+		DateFormat style(int dateStyle, int timeStyle) {
+			Integer key = Integer.valueOf(dateStyle * 8 + timeStyle + 1);
+			DateFormat f = styles.get(key);
+			if(f == null) {
+				f = timeStyle < 0 ? DateFormat.getDateInstance(dateStyle, locale)
+					: DateFormat.getDateTimeInstance(dateStyle, timeStyle, locale);
+				f.setTimeZone(zone);
+				styles.put(key, f);
+			}
+			return f;
+		}
+
+		/** Returns the text a sample is parsed from for a pattern. */
+		String text(String pattern, Sample s) {
+			String text;
+			if(s.wallTime) {
+				SimpleDateFormat f = wallFormats.get(pattern);
+				if(f == null) {
+					f = new SimpleDateFormat(pattern, locale);
+					f.setTimeZone(TimeZone.getTimeZone("UTC"));
+					wallFormats.put(pattern, f);
+				}
+				text = f.format(new Date(s.millis));
+			} else {
+				text = format(pattern).format(new Date(s.millis));
+			}
+			return damage(text, s);
+		}
+
+		/*
+		 * Parsing a zone name moves a SimpleDateFormat to that zone, so the
+		 * references parse with a copy and the cached formats never parse.
+		 */
+		SimpleDateFormat fresh(String pattern) {
+			return (SimpleDateFormat)format(pattern).clone();
+		}
+
+		/** Returns a zone other than the default one, chosen by the sample. */
+		TimeZone foreignZone(Sample s) {
+			String id = FOREIGN_ZONES[s.position % FOREIGN_ZONES.length];
+			if(id.equals(zone.getID())) id = FOREIGN_ZONES[(s.position + 1) % FOREIGN_ZONES.length];
+			return TimeZone.getTimeZone(id);
+		}
+
+		/** Returns the text of a sample written in another zone, named by a 'z' pattern. */
+		String foreignText(String pattern, Sample s) {
+			SimpleDateFormat f = new SimpleDateFormat(pattern, locale);
+			f.setTimeZone(foreignZone(s));
+			return f.format(new Date(s.millis));
+		}
+
+		/** Returns a sample as a <code>DateValue</code> in another zone. */
+		DateValue foreignValue(Sample s) {
+			return DateValue.of(s.millis, foreignZone(s));
+		}
+
+		/** Returns what a reference format writes for a sample in the zone of foreignValue. */
+		String formatForeign(DateFormat f, Sample s) {
+			DateFormat copy = (DateFormat)f.clone();
+			copy.setTimeZone(foreignZone(s));
+			return copy.format(new Date(s.millis));
+		}
+
+		/** Returns the text a sample is parsed from for a date style. */
+		String styleText(Sample s) {
+			return damage(style(s.style, -1).format(new Date(s.millis)), s);
+		}
+
+		FastDateFormatter fast(String pattern) {
+			FastDateFormatter f = fast.get(pattern);
+			if(f == null) {
+				f = new FastDateFormatter(pattern, zone, locale);
+				fast.put(pattern, f);
+			}
+			return f;
+		}
+
+		RollingDateFormatter rolling(String pattern) {
+			RollingDateFormatter f = rolling.get(pattern);
+			if(f == null) {
+				f = new RollingDateFormatter(pattern, zone, locale);
+				rolling.put(pattern, f);
+			}
+			return f;
+		}
+
+		DateColumnParser parser(String pattern) {
+			DateColumnParser p = parsers.get(pattern);
+			if(p == null) {
+				p = new DateColumnParser(pattern, zone, locale);
+				parsers.put(pattern, p);
+			}
+			return p;
+		}
+
+		/*
+		 * SimpleDateFormat resolves a name like "CST" by its own zone and then
+		 * by the default one, so this parser is not in the default zone.
+		 */
+		TimeZone sharedNameZone() {
+			return TimeZone.getTimeZone(SHARED_NAME_ZONES[zone.getID().equals(SHARED_NAME_ZONES[0]) ? 1 : 0]);
+		}
+
+		DateColumnParser sharedNameParser(String pattern) {
+			DateColumnParser p = sharedNameParsers.get(pattern);
+			if(p == null) {
+				p = new DateColumnParser(pattern, sharedNameZone(), locale);
+				sharedNameParsers.put(pattern, p);
+			}
+			return p;
+		}
+
+		/** Returns the text of a sample written in the shared name parser's zone. */
+		String sharedNameText(String pattern, Sample s) {
+			return damage(sharedNameFormat(pattern).format(new Date(s.millis)), s);
+		}
+
+		SimpleDateFormat sharedNameFormat(String pattern) {
+			SimpleDateFormat f = new SimpleDateFormat(pattern, locale);
+			f.setTimeZone(sharedNameZone());
+			return f;
+		}
+
+		DateTranscoder transcoder(String pattern) {
+			DateTranscoder t = transcoders.get(pattern);
+			if(t == null) {
+				t = new DateTranscoder(pattern, ISO, zone, locale);
+				transcoders.put(pattern, t);
+			}
+			return t;
+		}
+	}
+
+	/** An entry point and the reference result it must reproduce. */
+	abstract static class Check {
+		final String name;
+		long runs;
+		long rejected;		// inputs the reference failed on or returned null for
+		long mismatches;
+
+		Check(String name) {
+			this.name = name;
+		}
+
+		abstract String reference(Context c, Sample s) throws Exception;
+
+		abstract String actual(Context c, Sample s) throws Exception;
+	}
+
+	/**
+	 * Returns the checks, one for each entry point and pattern or style.
+	 */
+	static List<Check> checks() {
+		List<Check> list = new ArrayList<Check>();
+		for(final String pattern : PATTERNS) {
+			list.add(new Check("toString(Date, \"" + pattern + "\")") {
+				String reference(Context c, Sample s) {
+					return c.format(pattern).format(new Date(s.millis));
+				}
+
+				String actual(Context c, Sample s) {
+					return DateUtilities.toString(new Date(s.millis), pattern);
+				}
+			});
+			list.add(new Check("toString(Calendar, \"" + pattern + "\")") {
+				String reference(Context c, Sample s) {
+					return c.format(pattern).format(new Date(s.millis));
+				}
+
+				String actual(Context c, Sample s) {
+					Calendar cal = Calendar.getInstance();
+					cal.setTimeInMillis(s.millis);
+					return DateUtilities.toString(cal, pattern);
+				}
+			});
+			list.add(new Check("toString(DateValue, \"" + pattern + "\")") {
+				String reference(Context c, Sample s) {
+					return c.formatForeign(c.format(pattern), s);
+				}
+
+				String actual(Context c, Sample s) {
+					return DateUtilities.toString(c.foreignValue(s), pattern);
+				}
+			});
+			list.add(new Check("format(long, zone, \"" + pattern + "\", StringBuilder)") {
+				String reference(Context c, Sample s) {
+					return "[" + c.format(pattern).format(new Date(s.millis));
+				}
+
+				String actual(Context c, Sample s) {
+					return DateUtilities.format(s.millis, c.zone, pattern, new StringBuilder("[")).toString();
+				}
+			});
+			list.add(new Check("format(long, zone, \"" + pattern + "\", char[])") {
+				String reference(Context c, Sample s) {
+					return c.format(pattern).format(new Date(s.millis));
+				}
+
+				String actual(Context c, Sample s) {
+					char[] buf = new char[256];
+					int end = DateUtilities.format(s.millis, c.zone, pattern, buf, 3);
+					return new String(buf, 3, end - 3);
+				}
+			});
+			list.add(new Check("format(long, zone, \"" + pattern + "\", ByteBuffer)") {
+				String reference(Context c, Sample s) {
+					return c.format(pattern).format(new Date(s.millis));
+				}
+
+				String actual(Context c, Sample s) {
+					ByteBuffer out = DateUtilities.format(s.millis, c.zone, pattern, ByteBuffer.allocate(1024));
+					return new String(out.array(), 0, out.position(), StandardCharsets.UTF_8);
+				}
+			});
+			list.add(new Check("FastDateFormatter(\"" + pattern + "\")") {
+				String reference(Context c, Sample s) {
+					return c.format(pattern).format(new Date(s.millis));
+				}
+
+				String actual(Context c, Sample s) {
+					return c.fast(pattern).format(s.millis);
+				}
+			});
+			list.add(new Check("RollingDateFormatter(\"" + pattern + "\")") {
+				String reference(Context c, Sample s) {
+					return c.format(pattern).format(new Date(s.millis));
+				}
+
+				String actual(Context c, Sample s) {
+					return c.rolling(pattern).format(s.millis);
+				}
+			});
+			list.add(new Check("format(String, \"" + pattern + "\")") {
+				String reference(Context c, Sample s) throws ParseException {
+					SimpleDateFormat f = c.fresh(pattern);
+					return f.format(f.parse(c.text(pattern, s)));
+				}
+
+				String actual(Context c, Sample s) throws ParseException {
+					return DateUtilities.format(c.text(pattern, s), pattern);
+				}
+			});
+			list.add(new Check("format(String, \"" + pattern + "\", ISO)") {
+				String reference(Context c, Sample s) throws ParseException {
+					return c.format(ISO).format(c.fresh(pattern).parse(c.text(pattern, s)));
+				}
+
+				String actual(Context c, Sample s) throws ParseException {
+					return DateUtilities.format(c.text(pattern, s), pattern, ISO);
+				}
+			});
+			list.add(new Check("DateTranscoder(\"" + pattern + "\", ISO)") {
+				String reference(Context c, Sample s) {
+					try {
+						return c.format(ISO).format(c.fresh(pattern).parse(c.text(pattern, s)));
+					} catch(ParseException e) {
+						return null;
+					}
+				}
+
+				String actual(Context c, Sample s) {
+					return c.transcoder(pattern).transcode(c.text(pattern, s));
+				}
+			});
+			list.add(new Check("DateColumnParser(\"" + pattern + "\")") {
+				String reference(Context c, Sample s) {
+					try {
+						return String.valueOf(c.fresh(pattern).parse(c.text(pattern, s)).getTime());
+					} catch(ParseException e) {
+						return null;
+					}
+				}
+
+				String actual(Context c, Sample s) {
+					String text = "|" + c.text(pattern, s) + "|";
+					long[] out = new long[1];
+					boolean parsed = c.parser(pattern).parse(text, 1, text.length() - 1, out, 0);
+					return parsed ? String.valueOf(out[0]) : null;
+				}
+			});
+			list.add(new Check("toEpochMillis(String[], \"" + pattern + "\")") {
+				String reference(Context c, Sample s) {
+					try {
+						return String.valueOf(c.fresh(pattern).parse(c.text(pattern, s)).getTime());
+					} catch(ParseException e) {
+						return "0 failed";
+					}
+				}
+
+				String actual(Context c, Sample s) {
+					long[] out = new long[2];
+					BitSet failures = new BitSet();
+					DateUtilities.toEpochMillis(new String[] {null, c.text(pattern, s)}, pattern, out, failures);
+					return out[1] + (failures.get(1) ? " failed" : "");
+				}
+			});
+		}
+
+		for(final String pattern : ZONE_PATTERNS) {
+			// each parse is followed by a format with the same pattern
+			list.add(new Check("format(String, \"" + pattern + "\"), other zone") {
+				String reference(Context c, Sample s) throws ParseException {
+					SimpleDateFormat f = c.fresh(pattern);
+					return f.format(f.parse(c.foreignText(pattern, s))) + " | "
+						+ c.format(pattern).format(new Date(s.millis));
+				}
+
+				String actual(Context c, Sample s) throws ParseException {
+					return DateUtilities.format(c.foreignText(pattern, s), pattern) + " | "
+						+ DateUtilities.toString(new Date(s.millis), pattern);
+				}
+			});
+			// a zone named in a row is the zone it is written in, with either target
+			list.add(new Check("DateColumnReformatter(\"" + pattern + "\"), other zone") {
+				String reference(Context c, Sample s) throws ParseException {
+					SimpleDateFormat f = c.fresh(pattern);
+					Date date = f.parse(c.foreignText(pattern, s));
+					SimpleDateFormat iso = c.fresh(ISO);
+					iso.setTimeZone(f.getTimeZone());
+					return f.format(date) + " | " + iso.format(date);
+				}
+
+				String actual(Context c, Sample s) throws IOException {
+					String text = c.foreignText(pattern, s);
+					return reformatted(text, pattern, pattern) + " | " + reformatted(text, pattern, ISO);
+				}
+			});
+			list.add(new Check("format(String, \"" + pattern + "\", ISO), other zone") {
+				String reference(Context c, Sample s) throws ParseException {
+					return c.format(ISO).format(c.fresh(pattern).parse(c.foreignText(pattern, s))) + " | "
+						+ c.format(pattern).format(new Date(s.millis));
+				}
+
+				String actual(Context c, Sample s) throws ParseException {
+					return DateUtilities.format(c.foreignText(pattern, s), pattern, ISO) + " | "
+						+ DateUtilities.format(s.millis, c.zone, pattern, new StringBuilder());
+				}
+			});
+			list.add(new Check("toEpochMillis(String[], \"" + pattern + "\"), other zone") {
+				String reference(Context c, Sample s) {
+					String parsed;
+					try {
+						parsed = String.valueOf(c.fresh(pattern).parse(c.foreignText(pattern, s)).getTime());
+					} catch(ParseException e) {
+						parsed = "0 failed";
+					}
+					return parsed + " | " + c.format(pattern).format(new Date(s.millis));
+				}
+
+				String actual(Context c, Sample s) {
+					long[] out = new long[1];
+					BitSet failures = new BitSet();
+					DateUtilities.toEpochMillis(new String[] {c.foreignText(pattern, s)}, pattern, out, failures);
+					return out[0] + (failures.get(0) ? " failed" : "") + " | "
+						+ DateUtilities.toString(DateValue.of(s.millis, c.zone), pattern);
+				}
+			});
+			// a row naming another zone comes before each row checked, in one parser for all samples
+			list.add(new Check("DateColumnParser(\"" + pattern + "\"), other zone") {
+				String reference(Context c, Sample s) {
+					return parsed(c.sharedNameFormat(pattern), c.foreignText(pattern, s)) + " | "
+						+ parsed(c.sharedNameFormat(pattern), c.sharedNameText(pattern, s));
+				}
+
+				String actual(Context c, Sample s) {
+					String[] rows = { c.foreignText(pattern, s), c.sharedNameText(pattern, s) };
+					long[] out = new long[2];
+					StringBuilder sb = new StringBuilder();
+					for(int i = 0; i < rows.length; i++) {
+						boolean parsed = c.sharedNameParser(pattern).parse(rows[i], 0, rows[i].length(), out, i);
+						sb.append(i == 0 ? "" : " | ").append(parsed ? String.valueOf(out[i]) : "failed");
+					}
+					return sb.toString();
+				}
+			});
+		}
+
+		list.add(new Check("toString(Date)") {
+			String reference(Context c, Sample s) {
+				return DateFormat.getDateInstance().format(new Date(s.millis));
+			}
+
+			String actual(Context c, Sample s) {
+				return DateUtilities.toString(new Date(s.millis));
+			}
+		});
+		list.add(new Check("toString(Calendar)") {
+			String reference(Context c, Sample s) {
+				return DateFormat.getDateInstance().format(new Date(s.millis));
+			}
+
+			String actual(Context c, Sample s) {
+				Calendar cal = Calendar.getInstance();
+				cal.setTimeInMillis(s.millis);
+				return DateUtilities.toString(cal);
+			}
+		});
+		list.add(new Check("toString(DateValue)") {
+			String reference(Context c, Sample s) {
+				return c.formatForeign(DateFormat.getDateInstance(), s);
+			}
+
+			String actual(Context c, Sample s) {
+				return DateUtilities.toString(c.foreignValue(s));
+			}
+		});
+		for(final DateUtilities.DateStyle style : DateUtilities.DateStyle.values()) {
+			final int dateStyle = STYLES[style.ordinal()];
+			list.add(new Check("toString(Calendar, " + style + ", locale)") {
+				String reference(Context c, Sample s) {
+					return c.style(dateStyle, -1).format(new Date(s.millis));
+				}
+
+				String actual(Context c, Sample s) {
+					Calendar cal = Calendar.getInstance();
+					cal.setTimeInMillis(s.millis);
+					return DateUtilities.toString(cal, style, c.locale);
+				}
+			});
+			list.add(new Check("toString(DateValue, " + style + ", locale)") {
+				String reference(Context c, Sample s) {
+					return c.formatForeign(c.style(dateStyle, -1), s);
+				}
+
+				String actual(Context c, Sample s) {
+					return DateUtilities.toString(c.foreignValue(s), style, c.locale);
+				}
+			});
+			list.add(new Check("toString(Calendar, " + dateStyle + ", locale)") {
+				String reference(Context c, Sample s) {
+					return c.style(dateStyle, -1).format(new Date(s.millis));
+				}
+
+				String actual(Context c, Sample s) {
+					Calendar cal = Calendar.getInstance();
+					cal.setTimeInMillis(s.millis);
+					return DateUtilities.toString(cal, dateStyle, c.locale);
+				}
+			});
+			list.add(new Check("toString(DateValue, " + dateStyle + ", locale)") {
+				String reference(Context c, Sample s) {
+					return c.formatForeign(c.style(dateStyle, -1), s);
+				}
+
+				String actual(Context c, Sample s) {
+					return DateUtilities.toString(c.foreignValue(s), dateStyle, c.locale);
+				}
+			});
+			for(final int timeStyle : STYLES) {
+				list.add(new Check("toString(Calendar, " + dateStyle + ", " + timeStyle + ", locale)") {
+					String reference(Context c, Sample s) {
+						return c.style(dateStyle, timeStyle).format(new Date(s.millis));
+					}
+
+					String actual(Context c, Sample s) {
+						Calendar cal = Calendar.getInstance();
+						cal.setTimeInMillis(s.millis);
+						return DateUtilities.toString(cal, dateStyle, timeStyle, c.locale);
+					}
+				});
+				list.add(new Check("toString(DateValue, " + dateStyle + ", " + timeStyle + ", locale)") {
+					String reference(Context c, Sample s) {
+						return c.formatForeign(c.style(dateStyle, timeStyle), s);
+					}
+
+					String actual(Context c, Sample s) {
+						return DateUtilities.toString(c.foreignValue(s), dateStyle, timeStyle, c.locale);
+					}
+				});
+			}
+		}
+
+		list.add(new Check("toDate(String)") {
+			String reference(Context c, Sample s) {
+				// the original implementation: each style in turn until one parses
+				String text = c.styleText(s);
+				for(int style : STYLES) {
+					try {
+						return String.valueOf(DateFormat.getDateInstance(style).parse(text).getTime());
+					} catch(ParseException e) {
+						// try the next style
+					}
+				}
+				throw new IllegalArgumentException("Unparseable date: \"" + text + "\"");
+			}
+
+			String actual(Context c, Sample s) {
+				return String.valueOf(DateUtilities.toDate(c.styleText(s)).getTime());
+			}
+		});
+		list.add(new Check("parseDate(String)") {
+			String reference(Context c, Sample s) {
+				String text = c.styleText(s);
+				for(int style : STYLES) {
+					try {
+						return String.valueOf(DateFormat.getDateInstance(style).parse(text).getTime());
+					} catch(ParseException e) {
+						// try the next style
+					}
+				}
+				return null;
+			}
+
+			String actual(Context c, Sample s) {
+				Date date = DateUtilities.parseDate(c.styleText(s));
+				return date == null ? null : String.valueOf(date.getTime());
+			}
+		});
+
+		for(final long unit : UNITS) {
+			list.add(new Check("dateDiff(" + unit + ", DateValue, DateValue)") {
+				String reference(Context c, Sample s) {
+					Calendar first = Calendar.getInstance();
+					Calendar second = Calendar.getInstance();
+					first.setTimeInMillis(s.millis);
+					second.setTimeInMillis(s.other);
+					return String.valueOf(DateUtilities.dateDiff(unit, first, second));
+				}
+
+				String actual(Context c, Sample s) {
+					return String.valueOf(DateUtilities.dateDiff(unit, DateValue.of(s.millis, c.zone),
+						DateValue.of(s.other, c.zone)));
+				}
+			});
+			if(unit > 0) {
+				list.add(new Check("dateDiff(" + unit + ", long[], long[], long[])") {
+					String reference(Context c, Sample s) {
+						return String.valueOf(Math.round((double)Math.abs(s.millis - s.other) / unit));
+					}
+
+					String actual(Context c, Sample s) {
+						long[] out = new long[1];
+						DateUtilities.dateDiff(unit, new long[] {s.millis}, new long[] {s.other}, out);
+						return String.valueOf(out[0]);
+					}
+				});
+			}
+		}
+
+		// a local date the zone skips, such as 2011-12-30 in Pacific/Apia, has no occurrence
+		list.add(new Check("Recurrence.daily(DateValue, 1)") {
+			String reference(Context c, Sample s) {
+				Calendar start = proleptic(c.zone);
+				start.setTimeInMillis(s.millis);
+				int timeOfDay = (int)(start.get(Calendar.HOUR_OF_DAY) * 3600000L + start.get(Calendar.MINUTE) * 60000L
+					+ start.get(Calendar.SECOND) * 1000L + start.get(Calendar.MILLISECOND));
+				// step the date in UTC, where every date exists
+				Calendar date = proleptic(TimeZone.getTimeZone("UTC"));
+				date.clear();
+				date.set(start.get(Calendar.YEAR), start.get(Calendar.MONTH), start.get(Calendar.DATE));
+				StringBuilder sb = new StringBuilder();
+				long n = 0;
+				for(int k = 0; k < RECURRENCE_DAYS + 2; k++, date.add(Calendar.DATE, 1)) {
+					if(!resolvesTo(c.zone, date, 0) && !resolvesTo(c.zone, date, (int)DAY - 1)) continue;
+					long t = wallTime(c.zone, date, timeOfDay).getTimeInMillis();
+					if(t < s.millis || t >= s.millis + RECURRENCE_DAYS * DAY) continue;
+					sb.append(t).append(' ');
+					n++;
+				}
+				return sb + "| " + n;
+			}
+
+			String actual(Context c, Sample s) {
+				Recurrence rule = Recurrence.daily(DateValue.of(s.millis, c.zone), 1);
+				long to = s.millis + RECURRENCE_DAYS * DAY;
+				StringBuilder sb = new StringBuilder();
+				PrimitiveIterator.OfLong it = rule.iterator(s.millis, to);
+				long t = s.millis - 1;
+				while(it.hasNext()) {
+					long next = it.nextLong();
+					// next must walk the same occurrences as the iterator
+					t = rule.next(t);
+					if(t != next) return "next " + t + " but iterator " + next;
+					sb.append(next).append(' ');
+				}
+				return sb + "| " + rule.count(s.millis, to);
+			}
+		});
+		return list;
+	}
+
+	/** Returns a lenient, proleptic Gregorian calendar, as <code>Recurrence</code> resolves times with. */
+	private static Calendar proleptic(TimeZone zone) {
+		GregorianCalendar cal = new GregorianCalendar(zone);
+		cal.setGregorianChange(new Date(Long.MIN_VALUE));
+		return cal;
+	}
+
+	/** Returns a calendar in a zone resolved from the date of a UTC calendar and a time of day. */
+	private static Calendar wallTime(TimeZone zone, Calendar date, int millisOfDay) {
+		Calendar cal = proleptic(zone);
+		cal.clear();
+		cal.set(date.get(Calendar.YEAR), date.get(Calendar.MONTH), date.get(Calendar.DATE));
+		cal.set(Calendar.MILLISECOND, millisOfDay);
+		cal.getTimeInMillis();
+		return cal;
+	}
+
+	/** Returns true if a wall time on a date resolves to the same date in a zone. */
+	private static boolean resolvesTo(TimeZone zone, Calendar date, int millisOfDay) {
+		Calendar cal = wallTime(zone, date, millisOfDay);
+		return cal.get(Calendar.YEAR) == date.get(Calendar.YEAR) && cal.get(Calendar.DAY_OF_YEAR)
+			== date.get(Calendar.DAY_OF_YEAR);
+	}
+
+	/**
+	 * Returns the samples for a zone: random instants across years 1 to 9999,
+	 * instants around offset transitions and the Gregorian cutover, and wall
+	 * times in gaps and overlaps.
+	 */
+	static List<Sample> samples(TimeZone zone, int count, Random r) {
+		List<Sample> list = new ArrayList<Sample>();
+		for(int i = 0; i < count; i++) {
+			long millis = YEAR_1 + (long)(r.nextDouble() * (YEAR_10000 - YEAR_1));
+			list.add(sample(r, millis, false));
+		}
+		list.add(sample(r, CUTOVER + EDGES[r.nextInt(EDGES.length)], false));
+
+		List<ZoneOffsetTransition> transitions = transitions(zone);
+		for(int i = 0; i < count && !transitions.isEmpty(); i++) {
+			ZoneOffsetTransition t = transitions.get(r.nextInt(transitions.size()));
+			long at = t.getInstant().toEpochMilli();
+			list.add(sample(r, at + EDGES[r.nextInt(EDGES.length)], false));
+			// the wall clock just after the transition, as read with the old offset
+			long wall = at + t.getOffsetBefore().getTotalSeconds() * 1000L;
+			list.add(sample(r, wall + (long)(r.nextDouble() * Math.abs(t.getDuration().toMillis())), true));
+		}
+		// a schedule started before a gap of a day or more crosses the date it skips
+		for(ZoneOffsetTransition t : transitions) {
+			if(t.isGap() && t.getDuration().toMillis() >= DAY) {
+				list.add(sample(r, t.getInstant().toEpochMilli() - 2 * DAY - (long)(r.nextDouble() * DAY), false));
+			}
+		}
+		return list;
+	}
+
+	private static Sample sample(Random r, long millis, boolean wallTime) {
+		long other = millis + (long)((r.nextDouble() - 0.5) * 6 * 365 * DAY);
+		int damage = r.nextInt(8) < 6 ? 0 : 1 + r.nextInt(4);
+		return new Sample(millis, other, wallTime, damage, r.nextInt(64), STYLES[r.nextInt(STYLES.length)]);
+	}
+
+	/*
+	 * Damage 1 drops the last character, 2 replaces a digit with a 9, 3
+	 * appends text and 4 puts a space in front.
+	 */
+	private static String damage(String text, Sample s) {
+		switch(s.damage) {
+			case 1:
+				return text.isEmpty() ? text : text.substring(0, text.length() - 1);
+			case 2:
+				for(int k = 0; k < text.length(); k++) {
+					int i = (s.position + k) % text.length();
+					if(Character.isDigit(text.charAt(i))) return text.substring(0, i) + '9' + text.substring(i + 1);
+				}
+				return text;
+			case 3:
+				return text + " x";
+			case 4:
+				return " " + text;
+			default:
+				return text;
+		}
+	}
+
+	private static List<ZoneOffsetTransition> transitions(TimeZone zone) {
+		List<ZoneOffsetTransition> list = new ArrayList<ZoneOffsetTransition>();
+		ZoneRules rules;
+		try {
+			rules = ZoneId.of(zone.getID()).getRules();
+		} catch(RuntimeException e) {
+			return list;
+		}
+		Instant end = Instant.ofEpochMilli(4102444800000L);	// 2100-01-01T00:00Z
+		ZoneOffsetTransition t = rules.nextTransition(Instant.ofEpochMilli(-2208988800000L));
+		while(t != null && t.getInstant().isBefore(end)) {
+			list.add(t);
+			t = rules.nextTransition(t.getInstant());
+		}
+		return list;
+	}
+
+	/** Runs the comparison; see the class comment for the arguments. */
+	public static void main(String[] args) throws Exception {
+		String localeList = "all";
+		String zoneList = null;
+		int count = 2;
+		long seed = 1;
+		boolean startup = false;
+		for(int a = 0; a < args.length; a++) {
+			if(args[a].equals("--locales")) {
+				localeList = args[++a];
+			} else if(args[a].equals("--zones")) {
+				zoneList = args[++a];
+			} else if(args[a].equals("--samples")) {
+				count = Integer.parseInt(args[++a]);
+			} else if(args[a].equals("--seed")) {
+				seed = Long.parseLong(args[++a]);
+			} else if(args[a].equals("--startup")) {
+				startup = true;
+			} else {
+				throw new IllegalArgumentException("Error: unknown argument " + args[a]);
+			}
+		}
+		List<Locale> locales = new ArrayList<Locale>();
+		if(localeList.equals("all")) {
+			locales.addAll(Arrays.asList(DateFormat.getAvailableLocales()));
+		} else {
+			for(String tag : localeList.split(",")) locales.add(Locale.forLanguageTag(tag));
+		}
+		List<String> zones = Arrays.asList(zoneList == null ? ZONES : zoneList.split(","));
+
+		if(startup && System.getProperty(DateStartup.DATA_PROPERTY) == null) {
+			System.exit(runWithStartupData(args, locales, zones));
+		}
+		if(startup && !DateStartup.isActive()) {
+			throw new IllegalStateException("Error: startup data not used: " + DateStartup.getStatus());
+		}
+
+		Locale defaultLocale = Locale.getDefault();
+		TimeZone defaultZone = TimeZone.getDefault();
+		System.out.println("java " + System.getProperty("java.version") + ", " + locales.size() + " locales, "
+			+ zones.size() + " zones" + (startup ? ", startup data: " + DateStartup.getStatus() : ""));
+		List<Check> checks = checks();
+		Random r = new Random(seed);
+		long t0 = System.nanoTime();
+		long total = 0;
+		for(String id : zones) {
+			TimeZone zone = TimeZone.getTimeZone(id);
+			TimeZone.setDefault(zone);
+			for(Locale locale : locales) {
+				Locale.setDefault(locale);
+				Context context = new Context(locale, zone);
+				for(Sample s : samples(zone, count, r)) {
+					for(Check check : checks) {
+						String expected = outcome(check, context, s, true);
+						String actual = outcome(check, context, s, false);
+						check.runs++;
+						if(expected == null || expected.startsWith("threw ")) check.rejected++;
+						total++;
+						if(expected == null ? actual != null : !expected.equals(actual)) {
+							check.mismatches++;
+							report(check.name + " " + locale.toLanguageTag() + " " + id + " " + s.describe()
+								+ ": expected \"" + expected + "\" but was \"" + actual + "\"");
+						}
+					}
+				}
+			}
+		}
+		Locale.setDefault(defaultLocale);
+		TimeZone.setDefault(defaultZone);
+
+		long mismatches = 0;
+		System.out.println(String.format("%-72s %12s %10s %10s", "", "checks", "rejected", "mismatches"));
+		for(Check check : checks) {
+			System.out.println(String.format("%-72s %12d %10d %10d", check.name, check.runs, check.rejected,
+				check.mismatches));
+			mismatches += check.mismatches;
+		}
+		System.out.println(String.format("%d checks in %.1f s, %d mismatches", total, (System.nanoTime() - t0) / 1e9,
+			mismatches));
+		for(String s : reported) System.out.println("  " + s);
+		System.exit(mismatches == 0 ? 0 : 1);
+	}
+
+	/*
+	 * Startup data is read once per JVM, and writing it already touches the
+	 * zone tables, so the checks run again in a child JVM that reads it.
+	 */
+	private static int runWithStartupData(String[] args, List<Locale> locales, List<String> zones)
+	throws IOException, InterruptedException {
+		File data = File.createTempFile("verifier", ".dat");
+		try {
+			List<String> named = new ArrayList<String>();
+			for(String id : zones) {
+				if(ZoneId.getAvailableZoneIds().contains(id)) named.add(id);
+			}
+			OutputStream out = new FileOutputStream(data);
+			try {
+				DateStartup.write(out, locales, named);
+			} finally {
+				out.close();
+			}
+			List<String> command = new ArrayList<String>();
+			command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add("-D" + DateStartup.DATA_PROPERTY + "=" + data.getPath());
+			command.add(DateUtilitiesVerifier.class.getName());
+			command.addAll(Arrays.asList(args));
+			return new ProcessBuilder(command).inheritIO().start().waitFor();
+		} finally {
+			data.delete();
+		}
+	}
+
+	/*
+	 * Returns the result of one side of a check, or the class of what it threw
+	 * so that failures compare equal when both sides reject the input.
+	 */
+	private static String outcome(Check check, Context c, Sample s, boolean reference) {
+		try {
+			return reference ? check.reference(c, s) : check.actual(c, s);
+		} catch(Exception e) {
+			return "threw " + e.getClass().getName();
+		}
+	}
+
+	/** Returns the instant a fresh format parses from text, or "failed". */
+	private static String parsed(SimpleDateFormat f, String text) {
+		try {
+			return String.valueOf(f.parse(text).getTime());
+		} catch(ParseException e) {
+			return "failed";
+		}
+	}
+
+	/** Returns the date column of a one-row file rewritten by a <code>DateColumnReformatter</code>. */
+	private static String reformatted(String text, String sourcePattern, String targetPattern) throws IOException {
+		if(rowFile == null) {
+			rowFile = File.createTempFile("verifier", ".tsv");
+			rowFile.deleteOnExit();
+		}
+		OutputStream out = new FileOutputStream(rowFile);
+		try {
+			out.write(("a\t" + text + "\tb\n").getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DateColumnReformatter(1, '\t', sourcePattern, targetPattern, 0).reformat(rowFile.toPath(),
+			Channels.newChannel(bytes));
+		String line = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		return line.substring(2, line.length() - 3);
+	}
+
+	private static void report(String message) {
+		if(reportedCount++ < MAX_REPORTED) reported.add(message);
+	}
+}
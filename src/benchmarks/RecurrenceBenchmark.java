@@ -0,0 +1,196 @@
+package benchmarks;
+
+import dates.DateValue;
+import dates.HolidayCalendar;
+import dates.Recurrence;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Compares expanding recurring schedules with <code>Calendar.add</code> loops,
+ * one day or one period at a time, with <code>Recurrence</code>, and measures
+ * "next occurrence after T" over a large set of rules as a scheduler would.
+ * <P>
+ * Usage: <code>java benchmarks.RecurrenceBenchmark [--rules n] [--zone id] [--warmup ms] [--time ms]</code>
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class RecurrenceBenchmark {
+	private static final int INPUTS = 1024;
+	private static final long DAY = 86400000L;
+	private static final long YEAR = 365 * DAY;
+
+	// Prohibit instantiation
+	private RecurrenceBenchmark() {}
+
+	/** Runs the comparison; see the class comment for the arguments. */
+	public static void main(String[] args) throws Exception {
+		int rules = 1000000;
+		TimeZone zone = TimeZone.getDefault();
+		long warmup = 1000;
+		long time = 2000;
+		for(int a = 0; a < args.length; a++) {
+			if(args[a].equals("--rules")) {
+				rules = Integer.parseInt(args[++a]);
+			} else if(args[a].equals("--zone")) {
+				zone = TimeZone.getTimeZone(args[++a]);
+			} else if(args[a].equals("--warmup")) {
+				warmup = Long.parseLong(args[++a]);
+			} else if(args[a].equals("--time")) {
+				time = Long.parseLong(args[++a]);
+			} else {
+				throw new IllegalArgumentException("Error: unknown argument " + args[a]);
+			}
+		}
+		final TimeZone z = zone;
+		Calendar c = new GregorianCalendar(zone);
+		c.clear();
+		c.set(2020, Calendar.JANUARY, 1, 9, 0);
+		final long first = c.getTimeInMillis();
+		final DateValue start = DateValue.of(first, zone);
+		final long[] after = new long[INPUTS];
+		Random r = new Random(3);
+		for(int i = 0; i < INPUTS; i++) after[i] = first + (long)(r.nextDouble() * 10 * YEAR);
+
+		List<DateUtilitiesBenchmark.Benchmark> list = new ArrayList<DateUtilitiesBenchmark.Benchmark>();
+		final Recurrence secondTuesday = Recurrence.monthlyOnWeekday(start, 1, 2, Calendar.TUESDAY);
+		list.add(new DateUtilitiesBenchmark.Benchmark("2nd Tuesdays in 10 years, Calendar by day") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				final Calendar cal = new GregorianCalendar(z);
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						cal.setTimeInMillis(first);
+						long n = 0;
+						while(cal.getTimeInMillis() < first + 10 * YEAR) {
+							if(cal.get(Calendar.DAY_OF_WEEK) == Calendar.TUESDAY
+								&& cal.get(Calendar.DAY_OF_WEEK_IN_MONTH) == 2) n++;
+							cal.add(Calendar.DATE, 1);
+						}
+						return n;
+					}
+				};
+			}
+		});
+		list.add(new DateUtilitiesBenchmark.Benchmark("2nd Tuesdays in 10 years, Recurrence.count") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						return secondTuesday.count(first, first + 10 * YEAR);
+					}
+				};
+			}
+		});
+
+		final Recurrence everyThird = Recurrence.daily(start, 3);
+		list.add(new DateUtilitiesBenchmark.Benchmark("every 3 days, next after T, Calendar.add") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				final Calendar cal = new GregorianCalendar(z);
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						long t = after[i & (INPUTS - 1)];
+						cal.setTimeInMillis(first);
+						while(cal.getTimeInMillis() <= t) cal.add(Calendar.DATE, 3);
+						return cal.getTimeInMillis();
+					}
+				};
+			}
+		});
+		list.add(new DateUtilitiesBenchmark.Benchmark("every 3 days, next after T, Recurrence") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						return everyThird.next(after[i & (INPUTS - 1)]);
+					}
+				};
+			}
+		});
+
+		final HolidayCalendar holidays = HolidayCalendar.WEEKENDS_ONLY;
+		final Recurrence business = Recurrence.businessDays(start, holidays);
+		list.add(new DateUtilitiesBenchmark.Benchmark("business days in a year, Calendar by day") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				final Calendar cal = new GregorianCalendar(z);
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						long from = after[i & (INPUTS - 1)];
+						cal.setTimeInMillis(from);
+						long n = 0;
+						while(cal.getTimeInMillis() < from + YEAR) {
+							int dow = cal.get(Calendar.DAY_OF_WEEK);
+							if(dow != Calendar.SATURDAY && dow != Calendar.SUNDAY) n++;
+							cal.add(Calendar.DATE, 1);
+						}
+						return n;
+					}
+				};
+			}
+		});
+		list.add(new DateUtilitiesBenchmark.Benchmark("business days in a year, Recurrence.count") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						long from = after[i & (INPUTS - 1)];
+						return business.count(from, from + YEAR);
+					}
+				};
+			}
+		});
+
+		final Recurrence mondayThursday = Recurrence.weekly(start, 1, Calendar.MONDAY, Calendar.THURSDAY);
+		list.add(new DateUtilitiesBenchmark.Benchmark("expand a year of Mon/Thu, Recurrence") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						long from = after[i & (INPUTS - 1)];
+						long sum = 0;
+						PrimitiveIterator.OfLong it = mondayThursday.iterator(from, from + YEAR);
+						while(it.hasNext()) sum += it.nextLong();
+						return sum;
+					}
+				};
+			}
+		});
+
+		final Recurrence[] schedule = new Recurrence[rules];
+		for(int i = 0; i < rules; i++) {
+			DateValue s = start.plusDays(r.nextInt(3650)).plusMillis(r.nextInt(86400) * 1000L);
+			switch(i % 4) {
+				case 0:
+					schedule[i] = Recurrence.daily(s, 1 + r.nextInt(30));
+					break;
+				case 1:
+					schedule[i] = Recurrence.weekly(s, 1 + r.nextInt(4), 1 + r.nextInt(7), 1 + r.nextInt(7));
+					break;
+				case 2:
+					schedule[i] = Recurrence.monthly(s, 1 + r.nextInt(12), 1 + r.nextInt(28));
+					break;
+				default:
+					schedule[i] = Recurrence.monthlyOnWeekday(s, 1, 1 + r.nextInt(4), 1 + r.nextInt(7));
+					break;
+			}
+		}
+		final int n = rules;
+		list.add(new DateUtilitiesBenchmark.Benchmark(rules + " mixed rules, next after T, per rule") {
+			DateUtilitiesBenchmark.Operation newOperation() {
+				return new DateUtilitiesBenchmark.Operation() {
+					public long run(int i) {
+						return schedule[(int)Math.floorMod(i * 2654435761L, (long)n)].next(after[i & (INPUTS - 1)]);
+					}
+				};
+			}
+		});
+
+		System.out.println("java " + System.getProperty("java.version") + ", zone " + zone.getID());
+		System.out.println(String.format("%-52s %14s", "", "ns/op"));
+		for(DateUtilitiesBenchmark.Benchmark b : list) {
+			DateUtilitiesBenchmark.Result result = DateUtilitiesBenchmark.measure(b, 1, warmup, time);
+			System.out.println(String.format("%-52s %14.1f", b.name, result.getNanosPerOp()));
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package dates;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes <code>dateDiff</code> over whole columns of epoch millisecond
+ * timestamps. Row i of the result is the difference between first[i] and
+ * second[i] in DateUtilities units (DAY_UNITS, HOUR_UNITS, ...), as a positive
+ * whole number rounded to the nearest unit exactly as <code>dateDiff</code>
+ * rounds it, but computed with integer arithmetic and returned as a
+ * <code>long</code>.
+ * <P>
+ * Columns are split across the common fork-join pool. <code>summarize</code>
+ * computes the minimum, maximum, mean and an optional histogram of the
+ * differences in the same pass without materialising them.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class BulkDateDiff {
+	/** Rows processed by one fork-join leaf task. */
+	static final int SPLIT_THRESHOLD = 1 << 14;
+
+	// Prohibit instantiation
+	private BulkDateDiff() {}
+
+	/**
+	 * Calculate the difference for one pair of timestamps.
+	 * @param dateUtilitiesUnitField - the unit of measure (e.g., DateUtilities.DAY_UNITS)
+	 * @param first - epoch milliseconds
+	 * @param second - epoch milliseconds
+	 * @return the difference in DateUtilities units as a positive whole number
+	 */
+	public static long diff(long dateUtilitiesUnitField, long first, long second) {
+		long d = Math.abs(first - second);
+		// round half up without going through double
+		return d / dateUtilitiesUnitField + (d % dateUtilitiesUnitField * 2 >= dateUtilitiesUnitField ? 1 : 0);
+	}
+
+	/**
+	 * Calculate the difference for one pair of timestamps in any DateUtilities
+	 * unit, including the calendar-aware CALENDAR_DAY_UNITS, MONTH_UNITS,
+	 * YEAR_UNITS and BUSINESS_DAY_UNITS, in constant time.
+	 * <UL>
+	 * 		<LI>CALENDAR_DAY_UNITS - the number of midnights between the local dates,
+	 *          so a day that is 23 or 25 hours long across a DST change still counts once.</LI>
+	 * 		<LI>MONTH_UNITS - the largest n for which adding n months to the earlier
+	 *          local date-time, as <code>Calendar.add</code> would, does not pass the later one.</LI>
+	 * 		<LI>YEAR_UNITS - whole months divided by twelve.</LI>
+	 * 		<LI>BUSINESS_DAY_UNITS - business days d with earlier &lt;= d &lt; later local date.</LI>
+	 * </UL>
+	 * @param dateUtilitiesUnitField - the unit of measure (e.g., DateUtilities.MONTH_UNITS)
+	 * @param first - epoch milliseconds
+	 * @param second - epoch milliseconds
+	 * @param zone - the <code>TimeZone</code> local dates are taken in
+	 * @param holidays - the business calendar for BUSINESS_DAY_UNITS
+	 * @return the difference in DateUtilities units as a positive whole number
+	 * @throws IllegalArgumentException if the unit is not recognized
+	 */
+	public static long diff(long dateUtilitiesUnitField, long first, long second, TimeZone zone,
+		HolidayCalendar holidays) throws IllegalArgumentException {
+		if(dateUtilitiesUnitField > 0) return diff(dateUtilitiesUnitField, first, second);
+		long earlier = Math.min(first, second);
+		long later = Math.max(first, second);
+		long localEarlier = earlier + zone.getOffset(earlier);
+		long localLater = later + zone.getOffset(later);
+		long dayEarlier = Math.floorDiv(localEarlier, DateUtilities.DAY_UNITS);
+		long dayLater = Math.floorDiv(localLater, DateUtilities.DAY_UNITS);
+
+		if(dateUtilitiesUnitField == DateUtilities.CALENDAR_DAY_UNITS) return dayLater - dayEarlier;
+		if(dateUtilitiesUnitField == DateUtilities.BUSINESS_DAY_UNITS) {
+			return holidays.countBusinessDays(dayEarlier, dayLater);
+		}
+		if(dateUtilitiesUnitField == DateUtilities.MONTH_UNITS || dateUtilitiesUnitField == DateUtilities.YEAR_UNITS) {
+			long a = CivilDates.civilFromDays(dayEarlier);
+			long b = CivilDates.civilFromDays(dayLater);
+			long months = (CivilDates.year(b) * 12 + CivilDates.month(b)) - (CivilDates.year(a) * 12 + CivilDates.month(a));
+			long timeOfDay = localEarlier - dayEarlier * DateUtilities.DAY_UNITS;
+			if(months > 0 && CivilDates.plusMonths(dayEarlier, months) * DateUtilities.DAY_UNITS + timeOfDay > localLater) {
+				months--;
+			}
+			return dateUtilitiesUnitField == DateUtilities.YEAR_UNITS ? months / 12 : months;
+		}
+		throw new IllegalArgumentException("Error: unknown unit " + dateUtilitiesUnitField);
+	}
+
+	/**
+	 * Calculate the difference for every row of two columns.
+	 * @param dateUtilitiesUnitField - the unit of measure (e.g., DateUtilities.DAY_UNITS)
+	 * @param first - epoch milliseconds
+	 * @param second - epoch milliseconds, the same length as first
+	 * @param out - receives the differences, at least as long as first
+	 * @throws IllegalArgumentException if the unit is not positive or the arrays do not line up
+	 */
+	public static void diff(long dateUtilitiesUnitField, long[] first, long[] second, long[] out)
+	throws IllegalArgumentException {
+		check(dateUtilitiesUnitField, first, second);
+		if(out.length < first.length) throw new IllegalArgumentException("Error: out is shorter than the input");
+		ForkJoinPool.commonPool().invoke(new DiffAction(dateUtilitiesUnitField, first, second, out, 0, first.length));
+	}
+
+	/**
+	 * Summarize the differences of two columns without storing them.
+	 * @param dateUtilitiesUnitField - the unit of measure (e.g., DateUtilities.DAY_UNITS)
+	 * @param first - epoch milliseconds
+	 * @param second - epoch milliseconds, the same length as first
+	 * @return the count, minimum, maximum and mean difference
+	 * @throws IllegalArgumentException if the unit is not positive or the arrays do not line up
+	 */
+	public static Summary summarize(long dateUtilitiesUnitField, long[] first, long[] second)
+	throws IllegalArgumentException {
+		return summarize(dateUtilitiesUnitField, first, second, new long[0]);
+	}
+
+	/**
+	 * Summarize the differences of two columns, including a histogram, without
+	 * storing them. Bucket 0 counts differences below bounds[0], bucket i counts
+	 * differences in [bounds[i-1], bounds[i]) and the last bucket counts
+	 * differences of at least bounds[bounds.length - 1].
+	 * @param dateUtilitiesUnitField - the unit of measure (e.g., DateUtilities.DAY_UNITS)
+	 * @param first - epoch milliseconds
+	 * @param second - epoch milliseconds, the same length as first
+	 * @param bounds - ascending bucket boundaries, in the same units
+	 * @return the count, minimum, maximum, mean and histogram of the differences
+	 * @throws IllegalArgumentException if any argument is invalid
+	 */
+	public static Summary summarize(long dateUtilitiesUnitField, long[] first, long[] second, long[] bounds)
+	throws IllegalArgumentException {
+		check(dateUtilitiesUnitField, first, second);
+		for(int i = 1; i < bounds.length; i++) {
+			if(bounds[i] <= bounds[i - 1]) throw new IllegalArgumentException("Error: bounds must be strictly ascending");
+		}
+		long[] copy = bounds.clone();
+		return ForkJoinPool.commonPool().invoke(new SummaryTask(dateUtilitiesUnitField, first, second, copy, 0, first.length));
+	}
+
+	private static void check(long unit, long[] first, long[] second) throws IllegalArgumentException {
+		if(unit <= 0) throw new IllegalArgumentException("Error: unit must be positive");
+		if(first.length != second.length) throw new IllegalArgumentException("Error: columns differ in length");
+	}
+
+	/**
+	 * Count, minimum, maximum, mean and histogram of a column of differences.
+	 */
+	public static final class Summary {
+		private final long[] bounds;
+		private final long[] histogram;
+		private long count;
+		private long min = Long.MAX_VALUE;
+		private long max = Long.MIN_VALUE;
+		private double sum;
+
+		Summary(long[] bounds) {
+			this.bounds = bounds;
+			this.histogram = new long[bounds.length + 1];
+		}
+
+		/** Returns the number of rows summarized. */
+		public long getCount() {
+			return count;
+		}
+
+		/** Returns the smallest difference, or 0 if there were no rows. */
+		public long getMin() {
+			return count == 0 ? 0 : min;
+		}
+
+		/** Returns the largest difference, or 0 if there were no rows. */
+		public long getMax() {
+			return count == 0 ? 0 : max;
+		}
+
+		/** Returns the mean difference, or 0 if there were no rows. */
+		public double getMean() {
+			return count == 0 ? 0 : sum / count;
+		}
+
+		/** Returns the histogram bucket boundaries. */
+		public long[] getBounds() {
+			return bounds.clone();
+		}
+
+		/** Returns the row count of each histogram bucket. */
+		public long[] getHistogram() {
+			return histogram.clone();
+		}
+
+		private void merge(Summary other) {
+			count += other.count;
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+			sum += other.sum;
+			for(int i = 0; i < histogram.length; i++) histogram[i] += other.histogram[i];
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + getCount() + ", min=" + getMin() + ", max=" + getMax()
+				+ ", mean=" + getMean() + (bounds.length == 0 ? "" : ", histogram=" + Arrays.toString(histogram));
+		}
+	}
+
+	private static final class DiffAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final long unit;
+		private final long[] first;
+		private final long[] second;
+		private final long[] out;
+		private final int from;
+		private final int to;
+
+		DiffAction(long unit, long[] first, long[] second, long[] out, int from, int to) {
+			this.unit = unit;
+			this.first = first;
+			this.second = second;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= SPLIT_THRESHOLD) {
+				for(int i = from; i < to; i++) out[i] = diff(unit, first[i], second[i]);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new DiffAction(unit, first, second, out, from, mid),
+				new DiffAction(unit, first, second, out, mid, to));
+		}
+	}
+
+	private static final class SummaryTask extends RecursiveTask<Summary> {
+		private static final long serialVersionUID = 1L;
+		private final long unit;
+		private final long[] first;
+		private final long[] second;
+		private final long[] bounds;
+		private final int from;
+		private final int to;
+
+		SummaryTask(long unit, long[] first, long[] second, long[] bounds, int from, int to) {
+			this.unit = unit;
+			this.first = first;
+			this.second = second;
+			this.bounds = bounds;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Summary compute() {
+			if(to - from <= SPLIT_THRESHOLD) {
+				Summary s = new Summary(bounds);
+				long min = Long.MAX_VALUE;
+				long max = Long.MIN_VALUE;
+				// exact unless millisecond differences of many millennia overflow a long,
+				// when the sum so far moves to a double
+				long sum = 0;
+				double spilled = 0;
+				for(int i = from; i < to; i++) {
+					long d = diff(unit, first[i], second[i]);
+					if(d < min) min = d;
+					if(d > max) max = d;
+					long next = sum + d;
+					if(((sum ^ next) & (d ^ next)) < 0) {
+						spilled += sum;
+						next = d;
+					}
+					sum = next;
+					if(bounds.length > 0) {
+						int b = Arrays.binarySearch(bounds, d);
+						s.histogram[b >= 0 ? b + 1 : -b - 1]++;
+					}
+				}
+				s.count = to - from;
+				s.min = min;
+				s.max = max;
+				s.sum = spilled + sum;
+				return s;
+			}
+			int mid = (from + to) >>> 1;
+			SummaryTask right = new SummaryTask(unit, first, second, bounds, mid, to);
+			right.fork();
+			Summary left = new SummaryTask(unit, first, second, bounds, from, mid).compute();
+			left.merge(right.join());
+			return left;
+		}
+	}
+}
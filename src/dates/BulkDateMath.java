@@ -0,0 +1,465 @@
+package dates;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies <code>Calendar</code> arithmetic to whole columns of epoch
+ * millisecond timestamps: adding a period, truncating to the start of a
+ * year, month, day, hour, minute or second, and converting between instants
+ * and local wall time. Row i of the result is exactly what a
+ * <code>GregorianCalendar</code> in the given zone would produce for row i, so
+ * <pre>
+ *     BulkDateMath.add(millis, Calendar.DATE, 90, zone, out);
+ * </pre>
+ * gives the same column as calling <code>add(Calendar.DATE, 90)</code> on a
+ * calendar set to each row in turn, without creating one.
+ * <P>
+ * Rows are computed with integer civil-date arithmetic. Zone offsets come
+ * from cursors that remember the offset period of the previous row and of its
+ * result, so a sorted or clustered column needs almost no table lookups, and
+ * adding hours, minutes or seconds is a plain loop the JIT can vectorise.
+ * Results within a day of a DST change, and rows outside 1900-2100, are
+ * handed to <code>Calendar</code>. Columns are split across the common
+ * fork-join pool.
+ * <P>
+ * <code>out</code> may be the same array as the input.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class BulkDateMath {
+	/** Rows processed by one fork-join leaf task. */
+	static final int SPLIT_THRESHOLD = 1 << 14;
+
+	private static final int ADD = 0;
+	private static final int TRUNCATE = 1;
+	private static final int TO_LOCAL = 2;
+	private static final int FROM_LOCAL = 3;
+	private static final int CONVERT_LOCAL = 4;
+
+	/**
+	 * What adding months or years does to a date on the last day of its month.
+	 */
+	public enum MonthEnd {
+		/** Keep the day of the month, clamped to a shorter month, like <code>Calendar.add</code>: Feb 28 + 1 month is Mar 28. */
+		CLAMP,
+		/** A month-end date stays at the end of the month: Feb 28 + 1 month is Mar 31. */
+		PRESERVE
+	}
+
+	// Prohibit instantiation
+	private BulkDateMath() {}
+
+	/**
+	 * Add an amount of a <code>Calendar</code> field to every row, like
+	 * <code>Calendar.add(field, amount)</code>.
+	 * @param millis - epoch milliseconds
+	 * @param field - a <code>Calendar</code> field, e.g. Calendar.DATE or Calendar.YEAR
+	 * @param amount - the amount to add, may be negative
+	 * @param zone - the <code>TimeZone</code> dates are taken in
+	 * @param out - receives the results, at least as long as millis
+	 * @throws IllegalArgumentException if the field cannot be added to or out is too short
+	 */
+	public static void add(long[] millis, int field, int amount, TimeZone zone, long[] out)
+	throws IllegalArgumentException {
+		add(millis, field, amount, MonthEnd.CLAMP, zone, out);
+	}
+
+	/**
+	 * Add an amount of a <code>Calendar</code> field to every row, choosing
+	 * what happens to month-end dates when adding months or years. With
+	 * <code>PRESERVE</code>, a row on the last day of its month is moved to the
+	 * last day of the resulting month, keeping its time of day.
+	 * @param millis - epoch milliseconds
+	 * @param field - a <code>Calendar</code> field, e.g. Calendar.MONTH
+	 * @param amount - the amount to add, may be negative
+	 * @param rule - how month-end dates are treated
+	 * @param zone - the <code>TimeZone</code> dates are taken in
+	 * @param out - receives the results, at least as long as millis
+	 * @throws IllegalArgumentException if the field cannot be added to or out is too short
+	 */
+	public static void add(long[] millis, int field, int amount, MonthEnd rule, TimeZone zone, long[] out)
+	throws IllegalArgumentException {
+		if(field < 0 || field >= Calendar.FIELD_COUNT || field == Calendar.ZONE_OFFSET || field == Calendar.DST_OFFSET) {
+			throw new IllegalArgumentException("Error: cannot add to field " + field);
+		}
+		if(rule == null) throw new IllegalArgumentException("Error: rule argument cannot be null");
+		run(new Kernel(ADD, field, amount, rule == MonthEnd.PRESERVE, forZone(zone), null, millis, out, 0,
+			check(millis, out)));
+	}
+
+	/**
+	 * Truncate every row to the start of its local year, month, day, hour,
+	 * minute or second, as setting every smaller field of a
+	 * <code>Calendar</code> to its minimum would.
+	 * @param millis - epoch milliseconds
+	 * @param field - Calendar.YEAR, MONTH, DATE, HOUR_OF_DAY (or HOUR), MINUTE or SECOND
+	 * @param zone - the <code>TimeZone</code> dates are taken in
+	 * @param out - receives the results, at least as long as millis
+	 * @throws IllegalArgumentException if the field is not supported or out is too short
+	 */
+	public static void truncate(long[] millis, int field, TimeZone zone, long[] out)
+	throws IllegalArgumentException {
+		if(truncationUnit(field) == 0) throw new IllegalArgumentException("Error: cannot truncate to field " + field);
+		run(new Kernel(TRUNCATE, field, 0, false, forZone(zone), null, millis, out, 0, check(millis, out)));
+	}
+
+	/**
+	 * Convert instants to local wall time, as milliseconds since
+	 * 1970-01-01T00:00 local.
+	 * @param millis - epoch milliseconds
+	 * @param zone - the <code>TimeZone</code> to convert to
+	 * @param out - receives the local times, at least as long as millis
+	 * @throws IllegalArgumentException if out is too short
+	 */
+	public static void toLocal(long[] millis, TimeZone zone, long[] out) throws IllegalArgumentException {
+		run(new Kernel(TO_LOCAL, 0, 0, false, forZone(zone), null, millis, out, 0, check(millis, out)));
+	}
+
+	/**
+	 * Convert local wall times to instants. A wall time skipped or repeated by
+	 * a DST change is resolved the way a lenient <code>Calendar</code> resolves
+	 * it when its fields are set.
+	 * @param local - milliseconds since 1970-01-01T00:00 local
+	 * @param zone - the <code>TimeZone</code> the wall times are in
+	 * @param out - receives epoch milliseconds, at least as long as local
+	 * @throws IllegalArgumentException if out is too short
+	 */
+	public static void fromLocal(long[] local, TimeZone zone, long[] out) throws IllegalArgumentException {
+		run(new Kernel(FROM_LOCAL, 0, 0, false, forZone(zone), null, local, out, 0, check(local, out)));
+	}
+
+	/**
+	 * Convert wall times in one zone to the wall times of the same instants in
+	 * another, e.g. a column logged in New York local time to London local time.
+	 * @param local - milliseconds since 1970-01-01T00:00 local in the first zone
+	 * @param from - the <code>TimeZone</code> the wall times are in
+	 * @param to - the <code>TimeZone</code> to convert to
+	 * @param out - receives the converted wall times, at least as long as local
+	 * @throws IllegalArgumentException if out is too short
+	 */
+	public static void convertLocal(long[] local, TimeZone from, TimeZone to, long[] out)
+	throws IllegalArgumentException {
+		run(new Kernel(CONVERT_LOCAL, 0, 0, false, forZone(from), forZone(to), local, out, 0, check(local, out)));
+	}
+
+	private static ZoneOffsetTable forZone(TimeZone zone) throws IllegalArgumentException {
+		if(zone == null) throw new IllegalArgumentException("Error: zone argument cannot be null");
+		return ZoneOffsetTable.forZone(zone);
+	}
+
+	private static int check(long[] in, long[] out) throws IllegalArgumentException {
+		if(out.length < in.length) throw new IllegalArgumentException("Error: out is shorter than the input");
+		return in.length;
+	}
+
+	private static void run(Kernel kernel) {
+		// small columns are not worth handing to the pool
+		if(kernel.to - kernel.from <= SPLIT_THRESHOLD) kernel.compute();
+		else ForkJoinPool.commonPool().invoke(kernel);
+	}
+
+	// the length of a truncation field in local milliseconds, -1 for months and years, 0 if unsupported
+	private static long truncationUnit(int field) {
+		switch(field) {
+			case Calendar.SECOND:
+				return DateUtilities.SECOND_UNITS;
+			case Calendar.MINUTE:
+				return DateUtilities.MINUTE_UNITS;
+			case Calendar.HOUR:
+			case Calendar.HOUR_OF_DAY:
+				return DateUtilities.HOUR_UNITS;
+			case Calendar.DATE:
+				return DateUtilities.DAY_UNITS;
+			case Calendar.MONTH:
+			case Calendar.YEAR:
+				return -1;
+			default:
+				return 0;
+		}
+	}
+
+	// the number of days a date field moves by per unit, or 0 for other fields
+	private static int daysPerUnit(int field) {
+		switch(field) {
+			case Calendar.DAY_OF_MONTH:
+			case Calendar.DAY_OF_YEAR:
+			case Calendar.DAY_OF_WEEK:
+				return 1;
+			case Calendar.WEEK_OF_YEAR:
+			case Calendar.WEEK_OF_MONTH:
+			case Calendar.DAY_OF_WEEK_IN_MONTH:
+				return 7;
+			default:
+				return 0;
+		}
+	}
+
+	/*
+	 * The offset period of the last row looked up. Rows whose result lies
+	 * more than a day inside the period cannot be near a DST gap or overlap,
+	 * so their wall time converts back with the same offset.
+	 */
+	private static final class Cursor {
+		private final ZoneOffsetTable table;
+		long start = 1;		// [start, end) shares one offset
+		long end;
+		long safeStart = 1;	// [safeStart, safeEnd) is a day inside it
+		long safeEnd;
+		int offset;
+
+		Cursor(ZoneOffsetTable table) {
+			this.table = table;
+		}
+
+		// returns the offset at millis, moving to its period if need be
+		int offsetAt(long millis) {
+			return millis >= start && millis < end ? offset : seek(millis);
+		}
+
+		/*
+		 * Converts a wall time back with the offset of the period around
+		 * guess, or returns AMBIGUOUS if that lands less than a day inside it.
+		 */
+		long toUtc(long local, long guess) {
+			if(guess < start || guess >= end) seek(guess);
+			long t = local - offset;
+			return t >= safeStart && t < safeEnd ? t : ZoneOffsetTable.AMBIGUOUS;
+		}
+
+		// moves to the period of millis and returns its offset
+		int seek(long millis) {
+			int period = table.periodIndex(millis);
+			if(period < 0) {
+				start = millis;
+				end = millis + 1;
+				offset = table.getOffset(millis);
+			} else {
+				start = table.periodStart(period);
+				end = table.periodEnd(period);
+				offset = table.periodOffset(period);
+			}
+			safeStart = start + DateUtilities.DAY_UNITS;
+			safeEnd = end - DateUtilities.DAY_UNITS;
+			return offset;
+		}
+	}
+
+	private static final class Kernel extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int op;
+		private final int field;
+		private final int amount;
+		private final boolean preserveMonthEnd;
+		private final ZoneOffsetTable zone;
+		private final ZoneOffsetTable toZone;
+		private final long[] in;
+		private final long[] out;
+		private final int from;
+		private final int to;
+
+		Kernel(int op, int field, int amount, boolean preserveMonthEnd, ZoneOffsetTable zone, ZoneOffsetTable toZone,
+			long[] in, long[] out, int from, int to) {
+			this.op = op;
+			this.field = field;
+			this.amount = amount;
+			this.preserveMonthEnd = preserveMonthEnd;
+			this.zone = zone;
+			this.toZone = toZone;
+			this.in = in;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= SPLIT_THRESHOLD) {
+				switch(op) {
+					case ADD:
+						add();
+						break;
+					case TRUNCATE:
+						truncate();
+						break;
+					case TO_LOCAL:
+						toLocal(zone, in);
+						break;
+					case FROM_LOCAL:
+						fromLocal(zone, in);
+						break;
+					default:
+						fromLocal(zone, in);
+						toLocal(toZone, out);
+						break;
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new Kernel(op, field, amount, preserveMonthEnd, zone, toZone, in, out, from, mid),
+				new Kernel(op, field, amount, preserveMonthEnd, zone, toZone, in, out, mid, to));
+		}
+
+		private void add() {
+			long fixed = fixedMillis(field, amount);
+			if(fixed != 0 || amount == 0) {
+				// a fixed number of milliseconds; a plain loop the JIT can vectorise
+				for(int i = from; i < to; i++) out[i] = in[i] + fixed;
+				return;
+			}
+			int days = daysPerUnit(field);
+			if(days != 0) {
+				addDays((long)amount * days * DateUtilities.DAY_UNITS);
+			} else if(field == Calendar.MONTH || field == Calendar.YEAR) {
+				addMonths(field == Calendar.YEAR ? amount * 12L : amount);
+			} else {
+				for(int i = from; i < to; i++) out[i] = DateValue.add(zone, in[i], field, amount);
+			}
+		}
+
+		private void addDays(long delta) {
+			Cursor source = new Cursor(zone);
+			Cursor target = new Cursor(zone);
+			for(int i = from; i < to; i++) {
+				long m = in[i];
+				// Calendar.add converts with the old offset first, then corrects by the offset there
+				long guess = m + delta;
+				long t = target.toUtc(m + source.offsetAt(m) + delta, guess);
+				out[i] = t != ZoneOffsetTable.AMBIGUOUS && inRange(m) ? t : DateValue.add(zone, m, field, amount);
+			}
+		}
+
+		private void addMonths(long months) {
+			Cursor source = new Cursor(zone);
+			Cursor target = new Cursor(zone);
+			for(int i = from; i < to; i++) {
+				long m = in[i];
+				int offset = source.offsetAt(m);
+				long local = m + offset;
+				long day = Math.floorDiv(local, DateUtilities.DAY_UNITS);
+				long timeOfDay = local - day * DateUtilities.DAY_UNITS;
+				long packed = CivilDates.civilFromDays(day);
+				long index = CivilDates.year(packed) * 12 + (CivilDates.month(packed) - 1) + months;
+				long y = Math.floorDiv(index, 12L);
+				int month = (int)Math.floorMod(index, 12L) + 1;
+				int d = CivilDates.day(packed);
+				int length = CivilDates.monthLength(y, month);
+				if(preserveMonthEnd && d == CivilDates.monthLength(CivilDates.year(packed), CivilDates.month(packed))) {
+					d = length;
+				}
+				long shifted = CivilDates.daysFromCivil(y, month, Math.min(d, length)) * DateUtilities.DAY_UNITS + timeOfDay;
+				long t = target.toUtc(shifted, shifted - offset);
+				out[i] = t != ZoneOffsetTable.AMBIGUOUS && inRange(m) ? t : slowAdd(m);
+			}
+		}
+
+		private long slowAdd(long m) {
+			if(!preserveMonthEnd) return DateValue.add(zone, m, field, amount);
+			Calendar c = new GregorianCalendar(zone.getZone());
+			c.setTimeInMillis(m);
+			boolean monthEnd = c.get(Calendar.DATE) == c.getActualMaximum(Calendar.DATE);
+			c.add(field, amount);
+			if(monthEnd) c.set(Calendar.DATE, c.getActualMaximum(Calendar.DATE));
+			return c.getTimeInMillis();
+		}
+
+		private void truncate() {
+			long unit = truncationUnit(field);
+			Cursor source = new Cursor(zone);
+			Cursor target = new Cursor(zone);
+			for(int i = from; i < to; i++) {
+				long m = in[i];
+				int offset = source.offsetAt(m);
+				long local = m + offset;
+				long start;
+				if(unit > 0) {
+					start = local - Math.floorMod(local, unit);
+				} else {
+					long day = Math.floorDiv(local, DateUtilities.DAY_UNITS);
+					long packed = CivilDates.civilFromDays(day);
+					start = (field == Calendar.YEAR ? CivilDates.daysFromCivil(CivilDates.year(packed), 1, 1)
+						: day - CivilDates.day(packed) + 1) * DateUtilities.DAY_UNITS;
+				}
+				long t = target.toUtc(start, start - offset);
+				out[i] = t != ZoneOffsetTable.AMBIGUOUS && inRange(m) ? t : slowTruncate(m, start);
+			}
+		}
+
+		private long slowTruncate(long m, long local) {
+			long t = zone.localToUtc(local);
+			if(t != ZoneOffsetTable.AMBIGUOUS && inRange(m)) {
+				return t;
+			}
+			Calendar c = new GregorianCalendar(zone.getZone());
+			c.setTimeInMillis(m);
+			// clear every field smaller than the unit; months and years are longer than any day
+			long unit = truncationUnit(field);
+			if(unit < 0) unit = Long.MAX_VALUE;
+			if(field == Calendar.YEAR) c.set(Calendar.MONTH, Calendar.JANUARY);
+			if(unit > DateUtilities.DAY_UNITS) c.set(Calendar.DATE, 1);
+			if(unit >= DateUtilities.DAY_UNITS) c.set(Calendar.HOUR_OF_DAY, 0);
+			if(unit >= DateUtilities.HOUR_UNITS) c.set(Calendar.MINUTE, 0);
+			if(unit >= DateUtilities.MINUTE_UNITS) c.set(Calendar.SECOND, 0);
+			c.set(Calendar.MILLISECOND, 0);
+			return c.getTimeInMillis();
+		}
+
+		private void toLocal(ZoneOffsetTable table, long[] src) {
+			Cursor c = new Cursor(table);
+			for(int i = from; i < to; i++) {
+				long m = src[i];
+				out[i] = m + c.offsetAt(m);
+			}
+		}
+
+		private void fromLocal(ZoneOffsetTable table, long[] src) {
+			Cursor c = new Cursor(table);
+			for(int i = from; i < to; i++) {
+				long local = src[i];
+				long t = c.toUtc(local, local - c.offset);
+				out[i] = t != ZoneOffsetTable.AMBIGUOUS ? t : slowFromLocal(table, local);
+			}
+		}
+	}
+
+	// civil-date arithmetic is only used between 1900 and 2100, well clear of the Gregorian cutover
+	private static boolean inRange(long millis) {
+		return millis >= ZoneOffsetTable.RANGE_START && millis < ZoneOffsetTable.RANGE_END;
+	}
+
+	// Calendar.add of a time field, or 0 if the field is a date field
+	private static long fixedMillis(int field, int amount) {
+		switch(field) {
+			case Calendar.MILLISECOND:
+				return amount;
+			case Calendar.SECOND:
+				return amount * DateUtilities.SECOND_UNITS;
+			case Calendar.MINUTE:
+				return amount * DateUtilities.MINUTE_UNITS;
+			case Calendar.HOUR:
+			case Calendar.HOUR_OF_DAY:
+				return amount * DateUtilities.HOUR_UNITS;
+			default:
+				return 0;
+		}
+	}
+
+	private static long slowFromLocal(ZoneOffsetTable zone, long local) {
+		long t = zone.localToUtc(local);
+		if(t != ZoneOffsetTable.AMBIGUOUS) return t;
+		// let a lenient Calendar resolve the wall time from its fields
+		Calendar wall = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+		wall.setTimeInMillis(local);
+		Calendar c = new GregorianCalendar(zone.getZone());
+		c.clear();
+		c.set(Calendar.ERA, wall.get(Calendar.ERA));
+		c.set(wall.get(Calendar.YEAR), wall.get(Calendar.MONTH), wall.get(Calendar.DATE),
+			wall.get(Calendar.HOUR_OF_DAY), wall.get(Calendar.MINUTE), wall.get(Calendar.SECOND));
+		c.set(Calendar.MILLISECOND, wall.get(Calendar.MILLISECOND));
+		return c.getTimeInMillis();
+	}
+}
@@ -0,0 +1,58 @@
+package dates;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable <code>CharSequence</code> view of a run of ASCII bytes in a
+ * <code>ByteBuffer</code>, so byte input can be handed to the parsers without
+ * decoding it into a <code>String</code>. Each byte is one char; callers must
+ * check <code>isAscii</code> before relying on that.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+final class ByteCharSequence implements CharSequence {
+	private ByteBuffer buf;
+	private int offset;
+	private int length;
+
+	/** Point this view at length bytes of buf starting at absolute index offset. */
+	ByteCharSequence reset(ByteBuffer buf, int offset, int length) {
+		this.buf = buf;
+		this.offset = offset;
+		this.length = length;
+		return this;
+	}
+
+	/** Returns true if every byte of the view is 7-bit ASCII. */
+	boolean isAscii() {
+		for(int i = 0; i < length; i++) {
+			if(buf.get(offset + i) < 0) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if(index < 0 || index >= length) throw new IndexOutOfBoundsException("index " + index);
+		return (char)(buf.get(offset + index) & 0xFF);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if(start < 0 || end > length || start > end) throw new IndexOutOfBoundsException(start + ", " + end);
+		return new ByteCharSequence().reset(buf, offset + start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		char[] chars = new char[length];
+		for(int i = 0; i < length; i++) chars[i] = (char)(buf.get(offset + i) & 0xFF);
+		return new String(chars);
+	}
+}
@@ -0,0 +1,97 @@
+package dates;
+
+/**
+ * Day-number arithmetic on the proleptic Gregorian calendar. Dates are counted
+ * as epoch days (days since 1970-01-01) and converted to and from year, month
+ * and day with closed-form formulas, so no <code>Calendar</code> is needed.
+ * <P>
+ * <code>civilFromDays</code> packs its result into one long; use
+ * <code>year</code>, <code>month</code> and <code>day</code> to unpack it.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+final class CivilDates {
+	// Prohibit instantiation
+	private CivilDates() {}
+
+	/**
+	 * Returns the number of days from 1970-01-01 to a date.
+	 * @param year - the year, where 0 is 1 BC
+	 * @param month - the month, 1 to 12
+	 * @param day - the day of the month, 1 to 31
+	 */
+	static long daysFromCivil(long year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		int yoe = (int)(y - era * 400);
+		int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097L + doe - 719468L;
+	}
+
+	/**
+	 * Returns the date of an epoch day, packed as (year &lt;&lt; 9) | (month &lt;&lt; 5) | day.
+	 * @param epochDay - days since 1970-01-01
+	 */
+	static long civilFromDays(long epochDay) {
+		long z = epochDay + 719468L;
+		long era = (z >= 0 ? z : z - 146096L) / 146097L;
+		int doe = (int)(z - era * 146097L);
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int day = doy - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yoe + era * 400L + (month <= 2 ? 1 : 0);
+		return (year << 9) | (month << 5) | day;
+	}
+
+	/** Returns the year of a date packed by <code>civilFromDays</code>. */
+	static long year(long packed) {
+		return packed >> 9;
+	}
+
+	/** Returns the month, 1 to 12, of a date packed by <code>civilFromDays</code>. */
+	static int month(long packed) {
+		return (int)(packed >> 5) & 0xF;
+	}
+
+	/** Returns the day of the month of a date packed by <code>civilFromDays</code>. */
+	static int day(long packed) {
+		return (int)packed & 0x1F;
+	}
+
+	/** Returns true if a year is a leap year. */
+	static boolean isLeapYear(long year) {
+		return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+
+	/** Returns the number of days in a month of a year. */
+	static int monthLength(long year, int month) {
+		if(month == 2) return isLeapYear(year) ? 29 : 28;
+		return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+	}
+
+	/**
+	 * Returns the ISO day of the week of an epoch day, 1 (Monday) to 7 (Sunday).
+	 * @param epochDay - days since 1970-01-01, which was a Thursday
+	 */
+	static int dayOfWeek(long epochDay) {
+		return (int)Math.floorMod(epochDay + 3, 7L) + 1;
+	}
+
+	/**
+	 * Returns the epoch day reached by adding months to a date, clamping the day
+	 * to the end of a shorter month as <code>Calendar.add</code> does.
+	 * @param epochDay - days since 1970-01-01
+	 * @param months - the number of months to add, may be negative
+	 */
+	static long plusMonths(long epochDay, long months) {
+		long packed = civilFromDays(epochDay);
+		long index = year(packed) * 12 + (month(packed) - 1) + months;
+		long y = Math.floorDiv(index, 12L);
+		int m = (int)Math.floorMod(index, 12L) + 1;
+		return daysFromCivil(y, m, Math.min(day(packed), monthLength(y, m)));
+	}
+}
@@ -0,0 +1,132 @@
+package dates;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clock that reads the system clock once per tick on a daemon thread, so
+ * reading the time is a single volatile read. The time may lag the system
+ * clock by up to one tick.
+ * <P>
+ * Patterns passed to <code>register</code> are formatted on the ticker thread
+ * each time the clock advances, and <code>format</code> returns the cached
+ * string, so formatting the current time costs no more than reading it.
+ * Other patterns are formatted on demand.
+ * <P>
+ * Once closed the clock stops ticking and reads the system clock directly.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class CoarseClock extends DateClock implements AutoCloseable {
+	private final long resolution;
+	private final Map<String, Stamp> patterns = new ConcurrentHashMap<String, Stamp>();
+	private final ScheduledExecutorService ticker;
+	private volatile long now;
+	private volatile boolean closed;
+
+	CoarseClock(long resolutionMillis) throws IllegalArgumentException {
+		if(resolutionMillis < 1) throw new IllegalArgumentException("Error: resolution must be at least 1 ms");
+		this.resolution = resolutionMillis;
+		this.now = System.currentTimeMillis();
+		this.ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "CoarseClock-" + resolution + "ms");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		ticker.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				tick();
+			}
+		}, resolution, resolution, TimeUnit.MILLISECONDS);
+	}
+
+	/** Returns the time of the last tick, or the system time once closed. */
+	@Override
+	public long millis() {
+		return closed ? System.currentTimeMillis() : now;
+	}
+
+	/** Returns the tick interval in milliseconds. */
+	public long getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * Keep the current time formatted according to the specified pattern, in
+	 * the default locale and time zone, up to date on every tick.
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	public void register(String pattern) throws IllegalArgumentException {
+		long t = now;
+		patterns.put(pattern, new Stamp(t, super.format(pattern, t)));
+	}
+
+	/**
+	 * Stop keeping a pattern up to date.
+	 * @param pattern - a registered pattern
+	 */
+	public void unregister(String pattern) {
+		patterns.remove(pattern);
+	}
+
+	/**
+	 * Format the current time according to the specified pattern. A registered
+	 * pattern is answered from the string formatted at the last tick.
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @return the current date and/or time formatted according to the pattern
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	@Override
+	public String format(String pattern) throws IllegalArgumentException {
+		long t = millis();
+		Stamp s = patterns.get(pattern);
+		if(s != null && s.millis == t) return s.text;
+		return super.format(pattern, t);
+	}
+
+	/** Stops the ticker thread; the clock reads the system clock from then on. */
+	@Override
+	public void close() {
+		closed = true;
+		ticker.shutdownNow();
+	}
+
+	@Override
+	public String toString() {
+		return "DateClock.coarse(" + resolution + ")";
+	}
+
+	private void tick() {
+		long t = System.currentTimeMillis();
+		for(Map.Entry<String, Stamp> e : patterns.entrySet()) {
+			// replace() so a concurrent unregister is not undone
+			patterns.replace(e.getKey(), e.getValue(), new Stamp(t, super.format(e.getKey(), t)));
+		}
+		now = t;
+	}
+
+	/*
+	 * A pattern formatted at one tick. Stamps are immutable, so publishing one
+	 * through the map publishes its text safely.
+	 */
+	private static final class Stamp {
+		final long millis;
+		final String text;
+
+		Stamp(long millis, String text) {
+			this.millis = millis;
+			this.text = text;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package dates;
+
+import java.util.Date;
+
+/**
+ * The source of the current time for <code>DateUtilities.now()</code> and
+ * <code>DateUtilities.format(String)</code>. The system clock is used unless
+ * another is installed with <code>DateUtilities.setClock</code>; a
+ * <code>fixed</code> clock makes the current time repeatable and a
+ * <code>coarse</code> clock trades resolution for speed.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public abstract class DateClock {
+	private static final DateClock SYSTEM = new DateClock() {
+		@Override
+		public long millis() {
+			return System.currentTimeMillis();
+		}
+
+		@Override
+		public String toString() {
+			return "DateClock.system()";
+		}
+	};
+
+	/** Returns the current time as milliseconds since 1970-01-01T00:00Z. */
+	public abstract long millis();
+
+	/**
+	 * Format the current time according to the specified pattern in the default
+	 * locale and time zone.
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @return the current date and/or time formatted according to the pattern
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	public String format(String pattern) throws IllegalArgumentException {
+		return format(pattern, millis());
+	}
+
+	String format(String pattern, long epochMillis) throws IllegalArgumentException {
+		return FormatterRegistry.getDefault().get(pattern).format(new Date(epochMillis));
+	}
+
+	/** Returns the clock that reads <code>System.currentTimeMillis()</code>. */
+	public static DateClock system() {
+		return SYSTEM;
+	}
+
+	/**
+	 * Returns a clock that is always at the specified instant.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 */
+	public static DateClock fixed(final long epochMillis) {
+		return new DateClock() {
+			@Override
+			public long millis() {
+				return epochMillis;
+			}
+
+			@Override
+			public String toString() {
+				return "DateClock.fixed(" + epochMillis + ")";
+			}
+		};
+	}
+
+	/**
+	 * Returns a clock that reads the system clock once per tick on a background
+	 * thread. See <code>CoarseClock</code>.
+	 * @param resolutionMillis - the tick interval in milliseconds
+	 * @throws IllegalArgumentException if resolutionMillis is less than one
+	 */
+	public static CoarseClock coarse(long resolutionMillis) throws IllegalArgumentException {
+		return new CoarseClock(resolutionMillis);
+	}
+}
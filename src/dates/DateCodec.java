@@ -0,0 +1,383 @@
+package dates;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Binary encodings of dates and date-times, for storing many of them far more
+ * compactly than <code>Date</code> objects or formatted strings.
+ * <UL>
+ * 		<LI>Date-times are 8 bytes of epoch milliseconds, or 6 bytes for
+ *          instants within about 4,400 years of 1970.</LI>
+ * 		<LI>Dates are 4 bytes of days since 1970-01-01, taken in a time zone.</LI>
+ * 		<LI>A column of date-times is delta encoded: a scale byte, the count,
+ *          then each value minus the one before as a zig-zag varint, all
+ *          divided by the coarsest of day, minute, second or millisecond that
+ *          divides every value. Sorted timestamps usually take 1 to 3 bytes each.</LI>
+ * </UL>
+ * The fixed-width encodings preserve order: the bytes of two values compare,
+ * unsigned and lexicographically, the same way as the values themselves, so
+ * they can be used as keys by byte-oriented stores. They are always written
+ * big-endian whatever the order of the buffer. Every method works on heap,
+ * direct and memory-mapped buffers alike; the relative methods advance the
+ * buffer position and the absolute ones leave it alone.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateCodec {
+	/** Bytes in each fixed-width encoding. */
+	public static final int DATE_TIME_BYTES = 8;
+	public static final int COMPACT_DATE_TIME_BYTES = 6;
+	public static final int DATE_BYTES = 4;
+
+	/** The range of instants the 6-byte encoding holds. */
+	public static final long COMPACT_MIN = -(1L << 47);
+	public static final long COMPACT_MAX = (1L << 47) - 1;
+
+	// the units a delta-encoded column may be scaled by, coarsest first
+	private static final long[] SCALES = { DateUtilities.DAY_UNITS, DateUtilities.MINUTE_UNITS,
+		DateUtilities.SECOND_UNITS, 1L };
+
+	// Prohibit instantiation
+	private DateCodec() {}
+
+	/**
+	 * Write an instant as 8 order-preserving bytes.
+	 * @param out - the destination
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @return the destination
+	 * @throws java.nio.BufferOverflowException if fewer than 8 bytes remain
+	 */
+	public static ByteBuffer putDateTime(ByteBuffer out, long epochMillis) {
+		return out.putLong(bigEndian(out, epochMillis ^ Long.MIN_VALUE));
+	}
+
+	/**
+	 * Write an instant as 8 order-preserving bytes at an index.
+	 * @param out - the destination
+	 * @param index - where to write the first byte
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @return the destination
+	 * @throws IndexOutOfBoundsException if fewer than 8 bytes follow index
+	 */
+	public static ByteBuffer putDateTime(ByteBuffer out, int index, long epochMillis) {
+		return out.putLong(index, bigEndian(out, epochMillis ^ Long.MIN_VALUE));
+	}
+
+	/**
+	 * Read an instant written by <code>putDateTime</code>.
+	 * @param in - the source
+	 * @return milliseconds since 1970-01-01T00:00Z
+	 * @throws BufferUnderflowException if fewer than 8 bytes remain
+	 */
+	public static long getDateTime(ByteBuffer in) {
+		return bigEndian(in, in.getLong()) ^ Long.MIN_VALUE;
+	}
+
+	/**
+	 * Read an instant written by <code>putDateTime</code> at an index.
+	 * @param in - the source
+	 * @param index - where the first byte is
+	 * @return milliseconds since 1970-01-01T00:00Z
+	 * @throws IndexOutOfBoundsException if fewer than 8 bytes follow index
+	 */
+	public static long getDateTime(ByteBuffer in, int index) {
+		return bigEndian(in, in.getLong(index)) ^ Long.MIN_VALUE;
+	}
+
+	/**
+	 * Write an instant as 6 order-preserving bytes.
+	 * @param out - the destination
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z, from COMPACT_MIN to COMPACT_MAX
+	 * @return the destination
+	 * @throws IllegalArgumentException if the instant is out of range
+	 * @throws java.nio.BufferOverflowException if fewer than 6 bytes remain
+	 */
+	public static ByteBuffer putCompactDateTime(ByteBuffer out, long epochMillis) throws IllegalArgumentException {
+		long v = compact(epochMillis);
+		out.putShort(bigEndian(out, (short)(v >>> 32)));
+		return out.putInt(bigEndian(out, (int)v));
+	}
+
+	/**
+	 * Write an instant as 6 order-preserving bytes at an index.
+	 * @param out - the destination
+	 * @param index - where to write the first byte
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z, from COMPACT_MIN to COMPACT_MAX
+	 * @return the destination
+	 * @throws IllegalArgumentException if the instant is out of range
+	 * @throws IndexOutOfBoundsException if fewer than 6 bytes follow index
+	 */
+	public static ByteBuffer putCompactDateTime(ByteBuffer out, int index, long epochMillis)
+	throws IllegalArgumentException {
+		long v = compact(epochMillis);
+		out.putShort(index, bigEndian(out, (short)(v >>> 32)));
+		return out.putInt(index + 2, bigEndian(out, (int)v));
+	}
+
+	/**
+	 * Read an instant written by <code>putCompactDateTime</code>.
+	 * @param in - the source
+	 * @return milliseconds since 1970-01-01T00:00Z
+	 * @throws BufferUnderflowException if fewer than 6 bytes remain
+	 */
+	public static long getCompactDateTime(ByteBuffer in) {
+		long high = bigEndian(in, in.getShort()) & 0xFFFFL;
+		long low = bigEndian(in, in.getInt()) & 0xFFFFFFFFL;
+		return expand(high << 32 | low);
+	}
+
+	/**
+	 * Read an instant written by <code>putCompactDateTime</code> at an index.
+	 * @param in - the source
+	 * @param index - where the first byte is
+	 * @return milliseconds since 1970-01-01T00:00Z
+	 * @throws IndexOutOfBoundsException if fewer than 6 bytes follow index
+	 */
+	public static long getCompactDateTime(ByteBuffer in, int index) {
+		long high = bigEndian(in, in.getShort(index)) & 0xFFFFL;
+		long low = bigEndian(in, in.getInt(index + 2)) & 0xFFFFFFFFL;
+		return expand(high << 32 | low);
+	}
+
+	/**
+	 * Write the local date of a value as 4 order-preserving bytes.
+	 * @param out - the destination
+	 * @param date - a <code>DateValue</code>; its time of day is dropped
+	 * @return the destination
+	 * @throws java.nio.BufferOverflowException if fewer than 4 bytes remain
+	 */
+	public static ByteBuffer putDate(ByteBuffer out, DateValue date) {
+		return putDate(out, date.getEpochDay());
+	}
+
+	/**
+	 * Write a date, as days since 1970-01-01, as 4 order-preserving bytes.
+	 * @param out - the destination
+	 * @param epochDay - days since 1970-01-01
+	 * @return the destination
+	 * @throws IllegalArgumentException if epochDay does not fit in an int
+	 * @throws java.nio.BufferOverflowException if fewer than 4 bytes remain
+	 */
+	public static ByteBuffer putDate(ByteBuffer out, long epochDay) throws IllegalArgumentException {
+		if(epochDay != (int)epochDay) throw new IllegalArgumentException("Error: date out of range");
+		return out.putInt(bigEndian(out, (int)epochDay ^ Integer.MIN_VALUE));
+	}
+
+	/**
+	 * Read a date written by <code>putDate</code>.
+	 * @param in - the source
+	 * @return days since 1970-01-01
+	 * @throws BufferUnderflowException if fewer than 4 bytes remain
+	 */
+	public static int getEpochDay(ByteBuffer in) {
+		return bigEndian(in, in.getInt()) ^ Integer.MIN_VALUE;
+	}
+
+	/**
+	 * Read a date written by <code>putDate</code> as midnight at its start in a time zone.
+	 * @param in - the source
+	 * @param zone - the <code>TimeZone</code> the date was taken in
+	 * @return a <code>DateValue</code>
+	 * @throws BufferUnderflowException if fewer than 4 bytes remain
+	 */
+	public static DateValue getDate(ByteBuffer in, TimeZone zone) {
+		return DateValue.of(startOfDay(getEpochDay(in), zone), zone);
+	}
+
+	/**
+	 * Returns the first instant of a date in a time zone. Where a DST change
+	 * skips midnight this is the first instant after the gap, as
+	 * <code>Calendar</code> would have it.
+	 * @param epochDay - days since 1970-01-01
+	 * @param zone - a <code>TimeZone</code>
+	 * @return milliseconds since 1970-01-01T00:00Z
+	 */
+	public static long startOfDay(long epochDay, TimeZone zone) {
+		return startOfDay(epochDay, ZoneOffsetTable.forZone(zone), zone);
+	}
+
+	/**
+	 * Returns the first instant of each date of a column in a time zone, as
+	 * <code>startOfDay(long, TimeZone)</code> does, looking the zone up once.
+	 * @param epochDays - days since 1970-01-01
+	 * @param zone - a <code>TimeZone</code>
+	 * @param out - receives milliseconds since 1970-01-01T00:00Z for each date
+	 * @throws IllegalArgumentException if out is shorter than epochDays
+	 */
+	public static void startOfDay(long[] epochDays, TimeZone zone, long[] out) throws IllegalArgumentException {
+		if(out.length < epochDays.length) throw new IllegalArgumentException("Error: out is shorter than epochDays");
+		ZoneOffsetTable offsets = ZoneOffsetTable.forZone(zone);
+		for(int i = 0; i < epochDays.length; i++) out[i] = startOfDay(epochDays[i], offsets, zone);
+	}
+
+	private static long startOfDay(long epochDay, ZoneOffsetTable offsets, TimeZone zone) {
+		long local = epochDay * DateUtilities.DAY_UNITS;
+		long millis = offsets.localToUtc(local);
+		if(millis != ZoneOffsetTable.AMBIGUOUS) return millis;
+		// a gap or overlap at midnight: let a proleptic Gregorian calendar decide
+		long civil = CivilDates.civilFromDays(epochDay);
+		GregorianCalendar c = new GregorianCalendar(zone);
+		c.setGregorianChange(new Date(Long.MIN_VALUE));
+		c.clear();
+		c.set((int)CivilDates.year(civil), CivilDates.month(civil) - 1, CivilDates.day(civil));
+		return c.getTimeInMillis();
+	}
+
+	/**
+	 * Returns the 8-byte order-preserving encoding of an instant as an array.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 */
+	public static byte[] toBytes(long epochMillis) {
+		byte[] b = new byte[DATE_TIME_BYTES];
+		putDateTime(ByteBuffer.wrap(b), epochMillis);
+		return b;
+	}
+
+	/**
+	 * Decode an instant from 8 bytes written by <code>toBytes</code> or <code>putDateTime</code>.
+	 * @param b - the bytes
+	 * @param offset - the index of the first byte
+	 * @return milliseconds since 1970-01-01T00:00Z
+	 */
+	public static long fromBytes(byte[] b, int offset) {
+		return getDateTime(ByteBuffer.wrap(b), offset);
+	}
+
+	/**
+	 * Write a signed value as a zig-zag varint of 1 to 10 bytes; values near
+	 * zero take the fewest.
+	 * @param out - the destination
+	 * @param value - the value
+	 * @return the destination
+	 * @throws java.nio.BufferOverflowException if the bytes do not fit
+	 */
+	public static ByteBuffer putVarLong(ByteBuffer out, long value) {
+		long v = (value << 1) ^ (value >> 63);
+		while((v & ~0x7FL) != 0) {
+			out.put((byte)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		return out.put((byte)v);
+	}
+
+	/**
+	 * Read a value written by <code>putVarLong</code>.
+	 * @param in - the source
+	 * @return the value
+	 * @throws IllegalArgumentException if the bytes are not a varint
+	 * @throws BufferUnderflowException if the buffer ends inside the varint
+	 */
+	public static long getVarLong(ByteBuffer in) throws IllegalArgumentException {
+		long v = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			byte b = in.get();
+			v |= (long)(b & 0x7F) << shift;
+			if(b >= 0) return (v >>> 1) ^ -(v & 1);
+		}
+		throw new IllegalArgumentException("Error: malformed varint");
+	}
+
+	/** Returns the most bytes <code>putDeltas</code> can write for a number of values. */
+	public static int maxDeltaBytes(int count) {
+		return 1 + 5 + 10 * count;
+	}
+
+	/**
+	 * Delta encode a column of instants. Sorted or nearly sorted columns
+	 * encode smallest, but any order round-trips exactly.
+	 * @param out - the destination
+	 * @param millis - epoch milliseconds
+	 * @param offset - the index of the first value to encode
+	 * @param length - the number of values to encode
+	 * @return the destination
+	 * @throws IllegalArgumentException if offset or length is out of range
+	 * @throws java.nio.BufferOverflowException if the encoding does not fit; see maxDeltaBytes
+	 */
+	public static ByteBuffer putDeltas(ByteBuffer out, long[] millis, int offset, int length)
+	throws IllegalArgumentException {
+		if(offset < 0 || length < 0 || offset + length > millis.length || offset + length < 0) {
+			throw new IllegalArgumentException("Error: offset or length out of range");
+		}
+		int scaleIndex = 0;
+		for(int i = offset; i < offset + length && scaleIndex < SCALES.length - 1; i++) {
+			while(millis[i] % SCALES[scaleIndex] != 0) scaleIndex++;
+		}
+		long scale = SCALES[scaleIndex];
+		out.put((byte)scaleIndex);
+		putVarLong(out, length);
+		long previous = 0;
+		for(int i = offset; i < offset + length; i++) {
+			long v = millis[i] / scale;
+			// wraps for extreme jumps, and unwraps the same way in getDeltas
+			putVarLong(out, v - previous);
+			previous = v;
+		}
+		return out;
+	}
+
+	/**
+	 * Decode a column written by <code>putDeltas</code>.
+	 * @param in - the source
+	 * @param dest - receives epoch milliseconds
+	 * @param offset - where in dest to store the first value
+	 * @return the number of values decoded
+	 * @throws IllegalArgumentException if the bytes are not a delta-encoded column
+	 *         or dest is too short
+	 * @throws BufferUnderflowException if the buffer ends inside the column
+	 */
+	public static int getDeltas(ByteBuffer in, long[] dest, int offset) throws IllegalArgumentException {
+		int scaleIndex = in.get();
+		if(scaleIndex < 0 || scaleIndex >= SCALES.length) throw new IllegalArgumentException("Error: unknown scale");
+		long scale = SCALES[scaleIndex];
+		long count = getVarLong(in);
+		if(count < 0 || count > dest.length - offset) throw new IllegalArgumentException("Error: dest is too short");
+		long v = 0;
+		for(int i = 0; i < count; i++) {
+			v += getVarLong(in);
+			dest[offset + i] = v * scale;
+		}
+		return (int)count;
+	}
+
+	/**
+	 * Returns the number of values in a delta-encoded column without decoding
+	 * it or moving the buffer position.
+	 * @param in - a buffer positioned at the start of the column
+	 */
+	public static int getDeltaCount(ByteBuffer in) {
+		ByteBuffer view = in.duplicate();
+		view.get();
+		return (int)getVarLong(view);
+	}
+
+	private static long compact(long epochMillis) throws IllegalArgumentException {
+		if(epochMillis < COMPACT_MIN || epochMillis > COMPACT_MAX) {
+			throw new IllegalArgumentException("Error: instant out of range for 6 bytes");
+		}
+		// flip the sign bit of the 48-bit value so unsigned order is chronological
+		return (epochMillis ^ (1L << 47)) & 0xFFFFFFFFFFFFL;
+	}
+
+	// undoes compact(): flip the sign bit back, then sign-extend from 48 bits
+	private static long expand(long v) {
+		return (v ^ (1L << 47)) << 16 >> 16;
+	}
+
+	private static long bigEndian(ByteBuffer b, long v) {
+		return b.order() == ByteOrder.BIG_ENDIAN ? v : Long.reverseBytes(v);
+	}
+
+	private static int bigEndian(ByteBuffer b, int v) {
+		return b.order() == ByteOrder.BIG_ENDIAN ? v : Integer.reverseBytes(v);
+	}
+
+	private static short bigEndian(ByteBuffer b, short v) {
+		return b.order() == ByteOrder.BIG_ENDIAN ? v : Short.reverseBytes(v);
+	}
+}
@@ -0,0 +1,212 @@
+package dates;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Parses whole columns of date strings that share one pattern into a primitive
+ * <code>long[]</code> of epoch milliseconds, recording unparseable rows in a
+ * <code>BitSet</code> rather than throwing. Numeric values are parsed straight
+ * from the characters; anything the fast path cannot decide goes through a
+ * single <code>SimpleDateFormat</code> and <code>ParsePosition</code> that are
+ * reused for the whole batch. Results match <code>SimpleDateFormat.parse</code>
+ * on a fresh format: a zone named by one value, such as "EST", does not carry
+ * over to the values after it.
+ * <P>
+ * A parser is cheap to keep around but is not thread-safe; use one per thread.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateColumnParser {
+	private final String pattern;
+	private final SimpleDateFormat sdf;
+	private final TimeZone zone;
+	private final ParsePosition pos = new ParsePosition(0);
+	private final FastDateParser fast;
+	private long fastCount;
+	private long fallbackCount;
+
+	/**
+	 * Create a parser for a pattern in the default locale and time zone.
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	public DateColumnParser(String pattern) throws IllegalArgumentException {
+		this(pattern, TimeZone.getDefault(), Locale.getDefault(Locale.Category.FORMAT));
+	}
+
+	/**
+	 * Create a parser for a pattern in the specified locale and time zone.
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @param zone - the <code>TimeZone</code> values are interpreted in
+	 * @param aLocale - a <code>Locale</code> field
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	public DateColumnParser(String pattern, TimeZone zone, Locale aLocale) throws IllegalArgumentException {
+		SharedDateFormat shared = FormatterRegistry.getDefault().get(pattern, aLocale, zone);
+		this.pattern = pattern;
+		this.sdf = shared.newFormat();
+		this.zone = sdf.getTimeZone();
+		this.fast = new FastDateParser(new NumericPattern(pattern, sdf, aLocale), this.zone);
+	}
+
+	/** Returns the <code>SimpleDateFormat</code> pattern. */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/** Returns the number of values decided without <code>SimpleDateFormat</code>. */
+	public long getFastPathCount() {
+		return fastCount;
+	}
+
+	/** Returns the number of values handed to <code>SimpleDateFormat</code>. */
+	public long getFallbackCount() {
+		return fallbackCount;
+	}
+
+	/**
+	 * Parse a column of strings. Row i is written to out[i]; if it cannot be
+	 * parsed out[i] is set to 0 and bit i of failures is set.
+	 * @param values - the date strings; null entries are failures
+	 * @param out - receives epoch milliseconds, at least values.length long
+	 * @param failures - receives the failed rows; other bits in range are cleared
+	 * @return the number of rows written
+	 * @throws IllegalArgumentException if out is too small
+	 */
+	public int parse(String[] values, long[] out, BitSet failures) throws IllegalArgumentException {
+		checkCapacity(values.length, out);
+		failures.clear(0, values.length);
+		for(int i = 0; i < values.length; i++) {
+			String v = values[i];
+			parseOne(v, 0, v == null ? 0 : v.length(), out, i, failures);
+		}
+		return values.length;
+	}
+
+	/**
+	 * Parse a column of character sequences. Row i is written to out[i]; if it
+	 * cannot be parsed out[i] is set to 0 and bit i of failures is set.
+	 * @param values - the date strings; null entries are failures
+	 * @param out - receives epoch milliseconds, at least values.size() long
+	 * @param failures - receives the failed rows; other bits in range are cleared
+	 * @return the number of rows written
+	 * @throws IllegalArgumentException if out is too small
+	 */
+	public int parse(List<? extends CharSequence> values, long[] out, BitSet failures)
+	throws IllegalArgumentException {
+		int n = values.size();
+		checkCapacity(n, out);
+		failures.clear(0, n);
+		int i = 0;
+		for(CharSequence v : values) {
+			parseOne(v, 0, v == null ? 0 : v.length(), out, i++, failures);
+		}
+		return n;
+	}
+
+	/**
+	 * Parse a delimited run of values, such as one column of a CSV buffer, from
+	 * a <code>CharSequence</code> (for example a <code>CharBuffer</code> region).
+	 * Each delimiter ends one value; a region of n delimiters holds n + 1 values.
+	 * @param region - the delimited values
+	 * @param delimiter - the character separating values
+	 * @param out - receives epoch milliseconds
+	 * @param failures - receives the failed rows; other bits in range are cleared
+	 * @return the number of rows written
+	 * @throws IllegalArgumentException if out is too small
+	 */
+	public int parse(CharSequence region, char delimiter, long[] out, BitSet failures)
+	throws IllegalArgumentException {
+		int len = region.length();
+		if(len == 0) return 0;
+		int n = 1;
+		for(int i = 0; i < len; i++) {
+			if(region.charAt(i) == delimiter) n++;
+		}
+		checkCapacity(n, out);
+		failures.clear(0, n);
+
+		int row = 0;
+		int start = 0;
+		for(int i = 0; i <= len; i++) {
+			if(i == len || region.charAt(i) == delimiter) {
+				parseOne(region, start, i, out, row++, failures);
+				start = i + 1;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Parse a single value, in the same way as a one row column.
+	 * @param value - a date string
+	 * @return epoch milliseconds
+	 * @throws IllegalArgumentException if the value cannot be parsed
+	 */
+	public long parse(CharSequence value) throws IllegalArgumentException {
+		long[] out = new long[1];
+		if(!parse(value, 0, value == null ? 0 : value.length(), out, 0)) {
+			throw new IllegalArgumentException("Unparseable date: \"" + value + "\"");
+		}
+		return out[0];
+	}
+
+	/**
+	 * Parse the characters from start (inclusive) to end (exclusive) of a
+	 * sequence into out[index], without allocating when the fast path applies.
+	 * @param s - the characters to parse
+	 * @param start - the index of the first character of the value
+	 * @param end - the index just past the last character of the value
+	 * @param out - receives epoch milliseconds, or 0 on failure
+	 * @param index - where in out to store the result
+	 * @return true if the value was parsed
+	 */
+	public boolean parse(CharSequence s, int start, int end, long[] out, int index) {
+		if(s == null) {
+			out[index] = 0L;
+			return false;
+		}
+		long millis = fast.parse(s, start, end);
+		if(millis != FastDateParser.UNDECIDED) {
+			fastCount++;
+			out[index] = millis;
+			return true;
+		}
+
+		fallbackCount++;
+		String text = (s instanceof String && start == 0 && end == s.length())
+			? (String)s : s.subSequence(start, end).toString();
+		pos.setIndex(0);
+		pos.setErrorIndex(-1);
+		Date date;
+		try {
+			date = sdf.parse(text, pos);
+		} finally {
+			// parsing a zone name switches the format to that zone
+			sdf.setTimeZone(zone);
+		}
+		if(date == null || pos.getIndex() == 0) {
+			out[index] = 0L;
+			return false;
+		}
+		out[index] = date.getTime();
+		return true;
+	}
+
+	private void parseOne(CharSequence s, int start, int end, long[] out, int row, BitSet failures) {
+		if(!parse(s, start, end, out, row)) failures.set(row);
+	}
+
+	private static void checkCapacity(int rows, long[] out) throws IllegalArgumentException {
+		if(out.length < rows) {
+			throw new IllegalArgumentException("Error: out holds " + out.length + " values but " + rows + " are needed");
+		}
+	}
+}
@@ -0,0 +1,317 @@
+package dates;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Rewrites one date column of a large delimited text file from a source pattern
+ * to a target pattern, in the manner of <code>DateUtilities.format(String, String)</code>:
+ * a zone named in a date, such as "PST", is the zone it is written in, while a
+ * numeric offset such as "+0500" is converted to the default zone, as
+ * <code>SimpleDateFormat</code> does. The input is memory-mapped in large
+ * windows and scanned as bytes; only the date field is looked at and written
+ * into a direct output buffer that is flushed to the output channel in large
+ * batches. When both patterns are numeric a <code>DateTranscoder</code>
+ * rewrites the field straight from the mapped bytes, so lines are never
+ * decoded into Strings and dates never become instants. Other patterns are
+ * parsed and formatted by shared <code>SimpleDateFormat</code> copies, one
+ * field at a time.
+ * <P>
+ * Rows whose date cannot be parsed, or that have too few columns, are copied
+ * through unchanged and counted. Quoted fields containing the delimiter are
+ * not recognized.
+ * <P>
+ * Usage: <code>java dates.DateColumnReformatter [--header] input output column
+ * delimiter sourcePattern [targetPattern]</code>, where column is zero-based and
+ * delimiter is a single character or "tab".
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateColumnReformatter {
+	public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+	public static final int DEFAULT_BATCH_SIZE = 1024 * 1024;
+
+	// room reserved for one formatted date on top of the line being copied
+	private static final int DATE_RESERVE = 1024;
+
+	private final int column;
+	private final byte delimiter;
+	private final int headerLines;
+	private final DateTranscoder transcoder;
+	private final SharedDateFormat source;
+	private final SharedDateFormat target;
+	private final ByteCharSequence field = new ByteCharSequence();
+	private int windowSize = DEFAULT_WINDOW_SIZE;
+	private ByteBuffer out = ByteBuffer.allocateDirect(DEFAULT_BATCH_SIZE);
+
+	/**
+	 * Create a reformatter for the default locale and time zone.
+	 * @param column - the zero-based index of the date column
+	 * @param delimiter - the ASCII column delimiter
+	 * @param sourcePattern - the <code>SimpleDateFormat</code> pattern of the input dates
+	 * @param targetPattern - the <code>SimpleDateFormat</code> pattern to write
+	 * @param headerLines - the number of leading lines to copy through untouched
+	 * @throws IllegalArgumentException if a pattern is not recognized or an argument is out of range
+	 */
+	public DateColumnReformatter(int column, char delimiter, String sourcePattern, String targetPattern,
+		int headerLines) throws IllegalArgumentException {
+		if(column < 0) throw new IllegalArgumentException("Error: column cannot be negative");
+		if(delimiter > 0x7F) throw new IllegalArgumentException("Error: delimiter must be an ASCII character");
+		if(headerLines < 0) throw new IllegalArgumentException("Error: headerLines cannot be negative");
+		this.column = column;
+		this.delimiter = (byte)delimiter;
+		this.headerLines = headerLines;
+		TimeZone zone = TimeZone.getDefault();
+		Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+		this.transcoder = new DateTranscoder(sourcePattern, targetPattern, zone, locale);
+		// a pattern that may name a zone is parsed and formatted in that zone
+		this.source = FormatterRegistry.getDefault().get(sourcePattern, locale, zone);
+		this.target = FormatterRegistry.getDefault().get(targetPattern, locale, zone);
+	}
+
+	/**
+	 * Set the size of each memory-mapped input window. Lines longer than a
+	 * window are handled by growing the window.
+	 * @param bytes - the window size in bytes
+	 * @throws IllegalArgumentException if bytes is less than 4096
+	 */
+	public void setWindowSize(int bytes) throws IllegalArgumentException {
+		if(bytes < 4096) throw new IllegalArgumentException("Error: window must be at least 4096 bytes");
+		this.windowSize = bytes;
+	}
+
+	/**
+	 * Reformat a file into another file, replacing the output if it exists.
+	 * @param input - the file to read
+	 * @param output - the file to write
+	 * @return row counts and throughput
+	 * @throws IOException if either file cannot be read or written
+	 */
+	public Stats reformat(Path input, Path output) throws IOException {
+		try(FileChannel outChannel = FileChannel.open(output, StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			return reformat(input, outChannel);
+		}
+	}
+
+	/**
+	 * Reformat a file into a channel.
+	 * @param input - the file to read
+	 * @param output - where the rewritten lines go
+	 * @return row counts and throughput
+	 * @throws IOException if the file cannot be read or the channel written
+	 */
+	public Stats reformat(Path input, WritableByteChannel output) throws IOException {
+		Stats stats = new Stats();
+		long begin = System.nanoTime();
+		try(FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+			long size = in.size();
+			long position = 0;
+			int window = windowSize;
+			while(position < size) {
+				int length = (int)Math.min(window, size - position);
+				MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+				boolean atEnd = position + length == size;
+				int consumed = processWindow(mapped, length, atEnd, output, stats);
+				if(consumed == 0) {
+					// a single line is longer than the window
+					if(window > Integer.MAX_VALUE / 2) throw new IOException("Error: line too long at byte " + position);
+					window *= 2;
+					continue;
+				}
+				position += consumed;
+				window = windowSize;
+			}
+			flush(output, stats);
+			stats.bytesRead = size;
+		}
+		stats.elapsedNanos = System.nanoTime() - begin;
+		return stats;
+	}
+
+	/*
+	 * Processes every complete line in the window and returns the number of
+	 * bytes consumed; a trailing partial line is left for the next window.
+	 */
+	private int processWindow(ByteBuffer in, int length, boolean atEnd, WritableByteChannel output, Stats stats)
+	throws IOException {
+		ByteBuffer src = in.duplicate();
+		int lineStart = 0;
+		while(lineStart < length) {
+			int newline = lineStart;
+			while(newline < length && in.get(newline) != '\n') newline++;
+			if(newline == length && !atEnd) break;
+			int lineEnd = newline < length ? newline + 1 : length;
+			int contentEnd = newline;
+			if(contentEnd > lineStart && in.get(contentEnd - 1) == '\r') contentEnd--;
+
+			ensure(lineEnd - lineStart + DATE_RESERVE, output, stats);
+			if(stats.lines++ < headerLines) {
+				copy(src, lineStart, lineEnd);
+			} else {
+				stats.rows++;
+				if(!rewrite(in, src, lineStart, contentEnd, lineEnd)) {
+					stats.failedRows++;
+					copy(src, lineStart, lineEnd);
+				}
+			}
+			lineStart = lineEnd;
+		}
+		return lineStart;
+	}
+
+	private boolean rewrite(ByteBuffer in, ByteBuffer src, int lineStart, int contentEnd, int lineEnd) {
+		int fieldStart = lineStart;
+		for(int c = 0; c < column; c++) {
+			while(fieldStart < contentEnd && in.get(fieldStart) != delimiter) fieldStart++;
+			if(fieldStart == contentEnd) return false;
+			fieldStart++;
+		}
+		int fieldEnd = fieldStart;
+		while(fieldEnd < contentEnd && in.get(fieldEnd) != delimiter) fieldEnd++;
+
+		int mark = out.position();
+		copy(src, lineStart, fieldStart);
+		if(!writeDate(in, fieldStart, fieldEnd - fieldStart)) {
+			out.position(mark);
+			return false;
+		}
+		copy(src, fieldEnd, lineEnd);
+		return true;
+	}
+
+	private boolean writeDate(ByteBuffer in, int offset, int length) {
+		if(transcoder.isDirect()) return transcoder.transcode(in, offset, length, out);
+		field.reset(in, offset, length);
+		String text;
+		if(field.isAscii()) {
+			text = field.toString();
+		} else {
+			byte[] bytes = new byte[length];
+			for(int i = 0; i < length; i++) bytes[i] = in.get(offset + i);
+			text = new String(bytes, StandardCharsets.UTF_8);
+		}
+		String date = source.reformat(text, target);
+		if(date == null) return false;
+		out.put(date.getBytes(StandardCharsets.UTF_8));
+		return true;
+	}
+
+	private void copy(ByteBuffer src, int from, int to) {
+		src.limit(to);
+		src.position(from);
+		out.put(src);
+	}
+
+	private void ensure(int bytes, WritableByteChannel output, Stats stats) throws IOException {
+		if(out.remaining() >= bytes) return;
+		flush(output, stats);
+		if(out.capacity() < bytes) out = ByteBuffer.allocateDirect(bytes);
+	}
+
+	private void flush(WritableByteChannel output, Stats stats) throws IOException {
+		out.flip();
+		while(out.hasRemaining()) stats.bytesWritten += output.write(out);
+		out.clear();
+	}
+
+	/**
+	 * Row counts and throughput for one reformat run.
+	 */
+	public static final class Stats {
+		private long lines;
+		private long rows;
+		private long failedRows;
+		private long bytesRead;
+		private long bytesWritten;
+		private long elapsedNanos;
+
+		/** Returns the number of data rows seen, excluding header lines. */
+		public long getRows() {
+			return rows;
+		}
+
+		/** Returns the number of rows copied through because the date could not be parsed. */
+		public long getFailedRows() {
+			return failedRows;
+		}
+
+		/** Returns the size of the input in bytes. */
+		public long getBytesRead() {
+			return bytesRead;
+		}
+
+		/** Returns the number of bytes written to the output. */
+		public long getBytesWritten() {
+			return bytesWritten;
+		}
+
+		/** Returns the wall clock time of the run in nanoseconds. */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/** Returns input throughput in megabytes (2^20 bytes) per second. */
+		public double getMegabytesPerSecond() {
+			return elapsedNanos == 0 ? 0 : bytesRead / 1048576.0 / (elapsedNanos / 1e9);
+		}
+
+		/** Returns rows processed per second. */
+		public double getRowsPerSecond() {
+			return elapsedNanos == 0 ? 0 : rows / (elapsedNanos / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d rows (%d failed), %d bytes in, %d bytes out, %.1f ms, %.1f MB/s, %.0f rows/s",
+				rows, failedRows, bytesRead, bytesWritten, elapsedNanos / 1e6,
+				getMegabytesPerSecond(), getRowsPerSecond());
+		}
+	}
+
+	/**
+	 * Command line entry point.
+	 * @param args - [--header] input output column delimiter sourcePattern [targetPattern]
+	 */
+	public static void main(String[] args) throws IOException {
+		int a = 0;
+		int header = 0;
+		if(args.length > 0 && args[0].equals("--header")) {
+			header = 1;
+			a++;
+		}
+		if(args.length - a < 5) {
+			System.err.println("Usage: java dates.DateColumnReformatter [--header] input output column "
+				+ "delimiter sourcePattern [targetPattern]");
+			System.exit(1);
+		}
+		Path input = Paths.get(args[a]);
+		Path output = Paths.get(args[a + 1]);
+		int column = Integer.parseInt(args[a + 2]);
+		String delim = args[a + 3];
+		char delimiter;
+		if(delim.equalsIgnoreCase("tab") || delim.equals("\\t")) {
+			delimiter = '\t';
+		} else if(delim.length() == 1) {
+			delimiter = delim.charAt(0);
+		} else {
+			throw new IllegalArgumentException("Error: delimiter must be a single character or \"tab\"");
+		}
+		String source = args[a + 4];
+		String target = args.length - a > 5 ? args[a + 5] : source;
+
+		DateColumnReformatter reformatter = new DateColumnReformatter(column, delimiter, source, target, header);
+		Stats stats = reformatter.reformat(input, output);
+		System.out.println(stats);
+	}
+}
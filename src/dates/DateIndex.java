@@ -0,0 +1,495 @@
+package dates;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TimeZone;
+import java.util.function.LongConsumer;
+
+/**
+ * A sorted multiset of epoch millisecond timestamps held off the Java heap,
+ * for answering "how many" and "which" events fall between two instants
+ * without keeping a <code>Date</code> or <code>Calendar</code> per event.
+ * Epoch days can be indexed too, as <code>day * DateUtilities.DAY_UNITS</code>;
+ * they compress to a byte or two each.
+ * <P>
+ * Values are kept in blocks of <code>BLOCK_SIZE</code>, each delta encoded
+ * with <code>DateCodec.putDeltas</code> into large direct buffers, with the
+ * first and last value, the position and the running count of every block in
+ * a direct index buffer. Counting a range takes two binary searches and at
+ * most two block decodes; a scan decodes only the blocks it overlaps. The heap
+ * holds only a small tail of recent values and a bounded buffer of late ones.
+ * <P>
+ * Appends need not be in order, but in-order appends are cheapest. A value
+ * older than the newest one is buffered and merged into the blocks, rewriting
+ * only those from the oldest buffered value on, once enough have built up.
+ * <P>
+ * An index is not thread-safe, not even for queries alone, which reuse a
+ * decode buffer; confine it to one thread or guard it with a lock.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateIndex implements AutoCloseable {
+	/** The number of values per compressed block. */
+	public static final int BLOCK_SIZE = 128;
+
+	private static final int SEGMENT_BYTES = 1 << 26;	// also the stride of block offsets
+	private static final int FIRST_SEGMENT_BYTES = 1 << 16;
+	private static final int LATE_CAPACITY = 1 << 16;
+
+	// per-block entry in the index buffer
+	private static final int MIN = 0;
+	private static final int MAX = 8;
+	private static final int OFFSET = 16;
+	private static final int RANK = 24;	// the number of values in earlier blocks
+	private static final int COUNT = 32;
+	private static final int LENGTH = 36;
+	private static final int ENTRY_BYTES = 40;
+
+	private final List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+	private int segmentPosition = SEGMENT_BYTES;
+	private ByteBuffer entries = ByteBuffer.allocateDirect(ENTRY_BYTES * 64);
+	private int blocks;
+	private long blockValues;
+	private long liveBytes;
+	private long deadBytes;
+
+	private final long[] tail = new long[BLOCK_SIZE];	// in order, all >= the last block
+	private int tailCount;
+	private long[] late = new long[64];	// older than the newest value when added
+	private int lateCount;
+	private boolean lateSorted = true;
+	private final long[] scratch = new long[BLOCK_SIZE];
+	private boolean closed;
+
+	/** Create an empty index. */
+	public DateIndex() {
+	}
+
+	/**
+	 * Add a timestamp.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @throws IllegalStateException if the index has been closed
+	 */
+	public void add(long epochMillis) throws IllegalStateException {
+		checkOpen();
+		if(epochMillis < newest()) {
+			if(lateCount == late.length) {
+				if(lateCount == LATE_CAPACITY) {
+					mergeLate();
+				} else {
+					late = Arrays.copyOf(late, late.length * 2);
+				}
+			}
+			late[lateCount++] = epochMillis;
+			lateSorted = false;
+			return;
+		}
+		tail[tailCount++] = epochMillis;
+		if(tailCount == BLOCK_SIZE) {
+			writeBlock(tail, 0, BLOCK_SIZE);
+			tailCount = 0;
+		}
+	}
+
+	/**
+	 * Add a batch of timestamps. The batch is sorted first, so an unordered
+	 * batch costs no more than an ordered one.
+	 * @param millis - epoch milliseconds
+	 * @param offset - the index of the first value to add
+	 * @param length - the number of values to add
+	 * @throws IllegalArgumentException if offset or length is out of range
+	 * @throws IllegalStateException if the index has been closed
+	 */
+	public void addAll(long[] millis, int offset, int length) throws IllegalArgumentException, IllegalStateException {
+		if(offset < 0 || length < 0 || offset + length > millis.length || offset + length < 0) {
+			throw new IllegalArgumentException("Error: offset or length out of range");
+		}
+		long[] sorted = Arrays.copyOfRange(millis, offset, offset + length);
+		Arrays.sort(sorted);
+		for(long m : sorted) add(m);
+	}
+
+	/** Returns the number of timestamps in the index. */
+	public long size() {
+		return blockValues + tailCount + lateCount;
+	}
+
+	/**
+	 * Returns the earliest timestamp.
+	 * @throws NoSuchElementException if the index is empty
+	 */
+	public long getFirst() throws NoSuchElementException {
+		if(size() == 0) throw new NoSuchElementException("Error: the index is empty");
+		sortLate();
+		long first = blocks > 0 ? entryLong(0, MIN) : tailCount > 0 ? tail[0] : Long.MAX_VALUE;
+		return lateCount > 0 ? Math.min(first, late[0]) : first;
+	}
+
+	/**
+	 * Returns the latest timestamp.
+	 * @throws NoSuchElementException if the index is empty
+	 */
+	public long getLast() throws NoSuchElementException {
+		if(size() == 0) throw new NoSuchElementException("Error: the index is empty");
+		return newest();
+	}
+
+	/**
+	 * Count the timestamps t with from &lt;= t &lt; to.
+	 * @param from - the start of the range, inclusive
+	 * @param to - the end of the range, exclusive
+	 * @return the number of timestamps in the range, or 0 if to &lt;= from
+	 */
+	public long count(long from, long to) {
+		checkOpen();
+		if(to <= from) return 0;
+		sortLate();
+		return countBelow(to) - countBelow(from);
+	}
+
+	/**
+	 * Visit the timestamps t with from &lt;= t &lt; to in ascending order.
+	 * The action must not modify the index.
+	 * @param from - the start of the range, inclusive
+	 * @param to - the end of the range, exclusive
+	 * @param action - receives each timestamp
+	 * @return the number of timestamps visited
+	 */
+	public long scan(long from, long to, LongConsumer action) {
+		checkOpen();
+		if(to <= from) return 0;
+		sortLate();
+		// late values are interleaved with the block and tail values as they go
+		int l = lowerBound(late, lateCount, from);
+		int lateEnd = lowerBound(late, lateCount, to);
+		long visited = 0;
+		long[] values = new long[BLOCK_SIZE];
+		for(int b = firstBlockEndingAtOrAfter(from); b < blocks && entryLong(b, MIN) < to; b++) {
+			int n = decode(b, values);
+			for(int i = lowerBound(values, n, from); i < n && values[i] < to; i++) {
+				while(l < lateEnd && late[l] < values[i]) {
+					action.accept(late[l++]);
+					visited++;
+				}
+				action.accept(values[i]);
+				visited++;
+			}
+		}
+		System.arraycopy(tail, 0, values, 0, tailCount);
+		for(int i = lowerBound(values, tailCount, from); i < tailCount && values[i] < to; i++) {
+			while(l < lateEnd && late[l] < values[i]) {
+				action.accept(late[l++]);
+				visited++;
+			}
+			action.accept(values[i]);
+			visited++;
+		}
+		while(l < lateEnd) {
+			action.accept(late[l++]);
+			visited++;
+		}
+		return visited;
+	}
+
+	/**
+	 * Count the timestamps t with from &lt;= t &lt; to in each day, hour or
+	 * minute of local time. Element 0 is the bucket that contains from.
+	 * Around a DST change, local hours that occur twice share a bucket, and
+	 * values a fold places before from's bucket or after to's are counted in
+	 * the first or last bucket.
+	 * @param from - the start of the range, inclusive
+	 * @param to - the end of the range, exclusive
+	 * @param dateUtilitiesUnitField - DateUtilities.DAY_UNITS, HOUR_UNITS or MINUTE_UNITS
+	 * @param zone - the <code>TimeZone</code> buckets are aligned to
+	 * @return the count in each bucket
+	 * @throws IllegalArgumentException if the unit is not supported or there are too many buckets
+	 */
+	public long[] histogram(long from, long to, long dateUtilitiesUnitField, TimeZone zone)
+	throws IllegalArgumentException {
+		checkOpen();
+		long unit = dateUtilitiesUnitField;
+		if(unit != DateUtilities.DAY_UNITS && unit != DateUtilities.HOUR_UNITS && unit != DateUtilities.MINUTE_UNITS) {
+			throw new IllegalArgumentException("Error: unit must be DAY_UNITS, HOUR_UNITS or MINUTE_UNITS");
+		}
+		if(to <= from) return new long[0];
+		ZoneOffsetTable offsets = ZoneOffsetTable.forZone(zone);
+		long first = Math.floorDiv(offsets.toLocal(from), unit);
+		long buckets = Math.floorDiv(offsets.toLocal(to - 1), unit) - first + 1;
+		if(buckets > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Error: too many buckets");
+		long[] counts = new long[(int)Math.max(1, buckets)];
+		sortLate();
+
+		for(int b = firstBlockEndingAtOrAfter(from); b < blocks && entryLong(b, MIN) < to; b++) {
+			long min = entryLong(b, MIN);
+			long max = entryLong(b, MAX);
+			long bucket = Math.floorDiv(offsets.toLocal(min), unit);
+			// a block inside the range and inside one bucket is counted without decoding
+			if(min >= from && max < to && max - min < unit && bucket == Math.floorDiv(offsets.toLocal(max), unit)) {
+				counts[clamp(bucket - first, counts.length)] += entries.getInt(b * ENTRY_BYTES + COUNT);
+				continue;
+			}
+			int n = decode(b, scratch);
+			for(int i = lowerBound(scratch, n, from); i < n && scratch[i] < to; i++) {
+				counts[clamp(Math.floorDiv(offsets.toLocal(scratch[i]), unit) - first, counts.length)]++;
+			}
+		}
+		for(int i = lowerBound(tail, tailCount, from); i < tailCount && tail[i] < to; i++) {
+			counts[clamp(Math.floorDiv(offsets.toLocal(tail[i]), unit) - first, counts.length)]++;
+		}
+		for(int i = lowerBound(late, lateCount, from); i < lateCount && late[i] < to; i++) {
+			counts[clamp(Math.floorDiv(offsets.toLocal(late[i]), unit) - first, counts.length)]++;
+		}
+		return counts;
+	}
+
+	/**
+	 * Merge buffered out-of-order values into the compressed blocks now
+	 * rather than when the buffer fills.
+	 * @throws IllegalStateException if the index has been closed
+	 */
+	public void flush() throws IllegalStateException {
+		checkOpen();
+		if(lateCount > 0) mergeLate();
+	}
+
+	/** Returns the number of bytes held off the heap, including space freed by merges but not yet reclaimed. */
+	public long getOffHeapBytes() {
+		long bytes = entries.capacity();
+		for(ByteBuffer segment : segments) bytes += segment.capacity();
+		return bytes;
+	}
+
+	/** Returns the number of compressed bytes holding live values. */
+	public long getCompressedBytes() {
+		return liveBytes;
+	}
+
+	/**
+	 * Release the buffers. Direct memory is returned when the buffers are
+	 * collected; the index cannot be used afterwards.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		segments.clear();
+		entries = ByteBuffer.allocate(0);
+		blocks = 0;
+		blockValues = 0;
+		tailCount = 0;
+		lateCount = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "DateIndex[size=" + size() + ", blocks=" + blocks + ", compressedBytes=" + liveBytes
+			+ ", offHeapBytes=" + getOffHeapBytes() + "]";
+	}
+
+	private void checkOpen() throws IllegalStateException {
+		if(closed) throw new IllegalStateException("Error: the index has been closed");
+	}
+
+	// the largest value appended in order; late values are all smaller
+	private long newest() {
+		if(tailCount > 0) return tail[tailCount - 1];
+		if(blocks > 0) return entryLong(blocks - 1, MAX);
+		return Long.MIN_VALUE;
+	}
+
+	private long countBelow(long x) {
+		long n;
+		int b = firstBlockEndingAtOrAfter(x);
+		if(b == blocks) {
+			n = blockValues + lowerBound(tail, tailCount, x);
+		} else {
+			n = entryLong(b, RANK);
+			if(entryLong(b, MIN) < x) n += lowerBound(scratch, decode(b, scratch), x);
+		}
+		return n + lowerBound(late, lateCount, x);
+	}
+
+	// the first block whose last value is >= x, or blocks if there is none
+	private int firstBlockEndingAtOrAfter(long x) {
+		int lo = 0;
+		int hi = blocks;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(entryLong(mid, MAX) < x) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	// the first index i in a[0, n) with a[i] >= x
+	private static int lowerBound(long[] a, int n, long x) {
+		int lo = 0;
+		int hi = n;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(a[mid] < x) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	private static int clamp(long i, int length) {
+		return (int)Math.max(0, Math.min(length - 1, i));
+	}
+
+	private void sortLate() {
+		if(!lateSorted) {
+			Arrays.sort(late, 0, lateCount);
+			lateSorted = true;
+		}
+	}
+
+	private long entryLong(int block, int field) {
+		return entries.getLong(block * ENTRY_BYTES + field);
+	}
+
+	private int decode(int block, long[] dest) {
+		long offset = entryLong(block, OFFSET);
+		ByteBuffer segment = segments.get((int)(offset / SEGMENT_BYTES));
+		segment.position((int)(offset % SEGMENT_BYTES));
+		return DateCodec.getDeltas(segment, dest, 0);
+	}
+
+	/*
+	 * Compresses sorted values into a new block at the end. Their first value
+	 * must not be less than the last value of the previous block.
+	 */
+	private void writeBlock(long[] values, int from, int n) {
+		ByteBuffer segment = reserve(DateCodec.maxDeltaBytes(n));
+		segment.position(segmentPosition);
+		DateCodec.putDeltas(segment, values, from, n);
+		int length = segment.position() - segmentPosition;
+
+		if(entries.capacity() < (blocks + 1) * ENTRY_BYTES) {
+			if(entries.capacity() > Integer.MAX_VALUE / 2) throw new IllegalStateException("Error: the index is full");
+			ByteBuffer grown = ByteBuffer.allocateDirect(entries.capacity() * 2);
+			entries.clear();
+			grown.put(entries);
+			entries = grown;
+		}
+		int e = blocks * ENTRY_BYTES;
+		entries.putLong(e + MIN, values[from]);
+		entries.putLong(e + MAX, values[from + n - 1]);
+		entries.putLong(e + OFFSET, (long)(segments.size() - 1) * SEGMENT_BYTES + segmentPosition);
+		entries.putLong(e + RANK, blockValues);
+		entries.putInt(e + COUNT, n);
+		entries.putInt(e + LENGTH, length);
+		segmentPosition += length;
+		blocks++;
+		blockValues += n;
+		liveBytes += length;
+	}
+
+	/*
+	 * Merges the late values with every block that ends after the oldest of
+	 * them, and with the tail. The merged run is written as new blocks after
+	 * the existing ones, whose entries then replace the old ones; the old
+	 * blocks' bytes are left behind until enough pile up to be worth copying
+	 * the live blocks into fresh segments.
+	 */
+	private void mergeLate() {
+		sortLate();
+		// late values are all below the newest value, so late[0] + 1 cannot overflow
+		int firstOld = firstBlockEndingAtOrAfter(late[0] + 1);
+		int oldBlocks = blocks;
+		long[] pending = new long[tailCount];
+		System.arraycopy(tail, 0, pending, 0, tailCount);
+		int pendingCount = tailCount;
+		tailCount = 0;
+
+		// entries for the merged run are appended after the old ones for now
+		blockValues = firstOld == oldBlocks ? blockValues : entryLong(firstOld, RANK);
+		long freed = 0;
+		long[] out = new long[BLOCK_SIZE];
+		int outCount = 0;
+		long[] values = new long[BLOCK_SIZE];
+		int l = 0;
+		for(int b = firstOld; b <= oldBlocks; b++) {
+			int n;
+			if(b < oldBlocks) {
+				n = decode(b, values);
+				freed += entries.getInt(b * ENTRY_BYTES + LENGTH);
+			} else {
+				values = pending;
+				n = pendingCount;
+			}
+			for(int i = 0; i < n || (b == oldBlocks && l < lateCount); ) {
+				long v;
+				if(i < n && (l >= lateCount || values[i] <= late[l])) v = values[i++];
+				else v = late[l++];
+				out[outCount++] = v;
+				if(outCount == BLOCK_SIZE) {
+					writeBlock(out, 0, BLOCK_SIZE);
+					outCount = 0;
+				}
+			}
+		}
+		System.arraycopy(out, 0, tail, 0, outCount);
+		tailCount = outCount;
+		lateCount = 0;
+
+		// move the new entries down over the replaced ones
+		int written = blocks - oldBlocks;
+		ByteBuffer src = entries.duplicate();
+		src.limit((oldBlocks + written) * ENTRY_BYTES).position(oldBlocks * ENTRY_BYTES);
+		ByteBuffer dst = entries.duplicate();
+		dst.position(firstOld * ENTRY_BYTES);
+		dst.put(src);
+		blocks = firstOld + written;
+		liveBytes -= freed;
+		deadBytes += freed;
+		if(deadBytes > liveBytes) compact();
+	}
+
+	/*
+	 * Returns the last segment with room for the given bytes at
+	 * segmentPosition. The last segment starts small and doubles, by copying,
+	 * up to SEGMENT_BYTES, so a small index does not hold a whole segment.
+	 */
+	private ByteBuffer reserve(int bytes) {
+		if(segmentPosition + bytes > SEGMENT_BYTES) {
+			segments.add(ByteBuffer.allocateDirect(FIRST_SEGMENT_BYTES));
+			segmentPosition = 0;
+		}
+		int last = segments.size() - 1;
+		ByteBuffer segment = segments.get(last);
+		if(segment.capacity() - segmentPosition < bytes) {
+			int capacity = segment.capacity();
+			while(capacity - segmentPosition < bytes) capacity *= 2;
+			ByteBuffer grown = ByteBuffer.allocateDirect(Math.min(capacity, SEGMENT_BYTES));
+			segment.clear().limit(segmentPosition);
+			grown.put(segment);
+			segments.set(last, grown);
+			segment = grown;
+		}
+		return segment;
+	}
+
+	// copies the live blocks into fresh segments, leaving the freed bytes behind
+	private void compact() {
+		List<ByteBuffer> old = new ArrayList<ByteBuffer>(segments);
+		segments.clear();
+		segmentPosition = SEGMENT_BYTES;
+		for(int b = 0; b < blocks; b++) {
+			int e = b * ENTRY_BYTES;
+			int length = entries.getInt(e + LENGTH);
+			long offset = entries.getLong(e + OFFSET);
+			ByteBuffer dst = reserve(length);
+			ByteBuffer src = old.get((int)(offset / SEGMENT_BYTES)).duplicate();
+			src.limit((int)(offset % SEGMENT_BYTES) + length).position((int)(offset % SEGMENT_BYTES));
+			dst.position(segmentPosition);
+			dst.put(src);
+			entries.putLong(e + OFFSET, (long)(segments.size() - 1) * SEGMENT_BYTES + segmentPosition);
+			segmentPosition += length;
+		}
+		deadBytes = 0;
+	}
+}
@@ -0,0 +1,440 @@
+package dates;
+
+import java.lang.management.ManagementFactory;
+import java.text.DateFormat;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Optional instrumentation of the <code>DateUtilities</code> entry points:
+ * call counts and latency histograms per operation, the styles
+ * <code>toDate</code> tried without success, the hit rate of the shared
+ * formatter registry, and which patterns and locales are used most.
+ * <P>
+ * Recording is off by default. While it is off each call costs one volatile
+ * read. Turn it on with <code>setEnabled(true)</code>, over JMX, or by starting
+ * the JVM with <code>-Ddates.metrics.enabled=true</code>, which also registers
+ * the MBean. Read the figures with <code>snapshot()</code> or through the
+ * <code>dates:type=DateMetrics</code> MBean.
+ * <P>
+ * Latencies are kept in power-of-two nanosecond buckets, so percentiles are
+ * accurate to within a factor of two. An overload that delegates to another
+ * is counted once, under the operation it delegates to.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateMetrics {
+	/** System property that turns recording on at startup and registers the MBean. */
+	public static final String ENABLED_PROPERTY = "dates.metrics.enabled";
+
+	/** The name the MBean is registered under. */
+	public static final String OBJECT_NAME = "dates:type=DateMetrics";
+
+	/** The <code>DateUtilities</code> operations that are timed. */
+	public static enum Operation {
+		NOW, TO_STRING, TO_STRING_PATTERN, TO_STRING_STYLE, FORMAT, FORMAT_BUFFER, TO_DATE,
+		TO_EPOCH_MILLIS, DATE_DIFF, DATE_DIFF_BULK
+	}
+
+	// bucket b counts latencies below 2^b ns that did not fit an earlier bucket
+	private static final int BUCKETS = 40;
+	private static final int MAX_KEYS = 256;
+	private static final String OTHER = "(other)";
+	private static final long OFF = Long.MIN_VALUE;
+	private static final Operation[] OPERATIONS = Operation.values();
+	private static final int[] STYLES = { DateFormat.FULL, DateFormat.LONG, DateFormat.MEDIUM, DateFormat.SHORT };
+
+	private static volatile boolean enabled;
+	private static final LongAdder[][] latencies = new LongAdder[OPERATIONS.length][BUCKETS];
+	private static final LongAdder[] totalNanos = new LongAdder[OPERATIONS.length];
+	private static final LongAdder[] styleFailures = new LongAdder[STYLES.length];
+	private static final LongAdder unparseable = new LongAdder();
+	private static final ConcurrentHashMap<String, LongAdder> patterns = new ConcurrentHashMap<String, LongAdder>();
+	private static final ConcurrentHashMap<String, LongAdder> locales = new ConcurrentHashMap<String, LongAdder>();
+	private static final LongAdder[] registryBase = { new LongAdder(), new LongAdder() };
+
+	static {
+		for(int op = 0; op < OPERATIONS.length; op++) {
+			totalNanos[op] = new LongAdder();
+			for(int b = 0; b < BUCKETS; b++) latencies[op][b] = new LongAdder();
+		}
+		for(int i = 0; i < STYLES.length; i++) styleFailures[i] = new LongAdder();
+		if(Boolean.getBoolean(ENABLED_PROPERTY)) {
+			setEnabled(true);
+			try {
+				registerMBean();
+			} catch(IllegalStateException e) {
+				// already registered by another class loader; recording still works
+			}
+		}
+	}
+
+	// Prohibit instantiation
+	private DateMetrics() {}
+
+	/** Returns true if calls are being recorded. */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Start or stop recording calls. Figures recorded so far are kept.
+	 * @param on - true to record calls
+	 */
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	/** Discards everything recorded so far, including the registry hit and miss counts. */
+	public static void reset() {
+		for(int op = 0; op < OPERATIONS.length; op++) {
+			totalNanos[op].reset();
+			for(int b = 0; b < BUCKETS; b++) latencies[op][b].reset();
+		}
+		for(LongAdder a : styleFailures) a.reset();
+		unparseable.reset();
+		patterns.clear();
+		locales.clear();
+		// the registry's own counters are not ours to reset, so remember where they stood
+		FormatterRegistry registry = FormatterRegistry.getDefault();
+		registryBase[0].reset();
+		registryBase[0].add(registry.getHitCount());
+		registryBase[1].reset();
+		registryBase[1].add(registry.getMissCount());
+	}
+
+	/** Returns a copy of everything recorded so far. */
+	public static Snapshot snapshot() {
+		return new Snapshot();
+	}
+
+	/**
+	 * Register the MBean with the platform MBean server under <code>OBJECT_NAME</code>.
+	 * @throws IllegalStateException if it is already registered or cannot be
+	 */
+	public static void registerMBean() throws IllegalStateException {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+		} catch(JMException e) {
+			throw new IllegalStateException("Error: cannot register " + OBJECT_NAME, e);
+		}
+	}
+
+	/** Unregister the MBean if it is registered. */
+	public static void unregisterMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if(server.isRegistered(name)) server.unregisterMBean(name);
+		} catch(JMException e) {
+			throw new IllegalStateException("Error: cannot unregister " + OBJECT_NAME, e);
+		}
+	}
+
+	/*
+	 * Returns the start time of a call, or OFF if recording is off. Pass the
+	 * result to stop() when the call returns.
+	 */
+	static long start() {
+		return enabled ? System.nanoTime() : OFF;
+	}
+
+	static void stop(Operation op, long start) {
+		if(start == OFF) return;
+		record(op, System.nanoTime() - start);
+	}
+
+	/*
+	 * Records a call along with its pattern and locale; either may be null,
+	 * and a null locale means the default format locale.
+	 */
+	static void stop(Operation op, long start, String pattern, Locale aLocale) {
+		if(start == OFF) return;
+		record(op, System.nanoTime() - start);
+		if(pattern != null) count(patterns, pattern);
+		count(locales, (aLocale == null ? Locale.getDefault(Locale.Category.FORMAT) : aLocale).toString());
+	}
+
+	/* Records that toDate tried a style and it did not match. */
+	static void styleFailed(int style) {
+		if(!enabled) return;
+		for(int i = 0; i < STYLES.length; i++) {
+			if(STYLES[i] == style) styleFailures[i].increment();
+		}
+	}
+
+	/* Records that no style could parse a toDate string. */
+	static void unparseable() {
+		if(enabled) unparseable.increment();
+	}
+
+	private static void record(Operation op, long nanos) {
+		int o = op.ordinal();
+		totalNanos[o].add(nanos);
+		int b = nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+		latencies[o][b].increment();
+	}
+
+	private static void count(ConcurrentHashMap<String, LongAdder> counts, String key) {
+		LongAdder a = counts.get(key);
+		if(a == null) {
+			// keep the map bounded when callers build patterns on the fly
+			if(counts.size() >= MAX_KEYS) key = OTHER;
+			LongAdder created = new LongAdder();
+			a = counts.putIfAbsent(key, created);
+			if(a == null) a = created;
+		}
+		a.increment();
+	}
+
+	private static String styleName(int style) {
+		switch(style) {
+			case DateFormat.FULL: return "FULL";
+			case DateFormat.LONG: return "LONG";
+			case DateFormat.MEDIUM: return "MEDIUM";
+			default: return "SHORT";
+		}
+	}
+
+	/**
+	 * An immutable copy of the recorded figures. The counters are read one at a
+	 * time while calls continue, so a snapshot taken under load may be off by
+	 * the calls that were in flight.
+	 */
+	public static final class Snapshot {
+		private final long[][] histograms = new long[OPERATIONS.length][BUCKETS];
+		private final long[] counts = new long[OPERATIONS.length];
+		private final long[] nanos = new long[OPERATIONS.length];
+		private final long[] failures = new long[STYLES.length];
+		private final long unparseableCount;
+		private final long hits;
+		private final long misses;
+		private final Map<String, Long> patternCounts;
+		private final Map<String, Long> localeCounts;
+
+		private Snapshot() {
+			for(int op = 0; op < OPERATIONS.length; op++) {
+				for(int b = 0; b < BUCKETS; b++) {
+					histograms[op][b] = latencies[op][b].sum();
+					counts[op] += histograms[op][b];
+				}
+				nanos[op] = totalNanos[op].sum();
+			}
+			for(int i = 0; i < STYLES.length; i++) failures[i] = styleFailures[i].sum();
+			this.unparseableCount = unparseable.sum();
+			FormatterRegistry registry = FormatterRegistry.getDefault();
+			this.hits = Math.max(0, registry.getHitCount() - registryBase[0].sum());
+			this.misses = Math.max(0, registry.getMissCount() - registryBase[1].sum());
+			this.patternCounts = sorted(patterns);
+			this.localeCounts = sorted(locales);
+		}
+
+		/** Returns the number of calls of an operation. */
+		public long getCount(Operation op) {
+			return counts[op.ordinal()];
+		}
+
+		/** Returns the total time spent in an operation in nanoseconds. */
+		public long getTotalNanos(Operation op) {
+			return nanos[op.ordinal()];
+		}
+
+		/** Returns the mean latency of an operation in nanoseconds, or 0 if it was not called. */
+		public long getMeanNanos(Operation op) {
+			long n = counts[op.ordinal()];
+			return n == 0 ? 0 : nanos[op.ordinal()] / n;
+		}
+
+		/**
+		 * Returns an upper bound on a latency percentile of an operation.
+		 * @param op - the operation
+		 * @param p - the percentile as a fraction, e.g. 0.99
+		 * @return nanoseconds, accurate to within a factor of two, or 0 if it was not called
+		 */
+		public long getPercentileNanos(Operation op, double p) {
+			long[] h = histograms[op.ordinal()];
+			long n = counts[op.ordinal()];
+			if(n == 0) return 0;
+			long rank = (long)Math.ceil(p * n);
+			long seen = 0;
+			for(int b = 0; b < BUCKETS; b++) {
+				seen += h[b];
+				if(seen >= rank) return 1L << b;
+			}
+			return 1L << (BUCKETS - 1);
+		}
+
+		/**
+		 * Returns the latency histogram of an operation. Element b counts the
+		 * calls that took less than 2^b ns and at least 2^(b-1) ns.
+		 */
+		public long[] getHistogram(Operation op) {
+			return histograms[op.ordinal()].clone();
+		}
+
+		/**
+		 * Returns how often toDate tried a style and it did not match.
+		 * @param style - a <code>DateFormat</code> style field
+		 */
+		public long getStyleFailureCount(int style) {
+			for(int i = 0; i < STYLES.length; i++) {
+				if(STYLES[i] == style) return failures[i];
+			}
+			throw new IllegalArgumentException("Error: unknown style " + style);
+		}
+
+		/** Returns the number of toDate or parseDate calls no style could parse. */
+		public long getUnparseableCount() {
+			return unparseableCount;
+		}
+
+		/** Returns the number of formatter registry lookups that found a compiled format. */
+		public long getCacheHitCount() {
+			return hits;
+		}
+
+		/** Returns the number of formatter registry lookups that had to compile a format. */
+		public long getCacheMissCount() {
+			return misses;
+		}
+
+		/** Returns the fraction of formatter registry lookups that were hits, or 0 if there were none. */
+		public double getCacheHitRate() {
+			return hits + misses == 0 ? 0 : (double)hits / (hits + misses);
+		}
+
+		/** Returns the number of calls per pattern, busiest first. */
+		public Map<String, Long> getPatternCounts() {
+			return patternCounts;
+		}
+
+		/** Returns the number of calls per locale, busiest first. */
+		public Map<String, Long> getLocaleCounts() {
+			return localeCounts;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%-18s %12s %10s %10s %10s%n", "operation", "calls", "mean ns", "p50 ns", "p99 ns"));
+			for(Operation op : OPERATIONS) {
+				if(getCount(op) == 0) continue;
+				sb.append(String.format("%-18s %12d %10d %10d %10d%n", op, getCount(op), getMeanNanos(op),
+					getPercentileNanos(op, 0.50), getPercentileNanos(op, 0.99)));
+			}
+			sb.append("style failures:");
+			for(int i = 0; i < STYLES.length; i++) sb.append(' ').append(styleName(STYLES[i])).append('=').append(failures[i]);
+			sb.append(", unparseable=").append(unparseableCount).append(String.format("%n"));
+			sb.append(String.format("registry hit rate %.4f (%d hits, %d misses)%n", getCacheHitRate(), hits, misses));
+			sb.append("patterns: ").append(patternCounts).append(String.format("%n"));
+			sb.append("locales: ").append(localeCounts);
+			return sb.toString();
+		}
+
+		private static Map<String, Long> sorted(ConcurrentHashMap<String, LongAdder> counts) {
+			List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>();
+			for(Map.Entry<String, LongAdder> e : counts.entrySet()) {
+				entries.add(new AbstractMap.SimpleImmutableEntry<String, Long>(e.getKey(), e.getValue().sum()));
+			}
+			Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+				@Override
+				public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+					return Long.compare(b.getValue(), a.getValue());
+				}
+			});
+			Map<String, Long> map = new LinkedHashMap<String, Long>();
+			for(Map.Entry<String, Long> e : entries) map.put(e.getKey(), e.getValue());
+			return Collections.unmodifiableMap(map);
+		}
+	}
+
+	/*
+	 * The MBean; every attribute is read from a fresh snapshot.
+	 */
+	private static final class Bean implements DateMetricsMXBean {
+		public boolean isEnabled() {
+			return DateMetrics.isEnabled();
+		}
+
+		public void setEnabled(boolean on) {
+			DateMetrics.setEnabled(on);
+		}
+
+		public Map<String, Long> getCallCounts() {
+			Snapshot s = snapshot();
+			Map<String, Long> map = new LinkedHashMap<String, Long>();
+			for(Operation op : OPERATIONS) map.put(op.name(), s.getCount(op));
+			return map;
+		}
+
+		public Map<String, Long> getMeanLatencyNanos() {
+			Snapshot s = snapshot();
+			Map<String, Long> map = new LinkedHashMap<String, Long>();
+			for(Operation op : OPERATIONS) map.put(op.name(), s.getMeanNanos(op));
+			return map;
+		}
+
+		public Map<String, Long> getMedianLatencyNanos() {
+			return percentiles(0.50);
+		}
+
+		public Map<String, Long> getP99LatencyNanos() {
+			return percentiles(0.99);
+		}
+
+		public Map<String, Long> getStyleFailureCounts() {
+			Snapshot s = snapshot();
+			Map<String, Long> map = new LinkedHashMap<String, Long>();
+			for(int style : STYLES) map.put(styleName(style), s.getStyleFailureCount(style));
+			return map;
+		}
+
+		public long getUnparseableCount() {
+			return snapshot().getUnparseableCount();
+		}
+
+		public double getCacheHitRate() {
+			return snapshot().getCacheHitRate();
+		}
+
+		public long getCacheHitCount() {
+			return snapshot().getCacheHitCount();
+		}
+
+		public long getCacheMissCount() {
+			return snapshot().getCacheMissCount();
+		}
+
+		public Map<String, Long> getPatternCounts() {
+			return snapshot().getPatternCounts();
+		}
+
+		public Map<String, Long> getLocaleCounts() {
+			return snapshot().getLocaleCounts();
+		}
+
+		public void reset() {
+			DateMetrics.reset();
+		}
+
+		private Map<String, Long> percentiles(double p) {
+			Snapshot s = snapshot();
+			Map<String, Long> map = new LinkedHashMap<String, Long>();
+			for(Operation op : OPERATIONS) map.put(op.name(), s.getPercentileNanos(op, p));
+			return map;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package dates;
+
+import java.util.Map;
+
+/**
+ * The JMX view of <code>DateMetrics</code>, registered as
+ * <code>dates:type=DateMetrics</code>. Maps are keyed by operation, style,
+ * pattern or locale name.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public interface DateMetricsMXBean {
+	/** Returns true if calls are being recorded. */
+	boolean isEnabled();
+
+	/** Start or stop recording calls. */
+	void setEnabled(boolean enabled);
+
+	/** Returns the number of calls per operation. */
+	Map<String, Long> getCallCounts();
+
+	/** Returns the mean latency per operation in nanoseconds. */
+	Map<String, Long> getMeanLatencyNanos();
+
+	/** Returns the median latency per operation in nanoseconds. */
+	Map<String, Long> getMedianLatencyNanos();
+
+	/** Returns the 99th percentile latency per operation in nanoseconds. */
+	Map<String, Long> getP99LatencyNanos();
+
+	/** Returns how often each style was tried by toDate and did not match. */
+	Map<String, Long> getStyleFailureCounts();
+
+	/** Returns the number of toDate or parseDate calls no style could parse. */
+	long getUnparseableCount();
+
+	/** Returns the fraction of formatter registry lookups that found a compiled format. */
+	double getCacheHitRate();
+
+	/** Returns the number of formatter registry lookups that found a compiled format. */
+	long getCacheHitCount();
+
+	/** Returns the number of formatter registry lookups that had to compile a format. */
+	long getCacheMissCount();
+
+	/** Returns the number of calls per pattern, busiest first. */
+	Map<String, Long> getPatternCounts();
+
+	/** Returns the number of calls per locale, busiest first. */
+	Map<String, Long> getLocaleCounts();
+
+	/** Discards everything recorded so far. */
+	void reset();
+}
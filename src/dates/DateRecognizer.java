@@ -0,0 +1,601 @@
+package dates;
+
+import java.util.Calendar;
+import java.util.EnumSet;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recognizes date strings in any of a configurable set of common formats
+ * without being told which one each string uses. The characters are read
+ * once: the leading run of characters decides which formats are possible, and
+ * the matching format then reads the fields by hand, with no
+ * <code>SimpleDateFormat</code> and no exceptions.
+ * <P>
+ * Values usually arrive in batches from a handful of feeds that each stick to
+ * one format, so the recognizer remembers the format that last succeeded for
+ * each named source and tries it first next time. Counters record how many
+ * values each format recognized, how many were not recognized, and how often
+ * the remembered format was right.
+ * <P>
+ * Dates are read in the proleptic Gregorian calendar. A value without a time
+ * zone is taken in the recognizer's zone. Recognizers are thread-safe.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateRecognizer {
+	/** The formats a recognizer can be configured with. */
+	public static enum Format {
+		/** 2010-12-01, 2010-12-01T23:30, 2010-12-01 23:30:00.123-05:00, ...Z */
+		ISO_8601,
+		/** Wed, 01 Dec 2010 23:30:00 GMT, 1 Dec 2010 23:30 -0500 */
+		RFC_1123,
+		/** 12/01/2010, 12/1/10 11:30 PM, 07/10/03 4:50 PM, CST */
+		US_SLASH,
+		/** Seconds since 1970-01-01T00:00Z, optionally with a fraction: 1291264200.5 */
+		EPOCH_SECONDS,
+		/** Milliseconds since 1970-01-01T00:00Z: 1291264200500 */
+		EPOCH_MILLIS
+	}
+
+	/** Stored in the output array by <code>parse</code> when a value is not recognized. */
+	public static final long UNRECOGNIZED = Long.MIN_VALUE;
+
+	/** The most sources whose format is remembered. */
+	static final int MAX_SOURCES = 4096;
+
+	// with both epoch formats enabled, integers at least this large are milliseconds
+	private static final long MILLIS_THRESHOLD = 100000000000L;
+
+	private static final String[] MONTHS = {"jan", "feb", "mar", "apr", "may", "jun",
+		"jul", "aug", "sep", "oct", "nov", "dec"};
+	private static final String[] WEEKDAYS = {"mon", "tue", "wed", "thu", "fri", "sat", "sun"};
+	// RFC 822 zone names and their offsets in minutes
+	private static final String[] ZONE_NAMES = {"gmt", "ut", "utc", "z", "est", "edt", "cst", "cdt",
+		"mst", "mdt", "pst", "pdt"};
+	private static final int[] ZONE_OFFSETS = {0, 0, 0, 0, -300, -240, -360, -300, -420, -360, -480, -420};
+	private static final int NO_ZONE = Integer.MIN_VALUE;
+
+	private final Format[] formats;
+	private final boolean[] enabled = new boolean[Format.values().length];
+	private final TimeZone zone;
+	private final ZoneOffsetTable offsets;
+	private final Map<String, Format> learned = new ConcurrentHashMap<String, Format>();
+	private final LongAdder[] counts = new LongAdder[Format.values().length];
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder learnedHits = new LongAdder();
+	private final LongAdder learnedMisses = new LongAdder();
+
+	/**
+	 * Create a recognizer for all formats in the default time zone.
+	 */
+	public DateRecognizer() {
+		this(TimeZone.getDefault(), Format.values());
+	}
+
+	/**
+	 * Create a recognizer for the specified formats.
+	 * @param zone - the <code>TimeZone</code> for values that do not name one
+	 * @param formats - the formats to recognize
+	 * @throws IllegalArgumentException if no format is given
+	 */
+	public DateRecognizer(TimeZone zone, Format... formats) throws IllegalArgumentException {
+		if(formats.length == 0) throw new IllegalArgumentException("Error: at least one format is required");
+		EnumSet<Format> set = EnumSet.noneOf(Format.class);
+		for(Format f : formats) set.add(f);
+		this.formats = set.toArray(new Format[set.size()]);
+		for(Format f : this.formats) enabled[f.ordinal()] = true;
+		for(int i = 0; i < counts.length; i++) counts[i] = new LongAdder();
+		this.zone = (TimeZone)zone.clone();
+		this.offsets = ZoneOffsetTable.forZone(this.zone);
+	}
+
+	/**
+	 * Recognize a date string.
+	 * @param text - a date string in one of the configured formats
+	 * @return epoch milliseconds
+	 * @throws IllegalArgumentException if the string is not in any configured format
+	 */
+	public long parse(CharSequence text) throws IllegalArgumentException {
+		return parse(null, text);
+	}
+
+	/**
+	 * Recognize a date string from a named source, trying the format that last
+	 * succeeded for that source first.
+	 * @param source - the name of the feed the value came from, or null
+	 * @param text - a date string in one of the configured formats
+	 * @return epoch milliseconds
+	 * @throws IllegalArgumentException if the string is not in any configured format
+	 */
+	public long parse(String source, CharSequence text) throws IllegalArgumentException {
+		long millis = recognize(source, text);
+		if(millis == UNRECOGNIZED) throw new IllegalArgumentException("Error: Unrecognized date: \"" + text + "\"");
+		return millis;
+	}
+
+	/**
+	 * Recognize a column of date strings from one source without throwing.
+	 * @param source - the name of the feed the values came from, or null
+	 * @param texts - date strings in the configured formats
+	 * @param out - receives epoch milliseconds, or UNRECOGNIZED
+	 * @return the number of values not recognized
+	 * @throws IllegalArgumentException if out is shorter than texts
+	 */
+	public int parse(String source, CharSequence[] texts, long[] out) throws IllegalArgumentException {
+		if(out.length < texts.length) throw new IllegalArgumentException("Error: out is shorter than the input");
+		int failed = 0;
+		for(int i = 0; i < texts.length; i++) {
+			out[i] = recognize(source, texts[i]);
+			if(out[i] == UNRECOGNIZED) failed++;
+		}
+		return failed;
+	}
+
+	/**
+	 * Returns the format that last succeeded for a source, or null.
+	 * @param source - the name of a feed
+	 */
+	public Format getLearnedFormat(String source) {
+		return learned.get(source);
+	}
+
+	/** Returns the number of values recognized in a format. */
+	public long getCount(Format format) {
+		return counts[format.ordinal()].sum();
+	}
+
+	/** Returns the number of values not recognized in any configured format. */
+	public long getFailureCount() {
+		return failures.sum();
+	}
+
+	/** Returns the number of values recognized by the format remembered for their source. */
+	public long getLearnedHitCount() {
+		return learnedHits.sum();
+	}
+
+	/** Returns the number of values whose source had a remembered format that did not match. */
+	public long getLearnedMissCount() {
+		return learnedMisses.sum();
+	}
+
+	/** Forgets the remembered formats and resets the counters. */
+	public void reset() {
+		learned.clear();
+		for(LongAdder a : counts) a.reset();
+		failures.reset();
+		learnedHits.reset();
+		learnedMisses.reset();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for(Format f : formats) sb.append(f).append('=').append(getCount(f)).append(", ");
+		return sb.append("unrecognized=").append(getFailureCount()).append(", learnedHits=")
+			.append(getLearnedHitCount()).append(", learnedMisses=").append(getLearnedMissCount()).toString();
+	}
+
+	long recognize(String source, CharSequence text) {
+		if(text == null) {
+			failures.increment();
+			return UNRECOGNIZED;
+		}
+		Format remembered = source == null ? null : learned.get(source);
+		if(remembered != null) {
+			long millis = match(remembered, text);
+			if(millis != UNRECOGNIZED) {
+				learnedHits.increment();
+				counts[remembered.ordinal()].increment();
+				return millis;
+			}
+			learnedMisses.increment();
+		}
+
+		int candidates = candidates(text);
+		for(Format f : formats) {
+			if(f == remembered || (candidates & (1 << f.ordinal())) == 0) continue;
+			long millis = match(f, text);
+			if(millis != UNRECOGNIZED) {
+				counts[f.ordinal()].increment();
+				if(source != null && (remembered != null || learned.size() < MAX_SOURCES)) {
+					learned.put(source, f);
+				}
+				return millis;
+			}
+		}
+		failures.increment();
+		return UNRECOGNIZED;
+	}
+
+	/*
+	 * Decides from the leading characters which formats could match: a word
+	 * can only start RFC 1123, a sign or a run of digits to the end only an
+	 * epoch number, four digits and a dash ISO 8601, and one or two digits and
+	 * a slash a US date. Returns a bit set of Format ordinals.
+	 */
+	private static int candidates(CharSequence s) {
+		int i = 0;
+		int end = s.length();
+		while(i < end && isSpace(s.charAt(i))) i++;
+		if(i == end) return 0;
+		char c = s.charAt(i);
+		if(isLetter(c)) return 1 << Format.RFC_1123.ordinal();
+		if(c == '-' || c == '+') return (1 << Format.EPOCH_SECONDS.ordinal()) | (1 << Format.EPOCH_MILLIS.ordinal());
+		int j = i;
+		while(j < end && isDigit(s.charAt(j))) j++;
+		if(j == i) return 0;
+		if(j == end || s.charAt(j) == '.' || isSpace(s.charAt(j))) {
+			return (1 << Format.EPOCH_SECONDS.ordinal()) | (1 << Format.EPOCH_MILLIS.ordinal())
+				| (j - i <= 2 ? 1 << Format.RFC_1123.ordinal() : 0);
+		}
+		if(s.charAt(j) == '-' && j - i == 4) return 1 << Format.ISO_8601.ordinal();
+		if(s.charAt(j) == '/' && j - i <= 2) return 1 << Format.US_SLASH.ordinal();
+		return 0;
+	}
+
+	private long match(Format f, CharSequence text) {
+		Cursor c = new Cursor(text);
+		c.skipSpaces();
+		long millis;
+		switch(f) {
+			case ISO_8601: millis = iso(c); break;
+			case RFC_1123: millis = rfc1123(c); break;
+			case US_SLASH: millis = usSlash(c); break;
+			case EPOCH_SECONDS: millis = epoch(c, true); break;
+			default: millis = epoch(c, false); break;
+		}
+		if(millis == UNRECOGNIZED) return UNRECOGNIZED;
+		c.skipSpaces();
+		return c.atEnd() ? millis : UNRECOGNIZED;
+	}
+
+	// yyyy-MM-dd[(T| )HH:mm[:ss[(.|,)fraction]][Z|(+|-)HH[[:]mm]]]
+	private long iso(Cursor c) {
+		int year = c.number(4, 4);
+		if(year < 0 || !c.expect('-')) return UNRECOGNIZED;
+		int month = c.number(2, 2);
+		if(month < 0 || !c.expect('-')) return UNRECOGNIZED;
+		int day = c.number(2, 2);
+		if(day < 0) return UNRECOGNIZED;
+		if(c.atEnd() || isSpace(c.peek()) && !isDigit(c.peek(1))) {
+			return toMillis(year, month, day, 0, 0, 0, 0, NO_ZONE);
+		}
+		if(!(c.expect('T') || c.expect('t') || c.expect(' '))) return UNRECOGNIZED;
+		int hour = c.number(2, 2);
+		if(hour < 0 || !c.expect(':')) return UNRECOGNIZED;
+		int minute = c.number(2, 2);
+		if(minute < 0) return UNRECOGNIZED;
+		int second = 0;
+		int milli = 0;
+		if(c.expect(':')) {
+			second = c.number(2, 2);
+			if(second < 0) return UNRECOGNIZED;
+			if(c.expect('.') || c.expect(',')) {
+				milli = c.fraction();
+				if(milli < 0) return UNRECOGNIZED;
+			}
+		}
+		int offset = NO_ZONE;
+		if(c.expect('Z') || c.expect('z')) {
+			offset = 0;
+		} else if(c.peek() == '+' || c.peek() == '-') {
+			offset = c.numericOffset();
+			if(offset == NO_ZONE) return UNRECOGNIZED;
+		}
+		return toMillis(year, month, day, hour, minute, second, milli, offset);
+	}
+
+	// [EEE,] d MMM yyyy HH:mm[:ss] zone
+	private long rfc1123(Cursor c) {
+		if(isLetter(c.peek())) {
+			if(c.name(WEEKDAYS) < 0 || !c.expect(',')) return UNRECOGNIZED;
+			c.skipSpaces();
+		}
+		int day = c.number(1, 2);
+		if(day < 0 || !c.spaces()) return UNRECOGNIZED;
+		int month = c.name(MONTHS) + 1;
+		if(month < 1 || !c.spaces()) return UNRECOGNIZED;
+		int start = c.pos;
+		int year = c.number(2, 4);
+		int digits = c.pos - start;
+		if(year < 0 || digits == 3 || !c.spaces()) return UNRECOGNIZED;
+		if(digits == 2) year += year < 50 ? 2000 : 1900;	// RFC 2822 two-digit years
+		int hour = c.number(2, 2);
+		if(hour < 0 || !c.expect(':')) return UNRECOGNIZED;
+		int minute = c.number(2, 2);
+		if(minute < 0) return UNRECOGNIZED;
+		int second = 0;
+		if(c.expect(':')) {
+			second = c.number(2, 2);
+			if(second < 0) return UNRECOGNIZED;
+		}
+		if(!c.spaces()) return UNRECOGNIZED;
+		int offset = c.zone();
+		if(offset == NO_ZONE) return UNRECOGNIZED;
+		return toMillis(year, month, day, hour, minute, second, 0, offset);
+	}
+
+	// M/d/yy[yy][ h:mm[:ss[.SSS]][ AM|PM]][[,] zone]
+	private long usSlash(Cursor c) {
+		int month = c.number(1, 2);
+		if(month < 0 || !c.expect('/')) return UNRECOGNIZED;
+		int day = c.number(1, 2);
+		if(day < 0 || !c.expect('/')) return UNRECOGNIZED;
+		int start = c.pos;
+		int year = c.number(2, 4);
+		if(year < 0 || c.pos - start == 3) return UNRECOGNIZED;
+		if(c.pos - start == 2) year = twoDigitYear(year);
+		c.skipSpaces();
+		if(c.atEnd()) return toMillis(year, month, day, 0, 0, 0, 0, NO_ZONE);
+
+		int hour = c.number(1, 2);
+		if(hour < 0 || !c.expect(':')) return UNRECOGNIZED;
+		int minute = c.number(2, 2);
+		if(minute < 0) return UNRECOGNIZED;
+		int second = 0;
+		int milli = 0;
+		if(c.expect(':')) {
+			second = c.number(2, 2);
+			if(second < 0) return UNRECOGNIZED;
+			if(c.expect('.')) {
+				milli = c.fraction();
+				if(milli < 0) return UNRECOGNIZED;
+			}
+		}
+		c.skipSpaces();
+		int marker = c.amPm();
+		if(marker >= 0) {
+			if(hour < 1 || hour > 12) return UNRECOGNIZED;
+			hour = hour % 12 + marker * 12;
+		}
+		c.skipSpaces();
+		int offset = NO_ZONE;
+		if(c.expect(',')) {
+			c.skipSpaces();
+			offset = c.zone();
+			if(offset == NO_ZONE) return UNRECOGNIZED;
+		} else if(!c.atEnd()) {
+			offset = c.zone();
+			if(offset == NO_ZONE) return UNRECOGNIZED;
+		}
+		return toMillis(year, month, day, hour, minute, second, milli, offset);
+	}
+
+	private long epoch(Cursor c, boolean seconds) {
+		boolean negative = c.expect('-');
+		if(!negative) c.expect('+');
+		int start = c.pos;
+		long value = 0;
+		while(!c.atEnd() && isDigit(c.peek())) {
+			if(c.pos - start >= 18) return UNRECOGNIZED;
+			value = value * 10 + (c.peek() - '0');
+			c.pos++;
+		}
+		if(c.pos == start) return UNRECOGNIZED;
+		int fraction = 0;
+		boolean hasFraction = c.expect('.');
+		if(hasFraction) {
+			if(!seconds) return UNRECOGNIZED;
+			fraction = c.fraction();
+			if(fraction < 0) return UNRECOGNIZED;
+		}
+
+		// when both units are enabled the magnitude decides between them
+		boolean both = enabled[Format.EPOCH_SECONDS.ordinal()] && enabled[Format.EPOCH_MILLIS.ordinal()];
+		if(both && !hasFraction && (value >= MILLIS_THRESHOLD) == seconds) return UNRECOGNIZED;
+		if(!seconds) return negative ? -value : value;
+		if(value > Long.MAX_VALUE / 1000 - 1) return UNRECOGNIZED;
+		long millis = value * 1000 + fraction;
+		return negative ? -millis : millis;
+	}
+
+	/*
+	 * SimpleDateFormat's rule: a two-digit year falls within 80 years before and
+	 * 20 years after now, by year. "Now" is the DateUtilities clock.
+	 */
+	private int twoDigitYear(int yy) {
+		long now = DateUtilities.getClock().millis();
+		long today = Math.floorDiv(offsets.toLocal(now), DateUtilities.DAY_UNITS);
+		int start = (int)CivilDates.year(CivilDates.civilFromDays(today)) - 80;
+		int year = start / 100 * 100 + yy;
+		return year < start ? year + 100 : year;
+	}
+
+	private long toMillis(int year, int month, int day, int hour, int minute, int second, int milli, int offset) {
+		if(month < 1 || month > 12 || day < 1 || day > CivilDates.monthLength(year, month)
+			|| hour > 23 || minute > 59 || second > 59) {
+			return UNRECOGNIZED;
+		}
+		long local = CivilDates.daysFromCivil(year, month, day) * DateUtilities.DAY_UNITS
+			+ hour * DateUtilities.HOUR_UNITS + minute * DateUtilities.MINUTE_UNITS
+			+ second * DateUtilities.SECOND_UNITS + milli;
+		if(offset != NO_ZONE) return local - offset * DateUtilities.MINUTE_UNITS;
+		long utc = offsets.localToUtc(local);
+		if(utc != ZoneOffsetTable.AMBIGUOUS) return utc;
+
+		// a DST gap or overlap: resolve it the way GregorianCalendar does
+		GregorianCalendar cal = new GregorianCalendar(zone, Locale.ROOT);
+		cal.setGregorianChange(new java.util.Date(Long.MIN_VALUE));
+		cal.clear();
+		cal.set(year, month - 1, day, hour, minute, second);
+		cal.set(Calendar.MILLISECOND, milli);
+		return cal.getTimeInMillis();
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t';
+	}
+
+	/*
+	 * A read position in the input. Every method either consumes what it
+	 * recognizes or leaves the position where it was.
+	 */
+	private static final class Cursor {
+		final CharSequence s;
+		final int end;
+		int pos;
+
+		Cursor(CharSequence s) {
+			this.s = s;
+			this.end = s.length();
+		}
+
+		boolean atEnd() {
+			return pos >= end;
+		}
+
+		char peek() {
+			return pos < end ? s.charAt(pos) : '\0';
+		}
+
+		char peek(int ahead) {
+			return pos + ahead < end ? s.charAt(pos + ahead) : '\0';
+		}
+
+		boolean expect(char c) {
+			if(pos < end && s.charAt(pos) == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		void skipSpaces() {
+			while(pos < end && isSpace(s.charAt(pos))) pos++;
+		}
+
+		// one or more spaces
+		boolean spaces() {
+			int start = pos;
+			skipSpaces();
+			return pos > start;
+		}
+
+		// min to max ASCII digits, or -1
+		int number(int min, int max) {
+			int start = pos;
+			int value = 0;
+			while(pos < end && pos - start < max && isDigit(s.charAt(pos))) value = value * 10 + (s.charAt(pos++) - '0');
+			if(pos - start < min || (pos < end && isDigit(s.charAt(pos)))) {
+				pos = start;
+				return -1;
+			}
+			return value;
+		}
+
+		// 1 to 9 digits of a decimal fraction, as whole milliseconds (truncated), or -1
+		int fraction() {
+			int start = pos;
+			int value = 0;
+			while(pos < end && isDigit(s.charAt(pos))) {
+				if(pos - start < 3) value = value * 10 + (s.charAt(pos) - '0');
+				pos++;
+			}
+			int digits = pos - start;
+			if(digits == 0 || digits > 9) {
+				pos = start;
+				return -1;
+			}
+			for(int i = digits; i < 3; i++) value *= 10;
+			return value;
+		}
+
+		// the index of the three-letter name (any case) in names, or -1; longer words are rejected
+		int name(String[] names) {
+			if(pos + 3 > end || (pos + 3 < end && isLetter(s.charAt(pos + 3)))) return -1;
+			for(int i = 0; i < names.length; i++) {
+				String n = names[i];
+				if(Character.toLowerCase(s.charAt(pos)) == n.charAt(0)
+					&& Character.toLowerCase(s.charAt(pos + 1)) == n.charAt(1)
+					&& Character.toLowerCase(s.charAt(pos + 2)) == n.charAt(2)) {
+					pos += 3;
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		// 0 for AM, 1 for PM (also a.m., p.m., any case), or -1
+		int amPm() {
+			char c = Character.toLowerCase(peek());
+			if(c != 'a' && c != 'p') return -1;
+			int start = pos++;
+			boolean dotted = expect('.');
+			if(Character.toLowerCase(peek()) != 'm') {
+				pos = start;
+				return -1;
+			}
+			pos++;
+			if(dotted) expect('.');
+			if(isLetter(peek())) {
+				pos = start;
+				return -1;
+			}
+			return c == 'a' ? 0 : 1;
+		}
+
+		// an RFC 822 zone name or a numeric offset, in minutes, or NO_ZONE
+		int zone() {
+			char c = peek();
+			if(c == '+' || c == '-') return numericOffset();
+			int start = pos;
+			while(pos < end && isLetter(s.charAt(pos))) pos++;
+			int len = pos - start;
+			for(int i = 0; i < ZONE_NAMES.length; i++) {
+				String n = ZONE_NAMES[i];
+				if(n.length() != len) continue;
+				boolean same = true;
+				for(int k = 0; k < len && same; k++) same = Character.toLowerCase(s.charAt(start + k)) == n.charAt(k);
+				if(same) {
+					// GMT+05:00 style
+					if(i == 0 && (peek() == '+' || peek() == '-')) return numericOffset();
+					return ZONE_OFFSETS[i];
+				}
+			}
+			pos = start;
+			return NO_ZONE;
+		}
+
+		// (+|-)HH[[:]mm] or (+|-)HHmm, in minutes, or NO_ZONE
+		int numericOffset() {
+			int start = pos;
+			int sign = peek() == '-' ? -1 : 1;
+			pos++;
+			int digitsStart = pos;
+			int value = number(2, 4);
+			int hours = value;
+			int minutes = 0;
+			if(pos - digitsStart == 4) {
+				hours = value / 100;
+				minutes = value % 100;
+			} else if(pos - digitsStart != 2) {
+				return fail(start);
+			} else if(expect(':')) {
+				minutes = number(2, 2);
+				if(minutes < 0) return fail(start);
+			}
+			if(hours > 18 || minutes > 59) return fail(start);
+			return sign * (hours * 60 + minutes);
+		}
+
+		private int fail(int start) {
+			pos = start;
+			return NO_ZONE;
+		}
+	}
+}
@@ -0,0 +1,332 @@
+package dates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Precomputed locale and time zone data for applications that only ever use a
+ * few known locales and zones, so the first date they format or parse does not
+ * wait for the JDK locale providers and time zone database to initialise.
+ * <P>
+ * The data is written ahead of time, for instance as a build step:
+ * <PRE>
+ *   java dates.DateStartup --locales en-US,fr-FR --zones UTC,Europe/Paris --out dates/startup.dat
+ * </PRE>
+ * and read, on first use, from the resource <code>startup.dat</code> next to
+ * this class, or from the file named by the system property
+ * <code>dates.startup.data</code>. It holds the style patterns and symbol
+ * names of each locale, the style parser classification of
+ * <code>DateUtilities.toDate</code> and the offset transitions of each zone.
+ * With it, <code>DateUtilities.toString</code> formats the covered styles from
+ * tables and <code>DateValue</code>, <code>FastDateFormatter</code> and the
+ * bulk classes skip loading the tz database rules; everything else still goes
+ * through the JDK.
+ * <P>
+ * Every style is checked against <code>SimpleDateFormat</code> when the data
+ * is written, and the file records the JDK it was written by: data from a
+ * different JDK, or a different <code>java.locale.providers</code> setting, is
+ * ignored, so results are always the same as without it.
+ * <P>
+ * The classes used at startup can also be put in an application class-data
+ * sharing archive, which needs the application on a jar class path:
+ * <PRE>
+ *   java -XX:ArchiveClassesAtExit=dates.jsa -cp app.jar dates.DateStartup --train
+ *   java -XX:SharedArchiveFile=dates.jsa -cp app.jar ...
+ * </PRE>
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateStartup {
+	/** The system property naming a data file to read instead of the resource. */
+	public static final String DATA_PROPERTY = "dates.startup.data";
+
+	/** The resource, next to this class, read when the property is not set. */
+	public static final String RESOURCE = "startup.dat";
+
+	private static final int MAGIC = 0x44535431;	// "DST1"
+
+	// Prohibit instantiation
+	private DateStartup() {}
+
+	/** The data read from the file, or nothing. */
+	private static final class Data {
+		final String status;
+		final Map<String, long[]> zoneStarts = new HashMap<String, long[]>();
+		final Map<String, int[]> zoneOffsets = new HashMap<String, int[]>();
+		final Map<Locale, LocaleTables> tables = new HashMap<Locale, LocaleTables>();
+		final Map<Locale, DateStyleParser> parsers = new HashMap<Locale, DateStyleParser>();
+
+		Data(String status) {
+			this.status = status;
+		}
+	}
+
+	// read on first use, so an application that never needs it never opens the file
+	private static final class Holder {
+		static final Data DATA = load();
+	}
+
+	/** Returns true if startup data was found and matches this JDK. */
+	public static boolean isActive() {
+		return !Holder.DATA.tables.isEmpty() || !Holder.DATA.zoneStarts.isEmpty();
+	}
+
+	/** Returns a line describing where the data came from, or why it is not used. */
+	public static String getStatus() {
+		return Holder.DATA.status;
+	}
+
+	/** Returns the locales covered by the startup data. */
+	public static Set<Locale> getLocales() {
+		return Collections.unmodifiableSet(Holder.DATA.tables.keySet());
+	}
+
+	/** Returns the ids of the time zones covered by the startup data. */
+	public static Set<String> getZoneIds() {
+		return Collections.unmodifiableSet(Holder.DATA.zoneStarts.keySet());
+	}
+
+	/**
+	 * Write startup data for some locales and time zones.
+	 * @param out - the destination, which is flushed but not closed
+	 * @param locales - the locales to cover
+	 * @param zoneIds - the ids of the time zones to cover
+	 * @throws IllegalArgumentException if an argument is null or a zone id is unknown
+	 * @throws IOException if the data cannot be written
+	 */
+	public static void write(OutputStream out, Collection<Locale> locales, Collection<String> zoneIds)
+	throws IllegalArgumentException, IOException {
+		if(out == null) throw new IllegalArgumentException("Error: out argument cannot be null");
+		if(locales == null) throw new IllegalArgumentException("Error: locales argument cannot be null");
+		if(zoneIds == null) throw new IllegalArgumentException("Error: zoneIds argument cannot be null");
+		List<TimeZone> zones = new ArrayList<TimeZone>();
+		for(String id : zoneIds) {
+			TimeZone zone = TimeZone.getTimeZone(id);
+			if(!zone.getID().equals(id)) throw new IllegalArgumentException("Error: unknown time zone " + id);
+			zones.add(zone);
+		}
+
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeUTF(fingerprint());
+		List<ZoneOffsetTable> tables = new ArrayList<ZoneOffsetTable>();
+		for(TimeZone zone : zones) {
+			ZoneOffsetTable table = ZoneOffsetTable.forZone(zone);
+			// zones outside the tz database are left to the TimeZone itself
+			if(table.getTransitionStarts() != null) tables.add(table);
+		}
+		data.writeInt(tables.size());
+		for(ZoneOffsetTable table : tables) {
+			long[] starts = table.getTransitionStarts();
+			int[] offsets = table.getTransitionOffsets();
+			data.writeUTF(table.getID());
+			data.writeInt(starts.length);
+			for(long start : starts) data.writeLong(start);
+			for(int offset : offsets) data.writeInt(offset);
+		}
+		data.writeInt(locales.size());
+		for(Locale aLocale : locales) {
+			LocaleTables.capture(aLocale, zones).write(data);
+			DateStyleParser.forLocale(aLocale).write(data);
+		}
+		data.flush();
+	}
+
+	/**
+	 * Writes a data file, or with <code>--train</code> exercises the data on
+	 * the class path so a class-data sharing archive picks up every class it uses.
+	 * <P>
+	 * Usage: <code>java dates.DateStartup --locales tag,... [--zones id,...] --out file</code>
+	 * or <code>java dates.DateStartup --train</code>
+	 */
+	public static void main(String[] args) throws IOException {
+		List<Locale> locales = new ArrayList<Locale>();
+		Set<String> zoneIds = new LinkedHashSet<String>();
+		String out = null;
+		boolean train = false;
+		for(int a = 0; a < args.length; a++) {
+			if(args[a].equals("--locales")) {
+				for(String tag : args[++a].split(",")) locales.add(Locale.forLanguageTag(tag.trim()));
+			} else if(args[a].equals("--zones")) {
+				for(String id : args[++a].split(",")) zoneIds.add(id.trim());
+			} else if(args[a].equals("--out")) {
+				out = args[++a];
+			} else if(args[a].equals("--train")) {
+				train = true;
+			} else {
+				throw new IllegalArgumentException("Error: unknown argument " + args[a]);
+			}
+		}
+		if(train) {
+			train();
+			return;
+		}
+		if(out == null || locales.isEmpty()) {
+			throw new IllegalArgumentException("Error: --locales and --out are required");
+		}
+		OutputStream file = new FileOutputStream(out);
+		try {
+			write(file, locales, zoneIds);
+		} finally {
+			file.close();
+		}
+		// read the file back, which also checks it
+		InputStream in = new FileInputStream(out);
+		try {
+			Data data = read(new DataInputStream(new BufferedInputStream(in)), out);
+			for(LocaleTables tables : data.tables.values()) {
+				System.out.println(tables.getLocale().toLanguageTag() + ": " + tables.getStyleCount()
+					+ " of 20 styles formatted from tables");
+			}
+			System.out.println(data.status + ", " + data.zoneStarts.size() + " zones, for "
+				+ System.getProperty("java.runtime.version"));
+		} finally {
+			in.close();
+		}
+	}
+
+	/** Returns the formatted instant, or null if the startup data does not cover it. */
+	static String format(long millis, int dateStyle, int timeStyle, Locale aLocale, TimeZone zone) {
+		if(aLocale == null) return null;
+		LocaleTables tables = Holder.DATA.tables.get(aLocale);
+		return tables == null ? null : tables.format(millis, dateStyle, timeStyle, zone);
+	}
+
+	/** Returns the preloaded style parser of a locale, or null. */
+	static DateStyleParser styleParser(Locale aLocale) {
+		return aLocale == null ? null : Holder.DATA.parsers.get(aLocale);
+	}
+
+	/** Returns a table for a zone from preloaded transitions, or null. */
+	static ZoneOffsetTable zoneTable(TimeZone zone) {
+		long[] starts = Holder.DATA.zoneStarts.get(zone.getID());
+		if(starts == null) return null;
+		return ZoneOffsetTable.fromTransitions(zone, starts, Holder.DATA.zoneOffsets.get(zone.getID()));
+	}
+
+	static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+		out.writeInt(values.length);
+		for(String s : values) {
+			out.writeBoolean(s != null);
+			if(s != null) out.writeUTF(s);
+		}
+	}
+
+	static String[] readStrings(DataInputStream in) throws IOException {
+		int n = in.readInt();
+		if(n < 0 || n > 4096) throw new IOException("Error: malformed string table");
+		String[] values = new String[n];
+		for(int i = 0; i < n; i++) {
+			if(in.readBoolean()) values[i] = in.readUTF();
+		}
+		return values;
+	}
+
+	/*
+	 * The locale data depends on the JDK build and the provider setting. Runs
+	 * at startup, where the first string concatenation would cost more than
+	 * reading the whole file, so it uses a StringBuilder.
+	 */
+	private static String fingerprint() {
+		return new StringBuilder().append(System.getProperty("java.vendor")).append(' ')
+			.append(System.getProperty("java.runtime.version")).append(' ')
+			.append(System.getProperty("java.locale.providers", "")).toString();
+	}
+
+	private static Data load() {
+		String path = System.getProperty(DATA_PROPERTY);
+		String source = path != null ? path : RESOURCE;
+		InputStream in = null;
+		try {
+			in = path != null ? new FileInputStream(path) : DateStartup.class.getResourceAsStream(RESOURCE);
+			if(in == null) return new Data("no startup data");
+			return read(new DataInputStream(new BufferedInputStream(in)), source);
+		} catch(IOException e) {
+			return new Data("ignored " + source + ": " + e.getMessage());
+		} finally {
+			if(in != null) {
+				try {
+					in.close();
+				} catch(IOException e) {
+					// nothing more to read
+				}
+			}
+		}
+	}
+
+	private static Data read(DataInputStream in, String source) throws IOException {
+		if(in.readInt() != MAGIC) return new Data("ignored " + source + ": not a startup data file");
+		String written = in.readUTF();
+		if(!written.equals(fingerprint())) return new Data("ignored " + source + ": written by " + written.trim());
+
+		Data data = new Data("loaded ".concat(source));
+		int zones = in.readInt();
+		for(int z = 0; z < zones; z++) {
+			String id = in.readUTF();
+			int n = in.readInt();
+			if(n <= 0 || n > 1 << 16) throw new IOException("Error: malformed transitions for " + id);
+			long[] starts = new long[n];
+			int[] offsets = new int[n];
+			for(int i = 0; i < n; i++) starts[i] = in.readLong();
+			for(int i = 0; i < n; i++) offsets[i] = in.readInt();
+			data.zoneStarts.put(id, starts);
+			data.zoneOffsets.put(id, offsets);
+		}
+		int locales = in.readInt();
+		for(int l = 0; l < locales; l++) {
+			LocaleTables tables = LocaleTables.read(in);
+			data.tables.put(tables.getLocale(), tables);
+			DateStyleParser parser = DateStyleParser.read(in);
+			data.parsers.put(tables.getLocale(), parser);
+		}
+		return data;
+	}
+
+	/*
+	 * Formats and parses with every covered locale, style and zone so the
+	 * classes behind them are loaded while an archive is being recorded.
+	 */
+	private static void train() {
+		System.out.println(getStatus());
+		int[] styles = {DateFormat.FULL, DateFormat.LONG, DateFormat.MEDIUM, DateFormat.SHORT};
+		long millis = System.currentTimeMillis();
+		List<String> ids = new ArrayList<String>(getZoneIds());
+		if(ids.isEmpty()) ids.add(TimeZone.getDefault().getID());
+		for(String id : ids) {
+			TimeZone zone = TimeZone.getTimeZone(id);
+			DateValue.of(millis, zone).plusDays(1);
+			for(Locale aLocale : getLocales()) {
+				for(int d : styles) {
+					format(millis, d, LocaleTables.NO_STYLE, aLocale, zone);
+					for(int t : styles) format(millis, d, t, aLocale, zone);
+				}
+			}
+		}
+		for(Locale aLocale : getLocales()) {
+			DateUtilities.toString(new GregorianCalendar(), DateFormat.SHORT, aLocale);
+		}
+		DateUtilities.parseDate(DateUtilities.toString(new GregorianCalendar()));
+		System.out.println("trained " + Arrays.toString(getLocales().toArray()) + " " + ids);
+	}
+}
@@ -0,0 +1,426 @@
+package dates;
+
+import java.lang.reflect.Method;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A <code>Flow.Processor</code> that normalizes a stream of date strings in
+ * one fused step per record: parse with a source pattern (or a
+ * <code>DateRecognizer</code>), convert to a target time zone, shift by a
+ * <code>Calendar</code> field as <code>Calendar.add</code> would, and format
+ * with a target pattern. The parser, the formatter and the output buffer are
+ * created once and reused for every record.
+ * <P>
+ * Upstream items are requested in batches and held in a fixed ring buffer of
+ * twice the batch size; nothing is requested until there is room for it, and
+ * nothing is emitted beyond what the subscriber has requested. Records are
+ * processed on the executor, by one task at a time, so the stage never blocks
+ * the publisher. By default the executor is a virtual thread per task where
+ * the JVM provides virtual threads and the common fork-join pool otherwise.
+ * No signal takes a monitor, so the stage never pins a virtual thread.
+ * Records that cannot be parsed are dropped and counted.
+ * <P>
+ * A request for zero or fewer records, or an exception thrown while a record
+ * is processed or handed to the subscriber, cancels upstream, drops whatever
+ * is buffered and ends the stream with <code>onError</code> straight away.
+ * <P>
+ * Configure the processor before subscribing it; it accepts one subscriber.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateStreamProcessor implements Flow.Processor<CharSequence, String> {
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	private final String sourcePattern;
+	private final String targetPattern;
+	private TimeZone sourceZone = TimeZone.getDefault();
+	private TimeZone targetZone = TimeZone.getDefault();
+	private Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+	private DateRecognizer recognizer;
+	private int shiftField = Calendar.MILLISECOND;
+	private long shiftAmount;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private Executor executor;
+
+	// built when the processor is first subscribed to
+	private final AtomicReference<Stage> stage = new AtomicReference<Stage>();
+	private final long[] parsed = new long[1];
+	private final StringBuilder text = new StringBuilder();
+
+	private final AtomicLong produced = new AtomicLong();	// written by onNext only
+	private final AtomicLong consumed = new AtomicLong();	// written by the drain only
+	private long sinceRequest;
+	private final AtomicInteger wip = new AtomicInteger();
+	private final AtomicLong requested = new AtomicLong();
+	private final AtomicLong processedCount = new AtomicLong();
+	private final AtomicLong failureCount = new AtomicLong();
+	private final AtomicReference<Flow.Subscription> upstream = new AtomicReference<Flow.Subscription>();
+	private final AtomicReference<Flow.Subscriber<? super String>> downstream =
+		new AtomicReference<Flow.Subscriber<? super String>>();
+	private volatile boolean done;
+	private volatile Throwable error;
+	private volatile Throwable badRequest;	// a request(n) with n <= 0, signalled ahead of the buffer
+	private volatile boolean cancelled;
+	private boolean terminated;
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * Create a processor that reads dates with one pattern and writes them with
+	 * another, both in the default time zone and locale.
+	 * @param sourcePattern - the <code>SimpleDateFormat</code> pattern of the input
+	 * @param targetPattern - the <code>SimpleDateFormat</code> pattern of the output
+	 * @throws IllegalArgumentException if a pattern is not recognized
+	 */
+	public DateStreamProcessor(String sourcePattern, String targetPattern) throws IllegalArgumentException {
+		if(sourcePattern == null || targetPattern == null) {
+			throw new IllegalArgumentException("Error: pattern arguments cannot be null");
+		}
+		FormatterRegistry.getDefault().get(sourcePattern);
+		FormatterRegistry.getDefault().get(targetPattern);
+		this.sourcePattern = sourcePattern;
+		this.targetPattern = targetPattern;
+	}
+
+	/**
+	 * Set the zone input without a zone is read in and the zone output is written in.
+	 * @param source - the <code>TimeZone</code> of the input
+	 * @param target - the <code>TimeZone</code> of the output
+	 * @throws IllegalStateException if the processor has been subscribed to
+	 */
+	public void setZones(TimeZone source, TimeZone target) throws IllegalStateException {
+		checkUnused();
+		this.sourceZone = (TimeZone)source.clone();
+		this.targetZone = (TimeZone)target.clone();
+	}
+
+	/**
+	 * Set the locale of both patterns.
+	 * @param aLocale - a <code>Locale</code> field
+	 * @throws IllegalStateException if the processor has been subscribed to
+	 */
+	public void setLocale(Locale aLocale) throws IllegalStateException {
+		checkUnused();
+		this.locale = aLocale;
+	}
+
+	/**
+	 * Recognize input with a <code>DateRecognizer</code> instead of the source pattern.
+	 * @param aRecognizer - the recognizer, or null to use the source pattern
+	 * @throws IllegalStateException if the processor has been subscribed to
+	 */
+	public void setRecognizer(DateRecognizer aRecognizer) throws IllegalStateException {
+		checkUnused();
+		this.recognizer = aRecognizer;
+	}
+
+	/**
+	 * Shift every date, in the target zone, as <code>Calendar.add(field, amount)</code> would.
+	 * @param field - a <code>Calendar</code> field, e.g. Calendar.DATE
+	 * @param amount - the amount to add, may be negative
+	 * @throws IllegalStateException if the processor has been subscribed to
+	 */
+	public void setShift(int field, long amount) throws IllegalStateException {
+		checkUnused();
+		this.shiftField = field;
+		this.shiftAmount = amount;
+	}
+
+	/**
+	 * Set how many records are requested from upstream at a time.
+	 * @param size - the batch size
+	 * @throws IllegalArgumentException if size is less than one
+	 * @throws IllegalStateException if the processor has been subscribed to
+	 */
+	public void setBatchSize(int size) throws IllegalArgumentException, IllegalStateException {
+		checkUnused();
+		if(size < 1 || size > 1 << 29) throw new IllegalArgumentException("Error: batch size out of range");
+		this.batchSize = size;
+	}
+
+	/**
+	 * Set the executor records are processed on.
+	 * @param anExecutor - the executor, or null for the default
+	 * @throws IllegalStateException if the processor has been subscribed to
+	 */
+	public void setExecutor(Executor anExecutor) throws IllegalStateException {
+		checkUnused();
+		this.executor = anExecutor;
+	}
+
+	/** Returns the number of records emitted. */
+	public long getProcessedCount() {
+		return processedCount.get();
+	}
+
+	/** Returns the number of records dropped because they could not be parsed. */
+	public long getFailureCount() {
+		return failureCount.get();
+	}
+
+	/**
+	 * Returns an executor that starts a virtual thread per task, or null if the
+	 * JVM does not provide virtual threads.
+	 */
+	static Executor virtualThreadExecutor() {
+		try {
+			Method m = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (Executor)m.invoke(null);
+		} catch(ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super String> subscriber) {
+		if(subscriber == null) throw new NullPointerException("subscriber");
+		prepare();
+		if(!downstream.compareAndSet(null, subscriber)) {
+			subscriber.onSubscribe(new Flow.Subscription() {
+				public void request(long n) {}
+				public void cancel() {}
+			});
+			subscriber.onError(new IllegalStateException("Error: only one subscriber is supported"));
+			return;
+		}
+		subscriber.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+				if(n <= 0) {
+					if(badRequest == null) badRequest = new IllegalArgumentException("Error: request must be positive");
+				} else {
+					long r;
+					do {
+						r = requested.get();
+					} while(r != Long.MAX_VALUE && !requested.compareAndSet(r, r + n < 0 ? Long.MAX_VALUE : r + n));
+				}
+				schedule();
+			}
+
+			@Override
+			public void cancel() {
+				cancelled = true;
+				Flow.Subscription s = upstream.get();
+				if(s != null) s.cancel();
+			}
+		});
+		schedule();
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		Stage st = prepare();
+		if(cancelled || !upstream.compareAndSet(null, subscription)) {
+			subscription.cancel();
+			return;
+		}
+		// a cancel that raced the compareAndSet may have missed the subscription
+		if(cancelled) subscription.cancel();
+		else subscription.request(st.ring.length());
+	}
+
+	@Override
+	public void onNext(CharSequence item) {
+		AtomicReferenceArray<CharSequence> ring = stage.get().ring;
+		long p = produced.get();
+		if(item == null || p - consumed.get() >= ring.length()) {
+			onError(item == null ? new NullPointerException("item")
+				: new IllegalStateException("Error: publisher sent more items than requested"));
+			Flow.Subscription s = upstream.get();
+			if(s != null) s.cancel();
+			return;
+		}
+		ring.lazySet((int)(p % ring.length()), item);
+		produced.lazySet(p + 1);
+		schedule();
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		error = throwable;
+		done = true;
+		schedule();
+	}
+
+	@Override
+	public void onComplete() {
+		done = true;
+		schedule();
+	}
+
+	private void checkUnused() throws IllegalStateException {
+		if(stage.get() != null) throw new IllegalStateException("Error: the processor has already been subscribed to");
+	}
+
+	/*
+	 * Returns the reusable state, building it on first use. If subscribe and
+	 * onSubscribe race, both build it and the loser's copy is discarded, which
+	 * is cheaper than making either wait.
+	 */
+	private Stage prepare() {
+		Stage st = stage.get();
+		if(st == null) {
+			Stage built = new Stage();
+			st = stage.compareAndSet(null, built) ? built : stage.get();
+		}
+		return st;
+	}
+
+	private void schedule() {
+		Flow.Subscriber<? super String> out = downstream.get();
+		if(out == null || wip.getAndIncrement() != 0) return;
+		try {
+			stage.get().executor.execute(drainTask);
+		} catch(RuntimeException e) {
+			// a rejected task leaves the stream with nobody to drain it
+			terminated = true;
+			out.onError(e);
+		}
+	}
+
+	/*
+	 * Moves records from the ring to the subscriber while it has demand. Only
+	 * one drain runs at a time; a schedule() during a drain makes it loop again.
+	 */
+	private void drain() {
+		Flow.Subscriber<? super String> out = downstream.get();
+		Stage st = stage.get();
+		AtomicReferenceArray<CharSequence> ring = st.ring;
+		int missed = 1;
+		try {
+			while(true) {
+				if(terminated) return;
+				if(badRequest != null) {
+					abort(out, ring, badRequest);
+					return;
+				}
+				long r = requested.get();
+				long emitted = 0;
+				while(emitted != r) {
+					if(cancelled) return;
+					if(badRequest != null) {
+						abort(out, ring, badRequest);
+						return;
+					}
+					boolean finished = done;
+					long c = consumed.get();
+					if(c == produced.get()) {
+						if(finished) {
+							finish(out);
+							return;
+						}
+						break;
+					}
+					int slot = (int)(c % ring.length());
+					CharSequence item = ring.get(slot);
+					ring.lazySet(slot, null);
+					consumed.lazySet(c + 1);
+					if(++sinceRequest == batchSize) {
+						sinceRequest = 0;
+						upstream.get().request(batchSize);
+					}
+					String result = process(st, item);
+					if(result != null) {
+						out.onNext(result);
+						emitted++;
+					}
+				}
+				if(emitted == r && done && consumed.get() == produced.get() && !cancelled) {
+					finish(out);
+					return;
+				}
+				if(emitted != 0 && r != Long.MAX_VALUE) requested.addAndGet(-emitted);
+				missed = wip.addAndGet(-missed);
+				if(missed == 0) return;
+			}
+		} catch(Throwable e) {
+			// left alone, the drain would never run again and the stream would hang
+			if(!terminated) abort(out, ring, e);
+		}
+	}
+
+	/*
+	 * Ends the stream with an error without waiting for the buffer to drain.
+	 * wip stays raised, so no drain runs after this one.
+	 */
+	private void abort(Flow.Subscriber<? super String> out, AtomicReferenceArray<CharSequence> ring, Throwable e) {
+		terminated = true;
+		Flow.Subscription s = upstream.get();
+		if(s != null) s.cancel();
+		long p = produced.get();
+		for(long c = consumed.get(); c != p; c++) ring.lazySet((int)(c % ring.length()), null);
+		consumed.lazySet(p);
+		out.onError(e);
+	}
+
+	private void finish(Flow.Subscriber<? super String> out) {
+		terminated = true;
+		Throwable e = error;
+		if(e != null) out.onError(e);
+		else out.onComplete();
+	}
+
+	// the fused parse, convert, shift and format step; null if the record does not parse
+	private String process(Stage st, CharSequence item) {
+		long millis;
+		if(recognizer != null) {
+			millis = recognizer.recognize(null, item);
+			if(millis == DateRecognizer.UNRECOGNIZED) {
+				failureCount.incrementAndGet();
+				return null;
+			}
+		} else {
+			if(!st.parser.parse(item, 0, item.length(), parsed, 0)) {
+				failureCount.incrementAndGet();
+				return null;
+			}
+			millis = parsed[0];
+		}
+		try {
+			if(shiftAmount != 0) millis = DateValue.add(st.offsets, millis, shiftField, shiftAmount);
+		} catch(RuntimeException e) {
+			failureCount.incrementAndGet();
+			return null;
+		}
+		text.setLength(0);
+		st.formatter.format(millis, text);
+		processedCount.incrementAndGet();
+		return text.toString();
+	}
+
+	/*
+	 * The parser, formatter, executor and ring buffer, built from the
+	 * configuration when the processor is first subscribed to.
+	 */
+	private final class Stage {
+		final DateColumnParser parser;
+		final FastDateFormatter formatter;
+		final ZoneOffsetTable offsets;
+		final Executor executor;
+		final AtomicReferenceArray<CharSequence> ring;
+
+		Stage() {
+			this.parser = recognizer == null ? new DateColumnParser(sourcePattern, sourceZone, locale) : null;
+			this.formatter = new FastDateFormatter(targetPattern, targetZone, locale);
+			this.offsets = ZoneOffsetTable.forZone(targetZone);
+			Executor e = DateStreamProcessor.this.executor;
+			if(e == null) e = virtualThreadExecutor();
+			this.executor = e != null ? e : ForkJoinPool.commonPool();
+			this.ring = new AtomicReferenceArray<CharSequence>(batchSize * 2);
+		}
+	}
+}
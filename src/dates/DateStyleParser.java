@@ -0,0 +1,214 @@
+package dates;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormatSymbols;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parses a date string against the SHORT, MEDIUM, LONG and FULL
+ * <code>DateFormat</code> styles of a locale, in that order, without using
+ * exceptions for control flow. The shape of the input (leading digit, leading
+ * word, anything else) is classified once and every style whose first field
+ * cannot possibly match that shape is skipped; the remaining styles are tried
+ * with <code>parse(String, ParsePosition)</code> on shared compiled formats.
+ * <P>
+ * The result is the same as trying each style in turn with
+ * <code>DateFormat.parse(String)</code>.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+final class DateStyleParser {
+	static final int[] STYLES = {DateFormat.SHORT, DateFormat.MEDIUM, DateFormat.LONG, DateFormat.FULL};
+
+	private static final int LEAD_OTHER = 0;
+	private static final int LEAD_NUMBER = 1;
+	private static final int LEAD_TEXT = 2;
+
+	private static final ConcurrentHashMap<Locale, DateStyleParser> PARSERS =
+		new ConcurrentHashMap<Locale, DateStyleParser>();
+
+	private final Locale locale;
+	private final String[] patterns = new String[STYLES.length];
+	private final int[] leads = new int[STYLES.length];
+	private final String[][] leadNames = new String[STYLES.length][];
+	private final boolean[] digitNames = new boolean[STYLES.length];
+	private final String nan;
+
+	private DateStyleParser(Locale aLocale) {
+		this.locale = aLocale;
+		this.nan = DecimalFormatSymbols.getInstance(aLocale).getNaN();
+		for(int i = 0; i < STYLES.length; i++) {
+			DateFormat df = DateFormat.getDateInstance(STYLES[i], aLocale);
+			// a provider that does not hand out SimpleDateFormat is always tried
+			if(!(df instanceof SimpleDateFormat)) continue;
+			patterns[i] = ((SimpleDateFormat)df).toPattern();
+			classify(i, patterns[i], ((SimpleDateFormat)df).getDateFormatSymbols(), df.getCalendar());
+		}
+	}
+
+	private DateStyleParser(Locale aLocale, String nan) {
+		this.locale = aLocale;
+		this.nan = nan;
+	}
+
+	/** Returns the parser for a locale, building it on first use. */
+	static DateStyleParser forLocale(Locale aLocale) {
+		DateStyleParser parser = PARSERS.get(aLocale);
+		if(parser == null) {
+			// a parser preloaded by DateStartup spares asking the locale providers
+			DateStyleParser built = DateStartup.styleParser(aLocale);
+			if(built == null) built = new DateStyleParser(aLocale);
+			parser = PARSERS.putIfAbsent(aLocale, built);
+			if(parser == null) parser = built;
+		}
+		return parser;
+	}
+
+	/** Write the parser in the form read by <code>read</code>. */
+	void write(DataOutputStream out) throws IOException {
+		out.writeUTF(locale.toLanguageTag());
+		out.writeUTF(nan);
+		DateStartup.writeStrings(out, patterns);
+		for(int i = 0; i < STYLES.length; i++) {
+			out.writeByte(leads[i]);
+			out.writeBoolean(digitNames[i]);
+			out.writeBoolean(leadNames[i] != null);
+			if(leadNames[i] != null) DateStartup.writeStrings(out, leadNames[i]);
+		}
+	}
+
+	/** Read a parser written by <code>write</code>. */
+	static DateStyleParser read(DataInputStream in) throws IOException {
+		DateStyleParser parser = new DateStyleParser(Locale.forLanguageTag(in.readUTF()), in.readUTF());
+		String[] patterns = DateStartup.readStrings(in);
+		if(patterns.length != STYLES.length) throw new IOException("Error: malformed parser for " + parser.locale);
+		System.arraycopy(patterns, 0, parser.patterns, 0, STYLES.length);
+		for(int i = 0; i < STYLES.length; i++) {
+			parser.leads[i] = in.readByte();
+			parser.digitNames[i] = in.readBoolean();
+			if(in.readBoolean()) parser.leadNames[i] = DateStartup.readStrings(in);
+		}
+		return parser;
+	}
+
+	/**
+	 * Parse a date string, trying each style in order.
+	 * @param dateString - a <code>String</code> representation of a date
+	 * @return a <code>Date</code>, or null if no style accepts the string
+	 */
+	Date parse(String dateString) {
+		if(dateString == null) return null;
+		TimeZone zone = TimeZone.getDefault();
+		int start = 0;
+		while(start < dateString.length()
+			&& (dateString.charAt(start) == ' ' || dateString.charAt(start) == '\t')) start++;
+		char first = start < dateString.length() ? dateString.charAt(start) : '\0';
+
+		for(int i = 0; i < STYLES.length; i++) {
+			if(!mayMatch(i, dateString, start, first)) continue;
+			Date date = parse(i, dateString, zone);
+			if(date != null) return date;
+			DateMetrics.styleFailed(STYLES[i]);
+		}
+		DateMetrics.unparseable();
+		return null;
+	}
+
+	private Date parse(int i, String dateString, TimeZone zone) {
+		ParsePosition pos = new ParsePosition(0);
+		Date date;
+		if(patterns[i] == null) {
+			DateFormat df = DateFormat.getDateInstance(STYLES[i], locale);
+			df.setTimeZone(zone);
+			date = df.parse(dateString, pos);
+		} else {
+			date = FormatterRegistry.getDefault().get(patterns[i], locale, zone).parse(dateString, pos);
+		}
+		// DateFormat.parse(String) rejects a parse that consumed nothing
+		return pos.getIndex() == 0 ? null : date;
+	}
+
+	private boolean mayMatch(int i, String s, int start, char first) {
+		switch(leads[i]) {
+			case LEAD_NUMBER:
+				return !Character.isLetter(first) || s.startsWith(nan, start);
+			case LEAD_TEXT:
+				if(Character.isDigit(first)) return digitNames[i];
+				for(String name : leadNames[i]) {
+					if(s.regionMatches(true, start, name, 0, name.length())) return true;
+				}
+				return false;
+			default:
+				return true;
+		}
+	}
+
+	/*
+	 * Records what kind of input the first field of a style pattern accepts.
+	 */
+	private void classify(int i, String pattern, DateFormatSymbols symbols, Calendar cal) {
+		if(pattern.isEmpty()) return;
+		char ch = pattern.charAt(0);
+		if(!((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z'))) return;
+		int count = 1;
+		while(count < pattern.length() && pattern.charAt(count) == ch) count++;
+
+		List<String> names = new ArrayList<String>();
+		int field;
+		switch(ch) {
+			case 'y': case 'd': case 'D': case 'F': case 'H': case 'k': case 'K': case 'h':
+			case 'm': case 's': case 'S': case 'w': case 'W': case 'u': case 'Y':
+				leads[i] = LEAD_NUMBER;
+				return;
+			case 'M': case 'L':
+				if(count <= 2) {
+					leads[i] = LEAD_NUMBER;
+					return;
+				}
+				addAll(names, symbols.getMonths());
+				addAll(names, symbols.getShortMonths());
+				field = Calendar.MONTH;
+				break;
+			case 'E':
+				addAll(names, symbols.getWeekdays());
+				addAll(names, symbols.getShortWeekdays());
+				field = Calendar.DAY_OF_WEEK;
+				break;
+			case 'G':
+				addAll(names, symbols.getEras());
+				field = Calendar.ERA;
+				break;
+			default:
+				return;
+		}
+		Map<String, Integer> display = cal.getDisplayNames(field, Calendar.ALL_STYLES, locale);
+		if(display != null) names.addAll(display.keySet());
+
+		List<String> usable = new ArrayList<String>();
+		for(String name : names) {
+			if(name == null || name.isEmpty()) continue;
+			usable.add(name);
+			if(Character.isDigit(name.charAt(0))) digitNames[i] = true;
+		}
+		leadNames[i] = usable.toArray(new String[usable.size()]);
+		leads[i] = LEAD_TEXT;
+	}
+
+	private static void addAll(List<String> names, String[] values) {
+		for(String v : values) names.add(v);
+	}
+}
@@ -0,0 +1,205 @@
+package dates;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParsePosition;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Rewrites date strings from one pattern to another, such as "MM/dd/yyyy" to
+ * "yyyy-MM-dd", in the manner of parsing with one <code>SimpleDateFormat</code>
+ * and formatting the <code>Date</code> with another in the same zone and locale.
+ * <P>
+ * When both patterns are numeric (see <code>FastDateFormatter</code>) the
+ * fields read from the input are written straight to the output: there is no
+ * <code>Date</code>, no <code>Calendar</code> and, because both sides share a
+ * zone, no conversion to an instant and back. The zone is only consulted to
+ * rule out wall times near a daylight saving transition, which a lenient parse
+ * may move. Inputs the fast path cannot
+ * decide are parsed and formatted by the general engine, so the output always
+ * matches <code>SimpleDateFormat</code>.
+ * <P>
+ * Input may be any <code>CharSequence</code> region or bytes in a
+ * <code>ByteBuffer</code>, and output a <code>StringBuilder</code>,
+ * <code>char[]</code> or <code>ByteBuffer</code>. Instances are immutable and
+ * thread-safe.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateTranscoder {
+	// as SharedDateFormat, the registry's LRU order only needs millisecond precision
+	private static final long TOUCH_NANOS = 1000000L;
+
+	private final String sourcePattern;
+	private final Locale locale;
+	private final TimeZone zone;
+	private final SharedDateFormat source;
+	private final FastDateParser parser;
+	private final FastDateFormatter target;
+	private final ZoneOffsetTable offsets;
+	private volatile long lastUsed = System.nanoTime();
+
+	/**
+	 * Compile a pair of patterns for the specified zone and locale.
+	 * @param sourcePattern - the <code>SimpleDateFormat</code> pattern of the input
+	 * @param targetPattern - the <code>SimpleDateFormat</code> pattern to write
+	 * @param zone - the <code>TimeZone</code> both patterns are in
+	 * @param aLocale - a <code>Locale</code> field
+	 * @throws IllegalArgumentException if a pattern is not recognized
+	 */
+	public DateTranscoder(String sourcePattern, String targetPattern, TimeZone zone, Locale aLocale)
+	throws IllegalArgumentException {
+		if(sourcePattern == null) throw new IllegalArgumentException("Error: sourcePattern argument cannot be null");
+		if(targetPattern == null) throw new IllegalArgumentException("Error: targetPattern argument cannot be null");
+		this.sourcePattern = sourcePattern;
+		this.locale = aLocale;
+		this.zone = (TimeZone)zone.clone();
+		this.source = FormatterRegistry.getDefault().get(sourcePattern, aLocale, this.zone);
+		this.parser = new FastDateParser(new NumericPattern(sourcePattern, source.newFormat(), aLocale), this.zone);
+		this.target = new FastDateFormatter(targetPattern, this.zone, aLocale);
+		this.offsets = ZoneOffsetTable.forZone(this.zone);
+	}
+
+	/**
+	 * Returns a shared transcoder for a pair of patterns in the default zone and
+	 * locale. Transcoders are held by the default <code>FormatterRegistry</code>,
+	 * which bounds them as it does patterns.
+	 * @param sourcePattern - the <code>SimpleDateFormat</code> pattern of the input
+	 * @param targetPattern - the <code>SimpleDateFormat</code> pattern to write
+	 * @return a thread-safe transcoder
+	 * @throws IllegalArgumentException if a pattern is not recognized
+	 */
+	public static DateTranscoder getInstance(String sourcePattern, String targetPattern)
+	throws IllegalArgumentException {
+		if(sourcePattern == null) throw new IllegalArgumentException("Error: sourcePattern argument cannot be null");
+		if(targetPattern == null) throw new IllegalArgumentException("Error: targetPattern argument cannot be null");
+		return FormatterRegistry.getDefault().getTranscoder(sourcePattern, targetPattern,
+			Locale.getDefault(Locale.Category.FORMAT), TimeZone.getDefault());
+	}
+
+	/** Returns the pattern of the input. */
+	public String getSourcePattern() {
+		return sourcePattern;
+	}
+
+	/** Returns the pattern of the output. */
+	public String getTargetPattern() {
+		return target.getPattern();
+	}
+
+	/** Returns true if both patterns are numeric, so values can go field to field. */
+	public boolean isDirect() {
+		return parser.isUsable() && target.isAllocationFree();
+	}
+
+	/**
+	 * Rewrite a value.
+	 * @param value - the date string in the source pattern
+	 * @return the date string in the target pattern, or null if the value cannot be parsed
+	 */
+	public String transcode(CharSequence value) {
+		if(value == null) return null;
+		StringBuilder sb = new StringBuilder(target.getPattern().length() + 8);
+		return transcode(value, 0, value.length(), sb) ? sb.toString() : null;
+	}
+
+	/**
+	 * Rewrite the characters from start (inclusive) to end (exclusive) of a
+	 * sequence, appending the result to a <code>StringBuilder</code>.
+	 * @param s - the characters to read
+	 * @param start - the index of the first character of the value
+	 * @param end - the index just past the last character of the value
+	 * @param sb - the destination, left unchanged if the value cannot be parsed
+	 * @return true if the value was rewritten
+	 */
+	public boolean transcode(CharSequence s, int start, int end, StringBuilder sb) {
+		return write(s, start, end, sb, null, 0, null) >= 0;
+	}
+
+	/**
+	 * Rewrite the characters from start (inclusive) to end (exclusive) of a
+	 * sequence into a <code>char[]</code>.
+	 * @param s - the characters to read
+	 * @param start - the index of the first character of the value
+	 * @param end - the index just past the last character of the value
+	 * @param buf - the destination
+	 * @param offset - the index of the first character to write
+	 * @return the index just past the last character written, or -1 if the value cannot be parsed
+	 * @throws ArrayIndexOutOfBoundsException if the text does not fit
+	 */
+	public int transcode(CharSequence s, int start, int end, char[] buf, int offset) {
+		return write(s, start, end, null, buf, offset, null);
+	}
+
+	/**
+	 * Rewrite a run of bytes, ASCII or UTF-8, into a <code>ByteBuffer</code>
+	 * as UTF-8, advancing its position.
+	 * @param in - the bytes to read
+	 * @param offset - the absolute index in <code>in</code> of the first byte of the value
+	 * @param length - the number of bytes in the value
+	 * @param out - the destination, left unchanged if the value cannot be parsed
+	 * @return true if the value was rewritten
+	 * @throws java.nio.BufferOverflowException if the text does not fit
+	 */
+	public boolean transcode(ByteBuffer in, int offset, int length, ByteBuffer out) {
+		ByteCharSequence view = new ByteCharSequence().reset(in, offset, length);
+		if(view.isAscii()) return write(view, 0, length, null, null, 0, out) >= 0;
+		byte[] bytes = new byte[length];
+		for(int i = 0; i < length; i++) bytes[i] = in.get(offset + i);
+		String text = new String(bytes, StandardCharsets.UTF_8);
+		return write(text, 0, text.length(), null, null, 0, out) >= 0;
+	}
+
+	TimeZone getTimeZone() {
+		return zone;
+	}
+
+	void touch() {
+		long now = System.nanoTime();
+		if(now - lastUsed > TOUCH_NANOS) lastUsed = now;
+	}
+
+	long lastUsed() {
+		return lastUsed;
+	}
+
+	/*
+	 * Exactly one of sb, buf and out is non-null. Returns the next char[]
+	 * index, or -1 if the value cannot be parsed.
+	 */
+	private int write(CharSequence s, int start, int end, StringBuilder sb, char[] buf, int pos, ByteBuffer out) {
+		long local = parser.parseLocal(s, start, end);
+		if(local != FastDateParser.UNDECIDED && isUnambiguous(local)) {
+			int next = target.writeLocal(local, sb, buf, pos, out);
+			if(next >= 0) return next;
+		}
+
+		ParsePosition position = new ParsePosition(0);
+		String text = (s instanceof String && start == 0 && end == s.length())
+			? (String)s : s.subSequence(start, end).toString();
+		Date date = source.parse(text, position);
+		// DateFormat.parse(String) rejects a parse that consumed nothing
+		if(date == null || position.getIndex() == 0) return -1;
+		if(sb != null) {
+			target.format(date.getTime(), sb);
+			return pos;
+		}
+		if(buf != null) return target.format(date.getTime(), buf, pos);
+		target.format(date.getTime(), out);
+		return pos;
+	}
+
+	/*
+	 * A parse keeps the wall time unless it falls in a gap; overlaps are left
+	 * to the general engine too. Offsets are under a day, so a wall time is
+	 * safe when a single offset period covers the day either side of it.
+	 */
+	private boolean isUnambiguous(long local) {
+		int period = offsets.periodIndex(local - DateUtilities.DAY_UNITS);
+		if(period >= 0 && offsets.periodEnd(period) > local + DateUtilities.DAY_UNITS) return true;
+		return offsets.localToUtc(local) != ZoneOffsetTable.AMBIGUOUS;
+	}
+}
@@ -1,22 +1,50 @@
 package dates;
 
 import java.util.Date;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Locale;
+import java.util.TimeZone;
+import java.nio.ByteBuffer;
 import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.text.ParseException;
 
 /**
  * Utility class to simplify managing and using dates and times. Fields are
  * provided for choice of units to be returned from date/time difference calculations.
  * <P>
+ * Every method is thread-safe and may be called from any number of platform or
+ * virtual threads at once. Shared formats are borrowed from lock-free pools and
+ * no method takes a monitor or waits for another caller, so a virtual thread is
+ * never pinned to its carrier here. Do not keep a <code>SimpleDateFormat</code>
+ * in a static field; pass the pattern to <code>toString(Date, String)</code> instead.
+ * <P>
  * Change History:
  * <UL>
  * 		<LI>2007-03-02 - initial version.</LI>
  * 		<LI>2007-03-09 - fixed bug in dateDiff method that under certain circumstances
  *                       produced incorrect values.</LI>
  *      <LI>2007-03-30 - refactored various method names and added toDate() method.
+ *      <LI>2026-10-18 - pattern based methods now share compiled formats through
+ *                       FormatterRegistry instead of creating a SimpleDateFormat per call.
+ *      <LI>2026-10-18 - toDate() no longer uses exceptions to fall through the
+ *                       DateFormat styles; added parseDate().
+ *      <LI>2026-10-18 - added calendar-aware dateDiff units (calendar days, months,
+ *                       years, business days).
+ *      <LI>2026-10-18 - added DateValue overloads of toString() and dateDiff().
+ *      <LI>2026-10-18 - style toString() methods use formats cached by FormatterRegistry.
+ *      <LI>2026-10-18 - now() and format(String) read a pluggable DateClock.
+ *      <LI>2026-10-18 - toString(Date) and toString(Calendar) share cached formats;
+ *                       documented thread safety.
+ *      <LI>2026-10-18 - entry points report to DateMetrics when it is enabled.
+ *      <LI>2026-10-18 - style toString() methods format from DateStartup tables when
+ *                       startup data covers the locale.
+ *      <LI>2026-10-18 - format(String, String) rewrites through DateTranscoder; added
+ *                       format(String, String, String) to convert between patterns.
+ *      <LI>2026-10-18 - format(String, String) again formats in a zone named by the
+ *                       string, as a single SimpleDateFormat does.
+ *      <LI>2026-10-18 - DateValue overloads of toString() format in the value's own
+ *                       zone and reject a null date.
  * </UL>
  *
  * @author  Various students
@@ -28,14 +56,41 @@ public class DateUtilities {
 	public static final long MINUTE_UNITS = 1000L * 60L;
 	public static final long SECOND_UNITS = 1000L;
 
+	// Calendar-aware units. These are not millisecond multiples; they are only
+	// understood by the dateDiff methods, which count them in the date's time zone.
+	public static final long CALENDAR_DAY_UNITS = -1L;
+	public static final long MONTH_UNITS = -2L;
+	public static final long YEAR_UNITS = -3L;
+	public static final long BUSINESS_DAY_UNITS = -4L;
+
     public static enum DateStyle {SHORT, MEDIUM, LONG, FULL}
 
+	private static volatile DateClock clock = DateClock.system();
+
 	// Prohibit instantiation
 	private DateUtilities() {}
 
 	/** Returns the current date and time. */
 	public static Date now() {
-		return Calendar.getInstance().getTime();
+		long start = DateMetrics.start();
+		Date date = new Date(clock.millis());
+		DateMetrics.stop(DateMetrics.Operation.NOW, start);
+		return date;
+	}
+
+	/**
+	 * Set the clock that now() and format(String) read the current time from.
+	 * @param aClock - a <code>DateClock</code>, e.g. DateClock.system() or DateClock.coarse(1000)
+	 * @throws IllegalArgumentException if aClock is null
+	 */
+	public static void setClock(DateClock aClock) throws IllegalArgumentException {
+		if(aClock == null) throw new IllegalArgumentException("Error: clock argument cannot be null");
+		clock = aClock;
+	}
+
+	/** Returns the clock that now() and format(String) read the current time from. */
+	public static DateClock getClock() {
+		return clock;
 	}
 
 	/**
@@ -46,8 +101,26 @@ public class DateUtilities {
 	 */
 	public static String toString(Date date) throws IllegalArgumentException {
 		if(date == null) throw new IllegalArgumentException("Error: date argument cannot be null");
-		DateFormat df = DateFormat.getDateInstance();
-		return df.format(date);
+		return toString(date.getTime(), TimeZone.getDefault());
+	}
+
+	// formats an instant in a zone with the default date style of the current locale
+	private static String toString(long millis, TimeZone zone) {
+		long start = DateMetrics.start();
+		Locale aLocale = Locale.getDefault(Locale.Category.FORMAT);
+		String strDate = DateStartup.format(millis, DateFormat.DEFAULT, LocaleTables.NO_STYLE, aLocale, zone);
+		if(strDate == null) {
+			SharedDateFormat df = FormatterRegistry.getDefault().getDateInstance(DateFormat.DEFAULT, aLocale, zone);
+			if(df != null) {
+				strDate = df.format(new Date(millis));
+			} else {
+				DateFormat f = DateFormat.getDateInstance();
+				f.setTimeZone(zone);
+				strDate = f.format(new Date(millis));
+			}
+		}
+		DateMetrics.stop(DateMetrics.Operation.TO_STRING, start, null, null);
+		return strDate;
 	}
 
 	/**
@@ -57,8 +130,8 @@ public class DateUtilities {
 	 * @throws IllegalArgumentException if date is null
 	 */
 	public static String toString(Calendar date) throws IllegalArgumentException {
-		DateFormat df = DateFormat.getDateInstance();
-		return df.format(date.getTime());
+		if(date == null) throw new IllegalArgumentException("Error: date argument cannot be null");
+		return toString(date.getTime());
 	}
 
 	/**
@@ -70,8 +143,10 @@ public class DateUtilities {
 	 */
 	public static String toString(Calendar date, String pattern) throws IllegalArgumentException {
 		String strDate = null;
-		SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+		long start = DateMetrics.start();
+		SharedDateFormat sdf = FormatterRegistry.getDefault().get(pattern);
 		strDate = sdf.format(date.getTime());
+		DateMetrics.stop(DateMetrics.Operation.TO_STRING_PATTERN, start, pattern, null);
 
 		return strDate;
 	}
@@ -88,27 +163,28 @@ public class DateUtilities {
 	public static String toString(Calendar date, DateStyle dateFormatStyle, Locale aLocale)
 	throws IllegalArgumentException 
     {
-        DateFormat df = null; // need this throughout the method
+		return toString(date, toFormatStyle(dateFormatStyle), aLocale);
+	}
+
+	private static int toFormatStyle(DateStyle dateFormatStyle) {
+        int style = DateFormat.DEFAULT; // need this throughout the method
 
 		switch(dateFormatStyle) {
             case SHORT:
-                df = DateFormat.getDateInstance(DateFormat.SHORT, aLocale);
+                style = DateFormat.SHORT;
                 break;
             case MEDIUM:
-                df = DateFormat.getDateInstance(DateFormat.MEDIUM, aLocale);
+                style = DateFormat.MEDIUM;
                 break;
             case LONG:
-                 df = DateFormat.getDateInstance(DateFormat.LONG, aLocale);
+                style = DateFormat.LONG;
                break;
             case FULL:
-                df = DateFormat.getDateInstance(DateFormat.FULL, aLocale);
+                style = DateFormat.FULL;
                 break;
         }
 
-		String strDate = null;
-		strDate = df.format(date.getTime());
-
-		return strDate;
+		return style;
 	}
 
     /**
@@ -122,11 +198,7 @@ public class DateUtilities {
 	 */
 	public static String toString(Calendar date, int dateFormatStyle, Locale aLocale)
 	throws IllegalArgumentException {
-		String strDate = null;
-		DateFormat df = DateFormat.getDateInstance(dateFormatStyle, aLocale);
-		strDate = df.format(date.getTime());
-
-		return strDate;
+		return toString(date.getTimeInMillis(), dateFormatStyle, LocaleTables.NO_STYLE, aLocale, TimeZone.getDefault());
 	}
 
 	/**
@@ -140,13 +212,109 @@ public class DateUtilities {
 	 */
 	public static String toString(Calendar date, int dateFormatStyle, int timeFormatStyle, Locale aLocale)
 	throws IllegalArgumentException {
-		String strDate = null;
-		DateFormat df = DateFormat.getDateTimeInstance(dateFormatStyle, timeFormatStyle, aLocale);
-		strDate = df.format(date.getTime());
+		return toString(date.getTimeInMillis(), dateFormatStyle, timeFormatStyle, aLocale, TimeZone.getDefault());
+	}
 
+	/*
+	 * Formats an instant in a zone from the DateStartup tables when they
+	 * cover the locale and styles, otherwise with the shared formats.
+	 */
+	private static String toString(long millis, int dateFormatStyle, int timeFormatStyle, Locale aLocale,
+		TimeZone zone) throws IllegalArgumentException {
+		long start = DateMetrics.start();
+		String strDate = DateStartup.format(millis, dateFormatStyle, timeFormatStyle, aLocale, zone);
+		if(strDate == null) {
+			FormatterRegistry registry = FormatterRegistry.getDefault();
+			SharedDateFormat df = timeFormatStyle == LocaleTables.NO_STYLE
+				? registry.getDateInstance(dateFormatStyle, aLocale, zone)
+				: registry.getDateTimeInstance(dateFormatStyle, timeFormatStyle, aLocale, zone);
+			if(df != null) {
+				strDate = df.format(new Date(millis));
+			} else {
+				DateFormat f = timeFormatStyle == LocaleTables.NO_STYLE
+					? DateFormat.getDateInstance(dateFormatStyle, aLocale)
+					: DateFormat.getDateTimeInstance(dateFormatStyle, timeFormatStyle, aLocale);
+				f.setTimeZone(zone);
+				strDate = f.format(new Date(millis));
+			}
+		}
+		DateMetrics.stop(DateMetrics.Operation.TO_STRING_STYLE, start, null, aLocale);
 		return strDate;
 	}
 
+	/**
+	 * Format a <code>DateValue</code>, in its own time zone, according to the default date pattern for the current locale
+	 * @param date - a <code>DateValue</code> object
+	 * @return a date formatted according to the default date pattern for the current locale
+	 * @throws IllegalArgumentException if date is null
+	 */
+	public static String toString(DateValue date) throws IllegalArgumentException {
+		if(date == null) throw new IllegalArgumentException("Error: date argument cannot be null");
+		return toString(date.getEpochMillis(), date.getZoneTable().getZone());
+	}
+
+	/**
+	 * Format a <code>DateValue</code>, in its own time zone, according to a specified pattern
+	 * @param date - a <code>DateValue</code> object
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @return a date and or time formatted according to the specified pattern
+	 * @throws IllegalArgumentException if date is null or pattern is not recognized
+	 */
+	public static String toString(DateValue date, String pattern) throws IllegalArgumentException {
+		if(date == null) throw new IllegalArgumentException("Error: date argument cannot be null");
+		long start = DateMetrics.start();
+		String strDate = FastDateFormatter.getInstance(pattern, date.getZoneTable().getZone())
+			.format(date.getEpochMillis());
+		DateMetrics.stop(DateMetrics.Operation.TO_STRING_PATTERN, start, pattern, null);
+		return strDate;
+	}
+
+	/**
+	 * Format a <code>DateValue</code>, in its own time zone, according to a specified style for a specified Locale
+	 * @param date - a <code>DateValue</code> object
+	 * @param dateFormatStyle - a <code>DateStyle</code> enumerated type
+	 * @param aLocale - a <code>Locale</code> field
+	 * @return a date formatted according to the specified style for the specified Locale
+	 * @throws IllegalArgumentException if date is null or style or locale is not recognized
+	 */
+	public static String toString(DateValue date, DateStyle dateFormatStyle, Locale aLocale)
+	throws IllegalArgumentException {
+		return toString(date, toFormatStyle(dateFormatStyle), aLocale);
+	}
+
+	/**
+	 * Format a <code>DateValue</code>, in its own time zone, according to a specified <code>DateFormat</code>
+	 * style for a specified Locale
+	 * @param date - a <code>DateValue</code> object
+	 * @param dateFormatStyle - a <code>DateFormat</code> style field
+	 * @param aLocale - a <code>Locale</code> field
+	 * @return a date formatted according to the specified style for the specified Locale
+	 * @throws IllegalArgumentException if date is null or style or locale is not recognized
+	 */
+	public static String toString(DateValue date, int dateFormatStyle, Locale aLocale)
+	throws IllegalArgumentException {
+		if(date == null) throw new IllegalArgumentException("Error: date argument cannot be null");
+		return toString(date.getEpochMillis(), dateFormatStyle, LocaleTables.NO_STYLE, aLocale,
+			date.getZoneTable().getZone());
+	}
+
+	/**
+	 * Format a <code>DateValue</code>, in its own time zone, according to a specified date and time style
+	 * for a specified Locale
+	 * @param date - a <code>DateValue</code> object
+	 * @param dateFormatStyle - a <code>DateFormat</code> style field
+	 * @param timeFormatStyle - a <code>DateFormat</code> style field
+	 * @param aLocale - a <code>Locale</code> field
+	 * @return a date and time formatted according to the specified styles for the specified Locale
+	 * @throws IllegalArgumentException if date is null or any style or locale is not recognized
+	 */
+	public static String toString(DateValue date, int dateFormatStyle, int timeFormatStyle, Locale aLocale)
+	throws IllegalArgumentException {
+		if(date == null) throw new IllegalArgumentException("Error: date argument cannot be null");
+		return toString(date.getEpochMillis(), dateFormatStyle, timeFormatStyle, aLocale,
+			date.getZoneTable().getZone());
+	}
+
 	/**
 	 * Format a <code>Date</code> according to a specified pattern
 	 * @param date - a <code>Date</code> object
@@ -156,8 +324,10 @@ public class DateUtilities {
 	 */
 	public static String toString(Date date, String pattern) throws IllegalArgumentException {
 		String strDate = null;
-		SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+		long start = DateMetrics.start();
+		SharedDateFormat sdf = FormatterRegistry.getDefault().get(pattern);
 		strDate = sdf.format(date);
+		DateMetrics.stop(DateMetrics.Operation.TO_STRING_PATTERN, start, pattern, null);
 
 		return strDate;
 	}
@@ -169,14 +339,15 @@ public class DateUtilities {
 	 * @throws IllegalArgumentException if pattern is not recognized
 	 */
 	public static String format(String pattern) throws IllegalArgumentException {
-		String strDate = null;
-		SimpleDateFormat sdf = new SimpleDateFormat(pattern);
-		strDate = sdf.format(new Date());
+		long start = DateMetrics.start();
+		String strDate = clock.format(pattern);
+		DateMetrics.stop(DateMetrics.Operation.FORMAT, start, pattern, null);
 		return strDate;
 	}
 
 	/**
-	 * Format a date and/or time string according to the specified pattern.
+	 * Format a date and/or time string according to the specified pattern. A
+	 * zone named in dateString, such as "PST", is the zone of the result.
 	 * @param dateString - a <code>String</code> representation of a date and/or time
 	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
 	 * @return a date and/or time formatted according to the specified pattern
@@ -185,14 +356,97 @@ public class DateUtilities {
 	public static String format(String dateString, String pattern)
 	throws ParseException, IllegalArgumentException {
 		String strDate = null;
-		Date date = null;
-		SimpleDateFormat sdf = new SimpleDateFormat(pattern);
-		date = sdf.parse(dateString);
-		strDate = sdf.format(date);
+		long start = DateMetrics.start();
+		DateTranscoder transcoder = DateTranscoder.getInstance(pattern, pattern);
+		// a numeric pattern names no zone, so the parse cannot move the result to another one
+		if(dateString != null && transcoder.isDirect()) strDate = transcoder.transcode(dateString);
+		if(strDate == null) strDate = FormatterRegistry.getDefault().get(pattern).reformat(dateString);
+		DateMetrics.stop(DateMetrics.Operation.FORMAT, start, pattern, null);
 
 		return strDate;
 	}
 
+	/**
+	 * Rewrite a date and/or time string from one pattern to another, as if it
+	 * were parsed with the first and formatted with the second. Numeric patterns
+	 * are rewritten field by field; see <code>DateTranscoder</code>.
+	 * @param dateString - a <code>String</code> representation of a date and/or time
+	 * @param sourcePattern - the <code>SimpleDateFormat</code> pattern of dateString
+	 * @param targetPattern - the <code>SimpleDateFormat</code> pattern to format with
+	 * @return a date and/or time formatted according to targetPattern
+	 * @throws IllegalArgumentException if a pattern is not recognized
+	 */
+	public static String format(String dateString, String sourcePattern, String targetPattern)
+	throws ParseException, IllegalArgumentException {
+		String strDate = null;
+		long start = DateMetrics.start();
+		if(dateString != null) strDate = DateTranscoder.getInstance(sourcePattern, targetPattern).transcode(dateString);
+		if(strDate == null) {
+			// let the general engine report the failure
+			Date date = FormatterRegistry.getDefault().get(sourcePattern).parse(dateString);
+			strDate = FormatterRegistry.getDefault().get(targetPattern).format(date);
+		}
+		DateMetrics.stop(DateMetrics.Operation.FORMAT, start, targetPattern, null);
+
+		return strDate;
+	}
+
+	/**
+	 * Append an epoch millisecond timestamp, formatted according to the specified
+	 * pattern in the specified zone, to a <code>StringBuilder</code>. Numeric
+	 * patterns are formatted without allocating; see <code>FastDateFormatter</code>.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @param zone - the <code>TimeZone</code> to render the timestamp in
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @param sb - the destination
+	 * @return the destination
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	public static StringBuilder format(long epochMillis, TimeZone zone, String pattern, StringBuilder sb)
+	throws IllegalArgumentException {
+		long start = DateMetrics.start();
+		StringBuilder result = FastDateFormatter.getInstance(pattern, zone).format(epochMillis, sb);
+		DateMetrics.stop(DateMetrics.Operation.FORMAT_BUFFER, start, pattern, null);
+		return result;
+	}
+
+	/**
+	 * Write an epoch millisecond timestamp, formatted according to the specified
+	 * pattern in the specified zone, into a <code>char[]</code>.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @param zone - the <code>TimeZone</code> to render the timestamp in
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @param buf - the destination
+	 * @param offset - the index of the first character to write
+	 * @return the index just past the last character written
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	public static int format(long epochMillis, TimeZone zone, String pattern, char[] buf, int offset)
+	throws IllegalArgumentException {
+		long start = DateMetrics.start();
+		int result = FastDateFormatter.getInstance(pattern, zone).format(epochMillis, buf, offset);
+		DateMetrics.stop(DateMetrics.Operation.FORMAT_BUFFER, start, pattern, null);
+		return result;
+	}
+
+	/**
+	 * Write an epoch millisecond timestamp, formatted according to the specified
+	 * pattern in the specified zone, into a <code>ByteBuffer</code> as UTF-8.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @param zone - the <code>TimeZone</code> to render the timestamp in
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @param out - the destination
+	 * @return the destination
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	public static ByteBuffer format(long epochMillis, TimeZone zone, String pattern, ByteBuffer out)
+	throws IllegalArgumentException {
+		long start = DateMetrics.start();
+		ByteBuffer result = FastDateFormatter.getInstance(pattern, zone).format(epochMillis, out);
+		DateMetrics.stop(DateMetrics.Operation.FORMAT_BUFFER, start, pattern, null);
+		return result;
+	}
+
 	/**
 	 * Attempts to convert a String representation of a date to a java.util.Date
 	 * object. Conversion rules are based on parse definitions in the
@@ -203,35 +457,50 @@ public class DateUtilities {
 	 */
 	public static Date toDate(String dateString)
 	throws IllegalArgumentException {
-		Date date = null;
-		DateFormat df = DateFormat.getDateInstance();
-		try {
-			df = DateFormat.getDateInstance(DateFormat.SHORT);
-			date = df.parse(dateString);
-		} catch( Exception e) {
-			try {
-				df = DateFormat.getDateInstance(DateFormat.MEDIUM);
-				date = df.parse(dateString);
-			} catch(Exception e2) {
-				try {
-					df = DateFormat.getDateInstance(DateFormat.LONG);
-					date = df.parse(dateString);
-				} catch(Exception e3) {
-					try {
-						df = DateFormat.getDateInstance(DateFormat.FULL);
-						date = df.parse(dateString);
-					} catch(Exception e4) {
-						throw new IllegalArgumentException(e4.getMessage());
-					}
-				}
-			}
-		}
+		Date date = parseDate(dateString);
+		if(date == null) throw new IllegalArgumentException("Unparseable date: \"" + dateString + "\"");
 		return date;
 	}
 
+	/**
+	 * Same as <code>toDate(String)</code>, but returns null instead of throwing when
+	 * the string cannot be parsed. The SHORT, MEDIUM, LONG and FULL styles of the
+	 * default locale are tried in that order; styles that cannot match the shape
+	 * of the input are skipped without being attempted.
+	 * @param dateString - a <code>String</code> representation of a date
+	 * @return a java.util.Date object, or null if the date string cannot be parsed
+	 */
+	public static Date parseDate(String dateString) {
+		long start = DateMetrics.start();
+		Locale aLocale = Locale.getDefault(Locale.Category.FORMAT);
+		Date date = DateStyleParser.forLocale(aLocale).parse(dateString);
+		DateMetrics.stop(DateMetrics.Operation.TO_DATE, start, null, aLocale);
+		return date;
+	}
+
+	/**
+	 * Parse a column of date strings that share one pattern into epoch
+	 * milliseconds. Unparseable or null rows are written as 0 and flagged in
+	 * <code>failures</code>. For repeated batches keep a <code>DateColumnParser</code>.
+	 * @param dateStrings - the date strings
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @param out - receives epoch milliseconds, at least dateStrings.length long
+	 * @param failures - receives the indexes of rows that could not be parsed
+	 * @return the number of rows written
+	 * @throws IllegalArgumentException if pattern is not recognized or out is too small
+	 */
+	public static int toEpochMillis(String[] dateStrings, String pattern, long[] out, BitSet failures)
+	throws IllegalArgumentException {
+		long start = DateMetrics.start();
+		int rows = new DateColumnParser(pattern).parse(dateStrings, out, failures);
+		DateMetrics.stop(DateMetrics.Operation.TO_EPOCH_MILLIS, start, pattern, null);
+		return rows;
+	}
+
 	/**
 	 * Calculate the difference, in DateUtilitities field units, for any two <code>Calendar</code> objects
-	 * @param dateUtilitiesUnitField - the unit of measure (e.g., DateUtilities.DAY_UNITS, DateUtilities.HOUR_UNITS, etc.)
+	 * @param dateUtilitiesUnitField - the unit of measure (e.g., DateUtilities.DAY_UNITS, DateUtilities.HOUR_UNITS,
+	 *                                 DateUtilities.MONTH_UNITS, etc.)
 	 * @param firstDate - a <code>Calendar</code> object
 	 * @param secondDate - a <code>Calendar</code> object
 	 * @return the difference in DateUtilities units as a positive whole number
@@ -239,12 +508,95 @@ public class DateUtilities {
 	 */
 	public static int dateDiff(long dateUtilitiesUnitField, Calendar firstDate, Calendar secondDate)
 	throws IllegalArgumentException {
+		if(dateUtilitiesUnitField < 0) {
+			return dateDiff(dateUtilitiesUnitField, firstDate, secondDate, HolidayCalendar.WEEKENDS_ONLY);
+		}
+		long start = DateMetrics.start();
 		long diff = Math.abs(firstDate.getTimeInMillis() - secondDate.getTimeInMillis());
 		double diffAmt = (double)diff / dateUtilitiesUnitField;
+		DateMetrics.stop(DateMetrics.Operation.DATE_DIFF, start);
 
 		return (int)Math.round(diffAmt);
 	}
 
+	/**
+	 * Calculate the difference, in DateUtilities field units, for any two <code>Calendar</code>
+	 * objects, counting business days against the specified holiday calendar.
+	 * Calendar-aware units are counted in the time zone of the first date; see
+	 * <code>BulkDateDiff.diff(long, long, long, TimeZone, HolidayCalendar)</code>.
+	 * @param dateUtilitiesUnitField - the unit of measure (e.g., DateUtilities.BUSINESS_DAY_UNITS)
+	 * @param firstDate - a <code>Calendar</code> object
+	 * @param secondDate - a <code>Calendar</code> object
+	 * @param holidays - the weekend days and holidays for BUSINESS_DAY_UNITS
+	 * @return the difference in DateUtilities units as a positive whole number
+	 * @throws IllegalArgumentException if any argument is invalid
+	 */
+	public static int dateDiff(long dateUtilitiesUnitField, Calendar firstDate, Calendar secondDate,
+		HolidayCalendar holidays) throws IllegalArgumentException {
+		if(dateUtilitiesUnitField > 0) return dateDiff(dateUtilitiesUnitField, firstDate, secondDate);
+		long start = DateMetrics.start();
+		int diff = (int)BulkDateDiff.diff(dateUtilitiesUnitField, firstDate.getTimeInMillis(),
+			secondDate.getTimeInMillis(), firstDate.getTimeZone(), holidays);
+		DateMetrics.stop(DateMetrics.Operation.DATE_DIFF, start);
+		return diff;
+	}
+
+	/**
+	 * Calculate the difference, in DateUtilities field units, for any two <code>DateValue</code> objects
+	 * @param dateUtilitiesUnitField - the unit of measure (e.g., DateUtilities.DAY_UNITS, DateUtilities.MONTH_UNITS, etc.)
+	 * @param firstDate - a <code>DateValue</code> object
+	 * @param secondDate - a <code>DateValue</code> object
+	 * @return the difference in DateUtilities units as a positive whole number
+	 * @throws IllegalArgumentException if any argument is invalid
+	 */
+	public static int dateDiff(long dateUtilitiesUnitField, DateValue firstDate, DateValue secondDate)
+	throws IllegalArgumentException {
+		return dateDiff(dateUtilitiesUnitField, firstDate, secondDate, HolidayCalendar.WEEKENDS_ONLY);
+	}
+
+	/**
+	 * Calculate the difference, in DateUtilities field units, for any two <code>DateValue</code>
+	 * objects, counting business days against the specified holiday calendar.
+	 * Calendar-aware units are counted in the time zone of the first date.
+	 * @param dateUtilitiesUnitField - the unit of measure (e.g., DateUtilities.BUSINESS_DAY_UNITS)
+	 * @param firstDate - a <code>DateValue</code> object
+	 * @param secondDate - a <code>DateValue</code> object
+	 * @param holidays - the weekend days and holidays for BUSINESS_DAY_UNITS
+	 * @return the difference in DateUtilities units as a positive whole number
+	 * @throws IllegalArgumentException if any argument is invalid
+	 */
+	public static int dateDiff(long dateUtilitiesUnitField, DateValue firstDate, DateValue secondDate,
+		HolidayCalendar holidays) throws IllegalArgumentException {
+		long start = DateMetrics.start();
+		int diff;
+		if(dateUtilitiesUnitField > 0) {
+			double diffAmt = (double)Math.abs(firstDate.getEpochMillis() - secondDate.getEpochMillis())
+				/ dateUtilitiesUnitField;
+			diff = (int)Math.round(diffAmt);
+		} else {
+			diff = (int)BulkDateDiff.diff(dateUtilitiesUnitField, firstDate.getEpochMillis(),
+				secondDate.getEpochMillis(), firstDate.getTimeZone(), holidays);
+		}
+		DateMetrics.stop(DateMetrics.Operation.DATE_DIFF, start);
+		return diff;
+	}
+
+	/**
+	 * Calculate the difference, in DateUtilities field units, for every row of two
+	 * columns of epoch millisecond timestamps. Large columns are split across cores.
+	 * @param dateUtilitiesUnitField - the unit of measure (e.g., DateUtilities.DAY_UNITS, DateUtilities.HOUR_UNITS, etc.)
+	 * @param firstDates - epoch milliseconds
+	 * @param secondDates - epoch milliseconds, the same length as firstDates
+	 * @param out - receives the differences in DateUtilities units as positive whole numbers
+	 * @throws IllegalArgumentException if any argument is invalid
+	 */
+	public static void dateDiff(long dateUtilitiesUnitField, long[] firstDates, long[] secondDates, long[] out)
+	throws IllegalArgumentException {
+		long start = DateMetrics.start();
+		BulkDateDiff.diff(dateUtilitiesUnitField, firstDates, secondDates, out);
+		DateMetrics.stop(DateMetrics.Operation.DATE_DIFF_BULK, start);
+	}
+
 	/*
 	 * Test harness.
 	 * @param args - not used
@@ -0,0 +1,303 @@
+package dates;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * An immutable date and time in a time zone, for use in place of a mutable
+ * <code>Calendar</code>. A value is one <code>long</code> of epoch milliseconds
+ * plus a reference to a zone table shared by every value in that zone, so it
+ * costs a few dozen bytes instead of the several hundred a
+ * <code>GregorianCalendar</code> needs, and it can be shared between threads
+ * without defensive copies.
+ * <P>
+ * Arithmetic follows <code>Calendar.add</code>: <code>plusDays</code> keeps the
+ * local time of day, and <code>plusMonths</code> and <code>plusYears</code> clamp
+ * the day to the end of a shorter month. Months are numbered 1 to 12.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class DateValue implements Comparable<DateValue> {
+	private final long epochMillis;
+	private final ZoneOffsetTable zone;
+
+	private DateValue(long epochMillis, ZoneOffsetTable zone) {
+		this.epochMillis = epochMillis;
+		this.zone = zone;
+	}
+
+	/** Returns the current date and time in the default time zone. */
+	public static DateValue now() {
+		return new DateValue(System.currentTimeMillis(), ZoneOffsetTable.forZone(TimeZone.getDefault()));
+	}
+
+	/**
+	 * Create a value for an instant in a time zone.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @param zone - a <code>TimeZone</code>
+	 */
+	public static DateValue of(long epochMillis, TimeZone zone) {
+		return new DateValue(epochMillis, ZoneOffsetTable.forZone(zone));
+	}
+
+	/**
+	 * Create a value for the same instant and time zone as a <code>Calendar</code>.
+	 * @param date - a <code>Calendar</code> object
+	 * @throws IllegalArgumentException if date is null
+	 */
+	public static DateValue of(Calendar date) throws IllegalArgumentException {
+		if(date == null) throw new IllegalArgumentException("Error: date argument cannot be null");
+		return of(date.getTimeInMillis(), date.getTimeZone());
+	}
+
+	/**
+	 * Create a value for a <code>Date</code> in the default time zone.
+	 * @param date - a <code>Date</code> object
+	 * @throws IllegalArgumentException if date is null
+	 */
+	public static DateValue of(Date date) throws IllegalArgumentException {
+		if(date == null) throw new IllegalArgumentException("Error: date argument cannot be null");
+		return of(date.getTime(), TimeZone.getDefault());
+	}
+
+	/**
+	 * Create a value for midnight at the start of a date in a time zone.
+	 * @param year - the year
+	 * @param month - the month, 1 (January) to 12 (December)
+	 * @param day - the day of the month
+	 * @param zone - a <code>TimeZone</code>
+	 */
+	public static DateValue of(int year, int month, int day, TimeZone zone) {
+		Calendar c = new GregorianCalendar(zone);
+		c.clear();
+		c.set(year, month - 1, day);
+		return of(c);
+	}
+
+	/** Returns the instant as milliseconds since 1970-01-01T00:00Z. */
+	public long getEpochMillis() {
+		return epochMillis;
+	}
+
+	/** Returns the local date as days since 1970-01-01. */
+	public long getEpochDay() {
+		return Math.floorDiv(zone.toLocal(epochMillis), DateUtilities.DAY_UNITS);
+	}
+
+	/** Returns a copy of the time zone. */
+	public TimeZone getTimeZone() {
+		return zone.getZone();
+	}
+
+	/** Returns the shared offset table of the time zone. */
+	ZoneOffsetTable getZoneTable() {
+		return zone;
+	}
+
+	/** Returns the local year. */
+	public int getYear() {
+		return isGregorian(epochMillis) ? (int)CivilDates.year(civil()) : toCalendar().get(Calendar.YEAR);
+	}
+
+	/** Returns the local month, 1 (January) to 12 (December). */
+	public int getMonth() {
+		return isGregorian(epochMillis) ? CivilDates.month(civil()) : toCalendar().get(Calendar.MONTH) + 1;
+	}
+
+	/** Returns the local day of the month. */
+	public int getDayOfMonth() {
+		return isGregorian(epochMillis) ? CivilDates.day(civil()) : toCalendar().get(Calendar.DAY_OF_MONTH);
+	}
+
+	/**
+	 * Returns a value a number of milliseconds later (or earlier, if negative).
+	 * @param millis - the milliseconds to add
+	 */
+	public DateValue plusMillis(long millis) {
+		return millis == 0 ? this : new DateValue(epochMillis + millis, zone);
+	}
+
+	/**
+	 * Returns a value a number of local days later, at the same local time of day,
+	 * like <code>Calendar.add(Calendar.DATE, days)</code>.
+	 * @param days - the days to add, may be negative
+	 * @throws IllegalArgumentException if the amount does not fit an int and the result falls
+	 * before 1582-10-15 or in a daylight saving gap or overlap, where only
+	 * <code>Calendar.add</code> can resolve it
+	 */
+	public DateValue plusDays(long days) throws IllegalArgumentException {
+		return days == 0 ? this : new DateValue(add(zone, epochMillis, Calendar.DATE, days), zone);
+	}
+
+	/**
+	 * Returns a value a number of months later, like
+	 * <code>Calendar.add(Calendar.MONTH, months)</code>.
+	 * @param months - the months to add, may be negative
+	 * @throws IllegalArgumentException if the amount does not fit an int and the result falls
+	 * before 1582-10-15 or in a daylight saving gap or overlap, where only
+	 * <code>Calendar.add</code> can resolve it
+	 */
+	public DateValue plusMonths(long months) throws IllegalArgumentException {
+		return months == 0 ? this : new DateValue(add(zone, epochMillis, Calendar.MONTH, months), zone);
+	}
+
+	/**
+	 * Returns a value a number of years later, like
+	 * <code>Calendar.add(Calendar.YEAR, years)</code>.
+	 * @param years - the years to add, may be negative
+	 * @throws IllegalArgumentException if the amount does not fit an int and the result falls
+	 * before 1582-10-15 or in a daylight saving gap or overlap, where only
+	 * <code>Calendar.add</code> can resolve it
+	 */
+	public DateValue plusYears(long years) throws IllegalArgumentException {
+		return years == 0 ? this : new DateValue(add(zone, epochMillis, Calendar.YEAR, years), zone);
+	}
+
+	/**
+	 * Returns a value shifted by an amount of a <code>Calendar</code> field,
+	 * exactly like <code>Calendar.add(field, amount)</code>.
+	 * @param field - a <code>Calendar</code> field, e.g. Calendar.DATE or Calendar.HOUR
+	 * @param amount - the amount to add, may be negative
+	 * @throws IllegalArgumentException if the field cannot be added to, or if the amount
+	 * does not fit an int and the result falls before 1582-10-15 or in a daylight
+	 * saving gap or overlap, where only <code>Calendar.add</code> can resolve it
+	 */
+	public DateValue plus(int field, long amount) throws IllegalArgumentException {
+		return amount == 0 ? this : new DateValue(add(zone, epochMillis, field, amount), zone);
+	}
+
+	/** Returns true if this instant is before another. */
+	public boolean isBefore(DateValue other) {
+		return epochMillis < other.epochMillis;
+	}
+
+	/** Returns true if this instant is after another. */
+	public boolean isAfter(DateValue other) {
+		return epochMillis > other.epochMillis;
+	}
+
+	/** Orders values by instant. */
+	@Override
+	public int compareTo(DateValue other) {
+		return Long.compare(epochMillis, other.epochMillis);
+	}
+
+	/** Returns a new <code>Calendar</code> for this instant and time zone. */
+	public Calendar toCalendar() {
+		Calendar c = new GregorianCalendar(zone.getZone());
+		c.setTimeInMillis(epochMillis);
+		return c;
+	}
+
+	/** Returns a new <code>Date</code> for this instant. */
+	public Date toDate() {
+		return new Date(epochMillis);
+	}
+
+	/** Two values are equal if they have the same instant and time zone id. */
+	@Override
+	public boolean equals(Object o) {
+		if(this == o) return true;
+		if(!(o instanceof DateValue)) return false;
+		DateValue v = (DateValue)o;
+		return epochMillis == v.epochMillis && zone.getID().equals(v.zone.getID());
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(epochMillis) * 31 + zone.getID().hashCode();
+	}
+
+	/** Returns the instant in ISO-8601 form with the zone id, e.g. 2010-12-01T23:30:00.000-05:00[America/New_York]. */
+	@Override
+	public String toString() {
+		long local = zone.toLocal(epochMillis);
+		int offset = (int)(local - epochMillis) / 60000;
+		return FastDateFormatter.getInstance("yyyy-MM-dd'T'HH:mm:ss.SSS", zone.getZone()).format(epochMillis)
+			+ (offset < 0 ? "-" : "+") + String.format("%02d:%02d", Math.abs(offset) / 60, Math.abs(offset) % 60)
+			+ "[" + zone.getID() + "]";
+	}
+
+	private long civil() {
+		return CivilDates.civilFromDays(getEpochDay());
+	}
+
+	/*
+	 * Calendar.add(field, amount) on an instant in a zone. Time fields are a
+	 * fixed number of milliseconds; date fields move the local wall time and
+	 * convert it back, keeping the time of day. Dates before the Gregorian
+	 * cutover and wall times in a DST gap or overlap are left to Calendar.add
+	 * so the result always matches it; there an amount that does not fit an
+	 * int is rejected, since Calendar.add cannot take it.
+	 */
+	static long add(ZoneOffsetTable zone, long millis, int field, long amount) throws IllegalArgumentException {
+		if(amount == 0) return millis;
+		switch(field) {
+			case Calendar.MILLISECOND:
+				return millis + amount;
+			case Calendar.SECOND:
+				return millis + Math.multiplyExact(amount, DateUtilities.SECOND_UNITS);
+			case Calendar.MINUTE:
+				return millis + Math.multiplyExact(amount, DateUtilities.MINUTE_UNITS);
+			case Calendar.HOUR:
+			case Calendar.HOUR_OF_DAY:
+				return millis + Math.multiplyExact(amount, DateUtilities.HOUR_UNITS);
+			case Calendar.DAY_OF_MONTH:
+			case Calendar.DAY_OF_YEAR:
+			case Calendar.DAY_OF_WEEK:
+				return atLocal(zone, millis, zone.toLocal(millis) + Math.multiplyExact(amount, DateUtilities.DAY_UNITS),
+					field, amount);
+			case Calendar.WEEK_OF_YEAR:
+			case Calendar.WEEK_OF_MONTH:
+			case Calendar.DAY_OF_WEEK_IN_MONTH:
+				return atLocal(zone, millis,
+					zone.toLocal(millis) + Math.multiplyExact(amount, 7 * DateUtilities.DAY_UNITS), field, amount);
+			case Calendar.MONTH:
+			case Calendar.YEAR:
+				long local = zone.toLocal(millis);
+				long day = Math.floorDiv(local, DateUtilities.DAY_UNITS);
+				long timeOfDay = local - day * DateUtilities.DAY_UNITS;
+				long months = field == Calendar.YEAR ? Math.multiplyExact(amount, 12L) : amount;
+				return atLocal(zone, millis, CivilDates.plusMonths(day, months) * DateUtilities.DAY_UNITS + timeOfDay,
+					field, amount);
+			default:
+				return calendarAdd(zone, millis, field, amount);
+		}
+	}
+
+	private static long atLocal(ZoneOffsetTable zone, long millis, long local, int field, long amount)
+	throws IllegalArgumentException {
+		long utc = zone.localToUtc(local);
+		if(utc == ZoneOffsetTable.AMBIGUOUS || !isGregorian(millis) || !isGregorian(utc)) {
+			return calendarAdd(zone, millis, field, amount);
+		}
+		// Calendar.add cannot take the amount, so the wall time is the answer
+		if(amount != (int)amount) return utc;
+		if(field != Calendar.MONTH && field != Calendar.YEAR) {
+			// Calendar.add converts day fields with the old offset and corrects once,
+			// which misses utc when the first guess falls under a different offset
+			long guess = local - (zone.toLocal(millis) - millis);
+			if(zone.getOffset(guess) != zone.getOffset(utc)) return calendarAdd(zone, millis, field, amount);
+		}
+		return utc;
+	}
+
+	private static long calendarAdd(ZoneOffsetTable zone, long millis, int field, long amount)
+	throws IllegalArgumentException {
+		if(amount != (int)amount) {
+			throw new IllegalArgumentException("Error: amount must fit an int before 1582-10-15 or in a DST gap or overlap");
+		}
+		Calendar c = new GregorianCalendar(zone.getZone());
+		c.setTimeInMillis(millis);
+		c.add(field, (int)amount);
+		return c.getTimeInMillis();
+	}
+
+	private static boolean isGregorian(long millis) {
+		// a day of margin either side of the 1582-10-15 cutover
+		return millis >= -12219292800000L + DateUtilities.DAY_UNITS;
+	}
+}
@@ -0,0 +1,289 @@
+package dates;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An immutable, thread-safe formatter that writes epoch millisecond timestamps
+ * straight into a caller supplied <code>StringBuilder</code>, <code>char[]</code>
+ * or <code>ByteBuffer</code> without allocating. Numeric patterns such as
+ * "MM/dd/yyyy hh:mm a" are compiled into a list of fields which are filled in
+ * with civil date arithmetic and a precomputed zone offset table.
+ * <P>
+ * Supported pattern letters are y, M and MM, d, H, k, K, h, m, s, S and a, plus
+ * quoted and unquoted literals. Any other letter, dates before the Gregorian
+ * cutover and non-Gregorian locales are handed to the general
+ * <code>SharedDateFormat</code> engine, so the output always matches
+ * <code>SimpleDateFormat</code>.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class FastDateFormatter {
+	// recently returned formatters, so a repeated getInstance allocates no
+	// registry key while holding at most RECENT formatters beyond the registry
+	private static final int RECENT = 16;
+	private static final AtomicReferenceArray<FastDateFormatter> recent =
+		new AtomicReferenceArray<FastDateFormatter>(RECENT);
+
+	private final String pattern;
+	private final Locale locale;
+	private final TimeZone zone;
+	private final ZoneOffsetTable offsets;
+	private final SharedDateFormat fallback;
+	private final NumericPattern compiled;
+	private final char zeroDigit;
+
+	/**
+	 * Compile a pattern for the specified zone and locale.
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @param zone - the <code>TimeZone</code> to render timestamps in
+	 * @param aLocale - a <code>Locale</code> field
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	public FastDateFormatter(String pattern, TimeZone zone, Locale aLocale) throws IllegalArgumentException {
+		this(FormatterRegistry.getDefault().get(checkPattern(pattern), aLocale, zone));
+	}
+
+	/*
+	 * Compiles the pattern of a shared format, which is kept as the fallback.
+	 */
+	FastDateFormatter(SharedDateFormat fallback) {
+		this.pattern = fallback.getPattern();
+		this.locale = fallback.getLocale();
+		this.zone = fallback.getTimeZone();
+		this.fallback = fallback;
+		this.offsets = ZoneOffsetTable.forZone(this.zone);
+
+		this.compiled = new NumericPattern(pattern, fallback.newFormat(), locale);
+		this.zeroDigit = compiled.zeroDigit;
+	}
+
+	/**
+	 * Returns a shared formatter for a pattern in the specified zone and the
+	 * default locale. Formatters live alongside their pattern in the default
+	 * <code>FormatterRegistry</code> and are evicted with it. Repeated lookups
+	 * of the same pattern and zone do not allocate.
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @param zone - the <code>TimeZone</code> to render timestamps in
+	 * @return a thread-safe formatter
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	public static FastDateFormatter getInstance(String pattern, TimeZone zone) throws IllegalArgumentException {
+		checkPattern(pattern);
+		Locale aLocale = Locale.getDefault(Locale.Category.FORMAT);
+		String id = zone.getID();
+		int slot = (pattern.hashCode() * 31 + id.hashCode()) & (RECENT - 1);
+		FastDateFormatter f = recent.get(slot);
+		if(f != null && f.pattern.equals(pattern) && f.locale.equals(aLocale) && f.zone.getID().equals(id)
+			&& f.zone.hasSameRules(zone)) {
+			return f;
+		}
+		f = FormatterRegistry.getDefault().get(pattern, aLocale, zone).getFastFormatter();
+		recent.set(slot, f);
+		return f;
+	}
+
+	private static String checkPattern(String pattern) throws IllegalArgumentException {
+		if(pattern == null) throw new IllegalArgumentException("Error: pattern argument cannot be null");
+		return pattern;
+	}
+
+	/** Returns the <code>SimpleDateFormat</code> pattern. */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/** Returns true if every letter in the pattern is handled without the general engine. */
+	public boolean isAllocationFree() {
+		return compiled.supported;
+	}
+
+	/**
+	 * Append a timestamp to a <code>StringBuilder</code>.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @param sb - the destination
+	 * @return the destination
+	 */
+	public StringBuilder format(long epochMillis, StringBuilder sb) {
+		write(epochMillis, sb, null, 0, null);
+		return sb;
+	}
+
+	/**
+	 * Write a timestamp into a <code>char[]</code>.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @param buf - the destination
+	 * @param offset - the index of the first character to write
+	 * @return the index just past the last character written
+	 * @throws ArrayIndexOutOfBoundsException if the text does not fit
+	 */
+	public int format(long epochMillis, char[] buf, int offset) {
+		return write(epochMillis, null, buf, offset, null);
+	}
+
+	/**
+	 * Write a timestamp into a <code>ByteBuffer</code> as UTF-8, advancing its position.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @param out - the destination
+	 * @return the destination
+	 * @throws java.nio.BufferOverflowException if the text does not fit
+	 */
+	public ByteBuffer format(long epochMillis, ByteBuffer out) {
+		write(epochMillis, null, null, 0, out);
+		return out;
+	}
+
+	/**
+	 * Format a timestamp as a new <code>String</code>.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @return the formatted timestamp
+	 */
+	public String format(long epochMillis) {
+		return format(epochMillis, new StringBuilder(pattern.length() + 8)).toString();
+	}
+
+	/*
+	 * Exactly one of sb, buf and out is non-null. Returns the next char[] index.
+	 */
+	private int write(long millis, StringBuilder sb, char[] buf, int pos, ByteBuffer out) {
+		if(!compiled.supported || millis < compiled.cutover) return slowWrite(millis, sb, buf, pos, out);
+
+		long local = millis + offsets.getOffset(millis);
+		int next = writeLocal(local, sb, buf, pos, out);
+		return next < 0 ? slowWrite(millis, sb, buf, pos, out) : next;
+	}
+
+	/*
+	 * Writes a local wall time, milliseconds since 1970-01-01T00:00 local, as
+	 * the pattern's fields. Returns -1, having written nothing, if the general
+	 * engine must format it.
+	 */
+	int writeLocal(long local, StringBuilder sb, char[] buf, int pos, ByteBuffer out) {
+		// GregorianCalendar switches calendars on the local date, not the instant
+		if(!compiled.supported || local < compiled.cutover) return -1;
+		long days = Math.floorDiv(local, DateUtilities.DAY_UNITS);
+		int msOfDay = (int)Math.floorMod(local, DateUtilities.DAY_UNITS);
+
+		// proleptic Gregorian, which is valid here since local >= cutover
+		long civil = CivilDates.civilFromDays(days);
+		long year = CivilDates.year(civil);
+		int month = CivilDates.month(civil);
+		int day = CivilDates.day(civil);
+		if(year < 1 || year > Integer.MAX_VALUE) return -1;
+
+		int hour = msOfDay / 3600000;
+		int minute = msOfDay / 60000 % 60;
+		int second = msOfDay / 1000 % 60;
+		int milli = msOfDay % 1000;
+
+		byte[] fields = compiled.fields;
+		for(int i = 0; i < fields.length; i++) {
+			int count = compiled.counts[i];
+			switch(fields[i]) {
+				case NumericPattern.LITERAL:
+					pos = text(compiled.literals[i], sb, buf, pos, out);
+					break;
+				case NumericPattern.YEAR:
+					pos = count == 2
+						? number((int)(year % 100), 2, sb, buf, pos, out)
+						: number((int)year, count, sb, buf, pos, out);
+					break;
+				case NumericPattern.MONTH:
+					pos = number(month, count, sb, buf, pos, out);
+					break;
+				case NumericPattern.DAY:
+					pos = number(day, count, sb, buf, pos, out);
+					break;
+				case NumericPattern.HOUR_OF_DAY0:
+					pos = number(hour, count, sb, buf, pos, out);
+					break;
+				case NumericPattern.HOUR_OF_DAY1:
+					pos = number(hour == 0 ? 24 : hour, count, sb, buf, pos, out);
+					break;
+				case NumericPattern.HOUR0:
+					pos = number(hour % 12, count, sb, buf, pos, out);
+					break;
+				case NumericPattern.HOUR1:
+					pos = number(hour % 12 == 0 ? 12 : hour % 12, count, sb, buf, pos, out);
+					break;
+				case NumericPattern.MINUTE:
+					pos = number(minute, count, sb, buf, pos, out);
+					break;
+				case NumericPattern.SECOND:
+					pos = number(second, count, sb, buf, pos, out);
+					break;
+				case NumericPattern.MILLISECOND:
+					pos = number(milli, count, sb, buf, pos, out);
+					break;
+				case NumericPattern.AM_PM:
+					pos = text(compiled.amPm[hour < 12 ? 0 : 1], sb, buf, pos, out);
+					break;
+			}
+		}
+		return pos;
+	}
+
+	private int slowWrite(long millis, StringBuilder sb, char[] buf, int pos, ByteBuffer out) {
+		return text(fallback.format(new Date(millis)), sb, buf, pos, out);
+	}
+
+	private int number(int value, int minDigits, StringBuilder sb, char[] buf, int pos, ByteBuffer out) {
+		int digits = 1;
+		for(int v = value; v >= 10; v /= 10) digits++;
+		for(int i = digits; i < minDigits; i++) pos = put(zeroDigit, sb, buf, pos, out);
+		int divisor = 1;
+		for(int i = 1; i < digits; i++) divisor *= 10;
+		for(; divisor > 0; divisor /= 10) {
+			pos = put((char)(zeroDigit + value / divisor % 10), sb, buf, pos, out);
+		}
+		return pos;
+	}
+
+	private static int text(String s, StringBuilder sb, char[] buf, int pos, ByteBuffer out) {
+		if(sb != null) {
+			sb.append(s);
+			return pos;
+		}
+		if(buf != null) {
+			// getChars would throw StringIndexOutOfBoundsException, not the documented exception
+			if(s.length() > buf.length - pos) throw new ArrayIndexOutOfBoundsException(buf.length);
+			s.getChars(0, s.length(), buf, pos);
+			return pos + s.length();
+		}
+		for(int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if(Character.isHighSurrogate(ch) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(ch, s.charAt(++i));
+				out.put((byte)(0xF0 | (cp >> 18)));
+				out.put((byte)(0x80 | ((cp >> 12) & 0x3F)));
+				out.put((byte)(0x80 | ((cp >> 6) & 0x3F)));
+				out.put((byte)(0x80 | (cp & 0x3F)));
+			} else {
+				put(ch, null, null, pos, out);
+			}
+		}
+		return pos;
+	}
+
+	private static int put(char ch, StringBuilder sb, char[] buf, int pos, ByteBuffer out) {
+		if(sb != null) {
+			sb.append(ch);
+		} else if(buf != null) {
+			buf[pos++] = ch;
+		} else if(ch < 0x80) {
+			out.put((byte)ch);
+		} else if(ch < 0x800) {
+			out.put((byte)(0xC0 | (ch >> 6)));
+			out.put((byte)(0x80 | (ch & 0x3F)));
+		} else {
+			out.put((byte)(0xE0 | (ch >> 12)));
+			out.put((byte)(0x80 | ((ch >> 6) & 0x3F)));
+			out.put((byte)(0x80 | (ch & 0x3F)));
+		}
+		return pos;
+	}
+}
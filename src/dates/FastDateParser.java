@@ -0,0 +1,203 @@
+package dates;
+
+import java.util.TimeZone;
+
+/**
+ * Parses numeric date strings such as "MM/dd/yyyy" or "yyyyMMdd HHmmss"
+ * directly from a <code>CharSequence</code> region into epoch milliseconds,
+ * without creating a <code>Date</code>, <code>Calendar</code> or
+ * <code>ParsePosition</code>.
+ * <P>
+ * Only the unambiguous cases are decided here: ASCII digits within the normal
+ * range of each field, a date after the Gregorian cutover, and a local time
+ * that occurs exactly once in the zone. Everything else (lenient roll-over,
+ * two digit years, DST gaps and overlaps, signs, non-ASCII digits) is reported
+ * as <code>UNDECIDED</code> so the caller can hand the value to
+ * <code>SimpleDateFormat</code>, which keeps results identical to it.
+ * <P>
+ * Instances are immutable and thread-safe.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+final class FastDateParser {
+	/** Returned when the value must be parsed by the general engine. */
+	static final long UNDECIDED = Long.MIN_VALUE;
+
+	private final NumericPattern compiled;
+	private final ZoneOffsetTable offsets;
+	private final boolean usable;
+
+	FastDateParser(NumericPattern compiled, TimeZone zone) {
+		this.compiled = compiled;
+		this.offsets = ZoneOffsetTable.forZone(zone);
+		this.usable = compiled.supported && compiled.zeroDigit == '0' && isResolvable(compiled);
+	}
+
+	/** Returns true if the pattern can be parsed here at all. */
+	boolean isUsable() {
+		return usable;
+	}
+
+	/**
+	 * Parse the characters from start (inclusive) to end (exclusive).
+	 * @return epoch milliseconds, or <code>UNDECIDED</code>
+	 */
+	long parse(CharSequence s, int start, int end) {
+		long local = parseLocal(s, start, end);
+		if(local == UNDECIDED) return UNDECIDED;
+		long utc = offsets.localToUtc(local);
+		return utc == ZoneOffsetTable.AMBIGUOUS ? UNDECIDED : utc;
+	}
+
+	/**
+	 * Parse the characters from start (inclusive) to end (exclusive) into the
+	 * local wall time, as milliseconds since 1970-01-01T00:00 local, without
+	 * looking at the zone. The wall time may fall in a gap or overlap.
+	 * @return local milliseconds, or <code>UNDECIDED</code>
+	 */
+	long parseLocal(CharSequence s, int start, int end) {
+		if(!usable) return UNDECIDED;
+		byte[] fields = compiled.fields;
+		int[] counts = compiled.counts;
+		int year = 1970, month = 1, day = 1, hour = 0, minute = 0, second = 0, milli = 0;
+		boolean pm = false;
+		int p = start;
+
+		for(int i = 0; i < fields.length; i++) {
+			byte field = fields[i];
+			if(field == NumericPattern.LITERAL) {
+				String lit = compiled.literals[i];
+				if(end - p < lit.length()) return UNDECIDED;
+				for(int k = 0; k < lit.length(); k++) {
+					if(s.charAt(p + k) != lit.charAt(k)) return UNDECIDED;
+				}
+				p += lit.length();
+				continue;
+			}
+
+			// SimpleDateFormat skips spaces and tabs in front of every field, but
+			// they still count against the width of an abutting field
+			int fieldStart = p;
+			while(p < end && (s.charAt(p) == ' ' || s.charAt(p) == '\t')) p++;
+
+			if(field == NumericPattern.AM_PM) {
+				int am = matchLength(s, p, end, compiled.amPm[0]);
+				int pmLen = matchLength(s, p, end, compiled.amPm[1]);
+				if(am == 0 && pmLen == 0) return UNDECIDED;
+				pm = pmLen > am;
+				p += pm ? pmLen : am;
+				continue;
+			}
+
+			// abutting numeric fields take at most their pattern width
+			boolean obeyCount = i + 1 < fields.length && compiled.isNumeric(i + 1);
+			int limit = obeyCount ? Math.min(end, fieldStart + counts[i]) : end;
+			int first = p;
+			int value = 0;
+			while(p < limit) {
+				char ch = s.charAt(p);
+				if(ch < '0' || ch > '9') break;
+				if(p - first == 9) return UNDECIDED;
+				value = value * 10 + (ch - '0');
+				p++;
+			}
+			if(p == first) return UNDECIDED;
+			if(p < limit) {
+				char next = s.charAt(p);
+				if(Character.isDigit(next) || startsWith(s, p, end, compiled.exponent)) return UNDECIDED;
+			}
+
+			switch(field) {
+				case NumericPattern.YEAR:
+					// two digit years are resolved against a moving century
+					if(counts[i] <= 2 && p - first == 2) return UNDECIDED;
+					year = value;
+					break;
+				case NumericPattern.MONTH:
+					month = value;
+					break;
+				case NumericPattern.DAY:
+					day = value;
+					break;
+				case NumericPattern.HOUR_OF_DAY0:
+					if(value > 23) return UNDECIDED;
+					hour = value;
+					break;
+				case NumericPattern.HOUR_OF_DAY1:
+					if(value < 1 || value > 24) return UNDECIDED;
+					hour = value == 24 ? 0 : value;
+					break;
+				case NumericPattern.HOUR0:
+					if(value > 11) return UNDECIDED;
+					hour = value;
+					break;
+				case NumericPattern.HOUR1:
+					if(value < 1 || value > 12) return UNDECIDED;
+					hour = value == 12 ? 0 : value;
+					break;
+				case NumericPattern.MINUTE:
+					if(value > 59) return UNDECIDED;
+					minute = value;
+					break;
+				case NumericPattern.SECOND:
+					if(value > 59) return UNDECIDED;
+					second = value;
+					break;
+				case NumericPattern.MILLISECOND:
+					if(value > 999) return UNDECIDED;
+					milli = value;
+					break;
+			}
+		}
+
+		if(year < 1 || month < 1 || month > 12 || day < 1 || day > CivilDates.monthLength(year, month)) {
+			return UNDECIDED;
+		}
+		if(pm) hour += 12;
+		long local = CivilDates.daysFromCivil(year, month, day) * DateUtilities.DAY_UNITS
+			+ hour * DateUtilities.HOUR_UNITS + minute * DateUtilities.MINUTE_UNITS
+			+ second * DateUtilities.SECOND_UNITS + milli;
+		return local < compiled.cutover + DateUtilities.DAY_UNITS ? UNDECIDED : local;
+	}
+
+	private static int matchLength(CharSequence s, int p, int end, String text) {
+		if(text.isEmpty() || end - p < text.length()) return 0;
+		for(int k = 0; k < text.length(); k++) {
+			char a = s.charAt(p + k);
+			char b = text.charAt(k);
+			if(a != b && Character.toUpperCase(a) != Character.toUpperCase(b)
+				&& Character.toLowerCase(a) != Character.toLowerCase(b)) return 0;
+		}
+		return text.length();
+	}
+
+	private static boolean startsWith(CharSequence s, int p, int end, String text) {
+		if(text.isEmpty() || end - p < text.length()) return false;
+		for(int k = 0; k < text.length(); k++) {
+			if(s.charAt(p + k) != text.charAt(k)) return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Each calendar field may appear once, and AM/PM is only understood
+	 * together with a 12 hour field, as GregorianCalendar would resolve it.
+	 */
+	private static boolean isResolvable(NumericPattern compiled) {
+		int seen = 0;
+		int hours24 = 0, hours12 = 0;
+		boolean amPm = false;
+		for(int i = 0; i < compiled.fields.length; i++) {
+			byte field = compiled.fields[i];
+			if(field == NumericPattern.LITERAL) continue;
+			if((seen & (1 << field)) != 0) return false;
+			seen |= 1 << field;
+			if(field == NumericPattern.HOUR_OF_DAY0 || field == NumericPattern.HOUR_OF_DAY1) hours24++;
+			if(field == NumericPattern.HOUR0 || field == NumericPattern.HOUR1) hours12++;
+			if(field == NumericPattern.AM_PM) amPm = true;
+		}
+		if(hours24 + hours12 > 1) return false;
+		return !amPm || hours12 == 1;
+	}
+}
@@ -0,0 +1,350 @@
+package dates;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded registry of compiled <code>SimpleDateFormat</code> patterns that is
+ * shared by all threads. Each pattern is compiled once per locale and time zone
+ * and handed out as a thread-safe <code>SharedDateFormat</code>. When the registry
+ * grows past its maximum size the least recently used pattern is evicted.
+ * <P>
+ * Locale styles (<code>DateFormat.SHORT</code> to <code>DateFormat.FULL</code>) are
+ * held the same way, keyed by date style, time style, locale and time zone, so
+ * the locale resource lookup behind <code>DateFormat.getDateInstance</code> is
+ * done once per key. The default registry warms up every style for the locales
+ * named, as comma-separated language tags, by the
+ * <code>dates.formatter.warmupLocales</code> system property.
+ * <P>
+ * Lookups never block: the registry is backed by a <code>ConcurrentHashMap</code>
+ * and the hit, miss and eviction counters are <code>LongAdder</code>s. One
+ * thread at a time evicts; others that miss meanwhile carry on without waiting,
+ * so the registry may briefly hold a few more than its maximum size.
+ * <P>
+ * The <code>DateTranscoder</code>s behind <code>DateTranscoder.getInstance</code>
+ * are held alongside, keyed by both patterns, locale and time zone, and bounded
+ * and evicted the same way.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class FormatterRegistry {
+	public static final int DEFAULT_MAX_SIZE = 256;
+
+	/** System property listing the locales the default registry warms up. */
+	public static final String WARMUP_LOCALES_PROPERTY = "dates.formatter.warmupLocales";
+
+	private static final int NO_STYLE = -1;
+	private static final int[] STYLES = { DateFormat.FULL, DateFormat.LONG, DateFormat.MEDIUM, DateFormat.SHORT };
+
+	private static final FormatterRegistry DEFAULT = createDefault();
+
+	private final Map<Key, SharedDateFormat> formats = new ConcurrentHashMap<Key, SharedDateFormat>();
+	private final Map<Key, DateTranscoder> transcoders = new ConcurrentHashMap<Key, DateTranscoder>();
+	private final int maxSize;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	/**
+	 * Create a registry that holds at most <code>maxSize</code> compiled patterns.
+	 * @param maxSize - the maximum number of patterns to keep
+	 * @throws IllegalArgumentException if maxSize is less than one
+	 */
+	public FormatterRegistry(int maxSize) throws IllegalArgumentException {
+		if(maxSize < 1) throw new IllegalArgumentException("Error: maxSize must be at least 1");
+		this.maxSize = maxSize;
+	}
+
+	/** Returns the registry used by <code>DateUtilities</code>. */
+	public static FormatterRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Get the shared format for a pattern in the default locale and time zone.
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @return a thread-safe format for the pattern
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	public SharedDateFormat get(String pattern) throws IllegalArgumentException {
+		return get(pattern, Locale.getDefault(Locale.Category.FORMAT), TimeZone.getDefault());
+	}
+
+	/**
+	 * Get the shared format for a pattern in the specified locale and time zone.
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @param aLocale - a <code>Locale</code> field
+	 * @param zone - the <code>TimeZone</code> used for formatting and parsing
+	 * @return a thread-safe format for the pattern
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	public SharedDateFormat get(String pattern, Locale aLocale, TimeZone zone)
+	throws IllegalArgumentException {
+		if(pattern == null) throw new IllegalArgumentException("Error: pattern argument cannot be null");
+		Key key = new Key(pattern, "", NO_STYLE, NO_STYLE, aLocale, zone);
+		SharedDateFormat format = lookup(key);
+		if(format != null) return format;
+		// compile outside the map so a bad pattern never leaves an entry behind
+		SharedDateFormat compiled = new SharedDateFormat(pattern, aLocale, zone);
+		return register(key.withZone(compiled.getTimeZone()), compiled);
+	}
+
+	/**
+	 * Get the shared format equivalent to <code>DateFormat.getDateInstance(dateStyle, aLocale)</code>
+	 * in the specified time zone.
+	 * @param dateStyle - a <code>DateFormat</code> style field
+	 * @param aLocale - a <code>Locale</code> field
+	 * @param zone - the <code>TimeZone</code> used for formatting and parsing
+	 * @return a thread-safe format for the style, or null if the locale provider
+	 *         does not supply a <code>SimpleDateFormat</code>
+	 * @throws IllegalArgumentException if style is not recognized
+	 */
+	public SharedDateFormat getDateInstance(int dateStyle, Locale aLocale, TimeZone zone)
+	throws IllegalArgumentException {
+		return getStyle(dateStyle, NO_STYLE, aLocale, zone);
+	}
+
+	/**
+	 * Get the shared format equivalent to
+	 * <code>DateFormat.getDateTimeInstance(dateStyle, timeStyle, aLocale)</code>
+	 * in the specified time zone.
+	 * @param dateStyle - a <code>DateFormat</code> style field
+	 * @param timeStyle - a <code>DateFormat</code> style field
+	 * @param aLocale - a <code>Locale</code> field
+	 * @param zone - the <code>TimeZone</code> used for formatting and parsing
+	 * @return a thread-safe format for the styles, or null if the locale provider
+	 *         does not supply a <code>SimpleDateFormat</code>
+	 * @throws IllegalArgumentException if either style is not recognized
+	 */
+	public SharedDateFormat getDateTimeInstance(int dateStyle, int timeStyle, Locale aLocale, TimeZone zone)
+	throws IllegalArgumentException {
+		return getStyle(dateStyle, timeStyle, aLocale, zone);
+	}
+
+	/**
+	 * Compile every date style and every date and time style pair, 20 formats
+	 * in all, for each locale, so the first request for them does not pay for
+	 * the locale resource lookup. Size the registry to hold them.
+	 * @param locales - the locales to compile
+	 * @param zone - the <code>TimeZone</code> used for formatting and parsing
+	 * @return the number of formats compiled or already present
+	 */
+	public int warmUp(Collection<Locale> locales, TimeZone zone) {
+		int count = 0;
+		for(Locale locale : locales) {
+			for(int dateStyle : STYLES) {
+				if(getStyle(dateStyle, NO_STYLE, locale, zone) != null) count++;
+				for(int timeStyle : STYLES) {
+					if(getStyle(dateStyle, timeStyle, locale, zone) != null) count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/** Returns the number of lookups that found an already compiled pattern. */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/** Returns the number of lookups that had to compile a pattern. */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/** Returns the number of patterns evicted to keep the registry within bounds. */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/** Returns the number of patterns currently held. */
+	public int size() {
+		return formats.size();
+	}
+
+	/** Returns the maximum number of patterns held. */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/** Discards all compiled patterns and resets the counters. */
+	public void clear() {
+		formats.clear();
+		transcoders.clear();
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	/*
+	 * Transcoder lookups are not counted as hits or misses; those describe
+	 * the patterns.
+	 */
+	DateTranscoder getTranscoder(String sourcePattern, String targetPattern, Locale aLocale, TimeZone zone)
+	throws IllegalArgumentException {
+		Key key = new Key(sourcePattern, targetPattern, NO_STYLE, NO_STYLE, aLocale, zone);
+		DateTranscoder transcoder = transcoders.get(key);
+		if(transcoder == null) {
+			DateTranscoder compiled = new DateTranscoder(sourcePattern, targetPattern, zone, aLocale);
+			transcoder = transcoders.putIfAbsent(key.withZone(compiled.getTimeZone()), compiled);
+			if(transcoder == null) {
+				transcoder = compiled;
+				if(transcoders.size() > maxSize) evict();
+			}
+		}
+		transcoder.touch();
+		return transcoder;
+	}
+
+	private SharedDateFormat getStyle(int dateStyle, int timeStyle, Locale aLocale, TimeZone zone)
+	throws IllegalArgumentException {
+		Key key = new Key("", "", dateStyle, timeStyle, aLocale, zone);
+		SharedDateFormat format = lookup(key);
+		if(format != null) return format;
+		DateFormat df = timeStyle == NO_STYLE ? DateFormat.getDateInstance(dateStyle, aLocale)
+			: DateFormat.getDateTimeInstance(dateStyle, timeStyle, aLocale);
+		if(!(df instanceof SimpleDateFormat)) return null;
+		SharedDateFormat compiled = new SharedDateFormat((SimpleDateFormat)df, aLocale, zone);
+		return register(key.withZone(compiled.getTimeZone()), compiled);
+	}
+
+	private SharedDateFormat lookup(Key key) {
+		SharedDateFormat format = formats.get(key);
+		if(format == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		format.touch();
+		return format;
+	}
+
+	private SharedDateFormat register(Key key, SharedDateFormat compiled) {
+		SharedDateFormat format = formats.putIfAbsent(key, compiled);
+		if(format == null) {
+			format = compiled;
+			if(formats.size() > maxSize) evict();
+		}
+		format.touch();
+		return format;
+	}
+
+	private static FormatterRegistry createDefault() {
+		FormatterRegistry registry = new FormatterRegistry(DEFAULT_MAX_SIZE);
+		String tags = System.getProperty(WARMUP_LOCALES_PROPERTY, "");
+		List<Locale> locales = new ArrayList<Locale>();
+		for(String tag : tags.split(",")) {
+			if(!tag.trim().isEmpty()) locales.add(Locale.forLanguageTag(tag.trim()));
+		}
+		registry.warmUp(locales, TimeZone.getDefault());
+		return registry;
+	}
+
+	/*
+	 * Removes least recently used entries until the registry is back within
+	 * bounds. This only runs on a miss, so the linear scan stays off the hot path.
+	 * A thread that finds another already evicting returns at once rather than
+	 * scanning too, which would evict more entries than needed.
+	 */
+	private void evict() {
+		if(!evicting.compareAndSet(false, true)) return;
+		try {
+			evictOldest();
+			evictOldestTranscoders();
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	private void evictOldest() {
+		while(formats.size() > maxSize) {
+			Key oldest = null;
+			long oldestUse = Long.MAX_VALUE;
+			for(Map.Entry<Key, SharedDateFormat> e : formats.entrySet()) {
+				long used = e.getValue().lastUsed();
+				if(used < oldestUse) {
+					oldestUse = used;
+					oldest = e.getKey();
+				}
+			}
+			if(oldest == null) return;
+			if(formats.remove(oldest) != null) evictions.increment();
+		}
+	}
+
+	private void evictOldestTranscoders() {
+		while(transcoders.size() > maxSize) {
+			Key oldest = null;
+			long oldestUse = Long.MAX_VALUE;
+			for(Map.Entry<Key, DateTranscoder> e : transcoders.entrySet()) {
+				long used = e.getValue().lastUsed();
+				if(used < oldestUse) {
+					oldestUse = used;
+					oldest = e.getKey();
+				}
+			}
+			if(oldest == null) return;
+			transcoders.remove(oldest);
+		}
+	}
+
+	/*
+	 * Pattern keys have no styles and style keys have an empty pattern; a style
+	 * key always has at least one style, so the two kinds cannot collide.
+	 * Only transcoder keys, which live in their own map, have a target pattern.
+	 * Zones match by id and rules, so custom zones that share an id stay apart.
+	 * Lookup keys hold the caller's zone; registered keys hold a private copy.
+	 */
+	private static final class Key {
+		private final String pattern;
+		private final String target;
+		private final int dateStyle;
+		private final int timeStyle;
+		private final Locale locale;
+		private final TimeZone zone;
+		private final String zoneId;
+		private final int hash;
+
+		Key(String pattern, String target, int dateStyle, int timeStyle, Locale locale, TimeZone zone) {
+			this.pattern = pattern;
+			this.target = target;
+			this.dateStyle = dateStyle;
+			this.timeStyle = timeStyle;
+			this.locale = locale;
+			this.zone = zone;
+			this.zoneId = zone.getID();
+			this.hash = ((((pattern.hashCode() * 31 + target.hashCode()) * 31 + dateStyle) * 31 + timeStyle) * 31
+				+ locale.hashCode()) * 31 + zoneId.hashCode();
+		}
+
+		Key withZone(TimeZone copy) {
+			return new Key(pattern, target, dateStyle, timeStyle, locale, copy);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(this == o) return true;
+			if(!(o instanceof Key)) return false;
+			Key k = (Key)o;
+			return hash == k.hash && pattern.equals(k.pattern) && target.equals(k.target)
+				&& dateStyle == k.dateStyle && timeStyle == k.timeStyle && locale.equals(k.locale)
+				&& zoneId.equals(k.zoneId) && (zone == k.zone || zone.hasSameRules(k.zone));
+		}
+	}
+}
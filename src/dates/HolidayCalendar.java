@@ -0,0 +1,130 @@
+package dates;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.TimeZone;
+
+/**
+ * Weekend days and holidays used to count business days. The holidays are
+ * turned into a prefix-sum table of epoch days when the calendar is built, so
+ * counting the business days between any two dates takes constant time no
+ * matter how far apart they are.
+ * <P>
+ * Instances are immutable and thread-safe.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class HolidayCalendar {
+	/** Saturday and Sunday off, no holidays. */
+	public static final HolidayCalendar WEEKENDS_ONLY =
+		new HolidayCalendar(new long[0], Calendar.SATURDAY, Calendar.SUNDAY);
+
+	private final boolean[] working = new boolean[8];	// indexed by ISO day of week 1..7
+	private final int workingDaysPerWeek;
+	private final long firstHoliday;
+	private final int[] prefix;	// prefix[i] = working-day holidays before firstHoliday + i
+
+	/**
+	 * Create a calendar with Saturday and Sunday off and the specified holidays.
+	 * @param holidays - the holidays; the date of each is taken in its own time zone
+	 */
+	public HolidayCalendar(Collection<? extends Calendar> holidays) {
+		this(holidays, Calendar.SATURDAY, Calendar.SUNDAY);
+	}
+
+	/**
+	 * Create a calendar with the specified weekend days and holidays.
+	 * @param holidays - the holidays; the date of each is taken in its own time zone
+	 * @param weekendDays - <code>Calendar.SUNDAY</code> through <code>Calendar.SATURDAY</code>
+	 * @throws IllegalArgumentException if a weekend day is out of range
+	 */
+	public HolidayCalendar(Collection<? extends Calendar> holidays, int... weekendDays)
+	throws IllegalArgumentException {
+		this(toEpochDays(holidays), weekendDays);
+	}
+
+	/**
+	 * Create a calendar from holidays given as epoch days (days since 1970-01-01).
+	 * @param holidayEpochDays - the holidays
+	 * @param weekendDays - <code>Calendar.SUNDAY</code> through <code>Calendar.SATURDAY</code>
+	 * @throws IllegalArgumentException if a weekend day is out of range
+	 */
+	public HolidayCalendar(long[] holidayEpochDays, int... weekendDays) throws IllegalArgumentException {
+		Arrays.fill(working, 1, 8, true);
+		for(int d : weekendDays) {
+			if(d < Calendar.SUNDAY || d > Calendar.SATURDAY) {
+				throw new IllegalArgumentException("Error: weekend day must be Calendar.SUNDAY to Calendar.SATURDAY");
+			}
+			working[d == Calendar.SUNDAY ? 7 : d - 1] = false;
+		}
+		int perWeek = 0;
+		for(int d = 1; d <= 7; d++) if(working[d]) perWeek++;
+		this.workingDaysPerWeek = perWeek;
+
+		long[] days = holidayEpochDays.clone();
+		Arrays.sort(days);
+		if(days.length == 0) {
+			this.firstHoliday = 0;
+			this.prefix = new int[1];
+			return;
+		}
+		long span = days[days.length - 1] - days[0] + 2;
+		if(span > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Error: holidays span too many days");
+		this.firstHoliday = days[0];
+		this.prefix = new int[(int)span];
+		long previous = Long.MIN_VALUE;
+		for(long day : days) {
+			if(day == previous) continue;
+			previous = day;
+			if(working[CivilDates.dayOfWeek(day)]) prefix[(int)(day - firstHoliday) + 1]++;
+		}
+		for(int i = 1; i < prefix.length; i++) prefix[i] += prefix[i - 1];
+	}
+
+	/**
+	 * Returns true if an epoch day is neither a weekend day nor a holiday.
+	 * @param epochDay - days since 1970-01-01
+	 */
+	public boolean isBusinessDay(long epochDay) {
+		if(!working[CivilDates.dayOfWeek(epochDay)]) return false;
+		return holidaysBefore(epochDay + 1) == holidaysBefore(epochDay);
+	}
+
+	/**
+	 * Count the business days d with fromEpochDay &lt;= d &lt; toEpochDay.
+	 * @param fromEpochDay - the first day, inclusive
+	 * @param toEpochDay - the last day, exclusive
+	 * @return the number of business days, or 0 if the range is empty
+	 */
+	public long countBusinessDays(long fromEpochDay, long toEpochDay) {
+		if(toEpochDay <= fromEpochDay) return 0;
+		long n = toEpochDay - fromEpochDay;
+		long count = n / 7 * workingDaysPerWeek;
+		int dow = CivilDates.dayOfWeek(fromEpochDay);
+		for(int i = 0; i < n % 7; i++) {
+			if(working[dow]) count++;
+			dow = dow == 7 ? 1 : dow + 1;
+		}
+		return count - (holidaysBefore(toEpochDay) - holidaysBefore(fromEpochDay));
+	}
+
+	private int holidaysBefore(long epochDay) {
+		long i = epochDay - firstHoliday;
+		if(i <= 0) return 0;
+		if(i >= prefix.length) return prefix[prefix.length - 1];
+		return prefix[(int)i];
+	}
+
+	private static long[] toEpochDays(Collection<? extends Calendar> holidays) {
+		long[] days = new long[holidays.size()];
+		int i = 0;
+		for(Calendar c : holidays) {
+			long millis = c.getTimeInMillis();
+			TimeZone zone = c.getTimeZone();
+			days[i++] = Math.floorDiv(millis + zone.getOffset(millis), DateUtilities.DAY_UNITS);
+		}
+		return days;
+	}
+}
@@ -0,0 +1,397 @@
+package dates;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The locale data a <code>SimpleDateFormat</code> reads when it formats the
+ * <code>DateFormat</code> styles of one locale: the style patterns, the era,
+ * month, weekday and AM/PM names and the zero digit. Captured from the JDK by
+ * <code>DateStartup</code> when it writes its data file, and used at run time
+ * to format those styles without initialising the locale providers.
+ * <P>
+ * A style is only kept if every letter of its pattern is one of G, y, M, d, E,
+ * u, D, a, H, k, K, h, m, s or S and a spread of dates formats exactly as
+ * <code>SimpleDateFormat</code> does in every zone offered. Styles with zone
+ * names, non-Gregorian locales and dates before 1583 are left to the JDK.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+final class LocaleTables {
+	/** The time style of a date-only format. */
+	static final int NO_STYLE = -1;
+
+	private static final int[] STYLES = {DateFormat.FULL, DateFormat.LONG, DateFormat.MEDIUM, DateFormat.SHORT};
+
+	// the first full Gregorian year, so DAY_OF_YEAR agrees with GregorianCalendar
+	private static final long FIRST_MILLIS = CivilDates.daysFromCivil(1583, 1, 1) * DateUtilities.DAY_UNITS;
+
+	private static final byte LITERAL = 0;
+	private static final byte ERA = 1;
+	private static final byte YEAR = 2;
+	private static final byte MONTH = 3;
+	private static final byte DAY = 4;
+	private static final byte DAY_OF_WEEK = 5;
+	private static final byte ISO_DAY_OF_WEEK = 6;
+	private static final byte DAY_OF_YEAR = 7;
+	private static final byte AM_PM = 8;
+	private static final byte HOUR_OF_DAY0 = 9;	// H
+	private static final byte HOUR_OF_DAY1 = 10;	// k
+	private static final byte HOUR0 = 11;		// K
+	private static final byte HOUR1 = 12;		// h
+	private static final byte MINUTE = 13;
+	private static final byte SECOND = 14;
+	private static final byte MILLISECOND = 15;
+
+	private final Locale locale;
+	private final char zeroDigit;
+	private final String[] eras;
+	private final String[] months;
+	private final String[] shortMonths;
+	private final String[] weekdays;
+	private final String[] shortWeekdays;
+	private final String[] amPm;
+	// [dateStyle * 5 + timeStyle + 1], null where the style is left to the JDK
+	private final String[] patterns;
+	private final Style[] styles;
+
+	/** A compiled style pattern. */
+	private static final class Style {
+		final byte[] fields;
+		final int[] counts;
+		final String[] literals;
+
+		Style(byte[] fields, int[] counts, String[] literals) {
+			this.fields = fields;
+			this.counts = counts;
+			this.literals = literals;
+		}
+	}
+
+	private LocaleTables(Locale aLocale, char zeroDigit, String[] eras, String[] months, String[] shortMonths,
+		String[] weekdays, String[] shortWeekdays, String[] amPm, String[] patterns) {
+		this.locale = aLocale;
+		this.zeroDigit = zeroDigit;
+		this.eras = eras;
+		this.months = months;
+		this.shortMonths = shortMonths;
+		this.weekdays = weekdays;
+		this.shortWeekdays = shortWeekdays;
+		this.amPm = amPm;
+		this.patterns = patterns;
+		this.styles = new Style[patterns.length];
+		for(int i = 0; i < patterns.length; i++) {
+			if(patterns[i] != null) styles[i] = compile(patterns[i]);
+		}
+	}
+
+	/**
+	 * Capture the style data of a locale from the JDK, keeping only the styles
+	 * that format a spread of dates exactly like <code>SimpleDateFormat</code>.
+	 * @param aLocale - a <code>Locale</code> field
+	 * @param zones - the zones the styles are checked in
+	 */
+	static LocaleTables capture(Locale aLocale, Collection<TimeZone> zones) {
+		String[] patterns = new String[STYLES.length * (STYLES.length + 1)];
+		SimpleDateFormat reference = null;
+		for(int d = 0; d < STYLES.length; d++) {
+			for(int t = NO_STYLE; t < STYLES.length; t++) {
+				DateFormat df = t == NO_STYLE ? DateFormat.getDateInstance(STYLES[d], aLocale)
+					: DateFormat.getDateTimeInstance(STYLES[d], STYLES[t], aLocale);
+				if(!(df instanceof SimpleDateFormat) || df.getCalendar().getClass() != GregorianCalendar.class
+					|| !(df.getNumberFormat() instanceof DecimalFormat)) continue;
+				if(reference == null) reference = (SimpleDateFormat)df;
+				String pattern = ((SimpleDateFormat)df).toPattern();
+				if(compile(pattern) != null) patterns[index(d, t)] = pattern;
+			}
+		}
+		if(reference == null) return empty(aLocale);
+
+		DateFormatSymbols symbols = reference.getDateFormatSymbols();
+		LocaleTables tables = new LocaleTables(aLocale,
+			((DecimalFormat)reference.getNumberFormat()).getDecimalFormatSymbols().getZeroDigit(), symbols.getEras(),
+			symbols.getMonths(), symbols.getShortMonths(), symbols.getWeekdays(), symbols.getShortWeekdays(),
+			symbols.getAmPmStrings(), patterns);
+
+		// keep only the styles that agree with SimpleDateFormat everywhere probed
+		String[] verified = new String[patterns.length];
+		for(int d = 0; d < STYLES.length; d++) {
+			for(int t = NO_STYLE; t < STYLES.length; t++) {
+				if(patterns[index(d, t)] == null) continue;
+				DateFormat df = t == NO_STYLE ? DateFormat.getDateInstance(STYLES[d], aLocale)
+					: DateFormat.getDateTimeInstance(STYLES[d], STYLES[t], aLocale);
+				if(agrees(tables, df, d, t, zones)) verified[index(d, t)] = patterns[index(d, t)];
+			}
+		}
+		return new LocaleTables(aLocale, tables.zeroDigit, tables.eras, tables.months, tables.shortMonths,
+			tables.weekdays, tables.shortWeekdays, tables.amPm, verified);
+	}
+
+	/** Returns the locale. */
+	Locale getLocale() {
+		return locale;
+	}
+
+	/** Returns the number of styles formatted from the tables, out of 20. */
+	int getStyleCount() {
+		int n = 0;
+		for(Style s : styles) {
+			if(s != null) n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Format an instant in a <code>DateFormat</code> style.
+	 * @param millis - milliseconds since 1970-01-01T00:00Z
+	 * @param dateStyle - DateFormat.FULL, LONG, MEDIUM or SHORT
+	 * @param timeStyle - DateFormat.FULL, LONG, MEDIUM, SHORT or NO_STYLE
+	 * @param zone - the <code>TimeZone</code> to format in
+	 * @return the formatted instant, or null if the JDK must format it
+	 */
+	String format(long millis, int dateStyle, int timeStyle, TimeZone zone) {
+		if(dateStyle < DateFormat.FULL || dateStyle > DateFormat.SHORT
+			|| timeStyle < NO_STYLE || timeStyle > DateFormat.SHORT) return null;
+		Style style = styles[index(dateStyle, timeStyle)];
+		if(style == null || millis < FIRST_MILLIS) return null;
+		long local = millis + zone.getOffset(millis);
+		if(local < FIRST_MILLIS) return null;
+
+		long days = Math.floorDiv(local, DateUtilities.DAY_UNITS);
+		int msOfDay = (int)Math.floorMod(local, DateUtilities.DAY_UNITS);
+		long civil = CivilDates.civilFromDays(days);
+		long year = CivilDates.year(civil);
+		if(year > Integer.MAX_VALUE) return null;
+		int month = CivilDates.month(civil);
+		int day = CivilDates.day(civil);
+		int isoDayOfWeek = CivilDates.dayOfWeek(days);
+		int hour = msOfDay / 3600000;
+
+		StringBuilder sb = new StringBuilder(32);
+		for(int i = 0; i < style.fields.length; i++) {
+			int count = style.counts[i];
+			switch(style.fields[i]) {
+				case LITERAL:
+					sb.append(style.literals[i]);
+					break;
+				case ERA:
+					sb.append(eras.length > 1 ? eras[1] : "");
+					break;
+				case YEAR:
+					if(count == 2) number((int)(year % 100), 2, sb);
+					else number((int)year, count, sb);
+					break;
+				case MONTH:
+					if(count >= 4) sb.append(months[month - 1]);
+					else if(count == 3) sb.append(shortMonths[month - 1]);
+					else number(month, count, sb);
+					break;
+				case DAY:
+					number(day, count, sb);
+					break;
+				case DAY_OF_WEEK:
+					// Calendar.SUNDAY is 1, ISO Sunday is 7
+					sb.append((count >= 4 ? weekdays : shortWeekdays)[isoDayOfWeek % 7 + 1]);
+					break;
+				case ISO_DAY_OF_WEEK:
+					number(isoDayOfWeek, count, sb);
+					break;
+				case DAY_OF_YEAR:
+					number((int)(days - CivilDates.daysFromCivil(year, 1, 1)) + 1, count, sb);
+					break;
+				case AM_PM:
+					sb.append(amPm[hour < 12 ? 0 : 1]);
+					break;
+				case HOUR_OF_DAY0:
+					number(hour, count, sb);
+					break;
+				case HOUR_OF_DAY1:
+					number(hour == 0 ? 24 : hour, count, sb);
+					break;
+				case HOUR0:
+					number(hour % 12, count, sb);
+					break;
+				case HOUR1:
+					number(hour % 12 == 0 ? 12 : hour % 12, count, sb);
+					break;
+				case MINUTE:
+					number(msOfDay / 60000 % 60, count, sb);
+					break;
+				case SECOND:
+					number(msOfDay / 1000 % 60, count, sb);
+					break;
+				case MILLISECOND:
+					number(msOfDay % 1000, count, sb);
+					break;
+			}
+		}
+		return sb.toString();
+	}
+
+	/** Write the tables in the form read by <code>read</code>. */
+	void write(DataOutputStream out) throws IOException {
+		out.writeUTF(locale.toLanguageTag());
+		out.writeChar(zeroDigit);
+		DateStartup.writeStrings(out, eras);
+		DateStartup.writeStrings(out, months);
+		DateStartup.writeStrings(out, shortMonths);
+		DateStartup.writeStrings(out, weekdays);
+		DateStartup.writeStrings(out, shortWeekdays);
+		DateStartup.writeStrings(out, amPm);
+		DateStartup.writeStrings(out, patterns);
+	}
+
+	/** Read tables written by <code>write</code>. */
+	static LocaleTables read(DataInputStream in) throws IOException {
+		Locale aLocale = Locale.forLanguageTag(in.readUTF());
+		char zeroDigit = in.readChar();
+		String[] eras = DateStartup.readStrings(in);
+		String[] months = DateStartup.readStrings(in);
+		String[] shortMonths = DateStartup.readStrings(in);
+		String[] weekdays = DateStartup.readStrings(in);
+		String[] shortWeekdays = DateStartup.readStrings(in);
+		String[] amPm = DateStartup.readStrings(in);
+		String[] patterns = DateStartup.readStrings(in);
+		boolean named = months.length >= 12 && shortMonths.length >= 12 && weekdays.length >= 8
+			&& shortWeekdays.length >= 8 && amPm.length >= 2;
+		if(patterns.length != STYLES.length * (STYLES.length + 1) || (!named && !Arrays.equals(patterns,
+			new String[patterns.length]))) {
+			throw new IOException("Error: malformed tables for " + aLocale);
+		}
+		return new LocaleTables(aLocale, zeroDigit, eras, months, shortMonths, weekdays, shortWeekdays, amPm,
+			patterns);
+	}
+
+	private static LocaleTables empty(Locale aLocale) {
+		String[] none = new String[0];
+		return new LocaleTables(aLocale, '0', none, none, none, none, none, none,
+			new String[STYLES.length * (STYLES.length + 1)]);
+	}
+
+	private static int index(int dateStyle, int timeStyle) {
+		return dateStyle * (STYLES.length + 1) + timeStyle + 1;
+	}
+
+	/*
+	 * Compares a style with SimpleDateFormat at every month, weekday and a
+	 * spread of times of day and years, in UTC and each zone offered.
+	 */
+	private static boolean agrees(LocaleTables tables, DateFormat df, int d, int t, Collection<TimeZone> zones) {
+		TimeZone[] all = zones.toArray(new TimeZone[zones.size() + 1]);
+		all[zones.size()] = TimeZone.getTimeZone("UTC");
+		int[] years = {1583, 1600, 1899, 1970, 1999, 2000, 2024, 2038, 2100, 9999, 10000, 123456};
+		int[] times = {0, 1, 59999, 3600000, 11 * 3600000 + 3599999, 12 * 3600000, 13 * 3600000 + 754,
+			23 * 3600000 + 3599999};
+		for(TimeZone zone : all) {
+			df.setTimeZone(zone);
+			for(int y : years) {
+				for(int m = 1; m <= 12; m++) {
+					// seven consecutive days, so every weekday appears in every month
+					for(int day = 1; day <= 7; day++) {
+						long midnight = CivilDates.daysFromCivil(y, m, day + (m * 3 + y) % 21) * DateUtilities.DAY_UNITS;
+						for(int ms : times) {
+							long millis = midnight + ms - zone.getOffset(midnight);
+							String fast = tables.format(millis, d, t, zone);
+							if(fast != null && !fast.equals(df.format(new Date(millis)))) return false;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Breaks a pattern into fields, or returns null if it uses a letter the
+	 * tables cannot format.
+	 */
+	private static Style compile(String pattern) {
+		int len = pattern.length();
+		byte[] f = new byte[len];
+		int[] c = new int[len];
+		String[] lit = new String[len];
+		int n = 0;
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < len; ) {
+			char ch = pattern.charAt(i);
+			if(ch == '\'') {
+				// '' is a quote, otherwise copy up to the closing quote
+				if(i + 1 < len && pattern.charAt(i + 1) == '\'') {
+					text.append('\'');
+					i += 2;
+					continue;
+				}
+				int j = i + 1;
+				while(j < len) {
+					if(pattern.charAt(j) == '\'') {
+						if(j + 1 < len && pattern.charAt(j + 1) == '\'') {
+							text.append('\'');
+							j += 2;
+							continue;
+						}
+						break;
+					}
+					text.append(pattern.charAt(j++));
+				}
+				i = j + 1;
+				continue;
+			}
+			if(!((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z'))) {
+				text.append(ch);
+				i++;
+				continue;
+			}
+			int j = i;
+			while(j < len && pattern.charAt(j) == ch) j++;
+			byte field;
+			switch(ch) {
+				case 'G': field = ERA; break;
+				case 'y': field = YEAR; break;
+				case 'M': field = MONTH; break;
+				case 'd': field = DAY; break;
+				case 'E': field = DAY_OF_WEEK; break;
+				case 'u': field = ISO_DAY_OF_WEEK; break;
+				case 'D': field = DAY_OF_YEAR; break;
+				case 'a': field = AM_PM; break;
+				case 'H': field = HOUR_OF_DAY0; break;
+				case 'k': field = HOUR_OF_DAY1; break;
+				case 'K': field = HOUR0; break;
+				case 'h': field = HOUR1; break;
+				case 'm': field = MINUTE; break;
+				case 's': field = SECOND; break;
+				case 'S': field = MILLISECOND; break;
+				default: return null;
+			}
+			if(text.length() > 0) {
+				lit[n++] = text.toString();
+				text.setLength(0);
+			}
+			f[n] = field;
+			c[n++] = j - i;
+			i = j;
+		}
+		if(text.length() > 0) lit[n++] = text.toString();
+		return new Style(Arrays.copyOf(f, n), Arrays.copyOf(c, n), Arrays.copyOf(lit, n));
+	}
+
+	private void number(int value, int minDigits, StringBuilder sb) {
+		int digits = 1;
+		for(int v = value; v >= 10; v /= 10) digits++;
+		for(int i = digits; i < minDigits; i++) sb.append(zeroDigit);
+		int divisor = 1;
+		for(int i = 1; i < digits; i++) divisor *= 10;
+		for(; divisor > 0; divisor /= 10) sb.append((char)(zeroDigit + value / divisor % 10));
+	}
+}
@@ -0,0 +1,146 @@
+package dates;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A <code>SimpleDateFormat</code> pattern broken down into a list of literal
+ * text and numeric fields, together with the locale data (zero digit, AM/PM
+ * markers, Gregorian cutover) needed to format or parse those fields by hand.
+ * Shared by <code>FastDateFormatter</code> and <code>FastDateParser</code>.
+ * <P>
+ * A pattern is <em>supported</em> when every letter is one of y, M or MM, d,
+ * H, k, K, h, m, s, S or a and the locale uses a plain Gregorian calendar with
+ * decimal digits; otherwise callers must use the general engine.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+final class NumericPattern {
+	static final byte LITERAL = 0;
+	static final byte YEAR = 1;
+	static final byte MONTH = 2;
+	static final byte DAY = 3;
+	static final byte HOUR_OF_DAY0 = 4;	// H
+	static final byte HOUR_OF_DAY1 = 5;	// k
+	static final byte HOUR0 = 6;		// K
+	static final byte HOUR1 = 7;		// h
+	static final byte MINUTE = 8;
+	static final byte SECOND = 9;
+	static final byte MILLISECOND = 10;
+	static final byte AM_PM = 11;
+	static final byte UNSUPPORTED = 12;
+
+	final String pattern;
+	final byte[] fields;
+	final int[] counts;
+	final String[] literals;
+	final boolean supported;
+	final long cutover;
+	final char zeroDigit;
+	final String exponent;
+	final String[] amPm;
+
+	/**
+	 * Break down a pattern.
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @param reference - a <code>SimpleDateFormat</code> for the same pattern and locale
+	 * @param aLocale - a <code>Locale</code> field
+	 */
+	NumericPattern(String pattern, SimpleDateFormat reference, Locale aLocale) {
+		this.pattern = pattern;
+		Calendar cal = reference.getCalendar();
+		NumberFormat nf = reference.getNumberFormat();
+		boolean ok = cal.getClass() == GregorianCalendar.class && nf instanceof DecimalFormat;
+		this.cutover = ok ? ((GregorianCalendar)cal).getGregorianChange().getTime() : Long.MAX_VALUE;
+		this.zeroDigit = ok ? ((DecimalFormat)nf).getDecimalFormatSymbols().getZeroDigit() : '0';
+		this.exponent = ok ? ((DecimalFormat)nf).getDecimalFormatSymbols().getExponentSeparator() : "E";
+
+		SimpleDateFormat ampm = new SimpleDateFormat("a", aLocale);
+		ampm.setTimeZone(TimeZone.getTimeZone("UTC"));
+		this.amPm = new String[] {ampm.format(new Date(0L)), ampm.format(new Date(12L * DateUtilities.HOUR_UNITS))};
+
+		int len = pattern.length();
+		byte[] f = new byte[len];
+		int[] c = new int[len];
+		String[] lit = new String[len];
+		int n = 0;
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < len; ) {
+			char ch = pattern.charAt(i);
+			if(ch == '\'') {
+				// '' is a quote, otherwise copy up to the closing quote
+				if(i + 1 < len && pattern.charAt(i + 1) == '\'') {
+					text.append('\'');
+					i += 2;
+					continue;
+				}
+				int j = i + 1;
+				while(j < len) {
+					if(pattern.charAt(j) == '\'') {
+						if(j + 1 < len && pattern.charAt(j + 1) == '\'') {
+							text.append('\'');
+							j += 2;
+							continue;
+						}
+						break;
+					}
+					text.append(pattern.charAt(j++));
+				}
+				i = j + 1;
+				continue;
+			}
+			if(!((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z'))) {
+				text.append(ch);
+				i++;
+				continue;
+			}
+			int j = i;
+			while(j < len && pattern.charAt(j) == ch) j++;
+			byte field = fieldFor(ch, j - i);
+			if(field == UNSUPPORTED) ok = false;
+			if(text.length() > 0) {
+				lit[n++] = text.toString();
+				text.setLength(0);
+			}
+			f[n] = field;
+			c[n++] = j - i;
+			i = j;
+		}
+		if(text.length() > 0) lit[n++] = text.toString();
+
+		this.supported = ok;
+		this.fields = Arrays.copyOf(f, n);
+		this.counts = Arrays.copyOf(c, n);
+		this.literals = Arrays.copyOf(lit, n);
+	}
+
+	/** Returns true if the field at index i is a numeric field. */
+	boolean isNumeric(int i) {
+		return fields[i] != LITERAL && fields[i] != AM_PM && fields[i] != UNSUPPORTED;
+	}
+
+	private static byte fieldFor(char letter, int count) {
+		switch(letter) {
+			case 'y': return YEAR;
+			case 'M': return count <= 2 ? MONTH : UNSUPPORTED;
+			case 'd': return DAY;
+			case 'H': return HOUR_OF_DAY0;
+			case 'k': return HOUR_OF_DAY1;
+			case 'K': return HOUR0;
+			case 'h': return HOUR1;
+			case 'm': return MINUTE;
+			case 's': return SECOND;
+			case 'S': return MILLISECOND;
+			case 'a': return AM_PM;
+			default: return UNSUPPORTED;
+		}
+	}
+}
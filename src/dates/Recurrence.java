@@ -0,0 +1,430 @@
+package dates;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A recurring schedule, such as every third day, Mondays and Thursdays every
+ * other week, the 2nd Tuesday of each month or every business day, expanded
+ * into epoch millisecond timestamps without stepping a <code>Calendar</code>
+ * one day at a time.
+ * <P>
+ * A rule starts at a <code>DateValue</code>, which gives its time zone, its
+ * first local date and the local time of day of every occurrence. The next
+ * occurrence after an instant and the number of occurrences in a range are
+ * worked out with civil date arithmetic in constant time; the only exceptions
+ * are monthly rules on a day or week that some months lack (the 31st, the 5th
+ * Friday), which look at each active month of the range, and business days,
+ * which step over weekends and holidays. A time of day that falls in a
+ * daylight saving gap or overlap resolves as a lenient <code>Calendar</code>
+ * would, but a date the zone skips entirely, such as 2011-12-30 in
+ * Pacific/Apia, has no occurrence. Dates are proleptic Gregorian.
+ * <P>
+ * Instances are immutable and thread-safe, and a rule is a few dozen bytes, so
+ * a scheduler can hold millions of them.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class Recurrence {
+	/** Returned by <code>next</code> when there are no more occurrences. */
+	public static final long NONE = Long.MIN_VALUE;
+
+	private static final int DAILY = 0;
+	private static final int WEEKLY = 1;
+	private static final int MONTHLY_DAY = 2;
+	private static final int MONTHLY_WEEKDAY = 3;
+	private static final int BUSINESS_DAYS = 4;
+
+	// month lengths, and so monthly occurrences, repeat every 400 years
+	private static final int CYCLE_MONTHS = 400 * 12;
+	// no occurrences this far out, so no arithmetic can overflow
+	private static final long LAST_DAY = (1L << 60) / DateUtilities.DAY_UNITS;
+
+	private final DateValue start;
+	private final ZoneOffsetTable zone;
+	private final int kind;
+	private final int interval;
+	private final long startDay;
+	private final long endDay;		// exclusive, Long.MAX_VALUE if unbounded
+	private final long timeOfDay;
+	private final long startMonday;	// WEEKLY
+	private final int weekdays;		// WEEKLY, bit 0 is Monday
+	private final long startMonth;	// MONTHLY_*, year * 12 + month - 1
+	private final int ordinal;		// MONTHLY_DAY day of month, MONTHLY_WEEKDAY week of month
+	private final int dayOfWeek;	// MONTHLY_WEEKDAY, ISO 1 (Monday) to 7 (Sunday)
+	private final HolidayCalendar holidays;	// BUSINESS_DAYS
+
+	private Recurrence(DateValue start, int kind, int interval, int weekdays, int ordinal, int dayOfWeek,
+		HolidayCalendar holidays, long endDay) throws IllegalArgumentException {
+		if(start == null) throw new IllegalArgumentException("Error: start argument cannot be null");
+		if(interval < 1) throw new IllegalArgumentException("Error: interval must be at least 1");
+		this.start = start;
+		this.zone = start.getZoneTable();
+		this.kind = kind;
+		this.interval = interval;
+		long local = zone.toLocal(start.getEpochMillis());
+		this.startDay = Math.floorDiv(local, DateUtilities.DAY_UNITS);
+		this.timeOfDay = local - startDay * DateUtilities.DAY_UNITS;
+		this.endDay = endDay;
+		this.startMonday = startDay - CivilDates.dayOfWeek(startDay) + 1;
+		this.weekdays = weekdays;
+		long civil = CivilDates.civilFromDays(startDay);
+		this.startMonth = CivilDates.year(civil) * 12 + CivilDates.month(civil) - 1;
+		this.ordinal = ordinal;
+		this.dayOfWeek = dayOfWeek;
+		this.holidays = holidays;
+	}
+
+	/**
+	 * Every <code>intervalDays</code> days from the start date.
+	 * @param start - the first occurrence
+	 * @param intervalDays - the days between occurrences, at least 1
+	 * @throws IllegalArgumentException if start is null or the interval is less than 1
+	 */
+	public static Recurrence daily(DateValue start, int intervalDays) throws IllegalArgumentException {
+		return new Recurrence(start, DAILY, intervalDays, 0, 0, 0, null, Long.MAX_VALUE);
+	}
+
+	/**
+	 * The given days of every <code>intervalWeeks</code>th week (Monday to
+	 * Sunday), counting from the week of the start date, on or after the start date.
+	 * @param start - the start of the schedule
+	 * @param intervalWeeks - the weeks between active weeks, at least 1
+	 * @param daysOfWeek - <code>Calendar.SUNDAY</code> through <code>Calendar.SATURDAY</code>
+	 * @throws IllegalArgumentException if start is null, the interval is less than 1
+	 * or no valid day of the week is given
+	 */
+	public static Recurrence weekly(DateValue start, int intervalWeeks, int... daysOfWeek)
+	throws IllegalArgumentException {
+		if(daysOfWeek == null || daysOfWeek.length == 0) {
+			throw new IllegalArgumentException("Error: at least one day of the week is required");
+		}
+		int mask = 0;
+		for(int d : daysOfWeek) mask |= 1 << (isoDayOfWeek(d) - 1);
+		return new Recurrence(start, WEEKLY, intervalWeeks, mask, 0, 0, null, Long.MAX_VALUE);
+	}
+
+	/**
+	 * A day of every <code>intervalMonths</code>th month, counting from the
+	 * month of the start date, on or after the start date. Months without that
+	 * day are skipped.
+	 * @param start - the start of the schedule
+	 * @param intervalMonths - the months between active months, at least 1
+	 * @param dayOfMonth - 1 to 31, or -1 (the last day) to -31 counting from the end
+	 * @throws IllegalArgumentException if start is null, the interval is less than 1,
+	 * the day is out of range or no active month has the day
+	 */
+	public static Recurrence monthly(DateValue start, int intervalMonths, int dayOfMonth)
+	throws IllegalArgumentException {
+		if(dayOfMonth == 0 || dayOfMonth > 31 || dayOfMonth < -31) {
+			throw new IllegalArgumentException("Error: day of month must be 1 to 31 or -1 to -31");
+		}
+		return occurs(new Recurrence(start, MONTHLY_DAY, intervalMonths, 0, dayOfMonth, 0, null, Long.MAX_VALUE));
+	}
+
+	/**
+	 * The nth weekday, such as the 2nd Tuesday or the last Friday, of every
+	 * <code>intervalMonths</code>th month, counting from the month of the start
+	 * date, on or after the start date. Months without a 5th such weekday are skipped.
+	 * @param start - the start of the schedule
+	 * @param intervalMonths - the months between active months, at least 1
+	 * @param weekOfMonth - 1 to 5, or -1 (the last) to -5 counting from the end
+	 * @param dayOfWeek - <code>Calendar.SUNDAY</code> through <code>Calendar.SATURDAY</code>
+	 * @throws IllegalArgumentException if start is null, the interval is less than 1
+	 * or the week or day is out of range
+	 */
+	public static Recurrence monthlyOnWeekday(DateValue start, int intervalMonths, int weekOfMonth, int dayOfWeek)
+	throws IllegalArgumentException {
+		if(weekOfMonth == 0 || weekOfMonth > 5 || weekOfMonth < -5) {
+			throw new IllegalArgumentException("Error: week of month must be 1 to 5 or -1 to -5");
+		}
+		return occurs(new Recurrence(start, MONTHLY_WEEKDAY, intervalMonths, 0, weekOfMonth,
+			isoDayOfWeek(dayOfWeek), null, Long.MAX_VALUE));
+	}
+
+	/**
+	 * Every business day of a holiday calendar on or after the start date.
+	 * @param start - the start of the schedule
+	 * @param holidays - the weekend days and holidays
+	 * @throws IllegalArgumentException if an argument is null or the calendar has no business days
+	 */
+	public static Recurrence businessDays(DateValue start, HolidayCalendar holidays) throws IllegalArgumentException {
+		if(holidays == null) throw new IllegalArgumentException("Error: holidays argument cannot be null");
+		// past the last holiday only the weekend days are left to check
+		long far = 1L << 40;
+		if(holidays.countBusinessDays(far, far + 7) == 0) {
+			throw new IllegalArgumentException("Error: holiday calendar has no business days");
+		}
+		return new Recurrence(start, BUSINESS_DAYS, 1, 0, 0, 0, holidays, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the same schedule ending at an instant.
+	 * @param epochMillis - the last instant an occurrence may fall on
+	 */
+	public Recurrence until(long epochMillis) {
+		long end = epochMillis == Long.MAX_VALUE ? NONE : dayAtOrAfter(epochMillis + 1);
+		return new Recurrence(start, kind, interval, weekdays, ordinal, dayOfWeek, holidays,
+			end == NONE ? endDay : end);
+	}
+
+	/** Returns the start of the schedule. */
+	public DateValue getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns the first occurrence strictly after an instant.
+	 * @param afterMillis - milliseconds since 1970-01-01T00:00Z
+	 * @return the occurrence in epoch milliseconds, or NONE if the schedule has ended
+	 */
+	public long next(long afterMillis) {
+		if(afterMillis == Long.MAX_VALUE) return NONE;
+		long day = dayAtOrAfter(afterMillis + 1);
+		return day == NONE ? NONE : instant(day);
+	}
+
+	/**
+	 * Count the occurrences t with fromMillis &lt;= t &lt; toMillis.
+	 * @param fromMillis - the start of the range, inclusive
+	 * @param toMillis - the end of the range, exclusive
+	 * @return the number of occurrences, or 0 if the range is empty
+	 */
+	public long count(long fromMillis, long toMillis) {
+		if(toMillis <= fromMillis) return 0;
+		long first = dayAtOrAfter(fromMillis);
+		if(first == NONE) return 0;
+		long last = dayAtOrAfter(toMillis);
+		return countDays(first, last == NONE ? endDay : last);
+	}
+
+	/**
+	 * Returns the occurrences t with fromMillis &lt;= t &lt; toMillis, in order,
+	 * each worked out only when it is asked for.
+	 * @param fromMillis - the start of the range, inclusive
+	 * @param toMillis - the end of the range, exclusive
+	 */
+	public PrimitiveIterator.OfLong iterator(final long fromMillis, final long toMillis) {
+		return new PrimitiveIterator.OfLong() {
+			private long day = toMillis <= fromMillis ? NONE : dayAtOrAfter(fromMillis);
+			private long millis = day == NONE ? NONE : instant(day);
+
+			public boolean hasNext() {
+				return day != NONE && millis < toMillis;
+			}
+
+			public long nextLong() {
+				if(!hasNext()) throw new NoSuchElementException();
+				long current = millis;
+				day = nextDay(day + 1);
+				millis = day == NONE ? NONE : instant(day);
+				return current;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		String[] kinds = {"daily", "weekly", "monthly", "monthly on weekday", "business days"};
+		return kinds[kind] + " every " + interval + " from " + start
+			+ (endDay == Long.MAX_VALUE ? "" : " until epoch day " + (endDay - 1));
+	}
+
+	/*
+	 * The first occurrence day on or after an epoch day, or NONE. A date the
+	 * zone skips has no occurrence; a lenient Calendar would move it to the
+	 * next date, which may already have one.
+	 */
+	private long nextDay(long day) {
+		long next = ruleDay(day);
+		while(next != NONE && zone.isSkippedDay(next)) next = ruleDay(next + 1);
+		return next;
+	}
+
+	/*
+	 * The first day on or after an epoch day that the rule selects, or NONE.
+	 */
+	private long ruleDay(long day) {
+		if(day < startDay) day = startDay;
+		if(day >= endDay || day > LAST_DAY) return NONE;
+		long next;
+		switch(kind) {
+			case DAILY:
+				next = startDay + ceilDiv(day - startDay, interval) * interval;
+				break;
+			case WEEKLY:
+				next = nextWeekly(day);
+				break;
+			case MONTHLY_DAY:
+			case MONTHLY_WEEKDAY:
+				next = nextMonthly(day);
+				break;
+			default:
+				next = day;
+				while(!holidays.isBusinessDay(next)) next++;
+				break;
+		}
+		return next == NONE || next >= endDay || next > LAST_DAY ? NONE : next;
+	}
+
+	private long nextWeekly(long day) {
+		long week = (day - startMonday) / 7;
+		int from = (int)(day - startMonday - week * 7);
+		for(;;) {
+			long skip = week % interval;
+			if(skip != 0) {
+				week += interval - skip;
+				from = 0;
+			}
+			int left = weekdays & (-1 << from);
+			if(left != 0) return startMonday + week * 7 + Integer.numberOfTrailingZeros(left);
+			week += interval;
+			from = 0;
+		}
+	}
+
+	private long nextMonthly(long day) {
+		long civil = CivilDates.civilFromDays(day);
+		long month = CivilDates.year(civil) * 12 + CivilDates.month(civil) - 1;
+		month = startMonth + ceilDiv(month - startMonth, interval) * interval;
+		for(int i = 0; i < CYCLE_MONTHS; i++, month += interval) {
+			long o = occurrence(month);
+			if(o != NONE && o >= day) return o;
+		}
+		return NONE;
+	}
+
+	/*
+	 * The occurrence day in a month, year * 12 + month - 1, or NONE if the
+	 * month lacks it.
+	 */
+	private long occurrence(long month) {
+		long year = Math.floorDiv(month, 12L);
+		int m = (int)(month - year * 12) + 1;
+		int length = CivilDates.monthLength(year, m);
+		long first = CivilDates.daysFromCivil(year, m, 1);
+		int day;
+		if(kind == MONTHLY_DAY) {
+			day = ordinal > 0 ? ordinal : length + ordinal + 1;
+		} else if(ordinal > 0) {
+			day = 1 + (dayOfWeek - CivilDates.dayOfWeek(first) + 7) % 7 + 7 * (ordinal - 1);
+		} else {
+			day = length - (CivilDates.dayOfWeek(first + length - 1) - dayOfWeek + 7) % 7 + 7 * (ordinal + 1);
+		}
+		return day < 1 || day > length ? NONE : first + day - 1;
+	}
+
+	/*
+	 * Counts the occurrence days in [from, to), where from is an occurrence day.
+	 */
+	private long countDays(long from, long to) {
+		if(to > endDay) to = endDay;
+		if(to > LAST_DAY + 1) to = LAST_DAY + 1;
+		if(to <= from) return 0;
+		long n;
+		switch(kind) {
+			case DAILY:
+				n = ceilDiv(to - from, interval);
+				break;
+			case WEEKLY:
+				n = weeklyBefore(to) - weeklyBefore(from);
+				break;
+			case MONTHLY_DAY:
+			case MONTHLY_WEEKDAY:
+				n = countMonthly(from, to);
+				break;
+			default:
+				n = holidays.countBusinessDays(from, to);
+				break;
+		}
+		// as nextDay, leave out the rule's days that the zone skips
+		long[] skipped = zone.getSkippedDays();
+		if(skipped.length == 0) return n;
+		int i = Arrays.binarySearch(skipped, from);
+		for(i = i < 0 ? -i - 1 : i; i < skipped.length && skipped[i] < to; i++) {
+			if(ruleDay(skipped[i]) == skipped[i]) n--;
+		}
+		return n;
+	}
+
+	// occurrences in [startMonday, day), before applying the start date
+	private long weeklyBefore(long day) {
+		long week = (day - startMonday) / 7;
+		int dow = (int)(day - startMonday - week * 7);
+		long n = ceilDiv(week, interval) * Integer.bitCount(weekdays);
+		if(week % interval == 0) n += Integer.bitCount(weekdays & ((1 << dow) - 1));
+		return n;
+	}
+
+	private long countMonthly(long from, long to) {
+		long civil = CivilDates.civilFromDays(from);
+		long month = CivilDates.year(civil) * 12 + CivilDates.month(civil) - 1;
+		civil = CivilDates.civilFromDays(to - 1);
+		long lastMonth = CivilDates.year(civil) * 12 + CivilDates.month(civil) - 1;
+		month = startMonth + ceilDiv(month - startMonth, interval) * interval;
+		if(month > lastMonth) return 0;
+		// every month has days 1 to 28 and a 1st to 4th of each weekday
+		if(ordinal >= -4 && ordinal <= 4 || kind == MONTHLY_DAY && ordinal >= -28 && ordinal <= 28) {
+			long last = month + (lastMonth - month) / interval * interval;
+			long n = (last - month) / interval + 1;
+			if(occurrence(month) < from) n--;
+			if(occurrence(last) >= to) n--;
+			return n;
+		}
+		long n = 0;
+		for(; month <= lastMonth; month += interval) {
+			long o = occurrence(month);
+			if(o != NONE && o >= from && o < to) n++;
+		}
+		return n;
+	}
+
+	/*
+	 * The first occurrence day whose instant is at or after millis, or NONE.
+	 * Local dates and instants are in the same order, but a day either side
+	 * of a large offset change may map across millis.
+	 */
+	private long dayAtOrAfter(long millis) {
+		if(millis > LAST_DAY * DateUtilities.DAY_UNITS) return NONE;
+		long day = nextDay(millis < start.getEpochMillis() - 2 * DateUtilities.DAY_UNITS ? startDay
+			: Math.floorDiv(zone.toLocal(millis), DateUtilities.DAY_UNITS) - 2);
+		while(day != NONE && instant(day) < millis) day = nextDay(day + 1);
+		return day;
+	}
+
+	private long instant(long day) {
+		long local = day * DateUtilities.DAY_UNITS + timeOfDay;
+		long utc = zone.localToUtc(local);
+		if(utc != ZoneOffsetTable.AMBIGUOUS) return utc;
+
+		// a gap or an overlap: let a lenient Calendar choose, as a schedule built with one would
+		long civil = CivilDates.civilFromDays(day);
+		Calendar c = new GregorianCalendar(zone.getZone());
+		((GregorianCalendar)c).setGregorianChange(new Date(Long.MIN_VALUE));
+		c.clear();
+		c.set((int)CivilDates.year(civil), CivilDates.month(civil) - 1, CivilDates.day(civil));
+		c.set(Calendar.MILLISECOND, (int)timeOfDay);
+		return c.getTimeInMillis();
+	}
+
+	private static Recurrence occurs(Recurrence rule) throws IllegalArgumentException {
+		if(rule.nextDay(rule.startDay) == NONE) throw new IllegalArgumentException("Error: the rule never occurs");
+		return rule;
+	}
+
+	private static int isoDayOfWeek(int calendarDay) throws IllegalArgumentException {
+		if(calendarDay < Calendar.SUNDAY || calendarDay > Calendar.SATURDAY) {
+			throw new IllegalArgumentException("Error: day of week must be Calendar.SUNDAY to Calendar.SATURDAY");
+		}
+		return calendarDay == Calendar.SUNDAY ? 7 : calendarDay - 1;
+	}
+
+	private static long ceilDiv(long a, long b) {
+		return -Math.floorDiv(-a, b);
+	}
+}
@@ -0,0 +1,307 @@
+package dates;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A formatter for runs of timestamps that usually differ only in their
+ * low-order fields, such as the timestamps of a log or metrics stream. It keeps
+ * the previous timestamp and its text. When the next timestamp falls in the
+ * same local second, minute or day, only the fields that can have changed are
+ * rewritten in place; the rest of the text is reused as it is. Output always
+ * matches <code>DateUtilities.toString(Date, String)</code> for the same pattern.
+ * <P>
+ * Fields are only rewritten in place when their width cannot change, e.g.
+ * "ss" or "SSS" but not "s". A pattern with any other field, or a timestamp
+ * the fast path does not handle, is formatted in full every time.
+ * <P>
+ * A formatter is not thread-safe; use one per thread.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class RollingDateFormatter {
+	/** The reuse levels, from reusing nothing to reusing the whole text. */
+	public static final int FULL = 0;
+	public static final int SAME_DAY = 1;
+	public static final int SAME_MINUTE = 2;
+	public static final int SAME_SECOND = 3;
+	public static final int SAME_MILLISECOND = 4;
+
+	private static final long UNSET = Long.MIN_VALUE;
+
+	private final FastDateFormatter full;
+	private final NumericPattern compiled;
+	private final ZoneOffsetTable offsets;
+	private final int[] fieldLevel;	// the coarsest level at which each field still changes
+	private final int lowestRollingLevel;	// rolling below this needs a full format
+	private final int[] starts;
+	private final long[] counts = new long[5];
+	private char[] buf = new char[64];
+	private int length;
+	private long lastMillis = UNSET;
+	private long lastLocal;
+
+	/**
+	 * Create a formatter for a pattern in the default locale and time zone.
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	public RollingDateFormatter(String pattern) throws IllegalArgumentException {
+		this(pattern, TimeZone.getDefault(), Locale.getDefault(Locale.Category.FORMAT));
+	}
+
+	/**
+	 * Create a formatter for a pattern in the specified locale and time zone.
+	 * @param pattern - a <code>SimpleDateFormat</code> date/time pattern
+	 * @param zone - the <code>TimeZone</code> to render timestamps in
+	 * @param aLocale - a <code>Locale</code> field
+	 * @throws IllegalArgumentException if pattern is not recognized
+	 */
+	public RollingDateFormatter(String pattern, TimeZone zone, Locale aLocale) throws IllegalArgumentException {
+		this.full = new FastDateFormatter(pattern, zone, aLocale);
+		this.compiled = new NumericPattern(pattern,
+			FormatterRegistry.getDefault().get(pattern, aLocale, zone).newFormat(), aLocale);
+		this.offsets = ZoneOffsetTable.forZone(zone);
+		this.starts = new int[compiled.fields.length];
+		this.fieldLevel = new int[compiled.fields.length];
+
+		// a variable-width field that changes within a day forces full formats
+		// at every level it changes at
+		int lowest = compiled.supported ? SAME_DAY : SAME_MILLISECOND + 1;
+		for(int i = 0; i < compiled.fields.length; i++) {
+			int level = levelOf(compiled.fields[i]);
+			fieldLevel[i] = level;
+			if(level != FULL && !isFixedWidth(i)) lowest = Math.max(lowest, level + 1);
+		}
+		this.lowestRollingLevel = lowest;
+	}
+
+	/** Returns the <code>SimpleDateFormat</code> pattern. */
+	public String getPattern() {
+		return full.getPattern();
+	}
+
+	/**
+	 * Append a timestamp to a <code>StringBuilder</code>.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @param sb - the destination
+	 * @return the destination
+	 */
+	public StringBuilder format(long epochMillis, StringBuilder sb) {
+		update(epochMillis);
+		return sb.append(buf, 0, length);
+	}
+
+	/**
+	 * Write a timestamp into a <code>char[]</code>.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @param dest - the destination
+	 * @param offset - the index of the first character to write
+	 * @return the index just past the last character written
+	 * @throws ArrayIndexOutOfBoundsException if the text does not fit
+	 */
+	public int format(long epochMillis, char[] dest, int offset) {
+		update(epochMillis);
+		System.arraycopy(buf, 0, dest, offset, length);
+		return offset + length;
+	}
+
+	/**
+	 * Format a timestamp as a new <code>String</code>.
+	 * @param epochMillis - milliseconds since 1970-01-01T00:00Z
+	 * @return the formatted timestamp
+	 */
+	public String format(long epochMillis) {
+		update(epochMillis);
+		return new String(buf, 0, length);
+	}
+
+	/**
+	 * Format a <code>Date</code> as a new <code>String</code>.
+	 * @param date - a <code>Date</code> object
+	 * @return the formatted date
+	 */
+	public String format(Date date) {
+		return format(date.getTime());
+	}
+
+	/**
+	 * Returns how many timestamps were formatted at a reuse level.
+	 * @param level - FULL, SAME_DAY, SAME_MINUTE, SAME_SECOND or SAME_MILLISECOND
+	 */
+	public long getCount(int level) {
+		return counts[level];
+	}
+
+	/** Returns the number of timestamps formatted in full. */
+	public long getFullCount() {
+		return counts[FULL];
+	}
+
+	/** Returns the number of timestamps that reused the text of the previous one in part or whole. */
+	public long getReuseCount() {
+		return counts[SAME_DAY] + counts[SAME_MINUTE] + counts[SAME_SECOND] + counts[SAME_MILLISECOND];
+	}
+
+	/** Resets the reuse counters. */
+	public void resetCounts() {
+		for(int i = 0; i < counts.length; i++) counts[i] = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "full=" + counts[FULL] + ", sameDay=" + counts[SAME_DAY] + ", sameMinute=" + counts[SAME_MINUTE]
+			+ ", sameSecond=" + counts[SAME_SECOND] + ", sameMillisecond=" + counts[SAME_MILLISECOND];
+	}
+
+	private void update(long millis) {
+		if(millis == lastMillis && lastMillis != UNSET) {
+			counts[SAME_MILLISECOND]++;
+			return;
+		}
+		int level = FULL;
+		long local = 0;
+		if(lastMillis != UNSET) {
+			local = offsets.toLocal(millis);
+			if(local >= compiled.cutover) level = sharedLevel(local, lastLocal);
+		}
+		if(level < lowestRollingLevel) {
+			formatFull(millis);
+			counts[FULL]++;
+			return;
+		}
+		int msOfDay = (int)Math.floorMod(local, DateUtilities.DAY_UNITS);
+		for(int i = 0; i < starts.length; i++) {
+			if(fieldLevel[i] >= level) rewrite(i, msOfDay);
+		}
+		lastMillis = millis;
+		lastLocal = local;
+		counts[level]++;
+	}
+
+	private void formatFull(long millis) {
+		int end;
+		while(true) {
+			try {
+				end = full.format(millis, buf, 0);
+				break;
+			} catch(ArrayIndexOutOfBoundsException e) {
+				buf = new char[buf.length * 2];
+			}
+		}
+		length = end;
+		long local = offsets.toLocal(millis);
+		if(lowestRollingLevel > SAME_MILLISECOND || local < compiled.cutover) {
+			lastMillis = UNSET;
+			return;
+		}
+		long civil = CivilDates.civilFromDays(Math.floorDiv(local, DateUtilities.DAY_UNITS));
+		if(CivilDates.year(civil) < 1 || CivilDates.year(civil) > Integer.MAX_VALUE) {
+			lastMillis = UNSET;
+			return;
+		}
+		// record where each field starts so later timestamps can rewrite it
+		int msOfDay = (int)Math.floorMod(local, DateUtilities.DAY_UNITS);
+		int pos = 0;
+		for(int i = 0; i < starts.length; i++) {
+			starts[i] = pos;
+			pos += width(i, civil, msOfDay);
+		}
+		lastMillis = millis;
+		lastLocal = local;
+	}
+
+	/*
+	 * The finest level at which two local times agree: the same millisecond,
+	 * second, minute or day, or FULL if they are on different days.
+	 */
+	private static int sharedLevel(long local, long previous) {
+		if(Math.floorDiv(local, DateUtilities.DAY_UNITS) != Math.floorDiv(previous, DateUtilities.DAY_UNITS)) return FULL;
+		if(Math.floorDiv(local, 60000L) != Math.floorDiv(previous, 60000L)) return SAME_DAY;
+		if(Math.floorDiv(local, 1000L) != Math.floorDiv(previous, 1000L)) return SAME_MINUTE;
+		if(local != previous) return SAME_SECOND;
+		return SAME_MILLISECOND;
+	}
+
+	private static int levelOf(byte field) {
+		switch(field) {
+			case NumericPattern.HOUR_OF_DAY0:
+			case NumericPattern.HOUR_OF_DAY1:
+			case NumericPattern.HOUR0:
+			case NumericPattern.HOUR1:
+			case NumericPattern.MINUTE:
+			case NumericPattern.AM_PM:
+				return SAME_DAY;
+			case NumericPattern.SECOND:
+				return SAME_MINUTE;
+			case NumericPattern.MILLISECOND:
+				return SAME_SECOND;
+			default:
+				return FULL;
+		}
+	}
+
+	private boolean isFixedWidth(int i) {
+		switch(compiled.fields[i]) {
+			case NumericPattern.AM_PM:
+				return compiled.amPm[0].length() == compiled.amPm[1].length();
+			case NumericPattern.MILLISECOND:
+				return compiled.counts[i] >= 3;
+			default:
+				return compiled.counts[i] >= 2;
+		}
+	}
+
+	private int width(int i, long civil, int msOfDay) {
+		int count = compiled.counts[i];
+		switch(compiled.fields[i]) {
+			case NumericPattern.LITERAL:
+				return compiled.literals[i].length();
+			case NumericPattern.AM_PM:
+				return compiled.amPm[msOfDay < 12 * DateUtilities.HOUR_UNITS ? 0 : 1].length();
+			case NumericPattern.YEAR:
+				return count == 2 ? 2 : Math.max(count, digits(CivilDates.year(civil)));
+			case NumericPattern.MONTH:
+				return Math.max(count, digits(CivilDates.month(civil)));
+			case NumericPattern.DAY:
+				return Math.max(count, digits(CivilDates.day(civil)));
+			default:
+				return Math.max(count, digits(value(compiled.fields[i], msOfDay)));
+		}
+	}
+
+	private void rewrite(int i, int msOfDay) {
+		int pos = starts[i];
+		if(compiled.fields[i] == NumericPattern.AM_PM) {
+			String marker = compiled.amPm[msOfDay < 12 * DateUtilities.HOUR_UNITS ? 0 : 1];
+			marker.getChars(0, marker.length(), buf, pos);
+			return;
+		}
+		int value = value(compiled.fields[i], msOfDay);
+		for(int k = pos + compiled.counts[i] - 1; k >= pos; k--) {
+			buf[k] = (char)(compiled.zeroDigit + value % 10);
+			value /= 10;
+		}
+	}
+
+	private static int value(byte field, int msOfDay) {
+		int hour = msOfDay / 3600000;
+		switch(field) {
+			case NumericPattern.HOUR_OF_DAY0: return hour;
+			case NumericPattern.HOUR_OF_DAY1: return hour == 0 ? 24 : hour;
+			case NumericPattern.HOUR0: return hour % 12;
+			case NumericPattern.HOUR1: return hour % 12 == 0 ? 12 : hour % 12;
+			case NumericPattern.MINUTE: return msOfDay / 60000 % 60;
+			case NumericPattern.SECOND: return msOfDay / 1000 % 60;
+			default: return msOfDay % 1000;
+		}
+	}
+
+	private static int digits(long value) {
+		int digits = 1;
+		for(long v = value; v >= 10; v /= 10) digits++;
+		return digits;
+	}
+}
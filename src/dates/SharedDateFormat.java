@@ -0,0 +1,230 @@
+package dates;
+
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A compiled <code>SimpleDateFormat</code> pattern that may be shared freely
+ * between threads. The pattern is compiled once into a prototype; each call
+ * borrows a working copy from a small lock-free pool and returns it when done,
+ * so no formatter is ever used by two threads at once and nothing is pinned to
+ * a thread the way a <code>ThreadLocal</code> would be. A copy that parsed a
+ * zone name is put back in this format's zone before it is returned. Borrowing
+ * never blocks or takes a monitor, so it is safe from virtual threads: a thread
+ * that finds the pool empty clones the prototype instead of waiting.
+ * <P>
+ * Instances are obtained from <code>FormatterRegistry</code>.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+public final class SharedDateFormat {
+	private static final int POOL_SIZE =
+		Math.max(2, Math.min(64, Runtime.getRuntime().availableProcessors() * 2));
+	// the registry's LRU order only needs millisecond precision, and skipping
+	// redundant writes keeps hot formats from bouncing a cache line between cores
+	private static final long TOUCH_NANOS = 1000000L;
+
+	private final String pattern;
+	private final Locale locale;
+	private final TimeZone zone;
+	private final SimpleDateFormat prototype;
+	private final AtomicReferenceArray<SimpleDateFormat> pool =
+		new AtomicReferenceArray<SimpleDateFormat>(POOL_SIZE);
+	private volatile long lastUsed = System.nanoTime();
+	private volatile FastDateFormatter fastFormatter;
+
+	SharedDateFormat(String pattern, Locale aLocale, TimeZone zone) throws IllegalArgumentException {
+		this.pattern = pattern;
+		this.locale = aLocale;
+		this.zone = (TimeZone)zone.clone();
+		SimpleDateFormat sdf = new SimpleDateFormat(pattern, aLocale);
+		sdf.setTimeZone(this.zone);
+		this.prototype = sdf;
+		pool.set(0, (SimpleDateFormat)sdf.clone());
+	}
+
+	/*
+	 * Shares a format built by a locale provider, such as the one returned by
+	 * DateFormat.getDateInstance, which may carry a calendar or symbols that
+	 * compiling its pattern again would not reproduce.
+	 */
+	SharedDateFormat(SimpleDateFormat format, Locale aLocale, TimeZone zone) {
+		this.pattern = format.toPattern();
+		this.locale = aLocale;
+		this.zone = (TimeZone)zone.clone();
+		SimpleDateFormat sdf = (SimpleDateFormat)format.clone();
+		sdf.setTimeZone(this.zone);
+		this.prototype = sdf;
+		pool.set(0, (SimpleDateFormat)sdf.clone());
+	}
+
+	/** Returns the <code>SimpleDateFormat</code> pattern. */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/** Returns the locale the pattern was compiled for. */
+	public Locale getLocale() {
+		return locale;
+	}
+
+	/** Returns a copy of the time zone used for formatting and parsing. */
+	public TimeZone getTimeZone() {
+		return (TimeZone)zone.clone();
+	}
+
+	/**
+	 * Format a <code>Date</code> according to this pattern
+	 * @param date - a <code>Date</code> object
+	 * @return a date and/or time formatted according to this pattern
+	 */
+	public String format(Date date) {
+		SimpleDateFormat sdf = borrow();
+		try {
+			return sdf.format(date);
+		} finally {
+			release(sdf);
+		}
+	}
+
+	/**
+	 * Parse a date and/or time string according to this pattern
+	 * @param dateString - a <code>String</code> representation of a date and/or time
+	 * @return a <code>Date</code> object
+	 * @throws ParseException if the string does not match the pattern
+	 */
+	public Date parse(String dateString) throws ParseException {
+		SimpleDateFormat sdf = borrow();
+		try {
+			return sdf.parse(dateString);
+		} finally {
+			// parsing a zone name switches the copy to that zone
+			sdf.setTimeZone(zone);
+			release(sdf);
+		}
+	}
+
+	/**
+	 * Parse a date and/or time string according to this pattern without throwing
+	 * on failure, in the manner of <code>DateFormat.parse(String, ParsePosition)</code>.
+	 * @param dateString - a <code>String</code> representation of a date and/or time
+	 * @param pos - on input, where to start parsing; on output, where parsing stopped
+	 *              or, on failure, the error index
+	 * @return a <code>Date</code> object, or null if the string does not match the pattern
+	 */
+	public Date parse(String dateString, ParsePosition pos) {
+		SimpleDateFormat sdf = borrow();
+		try {
+			return sdf.parse(dateString, pos);
+		} finally {
+			// parsing a zone name switches the copy to that zone
+			sdf.setTimeZone(zone);
+			release(sdf);
+		}
+	}
+
+	/*
+	 * Parses and formats again with the same copy, so the result is in any zone
+	 * named by the string, as it is with a single SimpleDateFormat.
+	 */
+	String reformat(String dateString) throws ParseException {
+		SimpleDateFormat sdf = borrow();
+		try {
+			return sdf.format(sdf.parse(dateString));
+		} finally {
+			sdf.setTimeZone(zone);
+			release(sdf);
+		}
+	}
+
+	/*
+	 * As reformat(String), but formats with target in the zone the parse left,
+	 * and returns null rather than throwing when the string does not parse.
+	 */
+	String reformat(String dateString, SharedDateFormat target) {
+		SimpleDateFormat sdf = borrow();
+		try {
+			ParsePosition pos = new ParsePosition(0);
+			Date date = sdf.parse(dateString, pos);
+			// DateFormat.parse(String) rejects a parse that consumed nothing
+			if(date == null || pos.getIndex() == 0) return null;
+			if(target == this) return sdf.format(date);
+			SimpleDateFormat out = target.borrow();
+			try {
+				out.setTimeZone(sdf.getTimeZone());
+				return out.format(date);
+			} finally {
+				out.setTimeZone(target.zone);
+				target.release(out);
+			}
+		} finally {
+			sdf.setTimeZone(zone);
+			release(sdf);
+		}
+	}
+
+	/**
+	 * Returns a private <code>SimpleDateFormat</code> equivalent to this pattern,
+	 * for callers that need the full <code>DateFormat</code> API.
+	 */
+	public SimpleDateFormat newFormat() {
+		return (SimpleDateFormat)prototype.clone();
+	}
+
+	/*
+	 * The FastDateFormatter for this pattern, compiled on first use and
+	 * dropped with this format when the registry evicts it. Two threads may
+	 * both compile it; either result is equivalent.
+	 */
+	FastDateFormatter getFastFormatter() {
+		FastDateFormatter f = fastFormatter;
+		if(f == null) {
+			f = new FastDateFormatter(this);
+			fastFormatter = f;
+		}
+		return f;
+	}
+
+	void touch() {
+		long now = System.nanoTime();
+		if(now - lastUsed > TOUCH_NANOS) lastUsed = now;
+	}
+
+	long lastUsed() {
+		return lastUsed;
+	}
+
+	/*
+	 * Threads start probing at different slots so they do not all contend for
+	 * the first one.
+	 */
+	private static int probe() {
+		long id = Thread.currentThread().getId();
+		return (int)((id ^ (id >>> 16)) * 0x9E3779B9L >>> 8) & 0x7FFFFFFF;
+	}
+
+	private SimpleDateFormat borrow() {
+		int start = probe();
+		for(int k = 0; k < POOL_SIZE; k++) {
+			int i = (start + k) % POOL_SIZE;
+			SimpleDateFormat sdf = pool.get(i);
+			if(sdf != null && pool.compareAndSet(i, sdf, null)) return sdf;
+		}
+		// pool exhausted: cloning the prototype still skips pattern compilation
+		return (SimpleDateFormat)prototype.clone();
+	}
+
+	private void release(SimpleDateFormat sdf) {
+		int start = probe();
+		for(int k = 0; k < POOL_SIZE; k++) {
+			int i = (start + k) % POOL_SIZE;
+			if(pool.get(i) == null && pool.compareAndSet(i, null, sdf)) return;
+		}
+	}
+}
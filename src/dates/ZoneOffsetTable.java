@@ -0,0 +1,257 @@
+package dates;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed UTC offset transitions for a time zone between 1900 and 2100.
+ * Offsets inside that range are found by a binary search over two primitive
+ * arrays; anything outside it, or any zone whose tz database rules do not agree
+ * with its <code>TimeZone</code>, is answered by <code>TimeZone.getOffset</code>.
+ * <P>
+ * Tables are built once per zone id and shared. Zones outside the tz
+ * database, such as "GMT+05:30", are kept in a small bounded cache.
+ *
+ * @author  Various students
+ * @version 1.00
+ */
+final class ZoneOffsetTable {
+	// 1900-01-01T00:00Z and 2100-01-01T00:00Z
+	static final long RANGE_START = -2208988800000L;
+	static final long RANGE_END = 4102444800000L;
+
+	/** Returned by <code>localToUtc</code> for wall times in a DST gap or overlap. */
+	static final long AMBIGUOUS = Long.MIN_VALUE;
+
+	private static final ConcurrentHashMap<String, ZoneOffsetTable> TABLES =
+		new ConcurrentHashMap<String, ZoneOffsetTable>();
+	// zones outside the tz database and adjusted copies of named ones, which
+	// may be made up freely, so only a few are kept
+	private static final int MAX_OTHER_TABLES = 64;
+	private static final ConcurrentHashMap<String, ZoneOffsetTable> OTHER_TABLES =
+		new ConcurrentHashMap<String, ZoneOffsetTable>();
+
+	private final TimeZone zone;
+	private final long[] starts;   // starts[i] is the first millisecond offsets[i] applies to
+	private final int[] offsets;
+	private final boolean fixed;
+	private volatile long[] skippedDays;
+
+	private ZoneOffsetTable(TimeZone zone, long[] starts, int[] offsets) {
+		this.zone = zone;
+		this.starts = starts;
+		this.offsets = offsets;
+		this.fixed = starts != null && starts.length == 1;
+	}
+
+	/**
+	 * Returns the table for a zone. Zones that are not in the tz database get
+	 * a single-offset table if their offset never changes, and otherwise a
+	 * table that always delegates to a private copy of the zone.
+	 */
+	static ZoneOffsetTable forZone(TimeZone zone) {
+		String id = zone.getID();
+		ZoneOffsetTable table = TABLES.get(id);
+		if(table != null && table.zone.hasSameRules(zone)) return table;
+		ZoneOffsetTable other = OTHER_TABLES.get(id);
+		if(other != null && other.zone.hasSameRules(zone)) return other;
+		if(table == null && other == null) {
+			// transitions preloaded by DateStartup spare loading the tz database rules
+			ZoneOffsetTable built = DateStartup.zoneTable(zone);
+			// a miss is cached below, so the tz database is only searched once per id
+			if(built == null && ZoneId.getAvailableZoneIds().contains(id)) built = build(zone);
+			if(built != null) {
+				table = TABLES.putIfAbsent(id, built);
+				if(table == null) table = built;
+				if(table.zone.hasSameRules(zone)) return table;
+			}
+		}
+		// a zone outside the tz database, or a named zone whose raw offset a caller adjusted
+		ZoneOffsetTable built = build(zone);
+		if(OTHER_TABLES.size() >= MAX_OTHER_TABLES) {
+			Iterator<String> ids = OTHER_TABLES.keySet().iterator();
+			if(ids.hasNext()) OTHER_TABLES.remove(ids.next());
+		}
+		OTHER_TABLES.put(id, built);
+		return built;
+	}
+
+	/** Returns the offset from UTC, in milliseconds, at the given instant. */
+	int getOffset(long millis) {
+		if(starts == null || millis < RANGE_START || millis >= RANGE_END) return zone.getOffset(millis);
+		if(fixed) return offsets[0];
+		return offsets[index(millis)];
+	}
+
+	/**
+	 * Returns the index of the period, around millis, over which the offset
+	 * does not change, or -1 where the table cannot say.
+	 */
+	int periodIndex(long millis) {
+		if(starts == null || millis < RANGE_START || millis >= RANGE_END) return -1;
+		return index(millis);
+	}
+
+	/** Returns the first instant of a period found by <code>periodIndex</code>. */
+	long periodStart(int period) {
+		return starts[period];
+	}
+
+	/** Returns the instant after a period found by <code>periodIndex</code>. */
+	long periodEnd(int period) {
+		return period + 1 < starts.length ? starts[period + 1] : RANGE_END;
+	}
+
+	/** Returns the offset in a period found by <code>periodIndex</code>. */
+	int periodOffset(int period) {
+		return offsets[period];
+	}
+
+	/**
+	 * Converts local wall time to UTC when the wall time occurs exactly once in
+	 * this zone. Wall times in a DST gap or overlap are left to the caller,
+	 * since only <code>GregorianCalendar</code> knows how it resolves them.
+	 * @param local - local wall time, as milliseconds since 1970-01-01T00:00 local
+	 * @return epoch milliseconds, or <code>AMBIGUOUS</code>
+	 */
+	long localToUtc(long local) {
+		long before = local - getOffset(local - DateUtilities.DAY_UNITS);
+		long after = local - getOffset(local + DateUtilities.DAY_UNITS);
+		boolean beforeOk = before + getOffset(before) == local;
+		boolean afterOk = after + getOffset(after) == local;
+		if(beforeOk && (!afterOk || after == before)) return before;
+		if(afterOk && !beforeOk) return after;
+		return AMBIGUOUS;
+	}
+
+	/** Returns the local wall time of an instant, as milliseconds since 1970-01-01T00:00 local. */
+	long toLocal(long millis) {
+		return millis + getOffset(millis);
+	}
+
+	/**
+	 * Returns a table for a zone from transitions captured earlier with
+	 * <code>getTransitionStarts</code> and <code>getTransitionOffsets</code>,
+	 * or null if the zone no longer agrees with them.
+	 */
+	static ZoneOffsetTable fromTransitions(TimeZone zone, long[] starts, int[] offsets) {
+		TimeZone copy = (TimeZone)zone.clone();
+		if(starts.length == 0 || starts.length != offsets.length || starts[0] != RANGE_START
+			|| !agrees(copy, starts, offsets, starts.length)) return null;
+		return new ZoneOffsetTable(copy, starts.clone(), offsets.clone());
+	}
+
+	/** Returns the first instant of each offset period, or null if this table delegates to the zone. */
+	long[] getTransitionStarts() {
+		return starts == null ? null : starts.clone();
+	}
+
+	/** Returns the offset of each period, or null if this table delegates to the zone. */
+	int[] getTransitionOffsets() {
+		return offsets == null ? null : offsets.clone();
+	}
+
+	/**
+	 * Returns the local dates, as epoch days, that a gap of a day or more
+	 * removes entirely from this zone, such as 2011-12-30 in Pacific/Apia, in
+	 * ascending order. Callers must not modify the array.
+	 */
+	long[] getSkippedDays() {
+		long[] days = skippedDays;
+		if(days == null) {
+			days = findSkippedDays();
+			skippedDays = days;
+		}
+		return days;
+	}
+
+	/** Returns true if a gap removes a local date, as an epoch day, entirely. */
+	boolean isSkippedDay(long day) {
+		long[] days = getSkippedDays();
+		return days.length != 0 && Arrays.binarySearch(days, day) >= 0;
+	}
+
+	/** Returns the id of the zone. */
+	String getID() {
+		return zone.getID();
+	}
+
+	/** Returns a copy of the zone. */
+	TimeZone getZone() {
+		return (TimeZone)zone.clone();
+	}
+
+	private int index(long millis) {
+		int i = Arrays.binarySearch(starts, millis);
+		return i < 0 ? -i - 2 : i;
+	}
+
+	private static ZoneOffsetTable build(TimeZone zone) {
+		TimeZone copy = (TimeZone)zone.clone();
+		ZoneRules rules;
+		try {
+			rules = ZoneId.of(copy.getID()).getRules();
+		} catch(RuntimeException e) {
+			// a custom zone without daylight saving keeps its raw offset throughout
+			if(copy instanceof SimpleTimeZone && !copy.useDaylightTime()) {
+				return new ZoneOffsetTable(copy, new long[] {RANGE_START}, new int[] {copy.getRawOffset()});
+			}
+			return new ZoneOffsetTable(copy, null, null);
+		}
+
+		long[] starts = new long[16];
+		int[] offsets = new int[16];
+		int n = 0;
+		starts[n] = RANGE_START;
+		offsets[n++] = rules.getOffset(Instant.ofEpochMilli(RANGE_START)).getTotalSeconds() * 1000;
+		ZoneOffsetTransition t = rules.nextTransition(Instant.ofEpochMilli(RANGE_START));
+		while(t != null && t.toEpochSecond() * 1000L < RANGE_END) {
+			if(n == starts.length) {
+				starts = Arrays.copyOf(starts, n * 2);
+				offsets = Arrays.copyOf(offsets, n * 2);
+			}
+			starts[n] = t.toEpochSecond() * 1000L;
+			offsets[n++] = t.getOffsetAfter().getTotalSeconds() * 1000;
+			t = rules.nextTransition(t.getInstant());
+		}
+
+		if(!agrees(copy, starts, offsets, n)) return new ZoneOffsetTable(copy, null, null);
+		return new ZoneOffsetTable(copy, Arrays.copyOf(starts, n), Arrays.copyOf(offsets, n));
+	}
+
+	/*
+	 * Such gaps are all in the tz database's history; DST rules never shift by
+	 * a day. Outside the table the zone is left to itself, as it is by getOffset.
+	 */
+	private long[] findSkippedDays() {
+		long[] days = new long[0];
+		if(starts == null) return days;
+		for(int i = 1; i < starts.length; i++) {
+			if(offsets[i] - offsets[i - 1] < DateUtilities.DAY_UNITS) continue;
+			// the local dates from the wall clock before the gap to the one after it
+			long first = -Math.floorDiv(-(starts[i] + offsets[i - 1]), DateUtilities.DAY_UNITS);
+			long end = Math.floorDiv(starts[i] + offsets[i], DateUtilities.DAY_UNITS);
+			for(long day = first; day < end; day++) {
+				days = Arrays.copyOf(days, days.length + 1);
+				days[days.length - 1] = day;
+			}
+		}
+		return days;
+	}
+
+	// only trust a table if it agrees with the TimeZone everywhere it changes
+	private static boolean agrees(TimeZone zone, long[] starts, int[] offsets, int n) {
+		for(int i = 0; i < n; i++) {
+			if(zone.getOffset(starts[i]) != offsets[i]) return false;
+			if(i > 0 && zone.getOffset(starts[i] - 1) != offsets[i - 1]) return false;
+		}
+		return true;
+	}
+}